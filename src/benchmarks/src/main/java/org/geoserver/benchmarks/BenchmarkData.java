@@ -0,0 +1,369 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogBuilder;
+import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.SLDHandler;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.impl.GeoServerImpl;
+import org.geoserver.config.impl.GeoServerInfoImpl;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geoserver.wfs.GMLInfo;
+import org.geoserver.wfs.GMLInfo.SrsNameStyle;
+import org.geoserver.wfs.GMLInfoImpl;
+import org.geoserver.wfs.WFSInfo;
+import org.geoserver.wfs.WFSInfoImpl;
+import org.geoserver.wms.WMSInfoImpl;
+import org.geotools.feature.NameImpl;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.springframework.context.support.StaticApplicationContext;
+
+/**
+ * Self contained data set for the benchmarks.
+ * <p>
+ * Generates a temporary data directory with a property data store holding a points, a lines
+ * and a polygons feature type, one style per geometry type plus a labelling one and a data
+ * security configuration, and builds an in memory catalog and configuration on top of it.
+ * Feature and style lookups performed through {@link GeoServerExtensions} are satisfied by a
+ * static application context, additional beans can be added with
+ * {@link #register(String, Object)}.
+ * </p>
+ * <p>
+ * Larger catalogs can be simulated with {@link #addSyntheticLayers(int, int)}, the synthetic
+ * layers are not backed by any data and are meant for catalog lookups only.
+ * </p>
+ */
+public class BenchmarkData {
+
+    public static final String WORKSPACE = "bench";
+
+    public static final String NAMESPACE_URI = "http://geoserver.org/bench";
+
+    public static final String POINTS = "points";
+
+    public static final String LINES = "lines";
+
+    public static final String POLYGONS = "polygons";
+
+    public static final String LABEL_STYLE = "label";
+
+    /**
+     * Role allowed to read the restricted synthetic workspaces
+     */
+    public static final String RESTRICTED_ROLE = "ROLE_RESTRICTED";
+
+    public static final ReferencedEnvelope BOUNDS = new ReferencedEnvelope(-180, 180, -90, 90,
+            DefaultGeographicCRS.WGS84);
+
+    static final String SLD_HEADER = "<StyledLayerDescriptor version=\"1.0.0\" "
+            + "xmlns=\"http://www.opengis.net/sld\" xmlns:ogc=\"http://www.opengis.net/ogc\">"
+            + "<NamedLayer><Name>%s</Name><UserStyle><FeatureTypeStyle><Rule>";
+
+    static final String SLD_FOOTER = "</Rule></FeatureTypeStyle></UserStyle></NamedLayer>"
+            + "</StyledLayerDescriptor>";
+
+    static final String POINT_SYMBOLIZER = "<PointSymbolizer><Graphic><Mark>"
+            + "<WellKnownName>circle</WellKnownName><Fill><CssParameter name=\"fill\">#FF0000"
+            + "</CssParameter></Fill></Mark><Size>6</Size></Graphic></PointSymbolizer>";
+
+    static final String LINE_SYMBOLIZER = "<LineSymbolizer><Stroke>"
+            + "<CssParameter name=\"stroke\">#0000FF</CssParameter>"
+            + "<CssParameter name=\"stroke-width\">2</CssParameter></Stroke></LineSymbolizer>";
+
+    static final String POLYGON_SYMBOLIZER = "<PolygonSymbolizer><Fill>"
+            + "<CssParameter name=\"fill\">#AAAAAA</CssParameter></Fill><Stroke>"
+            + "<CssParameter name=\"stroke\">#000000</CssParameter></Stroke></PolygonSymbolizer>";
+
+    static final String TEXT_SYMBOLIZER = "<TextSymbolizer><Label><ogc:PropertyName>name"
+            + "</ogc:PropertyName></Label><Font><CssParameter name=\"font-size\">10"
+            + "</CssParameter></Font><Halo><Radius>1</Radius></Halo>"
+            + "<Fill><CssParameter name=\"fill\">#000000</CssParameter></Fill></TextSymbolizer>";
+
+    File directory;
+
+    GeoServerResourceLoader resourceLoader;
+
+    CatalogImpl catalog;
+
+    GeoServerImpl geoServer;
+
+    StaticApplicationContext context;
+
+    /**
+     * Builds the data set, each feature type gets the specified number of features
+     */
+    public BenchmarkData(int featureCount) throws Exception {
+        directory = File.createTempFile("benchmark", "data");
+        directory.delete();
+        directory.mkdirs();
+        resourceLoader = new GeoServerResourceLoader(directory);
+
+        context = new StaticApplicationContext();
+        context.refresh();
+        register("resourceLoader", resourceLoader);
+        register("sldHandler", new SLDHandler());
+
+        writeData(featureCount);
+        writeStyles();
+        writeSecurity(0);
+
+        catalog = new CatalogImpl();
+        catalog.setResourceLoader(resourceLoader);
+        geoServer = new GeoServerImpl();
+        geoServer.setCatalog(catalog);
+        setupConfiguration();
+        setupCatalog();
+
+        register("catalog", catalog);
+        register("geoServer", geoServer);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public GeoServerResourceLoader getResourceLoader() {
+        return resourceLoader;
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    public GeoServer getGeoServer() {
+        return geoServer;
+    }
+
+    /**
+     * Makes the bean available to {@link GeoServerExtensions} lookups
+     */
+    public void register(String name, Object bean) {
+        context.getBeanFactory().registerSingleton(name, bean);
+        // resets the extension caches as well
+        new GeoServerExtensions().setApplicationContext(context);
+    }
+
+    /**
+     * Adds layers spread evenly among new workspaces named <code>ws0</code> to
+     * <code>ws(N-1)</code>, the layers are named <code>layer0</code> to
+     * <code>layer(N-1)</code>. Odd workspaces can only be read by {@link #RESTRICTED_ROLE}.
+     */
+    public void addSyntheticLayers(int count, int workspaces) throws Exception {
+        CatalogFactory factory = catalog.getFactory();
+        CatalogBuilder builder = new CatalogBuilder(catalog);
+        StyleInfo style = catalog.getStyleByName(StyleInfo.DEFAULT_POINT);
+
+        DataStoreInfo[] stores = new DataStoreInfo[workspaces];
+        for (int i = 0; i < workspaces; i++) {
+            WorkspaceInfo ws = factory.createWorkspace();
+            ws.setName("ws" + i);
+            catalog.add(ws);
+            NamespaceInfo ns = factory.createNamespace();
+            ns.setPrefix(ws.getName());
+            ns.setURI("http://geoserver.org/" + ws.getName());
+            catalog.add(ns);
+
+            builder.setWorkspace(ws);
+            DataStoreInfo store = builder.buildDataStore("store");
+            store.setType("Properties");
+            store.getConnectionParameters().putAll(dataStoreParameters(ns));
+            catalog.add(store);
+            stores[i] = store;
+        }
+        writeSecurity(workspaces);
+
+        for (int i = 0; i < count; i++) {
+            DataStoreInfo store = stores[i % workspaces];
+            FeatureTypeInfo ft = factory.createFeatureType();
+            ft.setName("layer" + i);
+            ft.setNativeName(POINTS);
+            ft.setTitle("Synthetic layer " + i);
+            ft.setStore(store);
+            ft.setNamespace(catalog.getNamespaceByPrefix(store.getWorkspace().getName()));
+            ft.setSRS("EPSG:4326");
+            ft.setNativeCRS(DefaultGeographicCRS.WGS84);
+            ft.setNativeBoundingBox(BOUNDS);
+            ft.setLatLonBoundingBox(BOUNDS);
+            ft.setEnabled(true);
+            catalog.add(ft);
+
+            // skip the default style lookup, it would load the feature type
+            LayerInfo layer = builder.buildLayer((ResourceInfo) ft);
+            layer.setDefaultStyle(style);
+            catalog.add(layer);
+        }
+    }
+
+    /**
+     * Disposes the catalog and removes the data directory
+     */
+    public void dispose() {
+        catalog.dispose();
+        context.close();
+        FileUtils.deleteQuietly(directory);
+    }
+
+    Map<String, Serializable> dataStoreParameters(NamespaceInfo ns) {
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put("directory", new File(directory, "data").getAbsolutePath());
+        params.put("namespace", ns.getURI());
+        return params;
+    }
+
+    void setupConfiguration() {
+        GeoServerInfoImpl global = new GeoServerInfoImpl(geoServer);
+        geoServer.setGlobal(global);
+
+        WMSInfoImpl wms = new WMSInfoImpl();
+        wms.setName("WMS");
+        wms.setEnabled(true);
+        geoServer.add(wms);
+
+        WFSInfoImpl wfs = new WFSInfoImpl();
+        wfs.setName("WFS");
+        wfs.setEnabled(true);
+        addGml(wfs, WFSInfo.Version.V_10, SrsNameStyle.XML);
+        addGml(wfs, WFSInfo.Version.V_11, SrsNameStyle.URN);
+        addGml(wfs, WFSInfo.Version.V_20, SrsNameStyle.URN2);
+        geoServer.add(wfs);
+    }
+
+    void addGml(WFSInfo wfs, WFSInfo.Version version, SrsNameStyle style) {
+        GMLInfo gml = new GMLInfoImpl();
+        gml.setSrsNameStyle(style);
+        gml.setOverrideGMLAttributes(false);
+        wfs.getGML().put(version, gml);
+    }
+
+    void setupCatalog() throws Exception {
+        CatalogFactory factory = catalog.getFactory();
+
+        WorkspaceInfo ws = factory.createWorkspace();
+        ws.setName(WORKSPACE);
+        catalog.add(ws);
+        NamespaceInfo ns = factory.createNamespace();
+        ns.setPrefix(WORKSPACE);
+        ns.setURI(NAMESPACE_URI);
+        catalog.add(ns);
+
+        for (String name : new String[] { StyleInfo.DEFAULT_POINT, StyleInfo.DEFAULT_LINE,
+                StyleInfo.DEFAULT_POLYGON, LABEL_STYLE }) {
+            StyleInfo style = factory.createStyle();
+            style.setName(name);
+            style.setFilename(name + ".sld");
+            catalog.add(style);
+        }
+
+        CatalogBuilder builder = new CatalogBuilder(catalog);
+        builder.setWorkspace(ws);
+        DataStoreInfo store = builder.buildDataStore("data");
+        store.setType("Properties");
+        store.getConnectionParameters().putAll(dataStoreParameters(ns));
+        catalog.add(store);
+
+        builder.setStore(store);
+        for (String name : new String[] { POINTS, LINES, POLYGONS }) {
+            FeatureTypeInfo ft = builder.buildFeatureType(new NameImpl(NAMESPACE_URI, name));
+            builder.setupBounds(ft);
+            catalog.add(ft);
+            LayerInfo layer = builder.buildLayer(ft);
+            catalog.add(layer);
+        }
+    }
+
+    void writeData(int featureCount) throws IOException {
+        File data = new File(directory, "data");
+        data.mkdirs();
+        Random random = new Random(42);
+
+        PrintWriter points = new PrintWriter(new File(data, POINTS + ".properties"), "UTF-8");
+        PrintWriter lines = new PrintWriter(new File(data, LINES + ".properties"), "UTF-8");
+        PrintWriter polygons = new PrintWriter(new File(data, POLYGONS + ".properties"), "UTF-8");
+        try {
+            points.println("_=geom:Point:srid=4326,name:String,value:Integer");
+            lines.println("_=geom:LineString:srid=4326,name:String,value:Integer");
+            polygons.println("_=geom:Polygon:srid=4326,name:String,value:Integer");
+
+            for (int i = 0; i < featureCount; i++) {
+                double x = -175 + random.nextDouble() * 350;
+                double y = -85 + random.nextDouble() * 170;
+                String attributes = "|feature " + i + "|" + random.nextInt(1000);
+
+                points.println(POINTS + "." + i + "=POINT(" + x + " " + y + ")" + attributes);
+
+                StringBuilder line = new StringBuilder("LINESTRING(");
+                double lx = x, ly = y;
+                for (int j = 0; j < 10; j++) {
+                    if (j > 0) {
+                        line.append(", ");
+                    }
+                    line.append(lx).append(" ").append(ly);
+                    lx += random.nextDouble() - 0.5;
+                    ly += random.nextDouble() - 0.5;
+                }
+                line.append(")");
+                lines.println(LINES + "." + i + "=" + line + attributes);
+
+                double size = 0.5 + random.nextDouble() * 2;
+                polygons.println(POLYGONS + "." + i + "=POLYGON((" + x + " " + y + ", "
+                        + (x + size) + " " + y + ", " + (x + size) + " " + (y + size) + ", "
+                        + x + " " + (y + size) + ", " + x + " " + y + "))" + attributes);
+            }
+        } finally {
+            points.close();
+            lines.close();
+            polygons.close();
+        }
+    }
+
+    void writeStyles() throws IOException {
+        File styles = new File(directory, "styles");
+        styles.mkdirs();
+        writeStyle(styles, StyleInfo.DEFAULT_POINT, POINT_SYMBOLIZER);
+        writeStyle(styles, StyleInfo.DEFAULT_LINE, LINE_SYMBOLIZER);
+        writeStyle(styles, StyleInfo.DEFAULT_POLYGON, POLYGON_SYMBOLIZER);
+        writeStyle(styles, LABEL_STYLE, POLYGON_SYMBOLIZER + TEXT_SYMBOLIZER);
+    }
+
+    void writeStyle(File styles, String name, String symbolizers) throws IOException {
+        String sld = String.format(SLD_HEADER, name) + symbolizers + SLD_FOOTER;
+        FileUtils.writeStringToFile(new File(styles, name + ".sld"), sld, "UTF-8");
+    }
+
+    void writeSecurity(int workspaces) throws IOException {
+        File security = new File(directory, "security");
+        security.mkdirs();
+        StringBuilder rules = new StringBuilder();
+        rules.append("mode=HIDE\n");
+        rules.append("*.*.r=*\n");
+        rules.append("*.*.w=*\n");
+        for (int i = 1; i < workspaces; i += 2) {
+            rules.append("ws").append(i).append(".*.r=").append(RESTRICTED_ROLE).append("\n");
+        }
+        FileUtils.writeStringToFile(new File(security, "layers.properties"), rules.toString(),
+                "UTF-8");
+    }
+}
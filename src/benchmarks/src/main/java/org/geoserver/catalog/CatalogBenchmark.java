@@ -0,0 +1,125 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import static org.geoserver.catalog.Predicates.and;
+import static org.geoserver.catalog.Predicates.equal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.benchmarks.BenchmarkData;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opengis.filter.Filter;
+
+/**
+ * Lookups against a {@link org.geoserver.catalog.impl.CatalogImpl} holding a large number of
+ * layers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CatalogBenchmark {
+
+    static final int WORKSPACES = 100;
+
+    @Param({ "50000" })
+    int layers;
+
+    BenchmarkData data;
+
+    Catalog catalog;
+
+    String[] names;
+
+    String[] workspaces;
+
+    int counter;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = new BenchmarkData(10);
+        data.addSyntheticLayers(layers, WORKSPACES);
+        catalog = data.getCatalog();
+
+        names = new String[layers];
+        workspaces = new String[layers];
+        for (int i = 0; i < layers; i++) {
+            names[i] = "layer" + i;
+            workspaces[i] = "ws" + (i % WORKSPACES);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        data.dispose();
+    }
+
+    /**
+     * Walks the layers in a scattered, repeatable order
+     */
+    int next() {
+        counter = (counter + 7919) % layers;
+        return counter;
+    }
+
+    @Benchmark
+    public LayerInfo getLayerByName() {
+        return catalog.getLayerByName(names[next()]);
+    }
+
+    @Benchmark
+    public LayerInfo getLayerByPrefixedName() {
+        int i = next();
+        return catalog.getLayerByName(workspaces[i] + ":" + names[i]);
+    }
+
+    @Benchmark
+    public FeatureTypeInfo getFeatureTypeByName() {
+        int i = next();
+        return catalog.getFeatureTypeByName(workspaces[i], names[i]);
+    }
+
+    @Benchmark
+    public int getLayers() {
+        return catalog.getLayers().size();
+    }
+
+    @Benchmark
+    public int listWorkspaceLayers() {
+        Filter filter = equal("resource.namespace.prefix", workspaces[next()]);
+        int count = 0;
+        CloseableIterator<LayerInfo> it = catalog.list(LayerInfo.class, filter);
+        try {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+        } finally {
+            it.close();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int countEnabledAdvertised() {
+        Filter filter = and(equal("enabled", Boolean.TRUE), equal("advertised", Boolean.TRUE));
+        return catalog.count(LayerInfo.class, filter);
+    }
+}
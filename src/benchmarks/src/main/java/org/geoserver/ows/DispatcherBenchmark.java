@@ -0,0 +1,118 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.Service;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+/**
+ * KVP parsing and operation lookup in the {@link Dispatcher}, using the hello world service of
+ * the dispatcher tests
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DispatcherBenchmark {
+
+    ClassPathXmlApplicationContext context;
+
+    Dispatcher dispatcher;
+
+    MockHttpServletRequest request;
+
+    @Setup
+    public void setUp() {
+        context = new ClassPathXmlApplicationContext("org/geoserver/ows/applicationContext.xml");
+        dispatcher = (Dispatcher) context.getBean("dispatcher");
+
+        request = new MockHttpServletRequest() {
+            String encoding;
+
+            public int getServerPort() {
+                return 8080;
+            }
+
+            public String getCharacterEncoding() {
+                return encoding;
+            }
+
+            public void setCharacterEncoding(String encoding) {
+                this.encoding = encoding;
+            }
+        };
+        request.setScheme("http");
+        request.setServerName("localhost");
+        request.setContextPath("/geoserver");
+        request.setRequestURI("/geoserver/ows");
+        request.setMethod("GET");
+
+        // a parameter list about as long as a typical GetMap one
+        String[][] params = { { "service", "hello" }, { "request", "Hello" },
+                { "version", "1.0.0" }, { "message", "Hello world!" },
+                { "layers", "topp:states,topp:roads" }, { "styles", "" },
+                { "format", "image/png" }, { "transparent", "true" },
+                { "srs", "EPSG:4326" }, { "bbox", "-180,-90,180,90" }, { "width", "768" },
+                { "height", "384" }, { "format_options", "dpi:90;antialias:full" } };
+        StringBuilder query = new StringBuilder();
+        for (String[] param : params) {
+            request.setupAddParameter(param[0], param[1]);
+            if (query.length() > 0) {
+                query.append("&");
+            }
+            query.append(param[0]).append("=").append(param[1]);
+        }
+        request.setQueryString(query.toString());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    Request newRequest() {
+        Request req = new Request();
+        req.setHttpRequest(request);
+        return req;
+    }
+
+    @Benchmark
+    public Request parseKvp() throws Exception {
+        return dispatcher.init(newRequest());
+    }
+
+    @Benchmark
+    public Operation lookupOperation() throws Throwable {
+        Request req = dispatcher.init(newRequest());
+        Service service = dispatcher.service(req);
+        return dispatcher.dispatch(req, service);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse handleRequest() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        dispatcher.handleRequestInternal(request, response);
+        return response;
+    }
+}
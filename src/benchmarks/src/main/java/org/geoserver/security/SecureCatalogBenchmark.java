@@ -0,0 +1,122 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.benchmarks.BenchmarkData;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.Predicates;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geoserver.config.GeoServerDataDirectory;
+import org.geoserver.security.impl.DataAccessRuleDAO;
+import org.geoserver.security.impl.DefaultResourceAccessManager;
+import org.geoserver.security.impl.GeoServerRole;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Layer filtering performed by {@link SecureCatalogImpl} on a large catalog where half of the
+ * workspaces can only be read by {@link BenchmarkData#RESTRICTED_ROLE}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SecureCatalogBenchmark {
+
+    static final int WORKSPACES = 100;
+
+    @Param({ "50000" })
+    int layers;
+
+    /**
+     * Whether the user can see the restricted workspaces or not
+     */
+    @Param({ "false", "true" })
+    boolean restricted;
+
+    BenchmarkData data;
+
+    SecureCatalogImpl catalog;
+
+    String[] names;
+
+    int counter;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = new BenchmarkData(10);
+        data.addSyntheticLayers(layers, WORKSPACES);
+
+        DataAccessRuleDAO dao = new DataAccessRuleDAO(new GeoServerDataDirectory(
+                data.getResourceLoader()), data.getCatalog());
+        catalog = new SecureCatalogImpl(data.getCatalog(), new DefaultResourceAccessManager(dao));
+
+        List<GrantedAuthority> roles = new ArrayList<GrantedAuthority>();
+        roles.add(GeoServerRole.AUTHENTICATED_ROLE);
+        if (restricted) {
+            roles.add(new GeoServerRole(BenchmarkData.RESTRICTED_ROLE));
+        }
+        // the benchmark threads are not the one running the setup
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_GLOBAL);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("bench", null, roles));
+
+        names = new String[layers];
+        for (int i = 0; i < layers; i++) {
+            names[i] = "layer" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+        data.dispose();
+    }
+
+    @Benchmark
+    public LayerInfo getLayerByName() {
+        counter = (counter + 7919) % layers;
+        return catalog.getLayerByName(names[counter]);
+    }
+
+    @Benchmark
+    public int getLayers() {
+        return catalog.getLayers().size();
+    }
+
+    @Benchmark
+    public int listLayers() {
+        int count = 0;
+        CloseableIterator<LayerInfo> it = catalog.list(LayerInfo.class, Predicates.acceptAll());
+        try {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+        } finally {
+            it.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,159 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.geoserver.benchmarks.BenchmarkData;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Encodes an in memory feature collection with {@link GeoJSONBuilder} and {@link GeoJSONWriter},
+ * following the same calls as {@link GeoJSONGetFeatureResponse}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GeoJSONBuilderBenchmark {
+
+    @Param({ BenchmarkData.POINTS, BenchmarkData.LINES, BenchmarkData.POLYGONS })
+    String typeName;
+
+    @Param({ "1000" })
+    int features;
+
+    BenchmarkData data;
+
+    List<SimpleFeature> collection;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = new BenchmarkData(features);
+        FeatureTypeInfo info = data.getCatalog().getFeatureTypeByName(BenchmarkData.WORKSPACE,
+                typeName);
+        SimpleFeatureSource source = (SimpleFeatureSource) info.getFeatureSource(null, null);
+        collection = DataUtilities.list(source.getFeatures());
+    }
+
+    @TearDown
+    public void tearDown() {
+        data.dispose();
+    }
+
+    @Benchmark
+    public long encode() throws Exception {
+        CountingOutputStream output = new CountingOutputStream(new NullOutputStream());
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, "UTF-8"));
+
+        GeoJSONBuilder json = new GeoJSONBuilder(writer);
+        json.object().key("type").value("FeatureCollection");
+        json.key("totalFeatures").value(collection.size());
+        json.key("features");
+        json.array();
+        for (SimpleFeature feature : collection) {
+            json.object();
+            json.key("type").value("Feature");
+            json.key("id").value(feature.getID());
+
+            GeometryDescriptor geometry = feature.getFeatureType().getGeometryDescriptor();
+            json.setAxisOrder(CRS.getAxisOrder(geometry.getCoordinateReferenceSystem()));
+            json.key("geometry");
+            json.writeGeom((Geometry) feature.getDefaultGeometry());
+            json.key("geometry_name").value(geometry.getLocalName());
+
+            json.key("properties");
+            json.object();
+            List<AttributeDescriptor> descriptors = feature.getFeatureType()
+                    .getAttributeDescriptors();
+            for (int i = 0; i < descriptors.size(); i++) {
+                AttributeDescriptor ad = descriptors.get(i);
+                if (ad != geometry) {
+                    json.key(ad.getLocalName());
+                    json.value(feature.getAttribute(i));
+                }
+            }
+            json.writeBoundingBox(ReferencedEnvelope.reference(feature.getBounds()));
+            json.endObject();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        writer.flush();
+
+        return output.getByteCount();
+    }
+
+    @Benchmark
+    public long encodeWriter() throws Exception {
+        CountingOutputStream output = new CountingOutputStream(new NullOutputStream());
+
+        GeoJSONWriter json = new GeoJSONWriter(output);
+        json.object().key("type").value("FeatureCollection");
+        json.key("totalFeatures").value(collection.size());
+        json.key("features");
+        json.array();
+        for (SimpleFeature feature : collection) {
+            json.object();
+            json.key("type").value("Feature");
+            json.key("id").value(feature.getID());
+
+            GeometryDescriptor geometry = feature.getFeatureType().getGeometryDescriptor();
+            json.setAxisOrder(CRS.getAxisOrder(geometry.getCoordinateReferenceSystem()));
+            json.key("geometry");
+            json.writeGeom((Geometry) feature.getDefaultGeometry());
+            json.key("geometry_name").value(geometry.getLocalName());
+
+            json.key("properties");
+            json.object();
+            List<AttributeDescriptor> descriptors = feature.getFeatureType()
+                    .getAttributeDescriptors();
+            for (int i = 0; i < descriptors.size(); i++) {
+                AttributeDescriptor ad = descriptors.get(i);
+                if (ad != geometry) {
+                    json.key(ad.getLocalName());
+                    json.value(feature.getAttribute(i));
+                }
+            }
+            json.writeBoundingBox(ReferencedEnvelope.reference(feature.getBounds()));
+            json.endObject();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+
+        return output.getByteCount();
+    }
+}
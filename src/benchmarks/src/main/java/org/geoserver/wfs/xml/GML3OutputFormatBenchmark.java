@@ -0,0 +1,110 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import net.opengis.wfs.GetFeatureType;
+import net.opengis.wfs.QueryType;
+import net.opengis.wfs.WfsFactory;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.geoserver.benchmarks.BenchmarkData;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.Service;
+import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geoserver.wfs.xml.v1_1_0.WFS;
+import org.geoserver.wfs.xml.v1_1_0.WFSConfiguration;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.util.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes an in memory feature collection as a WFS 1.1 GML3 response with
+ * {@link GML3OutputFormat}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GML3OutputFormatBenchmark {
+
+    @Param({ BenchmarkData.POINTS, BenchmarkData.LINES, BenchmarkData.POLYGONS })
+    String typeName;
+
+    @Param({ "1000" })
+    int features;
+
+    BenchmarkData data;
+
+    GML3OutputFormat format;
+
+    Operation operation;
+
+    SimpleFeatureCollection collection;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = new BenchmarkData(features);
+
+        FeatureTypeSchemaBuilder schemaBuilder = new FeatureTypeSchemaBuilder.GML3(
+                data.getGeoServer());
+        WFSConfiguration configuration = new WFSConfiguration(data.getGeoServer(),
+                schemaBuilder, new WFS(schemaBuilder));
+        format = new GML3OutputFormat(data.getGeoServer(), configuration);
+
+        FeatureTypeInfo info = data.getCatalog().getFeatureTypeByName(BenchmarkData.WORKSPACE,
+                typeName);
+        SimpleFeatureSource source = (SimpleFeatureSource) info.getFeatureSource(null, null);
+        collection = DataUtilities.collection(source.getFeatures());
+
+        GetFeatureType request = WfsFactory.eINSTANCE.createGetFeatureType();
+        request.setBaseUrl("http://localhost:8080/geoserver");
+        request.setVersion("1.1.0");
+        QueryType query = WfsFactory.eINSTANCE.createQueryType();
+        query.setTypeName(Collections.singletonList(new QName(BenchmarkData.NAMESPACE_URI,
+                typeName, BenchmarkData.WORKSPACE)));
+        request.getQuery().add(query);
+        Service service = new Service("wfs", null, new Version("1.1.0"),
+                Collections.singletonList("GetFeature"));
+        operation = new Operation("GetFeature", service, null, new Object[] { request });
+    }
+
+    @TearDown
+    public void tearDown() {
+        data.dispose();
+    }
+
+    @Benchmark
+    public long encode() throws Exception {
+        FeatureCollectionResponse response = FeatureCollectionResponse
+                .adapt(WfsFactory.eINSTANCE.createFeatureCollectionType());
+        response.getFeature().add(collection);
+
+        CountingOutputStream output = new CountingOutputStream(new NullOutputStream());
+        format.write(response, output, operation);
+        return output.getByteCount();
+    }
+}
@@ -0,0 +1,96 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.benchmarks.BenchmarkData;
+import org.geoserver.ows.kvp.BooleanKvpParser;
+import org.geoserver.ows.kvp.FormatOptionsKvpParser;
+import org.geoserver.ows.kvp.IntegerKvpParser;
+import org.geoserver.ows.util.CaseInsensitiveMap;
+import org.geoserver.ows.util.KvpUtils;
+import org.geoserver.wfs.kvp.BBoxKvpParser;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of GetMap requests, from the raw KVP to the {@link GetMapRequest} with the layers and
+ * styles resolved against the catalog
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GetMapKvpRequestReaderBenchmark {
+
+    /**
+     * Comma separated list of the requested layers
+     */
+    @Param({ "bench:points", "bench:points,bench:lines,bench:polygons" })
+    String layers;
+
+    BenchmarkData data;
+
+    GetMapKvpRequestReader reader;
+
+    Map<String, Object> rawKvp;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = new BenchmarkData(10);
+        WMS wms = new WMS(data.getGeoServer());
+        data.register("wms", wms);
+        data.register("bboxKvpParser", new BBoxKvpParser());
+        data.register("widthKvpParser", new IntegerKvpParser("width"));
+        data.register("heightKvpParser", new IntegerKvpParser("height"));
+        data.register("transparentKvpParser", new BooleanKvpParser("transparent"));
+        data.register("wmsFormatOptionsKvpParser", new FormatOptionsKvpParser());
+        reader = new GetMapKvpRequestReader(wms);
+
+        rawKvp = new CaseInsensitiveMap(new HashMap<String, Object>());
+        rawKvp.put("SERVICE", "WMS");
+        rawKvp.put("VERSION", "1.1.1");
+        rawKvp.put("REQUEST", "GetMap");
+        rawKvp.put("LAYERS", layers);
+        rawKvp.put("STYLES", "");
+        rawKvp.put("FORMAT", "image/png");
+        rawKvp.put("TRANSPARENT", "true");
+        rawKvp.put("SRS", "EPSG:4326");
+        rawKvp.put("BBOX", "-180,-90,180,90");
+        rawKvp.put("WIDTH", "768");
+        rawKvp.put("HEIGHT", "384");
+        rawKvp.put("FORMAT_OPTIONS", "dpi:90;antialias:full");
+    }
+
+    @TearDown
+    public void tearDown() {
+        data.dispose();
+    }
+
+    @Benchmark
+    public GetMapRequest read() throws Exception {
+        Map<String, Object> kvp = new CaseInsensitiveMap(new HashMap<String, Object>(
+                rawKvp));
+        KvpUtils.parse(kvp);
+        return reader.read(reader.createRequest(), kvp, rawKvp);
+    }
+}
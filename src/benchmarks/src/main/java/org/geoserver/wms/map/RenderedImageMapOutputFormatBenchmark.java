@@ -0,0 +1,133 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.geoserver.benchmarks.BenchmarkData;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMS;
+import org.geoserver.wms.WMSMapContent;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.map.FeatureLayer;
+import org.geotools.styling.Style;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders and encodes a map with {@link RenderedImageMapOutputFormat} for a mix of symbolizers
+ * and output formats. The features are loaded in memory upfront so that only rendering and
+ * encoding are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RenderedImageMapOutputFormatBenchmark {
+
+    /**
+     * The style, the label one renders the polygons with a text symbolizer on top
+     */
+    @Param({ "point", "line", "polygon", "label" })
+    String style;
+
+    @Param({ "image/png", "image/png8", "image/jpeg" })
+    String format;
+
+    @Param({ "2000" })
+    int features;
+
+    BenchmarkData data;
+
+    RenderedImageMapOutputFormat producer;
+
+    RenderedImageMapResponse response;
+
+    SimpleFeatureSource source;
+
+    Style sldStyle;
+
+    GetMapRequest request;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = new BenchmarkData(features);
+        WMS wms = new WMS(data.getGeoServer());
+        data.register("wms", wms);
+
+        producer = new RenderedImageMapOutputFormat(format, wms);
+        if ("image/jpeg".equals(format)) {
+            response = new JPEGMapResponse(wms);
+        } else {
+            response = new PNGMapResponse(wms);
+        }
+
+        String typeName;
+        if (StyleInfo.DEFAULT_POINT.equals(style)) {
+            typeName = BenchmarkData.POINTS;
+        } else if (StyleInfo.DEFAULT_LINE.equals(style)) {
+            typeName = BenchmarkData.LINES;
+        } else {
+            typeName = BenchmarkData.POLYGONS;
+        }
+        Catalog catalog = data.getCatalog();
+        FeatureTypeInfo info = catalog.getFeatureTypeByName(BenchmarkData.WORKSPACE, typeName);
+        SimpleFeatureSource fs = (SimpleFeatureSource) info.getFeatureSource(null, null);
+        source = DataUtilities.source(DataUtilities.collection(fs.getFeatures()));
+        sldStyle = catalog.getStyleByName(style).getStyle();
+
+        request = new GetMapRequest();
+        request.setFormat(format);
+        request.getFormatOptions().put("antialias", "full");
+    }
+
+    @TearDown
+    public void tearDown() {
+        data.dispose();
+    }
+
+    @Benchmark
+    public long render() throws Exception {
+        WMSMapContent map = new WMSMapContent();
+        map.getViewport().setBounds(BenchmarkData.BOUNDS);
+        map.setMapWidth(768);
+        map.setMapHeight(384);
+        map.setBgColor(Color.WHITE);
+        map.setTransparent(!"image/jpeg".equals(format));
+        map.setRequest(request);
+        map.addLayer(new FeatureLayer(source, sldStyle));
+        try {
+            RenderedImageMap image = producer.produceMap(map);
+            CountingOutputStream output = new CountingOutputStream(new NullOutputStream());
+            try {
+                response.formatImageOutputStream(image.getImage(), output, map);
+            } finally {
+                image.dispose();
+            }
+            return output.getByteCount();
+        } finally {
+            map.dispose();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import it.geosolutions.imageio.plugins.png.PNGWriter;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ar.com.hjg.pngj.FilterType;
+
+/**
+ * Compares the PNGJ based writer with the {@link BlockPNGEncoder} on large map-like images, both
+ * RGBA and paletted
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PNGEncoderBenchmark {
+
+    @Param({ "1024", "4096" })
+    int size;
+
+    @Param({ "rgba", "palette" })
+    String type;
+
+    @Param({ "FILTER_NONE", "FILTER_SUB" })
+    String filter;
+
+    @Param({ "4" })
+    int threads;
+
+    /**
+     * Same as the default WMS PNG compression of 25%
+     */
+    static final float QUALITY = 0.75f;
+
+    BufferedImage image;
+
+    FilterType filterType;
+
+    ExecutorService executor;
+
+    BlockPNGEncoder encoder;
+
+    @Setup
+    public void setUp() {
+        int imageType = "palette".equals(type) ? BufferedImage.TYPE_BYTE_INDEXED
+                : BufferedImage.TYPE_4BYTE_ABGR;
+        image = new BufferedImage(size, size, imageType);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        // something resembling a vector map, lots of strokes over a flat background
+        Random random = new Random(42);
+        graphics.setColor(new Color(200, 220, 255));
+        graphics.fillRect(0, 0, size, size / 2);
+        for (int i = 0; i < size; i++) {
+            graphics.setColor(new Color(random.nextInt(256), random.nextInt(256), random
+                    .nextInt(256), 128 + random.nextInt(128)));
+            graphics.setStroke(new BasicStroke(1 + random.nextInt(4)));
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            graphics.drawLine(x, y, x + random.nextInt(200) - 100, y + random.nextInt(200) - 100);
+        }
+        graphics.dispose();
+
+        filterType = FilterType.valueOf(filter);
+        executor = Executors.newFixedThreadPool(threads);
+        encoder = new BlockPNGEncoder(executor, BlockPNGEncoder.DEFAULT_BLOCK_SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public long pngj() throws Exception {
+        CountingOutputStream output = new CountingOutputStream(new NullOutputStream());
+        new PNGWriter().writePNG(image, output, QUALITY, filterType);
+        return output.getByteCount();
+    }
+
+    @Benchmark
+    public long parallel() throws Exception {
+        CountingOutputStream output = new CountingOutputStream(new NullOutputStream());
+        encoder.encode(image, output, PNGJWriter.getCompressionLevel(QUALITY), filterType);
+        return output.getByteCount();
+    }
+}
@@ -9,14 +9,14 @@ import static org.geoserver.wms.geojson.GeoJsonBuilderFactory.MIME_TYPE;
 import java.awt.Rectangle;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.util.Map;
 
 import javax.measure.unit.SI;
 import javax.measure.unit.Unit;
 
 import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wfs.json.GeoJSONWriter;
 import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.map.RawMap;
 import org.geoserver.wms.vector.DeferredFileOutputStreamWebMap;
@@ -25,32 +25,19 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
-import com.google.common.base.Charsets;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.PrecisionModel;
-import com.vividsolutions.jts.precision.CoordinatePrecisionReducerFilter;
 
 public class GeoJsonWMSBuilder implements VectorTileBuilder {
 
-    private Writer writer;
-
-    private CoordinatePrecisionReducerFilter precisionReducerFilter;
-
     private DeferredFileOutputStream out;
 
-    private org.geoserver.wfs.json.GeoJSONBuilder jsonWriter;
+    private GeoJSONWriter jsonWriter;
 
     public GeoJsonWMSBuilder(Rectangle mapSize, ReferencedEnvelope mapArea) {
 
         final int memotyBufferThreshold = 8096;
         out = new DeferredFileOutputStream(memotyBufferThreshold, "geojson", ".geojson", null);
-        writer = new OutputStreamWriter(out, Charsets.UTF_8);
-        jsonWriter = new org.geoserver.wfs.json.GeoJSONBuilder(writer);
-        jsonWriter.object();// start root object
-        jsonWriter.key("type").value("FeatureCollection");
-        jsonWriter.key("totalFeatures").value("unknown");
-        jsonWriter.key("features");
-        jsonWriter.array();
+        jsonWriter = new GeoJSONWriter(out);
 
         CoordinateReferenceSystem mapCrs = mapArea.getCoordinateReferenceSystem();
         jsonWriter.setAxisOrder(CRS.getAxisOrder(mapCrs));
@@ -58,25 +45,36 @@ public class GeoJsonWMSBuilder implements VectorTileBuilder {
         Unit<?> unit = mapCrs.getCoordinateSystem().getAxis(0).getUnit();
         Unit<?> standardUnit = unit.getStandardUnit();
 
-        PrecisionModel pm = null;
+        // coordinates are rounded while encoding, the geometries are left untouched
         if (SI.RADIAN.equals(standardUnit)) {
-            pm = new PrecisionModel(1e6);// truncate coords at 6 decimals
+            jsonWriter.setNumberOfDecimals(6);
         } else if (SI.METRE.equals(standardUnit)) {
-            pm = new PrecisionModel(100);// truncate coords at 2 decimals
+            jsonWriter.setNumberOfDecimals(2);
         }
-        if (pm != null) {
-            precisionReducerFilter = new CoordinatePrecisionReducerFilter(pm);
+
+        try {
+            jsonWriter.object();// start root object
+            jsonWriter.key("type").value("FeatureCollection");
+            jsonWriter.key("totalFeatures").value("unknown");
+            jsonWriter.key("features");
+            jsonWriter.array();
+        } catch (IOException e) {
+            throw new ServiceException(e);
         }
     }
 
     @Override
     public void addFeature(String layerName, String featureId, String geometryName, Geometry aGeom,
             Map<String, Object> properties) {
-
-        if (precisionReducerFilter != null) {
-            aGeom.apply(precisionReducerFilter);
+        try {
+            writeFeature(featureId, geometryName, aGeom, properties);
+        } catch (IOException e) {
+            throw new ServiceException(e);
         }
+    }
 
+    private void writeFeature(String featureId, String geometryName, Geometry aGeom,
+            Map<String, Object> properties) throws IOException {
         jsonWriter.object();
         jsonWriter.key("type").value("Feature");
 
@@ -112,8 +110,7 @@ public class GeoJsonWMSBuilder implements VectorTileBuilder {
     public RawMap build(WMSMapContent mapContent) throws IOException {
         jsonWriter.endArray(); // end features
         jsonWriter.endObject();// end root object
-        writer.flush();
-        writer.close();
+        jsonWriter.flush();
         out.close();
 
         long length;
@@ -1,6 +1,7 @@
 package org.geoserver.wms.geojson;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
 import java.awt.Rectangle;
@@ -11,6 +12,7 @@ import java.util.Map;
 import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.map.RawMap;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.junit.Test;
 
@@ -51,6 +53,31 @@ public class GeoJsonTileBuilderTest {
 
     }
 
+    @Test
+    public void testCoordinateRounding() throws Exception {
+        GeoJsonBuilderFactory builderFact = new GeoJsonBuilderFactory();
+        Rectangle screenSize = new Rectangle(256, 256);
+        Map<String, Object> props = ImmutableMap.<String, Object> of("name", "line1");
+
+        // degrees, six decimals
+        Geometry line = geom("LINESTRING(0.1234567 -10.9876543, 1.0000004 2.5)");
+        GeoJsonWMSBuilder tileBuilder = builderFact.newBuilder(screenSize,
+                new ReferencedEnvelope(DefaultGeographicCRS.WGS84));
+        tileBuilder.addFeature("Lines", "l1", "geom", line, props);
+        String json = decode(tileBuilder.build(mock(WMSMapContent.class)));
+        assertTrue(json, json.contains("\"coordinates\":[[0.123457,-10.987654],[1,2.5]]"));
+        // the geometry is not modified
+        assertTrue(line.equalsExact(geom("LINESTRING(0.1234567 -10.9876543, 1.0000004 2.5)")));
+
+        // metres, two decimals
+        line = geom("LINESTRING(1000000.123456 -2000000.987654, 0.004 10.5)");
+        tileBuilder = builderFact.newBuilder(screenSize,
+                new ReferencedEnvelope(CRS.decode("EPSG:3857")));
+        tileBuilder.addFeature("Lines", "l1", "geom", line, props);
+        json = decode(tileBuilder.build(mock(WMSMapContent.class)));
+        assertTrue(json, json.contains("\"coordinates\":[[1000000.12,-2000000.99],[0,10.5]]"));
+    }
+
     private Geometry geom(String wkt) throws ParseException {
         return new WKTReader().read(wkt);
     }
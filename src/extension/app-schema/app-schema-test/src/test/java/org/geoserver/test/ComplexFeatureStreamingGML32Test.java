@@ -0,0 +1,46 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.geoserver.wfs.xml.GML3OutputFormat;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Compares the WFS 2.0 complex feature output encoded through the temporary file and XSLT pass
+ * with the one streamed straight to the output
+ */
+public class ComplexFeatureStreamingGML32Test extends AbstractAppSchemaTestSupport {
+
+    static final String REQUEST = "wfs?request=GetFeature&version=2.0.0&typeNames=gsml:MappedFeature";
+
+    @Override
+    protected FeatureGML32MockData createTestData() {
+        return new FeatureGML32MockData();
+    }
+
+    @Test
+    public void testStreamingMatchesXSLT() {
+        Document xslt = getAsDOM(REQUEST);
+        String returned = evaluate("/*/@numberReturned", xslt);
+        assertEquals("unknown", evaluate("/*/@numberMatched", xslt));
+        assertEquals(returned, evaluate("count(/*/*[local-name()='member'])", xslt));
+
+        System.setProperty(GML3OutputFormat.COMPLEX_STREAMING_KEY, "true");
+        try {
+            Document streamed = getAsDOM(REQUEST);
+            assertEquals("unknown", evaluate("/*/@numberMatched", streamed));
+            // same count as the XSLT, without walking the features before the encoding
+            assertEquals(returned, evaluate("/*/@numberReturned", streamed));
+            assertEquals(returned, evaluate("count(/*/*[local-name()='member'])", streamed));
+            assertXpathEvaluatesTo(evaluate("//gsml:MappedFeature[@gml:id='mf1']/gml:name", xslt),
+                    "//gsml:MappedFeature[@gml:id='mf1']/gml:name", streamed);
+        } finally {
+            System.clearProperty(GML3OutputFormat.COMPLEX_STREAMING_KEY);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.geoserver.wfs.xml.GML3OutputFormat;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Compares the WFS 1.1 complex feature output encoded through the temporary file and XSLT pass
+ * with the one streamed straight to the output
+ */
+public class ComplexFeatureStreamingTest extends AbstractAppSchemaTestSupport {
+
+    static final String REQUEST = "wfs?request=GetFeature&version=1.1.0&typename=gsml:GeologicUnit";
+
+    @Override
+    protected FeatureChainingMockData createTestData() {
+        return new FeatureChainingMockData();
+    }
+
+    @Test
+    public void testXSLT() {
+        // run it twice, the second time the compiled XSLT is reused
+        for (int i = 0; i < 2; i++) {
+            Document doc = getAsDOM(REQUEST);
+            assertEquals("wfs:FeatureCollection", doc.getDocumentElement().getNodeName());
+            assertXpathEvaluatesTo("3", "/wfs:FeatureCollection/@numberOfFeatures", doc);
+            assertXpathCount(3, "//gsml:GeologicUnit", doc);
+        }
+    }
+
+    @Test
+    public void testStreaming() {
+        System.setProperty(GML3OutputFormat.COMPLEX_STREAMING_KEY, "true");
+        try {
+            Document doc = getAsDOM(REQUEST);
+            assertEquals("wfs:FeatureCollection", doc.getDocumentElement().getNodeName());
+            // optional in WFS 1.1, omitted rather than counting the features up front
+            assertXpathCount(0, "/wfs:FeatureCollection/@numberOfFeatures", doc);
+            assertXpathCount(3, "//gsml:GeologicUnit", doc);
+            assertXpathCount(1, "//gsml:GeologicUnit[@gml:id='gu.25699']", doc);
+        } finally {
+            System.clearProperty(GML3OutputFormat.COMPLEX_STREAMING_KEY);
+        }
+    }
+}
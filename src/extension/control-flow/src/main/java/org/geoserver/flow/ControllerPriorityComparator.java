@@ -16,7 +16,8 @@ import java.util.Comparator;
 public class ControllerPriorityComparator implements Comparator<FlowController> {
 
     public int compare(FlowController o1, FlowController o2) {
-        return o1.getPriority() - o2.getPriority();
+        // no subtraction, priorities can span the whole int range
+        return Integer.compare(o1.getPriority(), o2.getPriority());
     }
 
 }
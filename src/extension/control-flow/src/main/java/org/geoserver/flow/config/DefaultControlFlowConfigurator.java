@@ -21,6 +21,7 @@ import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.IpFlowController;
 import org.geoserver.flow.controller.IpKeyGenerator;
 import org.geoserver.flow.controller.KeyGenerator;
+import org.geoserver.flow.controller.MemoryFlowController;
 import org.geoserver.flow.controller.OWSRequestMatcher;
 import org.geoserver.flow.controller.RateFlowController;
 import org.geoserver.flow.controller.SingleIpFlowController;
@@ -136,6 +137,9 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
             }
             if ("ows.global".equalsIgnoreCase(key)) {
                 controller = new GlobalFlowController(queueSize);
+            } else if ("ows.memory".equalsIgnoreCase(key)) {
+                // the budget is expressed in megabytes
+                controller = new MemoryFlowController(queueSize * 1024L * 1024L);
             } else if ("ows".equals(keys[0])) {
                 // todo: check, if possible, if the service, method and output format actually exist
                 if (keys.length >= 4) {
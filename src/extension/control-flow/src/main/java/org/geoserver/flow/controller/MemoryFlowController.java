@@ -0,0 +1,206 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.flow.ControlFlowCallback;
+import org.geoserver.flow.FlowController;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A flow controller sharing a global memory budget among the requests whose memory usage can be
+ * estimated up front, such as WMS GetMap and WCS 1.0 GetCoverage. Each request reserves its
+ * estimated memory before running and releases it once done, requests that do not fit in the
+ * remaining budget wait in a FIFO queue (and get rejected if the control flow timeout expires).
+ * <p>
+ * Requests estimated to use more than the whole budget are allowed to run alone, the per request
+ * limits (e.g. the WMS max rendering memory) are responsible for rejecting them. Requests whose
+ * memory usage cannot be estimated are not controlled.
+ * </p>
+ */
+public class MemoryFlowController implements FlowController {
+
+    static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
+
+    /**
+     * Meta tiling factor used by the WMS for tiled requests
+     */
+    static final int META_TILE_FACTOR = 3;
+
+    /**
+     * The memory reserved by the request running in the current thread
+     */
+    static final ThreadLocal<Long> RESERVED = new ThreadLocal<Long>();
+
+    final long maxMemory;
+
+    long usedMemory;
+
+    /**
+     * The requests waiting for memory, in arrival order
+     */
+    final LinkedList<Object> waiting = new LinkedList<Object>();
+
+    /**
+     * Builds a new controller
+     *
+     * @param maxMemory The memory budget, in bytes
+     */
+    public MemoryFlowController(long maxMemory) {
+        if (maxMemory <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive");
+        }
+        this.maxMemory = maxMemory;
+    }
+
+    public boolean requestIncoming(Request request, long timeout) {
+        long memory = estimateMemory(request);
+        if (memory <= 0) {
+            return true;
+        }
+        // let requests bigger than the budget run alone
+        memory = Math.min(memory, maxMemory);
+
+        long maxTime = timeout > 0 ? System.currentTimeMillis() + timeout : -1;
+        Object ticket = new Object();
+        synchronized (this) {
+            waiting.addLast(ticket);
+            try {
+                while (waiting.getFirst() != ticket || usedMemory + memory > maxMemory) {
+                    if (timeout > 0) {
+                        long maxWait = maxTime - System.currentTimeMillis();
+                        if (maxWait <= 0) {
+                            return false;
+                        }
+                        wait(maxWait);
+                    } else {
+                        wait();
+                    }
+                }
+                usedMemory += memory;
+                RESERVED.set(memory);
+            } catch (InterruptedException e) {
+                LOGGER.log(Level.WARNING,
+                        "Unexpected interruption while waiting for the memory reservation");
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waiting.remove(ticket);
+                // the next request in line might fit as well
+                notifyAll();
+            }
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(this + " reserved " + memory + " bytes, used memory " + getUsedMemory());
+        }
+        return true;
+    }
+
+    public void requestComplete(Request request) {
+        Long memory = RESERVED.get();
+        if (memory != null) {
+            RESERVED.remove();
+            synchronized (this) {
+                usedMemory -= memory;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the lowest possible priority, that is, the highest number, as controllers are sorted
+     * by ascending priority value. The memory is reserved only once the request cleared all the
+     * other controllers
+     */
+    public int getPriority() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the memory budget, in bytes
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Returns the memory currently reserved by the running requests, in bytes
+     */
+    public synchronized long getUsedMemory() {
+        return usedMemory;
+    }
+
+    /**
+     * Returns the number of requests waiting for memory to be released
+     */
+    public synchronized int getWaitingRequests() {
+        return waiting.size();
+    }
+
+    /**
+     * Estimates the memory used by the request, in bytes, or returns -1 if it cannot be estimated
+     */
+    protected long estimateMemory(Request request) {
+        if (request == null || request.getService() == null || request.getRequest() == null) {
+            return -1;
+        }
+        Map rawKvp = request.getRawKvp();
+        if (rawKvp == null) {
+            return -1;
+        }
+
+        String service = request.getService();
+        String operation = request.getRequest();
+        if ("WMS".equalsIgnoreCase(service) && "GetMap".equalsIgnoreCase(operation)) {
+            long pixels = getPixels(rawKvp);
+            if (pixels <= 0) {
+                return -1;
+            }
+            // same as the drawing surface, 3 bytes per pixel for opaque ones, 4 otherwise
+            int pixelSize = Boolean.valueOf(getValue(rawKvp, "TRANSPARENT")) ? 4 : 3;
+            long memory = pixels * pixelSize;
+            if (Boolean.valueOf(getValue(rawKvp, "TILED"))) {
+                memory *= META_TILE_FACTOR * META_TILE_FACTOR;
+            }
+            return memory;
+        } else if ("WCS".equalsIgnoreCase(service) && "GetCoverage".equalsIgnoreCase(operation)) {
+            // the band count is not known, assume a 4 bytes per pixel output
+            long pixels = getPixels(rawKvp);
+            return pixels > 0 ? pixels * 4 : -1;
+        }
+        return -1;
+    }
+
+    long getPixels(Map rawKvp) {
+        try {
+            String width = getValue(rawKvp, "WIDTH");
+            String height = getValue(rawKvp, "HEIGHT");
+            if (width == null || height == null) {
+                return -1;
+            }
+            return Long.parseLong(width.trim()) * Long.parseLong(height.trim());
+        } catch (NumberFormatException e) {
+            // the request will be rejected by the service anyways
+            return -1;
+        }
+    }
+
+    String getValue(Map rawKvp, String key) {
+        Object value = rawKvp.get(key);
+        return value != null ? value.toString() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryFlowController(" + maxMemory + ")";
+    }
+
+}
@@ -18,6 +18,7 @@ import org.geoserver.flow.controller.BasicOWSController;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.IpFlowController;
 import org.geoserver.flow.controller.IpRequestMatcher;
+import org.geoserver.flow.controller.MemoryFlowController;
 import org.geoserver.flow.controller.RateFlowController;
 import org.geoserver.flow.controller.SingleIpFlowController;
 import org.geoserver.flow.controller.UserConcurrentFlowController;
@@ -108,6 +109,20 @@ public class DefaultControlFlowConfigurationTest {
         assertEquals(100, gc.getPriority());
     }
 
+    @Test
+    public void testMemoryBudget() throws Exception {
+        Properties p = new Properties();
+        p.put("ows.memory", "512");
+
+        DefaultControlFlowConfigurator configurator = new DefaultControlFlowConfigurator(
+                new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        assertEquals(1, controllers.size());
+        assertTrue(controllers.get(0) instanceof MemoryFlowController);
+        MemoryFlowController mc = (MemoryFlowController) controllers.get(0);
+        assertEquals(512 * 1024 * 1024L, mc.getMaxMemory());
+    }
+
     static class FixedWatcher extends PropertyFileWatcher {
         boolean stale = true;
 
@@ -0,0 +1,159 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static junit.framework.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.geoserver.flow.ControllerPriorityComparator;
+import org.geoserver.flow.FlowController;
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.util.KvpMap;
+import org.junit.Test;
+
+public class MemoryFlowControllerTest extends AbstractFlowControllerTest {
+
+    Request buildGetMap(int width, int height, boolean transparent) {
+        Request request = new Request();
+        request.setService("WMS");
+        request.setRequest("GetMap");
+        KvpMap kvp = new KvpMap();
+        kvp.put("WIDTH", String.valueOf(width));
+        kvp.put("HEIGHT", String.valueOf(height));
+        kvp.put("TRANSPARENT", String.valueOf(transparent));
+        request.setRawKvp(kvp);
+        return request;
+    }
+
+    @Test
+    public void testEstimate() {
+        MemoryFlowController controller = new MemoryFlowController(1024 * 1024);
+        assertEquals(100 * 100 * 3, controller.estimateMemory(buildGetMap(100, 100, false)));
+        assertEquals(100 * 100 * 4, controller.estimateMemory(buildGetMap(100, 100, true)));
+
+        Request tiled = buildGetMap(256, 256, true);
+        tiled.getRawKvp().put("TILED", "true");
+        assertEquals(256 * 256 * 4 * 9, controller.estimateMemory(tiled));
+
+        Request coverage = new Request();
+        coverage.setService("WCS");
+        coverage.setRequest("GetCoverage");
+        KvpMap kvp = new KvpMap();
+        kvp.put("width", "200");
+        kvp.put("height", "100");
+        coverage.setRawKvp(kvp);
+        assertEquals(200 * 100 * 4, controller.estimateMemory(coverage));
+
+        // not estimable
+        Request capabilities = new Request();
+        capabilities.setService("WMS");
+        capabilities.setRequest("GetCapabilities");
+        capabilities.setRawKvp(new KvpMap());
+        assertEquals(-1, controller.estimateMemory(capabilities));
+        assertEquals(-1, controller.estimateMemory(new Request()));
+    }
+
+    @Test
+    public void testPrioritySorting() {
+        MemoryFlowController memory = new MemoryFlowController(1024 * 1024);
+        GlobalFlowController global = new GlobalFlowController(4);
+        RateFlowController rate = new RateFlowController(new OWSRequestMatcher(), 2, 1000, 0,
+                new CookieKeyGenerator());
+        List<FlowController> controllers = new ArrayList<FlowController>(Arrays.asList(memory,
+                rate, global));
+        Collections.sort(controllers, new ControllerPriorityComparator());
+        // rate limiters first, memory budget last
+        assertEquals(Arrays.asList(rate, global, memory), controllers);
+        assertEquals(Integer.MAX_VALUE, memory.getPriority());
+    }
+
+    @Test
+    public void testUncontrolled() {
+        MemoryFlowController controller = new MemoryFlowController(1);
+        Request request = new Request();
+        assertTrue(controller.requestIncoming(request, 100));
+        controller.requestComplete(request);
+        assertEquals(0, controller.getUsedMemory());
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        // room for two 100x100 opaque maps
+        MemoryFlowController controller = new MemoryFlowController(100 * 100 * 3 * 2);
+
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildGetMap(100, 100,
+                false), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildGetMap(100, 100,
+                false), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t3 = new FlowControllerTestingThread(buildGetMap(100, 100,
+                false), 0, Long.MAX_VALUE, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+            t3.start();
+            waitBlocked(t3, MAX_WAIT);
+
+            // the first two fit in the budget, the third waits
+            assertEquals(ThreadState.PROCESSING, t1.state);
+            assertEquals(ThreadState.PROCESSING, t2.state);
+            assertEquals(ThreadState.STARTED, t3.state);
+            assertEquals(100 * 100 * 3 * 2, controller.getUsedMemory());
+            assertEquals(1, controller.getWaitingRequests());
+
+            // release t1, t3 gets its memory
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            waitState(ThreadState.PROCESSING, t3, MAX_WAIT);
+            assertEquals(0, controller.getWaitingRequests());
+
+            t2.interrupt();
+            t3.interrupt();
+            waitTerminated(t2, MAX_WAIT);
+            waitTerminated(t3, MAX_WAIT);
+            assertEquals(0, controller.getUsedMemory());
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+            waitAndKill(t3, MAX_WAIT);
+        }
+    }
+
+    @Test
+    public void testOversizedRunsAlone() throws Exception {
+        MemoryFlowController controller = new MemoryFlowController(100 * 100 * 3);
+
+        // twice the budget, still allowed to run alone
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildGetMap(200, 100,
+                false), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildGetMap(10, 10,
+                false), 100, 0, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            assertEquals(ThreadState.PROCESSING, t1.state);
+            assertEquals(controller.getMaxMemory(), controller.getUsedMemory());
+
+            // times out, no memory left
+            t2.start();
+            waitTerminated(t2, MAX_WAIT);
+            assertEquals(ThreadState.TIMED_OUT, t2.state);
+
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            assertEquals(0, controller.getUsedMemory());
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+        }
+    }
+
+}
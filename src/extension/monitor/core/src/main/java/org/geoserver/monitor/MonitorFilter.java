@@ -34,6 +34,7 @@ import org.geoserver.filters.GeoServerFilter;
 import org.geoserver.monitor.RequestData.Status;
 import org.geoserver.ows.util.ResponseUtils;
 import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.wms.GetMapTimings;
 import org.geotools.util.logging.Logging;
 
 public class MonitorFilter implements GeoServerFilter {
@@ -126,6 +127,9 @@ public class MonitorFilter implements GeoServerFilter {
 
         data.setRemoteUserAgent(req.getHeader("user-agent"));
 
+        // ask GetMap to collect its phase timings for this request
+        req.setAttribute(GetMapTimings.ENABLED_ATTRIBUTE, Boolean.TRUE);
+
         //wrap the request and response
         request = new MonitorServletRequest(req, monitor.getConfig().getMaxBodySize());
         response = new MonitorServletResponse(resp);
@@ -149,6 +153,11 @@ public class MonitorFilter implements GeoServerFilter {
         data.setResponseContentType(response.getContentType());
         data.setResponseLength(((MonitorServletResponse)response).getContentLength());
         data.setResponseStatus(((MonitorServletResponse)response).getStatus());
+
+        GetMapTimings timings = (GetMapTimings) req.getAttribute(GetMapTimings.ATTRIBUTE);
+        if (timings != null) {
+            data.setPhaseTimes(timings.getPhaseTimes());
+        }
         
         if (error != null) {
             data.setStatus(Status.FAILED);
@@ -8,7 +8,9 @@ package org.geoserver.monitor;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.geoserver.platform.ServiceException;
@@ -184,6 +186,12 @@ public class RequestData implements Serializable {
      */
     private List<String> resources = new ArrayList<String>(1);
 
+    /**
+     * The time spent in the various processing phases, in milliseconds, for the requests
+     * tracking them (e.g. WMS GetMap)
+     */
+    private Map<String, Long> phaseTimes = new LinkedHashMap<String, Long>();
+
     /**
      * The HTTP response length, in bytes
      */
@@ -458,6 +466,14 @@ public class RequestData implements Serializable {
         this.resources = resources;
     }
     
+    public Map<String, Long> getPhaseTimes() {
+        return phaseTimes;
+    }
+
+    public void setPhaseTimes(Map<String, Long> phaseTimes) {
+        this.phaseTimes = phaseTimes;
+    }
+
     public long getResponseLength() {
         return responseLength;
     }
@@ -511,6 +527,7 @@ public class RequestData implements Serializable {
         clone.setSubOperation(subOperation);
         clone.setOwsVersion(owsVersion);
         clone.setResources(new ArrayList(resources));
+        clone.setPhaseTimes(new LinkedHashMap<String, Long>(phaseTimes));
         clone.setResponseLength(responseLength);
         clone.setResponseContentType(responseContentType);
         clone.setErrorMessage(errorMessage);
@@ -8,11 +8,18 @@ package org.geoserver.wps.ppio;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 
 import com.vividsolutions.jts.geom.Geometry;
+import org.geoserver.wfs.json.GeoJSONWriter;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geojson.geom.GeometryJSON;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
 
 /**
  * Inputs and outputs feature collections in GeoJSON format using gt-geojson
@@ -22,6 +29,11 @@ import org.geotools.geojson.geom.GeometryJSON;
  */
 public abstract class GeoJSONPPIO extends CDataPPIO {
 
+    /**
+     * The number of decimals gt-geojson writes by default
+     */
+    static final int DECIMALS = 4;
+
     protected GeoJSONPPIO(Class clazz) {
         super(clazz, clazz, "application/json");
     }
@@ -47,6 +59,10 @@ public abstract class GeoJSONPPIO extends CDataPPIO {
 
         @Override
         public void encode(Object value, OutputStream os) throws IOException {
+            if (value instanceof SimpleFeatureCollection) {
+                encode((SimpleFeatureCollection) value, os);
+                return;
+            }
             FeatureJSON json = new FeatureJSON();
             // commented out due to GEOT-3209
             // json.setEncodeFeatureCRS(true);
@@ -54,6 +70,56 @@ public abstract class GeoJSONPPIO extends CDataPPIO {
             json.writeFeatureCollection((FeatureCollection) value, os);
         }
 
+        /**
+         * Streams simple features with the same structure as {@link FeatureJSON}. Strings are
+         * always quoted, like gt-geojson does, rather than following the json-lib rules
+         */
+        void encode(SimpleFeatureCollection features, OutputStream os) throws IOException {
+            GeoJSONWriter writer = new GeoJSONWriter(os);
+            writer.setNumberOfDecimals(DECIMALS);
+            writer.setStrictStrings(true);
+            writer.object().key("type").value("FeatureCollection");
+            writer.key("features").array();
+            SimpleFeatureIterator it = features.features();
+            try {
+                while (it.hasNext()) {
+                    SimpleFeature f = it.next();
+                    writer.object().key("type").value("Feature");
+                    GeometryDescriptor gd = f.getFeatureType().getGeometryDescriptor();
+                    writer.key("geometry");
+                    Geometry geometry = (Geometry) f.getDefaultGeometry();
+                    if (geometry != null) {
+                        writer.writeGeom(geometry);
+                    } else {
+                        writer.value(null);
+                    }
+                    writer.key("properties").object();
+                    List<AttributeDescriptor> descriptors = f.getFeatureType()
+                            .getAttributeDescriptors();
+                    for (int i = 0; i < descriptors.size(); i++) {
+                        AttributeDescriptor ad = descriptors.get(i);
+                        if (ad == gd) {
+                            continue;
+                        }
+                        writer.key(ad.getLocalName());
+                        Object attribute = f.getAttribute(i);
+                        if (attribute instanceof Geometry) {
+                            writer.writeGeom((Geometry) attribute);
+                        } else {
+                            writer.value(attribute);
+                        }
+                    }
+                    writer.endObject();
+                    writer.key("id").value(f.getID());
+                    writer.endObject();
+                }
+            } finally {
+                it.close();
+            }
+            writer.endArray().endObject();
+            writer.flush();
+        }
+
         @Override
         public Object decode(InputStream input) throws Exception {
             return new FeatureJSON().readFeatureCollection(input);
@@ -72,8 +138,10 @@ public abstract class GeoJSONPPIO extends CDataPPIO {
 
         @Override
         public void encode(Object value, OutputStream os) throws IOException {
-            GeometryJSON json = new GeometryJSON();
-            json.write((Geometry) value, os);
+            GeoJSONWriter writer = new GeoJSONWriter(os);
+            writer.setNumberOfDecimals(DECIMALS);
+            writer.writeGeom((Geometry) value);
+            writer.flush();
         }
 
         @Override
@@ -0,0 +1,125 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps.ppio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geojson.feature.FeatureJSON;
+import org.geotools.geojson.geom.GeometryJSON;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class GeoJSONPPIOTest {
+
+    static final String[] NAMES = new String[] { "plain", "null", "function() {}",
+            "quote \" and \\ backslash", "a/b", "tab\tnew line\n", "caf\u00e9 \u20ac" };
+
+    SimpleFeatureCollection buildCollection() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("test");
+        tb.add("geom", Point.class);
+        tb.add("name", String.class);
+        tb.add("count", Integer.class);
+        tb.add("value", Double.class);
+        tb.add("flag", Boolean.class);
+        SimpleFeatureType type = tb.buildFeatureType();
+
+        DefaultFeatureCollection features = new DefaultFeatureCollection();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        WKTReader reader = new WKTReader();
+        for (int i = 0; i < NAMES.length; i++) {
+            fb.add(reader.read("POINT(" + (i + 0.123456) + " -" + (i + 0.654321) + ")"));
+            fb.add(NAMES[i]);
+            fb.add(i);
+            fb.add(i + 0.5);
+            fb.add(i % 2 == 0);
+            features.add(fb.buildFeature("test." + i));
+        }
+        return features;
+    }
+
+    @Test
+    public void testFeatureCollection() throws Exception {
+        SimpleFeatureCollection features = buildCollection();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new GeoJSONPPIO.FeatureCollections().encode(features, bos);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new FeatureJSON().writeFeatureCollection(features, expected);
+
+        FeatureJSON json = new FeatureJSON();
+        FeatureCollection actualFc = json.readFeatureCollection(new ByteArrayInputStream(bos
+                .toByteArray()));
+        FeatureCollection expectedFc = json.readFeatureCollection(new ByteArrayInputStream(
+                expected.toByteArray()));
+        assertEquals(NAMES.length, actualFc.size());
+        assertEquals(expectedFc.size(), actualFc.size());
+
+        SimpleFeatureIterator actualIt = (SimpleFeatureIterator) actualFc.features();
+        SimpleFeatureIterator expectedIt = (SimpleFeatureIterator) expectedFc.features();
+        try {
+            int i = 0;
+            while (expectedIt.hasNext()) {
+                SimpleFeature e = expectedIt.next();
+                SimpleFeature a = actualIt.next();
+                assertEquals(e.getID(), a.getID());
+                // strings are never turned into null or left unquoted
+                assertEquals(NAMES[i], a.getAttribute("name"));
+                for (String name : new String[] { "name", "count", "value", "flag" }) {
+                    assertEquals(name, e.getAttribute(name), a.getAttribute(name));
+                }
+                Geometry eg = (Geometry) e.getDefaultGeometry();
+                Geometry ag = (Geometry) a.getDefaultGeometry();
+                assertTrue(eg + " vs " + ag, eg.equalsExact(ag));
+                i++;
+            }
+        } finally {
+            actualIt.close();
+            expectedIt.close();
+        }
+    }
+
+    @Test
+    public void testGeometry() throws Exception {
+        String[] wkts = new String[] { "POINT(1.123456 -2.654321)",
+                "LINESTRING(0 0, 10.00004 -5.98765, 123456.789012 0.00012)",
+                "POLYGON((0 0, 10 0, 10 10, 0 0), (1.11111 1.22222, 2 1, 2 2, 1.11111 1.22222))",
+                "MULTIPOINT((0.5 0.5), (1.00001 1.99999))",
+                "MULTILINESTRING((0 0, 1.1 1.1), (2.22222 2, 3 3.33333))",
+                "MULTIPOLYGON(((0 0, 10 0, 10 10, 0 0)), ((20 20, 30.12345 20, 30 30, 20 20)))",
+                "GEOMETRYCOLLECTION(POINT(1.23456 2), LINESTRING(0 0, 1 1.98765))" };
+        GeometryJSON gjson = new GeometryJSON();
+        GeoJSONPPIO.Geometries ppio = new GeoJSONPPIO.Geometries();
+        WKTReader reader = new WKTReader();
+        for (String wkt : wkts) {
+            Geometry g = reader.read(wkt);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ppio.encode(g, bos);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            gjson.write(g, expected);
+
+            Geometry actual = gjson.read(new ByteArrayInputStream(bos.toByteArray()));
+            Geometry reference = gjson.read(new ByteArrayInputStream(expected.toByteArray()));
+            assertTrue(wkt + ": " + bos.toString("UTF-8"), reference.equalsExact(actual));
+            // the input is not modified by the rounding
+            assertTrue(g.equalsExact(reader.read(wkt)));
+        }
+    }
+}
@@ -54,6 +54,7 @@ import org.geoserver.gwc.layer.CatalogStyleChangeListener;
 import org.geoserver.gwc.layer.GeoServerTileLayer;
 import org.geoserver.gwc.layer.GeoServerTileLayerInfo;
 import org.geoserver.gwc.layer.GeoServerTileLayerInfoImpl;
+import org.geoserver.gwc.layer.UTFGridMimeType;
 import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.Response;
 import org.geoserver.platform.GeoServerExtensions;
@@ -451,7 +452,7 @@ public class GWC implements DisposableBean, InitializingBean, ApplicationContext
             mimeTypes = layer.getMimeTypes();
         } else {
             try {
-                mimeTypes = Collections.singletonList(MimeType.createFromFormat(format));
+                mimeTypes = Collections.singletonList(UTFGridMimeType.createFromFormat(format));
             } catch (MimeException e) {
                 throw new RuntimeException();
             }
@@ -675,7 +676,7 @@ public class GWC implements DisposableBean, InitializingBean, ApplicationContext
 
         final MimeType mimeType;
         try {
-            mimeType = MimeType.createFromFormat(request.getFormat());
+            mimeType = UTFGridMimeType.createFromFormat(request.getFormat());
             List<MimeType> tileLayerFormats = tileLayer.getMimeTypes();
             if (!tileLayerFormats.contains(mimeType)) {
                 requestMistmatchTarget.append("no tile cache for requested format");
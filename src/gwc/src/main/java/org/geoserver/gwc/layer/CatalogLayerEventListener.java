@@ -35,10 +35,10 @@ import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WMSLayerInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.event.CatalogAddEvent;
-import org.geoserver.catalog.event.CatalogListener;
 import org.geoserver.catalog.event.CatalogModifyEvent;
 import org.geoserver.catalog.event.CatalogPostModifyEvent;
 import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.event.SynchronousCatalogListener;
 import org.geoserver.catalog.util.CloseableIterator;
 import org.geoserver.gwc.GWC;
 import org.geoserver.gwc.config.GWCConfig;
@@ -95,11 +95,17 @@ import com.google.common.collect.Sets;
  * parameter filter} for all the cached styles on demand</li>
  * </ul>
  * </p>
+ * <p>
+ * The listener is {@link SynchronousCatalogListener synchronous}: the tile layers are created,
+ * renamed and removed together with the catalog layers, so that tile requests and REST calls made
+ * right after a catalog change find them. The modify and post modify callbacks also share state
+ * through thread locals.
+ * </p>
  * 
  * @author Arne Kepp
  * @author Gabriel Roldan
  */
-public class CatalogLayerEventListener implements CatalogListener {
+public class CatalogLayerEventListener implements SynchronousCatalogListener {
 
     private static Logger log = Logging.getLogger(CatalogLayerEventListener.class);
 
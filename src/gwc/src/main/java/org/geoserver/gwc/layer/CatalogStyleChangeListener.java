@@ -21,10 +21,10 @@ import org.geoserver.catalog.Predicates;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.event.CatalogAddEvent;
-import org.geoserver.catalog.event.CatalogListener;
 import org.geoserver.catalog.event.CatalogModifyEvent;
 import org.geoserver.catalog.event.CatalogPostModifyEvent;
 import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.event.SynchronousCatalogListener;
 import org.geoserver.catalog.util.CloseableIterator;
 import org.geoserver.gwc.GWC;
 import org.geotools.util.logging.Logging;
@@ -35,11 +35,16 @@ import com.google.common.collect.ImmutableSet;
 /**
  * Listens to changes in {@link StyleInfo styles} for the GeoServer {@link Catalog} and applies the
  * needed {@link ParameterFilter} changes to the corresponding {@link GeoServerTileLayer}.
+ * <p>
+ * The listener is {@link SynchronousCatalogListener synchronous}: the parameter filters of the
+ * tile layers are updated together with the style, so that tile requests made right after a
+ * rename already use the new style name.
+ * </p>
  * 
  * @author Arne Kepp
  * @author Gabriel Roldan
  */
-public class CatalogStyleChangeListener implements CatalogListener {
+public class CatalogStyleChangeListener implements SynchronousCatalogListener {
 
     private static Logger log = Logging.getLogger(CatalogStyleChangeListener.class);
 
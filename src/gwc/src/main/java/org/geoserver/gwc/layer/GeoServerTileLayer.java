@@ -1024,7 +1024,7 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
         List<MimeType> mimeTypes = new ArrayList<MimeType>(mimeFormats.size());
         for (String format : mimeFormats) {
             try {
-                mimeTypes.add(MimeType.createFromFormat(format));
+                mimeTypes.add(UTFGridMimeType.createFromFormat(format));
             } catch (MimeException e) {
                 LOGGER.log(Level.WARNING, "Can't create MimeType from format " + format, e);
             }
@@ -0,0 +1,44 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.layer;
+
+import org.geowebcache.mime.MimeException;
+import org.geowebcache.mime.MimeType;
+
+/**
+ * The mime type of the UTFGrid tiles produced by the WMS, used when the GWC library does not know
+ * about it. UTFGrid tiles cannot be split, so they are never meta tiled, and need no gutter.
+ */
+public class UTFGridMimeType extends MimeType {
+
+    static final String FORMAT = "application/json;type=utfgrid";
+
+    static final UTFGridMimeType INSTANCE = new UTFGridMimeType();
+
+    private UTFGridMimeType() {
+        super("application/json", "utfgrid", "utfgrid", FORMAT, false);
+    }
+
+    @Override
+    public boolean isVector() {
+        return true;
+    }
+
+    /**
+     * Same as {@link MimeType#createFromFormat(String)}, but falling back on the UTFGrid mime type
+     * if GWC does not recognize the format
+     */
+    public static MimeType createFromFormat(String format) throws MimeException {
+        try {
+            return MimeType.createFromFormat(format);
+        } catch (MimeException e) {
+            if (FORMAT.equalsIgnoreCase(format) || "utfgrid".equalsIgnoreCase(format)) {
+                return INSTANCE;
+            }
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,254 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.filter.visitor.SimplifyingFilterVisitor;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleFactory;
+import org.geotools.styling.Symbolizer;
+import org.geotools.styling.visitor.StyleAttributeExtractor;
+import org.opengis.filter.Filter;
+
+/**
+ * A pre-processed form of a {@link Style}, splitting the scale denominator axis in bands
+ * delimited by the rules scale limits, and holding for each band a style containing only the
+ * rules active in it, with their filters simplified, along with the attributes they use.
+ * <p>
+ * The band styles share the symbolizers of the original style, and like it, they must not be
+ * modified by the callers.
+ * </p>
+ *
+ * @see ResourcePool#getCompiledStyle(StyleInfo)
+ */
+public class CompiledStyle {
+
+    /**
+     * Scale comparisons tolerance, same as the renderer one
+     */
+    static final double TOLERANCE = 1e-6;
+
+    static final StyleFactory STYLE_FACTORY = CommonFactoryFinder.getStyleFactory();
+
+    /**
+     * A scale band, and the style to be used in it
+     */
+    public static class ScaleBand {
+
+        final double minScaleDenominator;
+
+        final double maxScaleDenominator;
+
+        final Style style;
+
+        final Set<String> attributes;
+
+        ScaleBand(double minScaleDenominator, double maxScaleDenominator, Style style,
+                Set<String> attributes) {
+            this.minScaleDenominator = minScaleDenominator;
+            this.maxScaleDenominator = maxScaleDenominator;
+            this.style = style;
+            this.attributes = attributes;
+        }
+
+        public double getMinScaleDenominator() {
+            return minScaleDenominator;
+        }
+
+        public double getMaxScaleDenominator() {
+            return maxScaleDenominator;
+        }
+
+        /**
+         * The style holding only the rules active in this band
+         */
+        public Style getStyle() {
+            return style;
+        }
+
+        /**
+         * The names of the attributes used by the rules active in this band
+         */
+        public Set<String> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public String toString() {
+            return "ScaleBand[" + minScaleDenominator + ", " + maxScaleDenominator + ")";
+        }
+    }
+
+    final Style style;
+
+    /**
+     * The sorted band limits, the first one is zero, the last one is infinity
+     */
+    final double[] limits;
+
+    final ScaleBand[] bands;
+
+    public CompiledStyle(Style style) {
+        this.style = style;
+
+        // collect the scale limits of all the rules
+        Set<Double> scales = new TreeSet<Double>();
+        scales.add(0d);
+        scales.add(Double.POSITIVE_INFINITY);
+        for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+            for (Rule rule : fts.rules()) {
+                addLimit(scales, rule.getMinScaleDenominator());
+                addLimit(scales, rule.getMaxScaleDenominator());
+            }
+        }
+        limits = new double[scales.size()];
+        int i = 0;
+        for (Double scale : scales) {
+            limits[i++] = scale;
+        }
+
+        bands = new ScaleBand[limits.length - 1];
+        for (i = 0; i < bands.length; i++) {
+            bands[i] = buildBand(limits[i], limits[i + 1]);
+        }
+    }
+
+    void addLimit(Set<Double> scales, double scale) {
+        if (scale > 0 && !Double.isInfinite(scale) && !Double.isNaN(scale)) {
+            scales.add(scale);
+        }
+    }
+
+    ScaleBand buildBand(double min, double max) {
+        Style bandStyle = STYLE_FACTORY.createStyle();
+        bandStyle.setName(style.getName());
+        bandStyle.setDefault(style.isDefault());
+        if (style.getDescription() != null) {
+            // used as the layer title by the legend decoration
+            bandStyle.getDescription().setTitle(style.getDescription().getTitle());
+            bandStyle.getDescription().setAbstract(style.getDescription().getAbstract());
+        }
+        for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+            List<Rule> rules = new ArrayList<Rule>();
+            boolean changed = false;
+            for (Rule rule : fts.rules()) {
+                if (rule.getMinScaleDenominator() > min || rule.getMaxScaleDenominator() < max) {
+                    changed = true;
+                    continue;
+                }
+                Rule simplified = simplify(rule);
+                if (simplified == null) {
+                    changed = true;
+                } else {
+                    changed |= simplified != rule;
+                    rules.add(simplified);
+                }
+            }
+            if (!changed) {
+                bandStyle.featureTypeStyles().add(fts);
+            } else if (!rules.isEmpty()) {
+                bandStyle.featureTypeStyles().add(copy(fts, rules));
+            }
+        }
+
+        StyleAttributeExtractor extractor = new StyleAttributeExtractor();
+        bandStyle.accept(extractor);
+        Set<String> attributes = Collections.unmodifiableSet(extractor.getAttributeNameSet());
+
+        return new ScaleBand(min, max, bandStyle, attributes);
+    }
+
+    /**
+     * Returns the rule with a simplified filter, the rule itself if the filter cannot be
+     * simplified, or null if the rule can never match
+     */
+    Rule simplify(Rule rule) {
+        Filter filter = rule.getFilter();
+        if (filter == null) {
+            return rule;
+        }
+        Filter simplified = SimplifyingFilterVisitor.simplify(filter);
+        if (simplified == Filter.EXCLUDE) {
+            return null;
+        } else if (simplified.equals(filter)) {
+            return rule;
+        }
+
+        List<Symbolizer> symbolizers = rule.symbolizers();
+        Rule copy = STYLE_FACTORY.createRule(
+                symbolizers.toArray(new Symbolizer[symbolizers.size()]), rule.getDescription(),
+                rule.getLegendGraphic(), rule.getName(), simplified, rule.isElseFilter(),
+                rule.getMaxScaleDenominator(), rule.getMinScaleDenominator());
+        return copy;
+    }
+
+    FeatureTypeStyle copy(FeatureTypeStyle fts, List<Rule> rules) {
+        FeatureTypeStyle copy = STYLE_FACTORY.createFeatureTypeStyle(rules
+                .toArray(new Rule[rules.size()]));
+        copy.setName(fts.getName());
+        copy.featureTypeNames().addAll(fts.featureTypeNames());
+        copy.semanticTypeIdentifiers().addAll(fts.semanticTypeIdentifiers());
+        copy.setTransformation(fts.getTransformation());
+        copy.setOnlineResource(fts.getOnlineResource());
+        copy.getOptions().putAll(fts.getOptions());
+        return copy;
+    }
+
+    /**
+     * The original style
+     */
+    public Style getStyle() {
+        return style;
+    }
+
+    /**
+     * Returns the scale bands, sorted by scale denominator
+     */
+    public List<ScaleBand> getBands() {
+        return Collections.unmodifiableList(Arrays.asList(bands));
+    }
+
+    /**
+     * Returns the band containing the specified scale denominator, or null if the scale
+     * denominator is so close to a band limit that the renderer scale checks could go either way
+     */
+    public ScaleBand getBand(double scaleDenominator) {
+        if (Double.isNaN(scaleDenominator) || scaleDenominator < 0) {
+            return null;
+        }
+        double margin = Math.max(scaleDenominator * TOLERANCE, TOLERANCE * 10);
+        int low = getBandIndex(scaleDenominator - margin);
+        int high = getBandIndex(scaleDenominator + margin);
+        return low == high ? bands[low] : null;
+    }
+
+    int getBandIndex(double scaleDenominator) {
+        int idx = Arrays.binarySearch(limits, scaleDenominator);
+        if (idx < 0) {
+            // the insertion point is the limit above the scale
+            idx = -idx - 2;
+        }
+        return Math.max(0, Math.min(bands.length - 1, idx));
+    }
+
+    /**
+     * Returns the style holding only the rules active at the specified scale denominator, or the
+     * original style if the scale is too close to a band limit
+     */
+    public Style getStyle(double scaleDenominator) {
+        ScaleBand band = getBand(scaleDenominator);
+        return band != null ? band.getStyle() : style;
+    }
+
+}
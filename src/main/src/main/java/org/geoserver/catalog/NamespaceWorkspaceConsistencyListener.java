@@ -8,10 +8,10 @@ package org.geoserver.catalog;
 import java.util.List;
 
 import org.geoserver.catalog.event.CatalogAddEvent;
-import org.geoserver.catalog.event.CatalogListener;
 import org.geoserver.catalog.event.CatalogModifyEvent;
 import org.geoserver.catalog.event.CatalogPostModifyEvent;
 import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.event.SynchronousCatalogListener;
 
 /**
  * This listener keeps the workspaces and namespaces consistent with each other.
@@ -19,7 +19,7 @@ import org.geoserver.catalog.event.CatalogRemoveEvent;
  * @author Andrea Aime - OpenGeo
  *
  */
-public class NamespaceWorkspaceConsistencyListener implements CatalogListener {
+public class NamespaceWorkspaceConsistencyListener implements SynchronousCatalogListener {
     
     Catalog catalog;
     
@@ -0,0 +1,104 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of the statistics of one of the {@link ResourcePool} caches.
+ * <p>
+ * A miss is counted every time a new entry is loaded in the cache, the load time is the time
+ * spent between the failed lookup and the insertion of the loaded value. Evictions only count
+ * the entries removed to honor the configured limits, not the explicit removals nor the
+ * values reclaimed by the garbage collector.
+ * </p>
+ * <p>
+ * Times are expressed in milliseconds, negative limits mean no limit is set.
+ * </p>
+ */
+public class ResourceCacheStats implements ResourceCacheStatsMBean, Serializable {
+
+    private static final long serialVersionUID = -1867237373467396547L;
+
+    String name;
+
+    int size;
+
+    long weight;
+
+    long maximumSize = -1;
+
+    long maximumWeight = -1;
+
+    long expireAfterAccess = -1;
+
+    long hitCount;
+
+    long missCount;
+
+    long evictionCount;
+
+    long totalLoadTime;
+
+    public ResourceCacheStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public long getExpireAfterAccess() {
+        return expireAfterAccess;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    public double getAverageLoadTime() {
+        return missCount == 0 ? 0 : (double) totalLoadTime / missCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceCacheStats[name=" + name + ", size=" + size + ", weight=" + weight
+                + ", hits=" + hitCount + ", misses=" + missCount + ", evictions="
+                + evictionCount + ", totalLoadTime=" + totalLoadTime + "]";
+    }
+}
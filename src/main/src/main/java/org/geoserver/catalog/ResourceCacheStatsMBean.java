@@ -0,0 +1,37 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+/**
+ * JMX view of the statistics of one of the {@link ResourcePool} caches.
+ * 
+ * @see ResourceCacheStats
+ */
+public interface ResourceCacheStatsMBean {
+
+    String getName();
+
+    int getSize();
+
+    long getWeight();
+
+    long getMaximumSize();
+
+    long getMaximumWeight();
+
+    long getExpireAfterAccess();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getEvictionCount();
+
+    long getTotalLoadTime();
+
+    double getAverageLoadTime();
+}
@@ -18,6 +18,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.net.URL;
@@ -27,12 +28,19 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,10 +55,10 @@ import org.eclipse.xsd.XSDParticle;
 import org.eclipse.xsd.XSDSchema;
 import org.eclipse.xsd.XSDTypeDefinition;
 import org.geoserver.catalog.event.CatalogAddEvent;
-import org.geoserver.catalog.event.CatalogListener;
 import org.geoserver.catalog.event.CatalogModifyEvent;
 import org.geoserver.catalog.event.CatalogPostModifyEvent;
 import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.event.SynchronousCatalogListener;
 import org.geoserver.catalog.impl.ModificationProxy;
 import org.geoserver.config.GeoServerDataDirectory;
 import org.geoserver.data.util.CoverageStoreUtils;
@@ -116,6 +124,7 @@ import org.opengis.referencing.crs.SingleCRS;
 import org.opengis.referencing.cs.CoordinateSystem;
 import org.opengis.referencing.operation.TransformException;
 import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.vfny.geoserver.global.GeoServerFeatureLocking;
 import org.vfny.geoserver.util.DataStoreUtils;
 
@@ -134,6 +143,14 @@ import org.vfny.geoserver.util.DataStoreUtils;
  * <li>{@link #coverageReaderCache} </li>
  * <li>{@link #hintCoverageReaderCache} </li>
  * <li>{@link #styleCache} </li>
+ * <li>{@link #compiledStyleCache} </li>
+ * </p>
+ * <p>
+ * All caches but the CRS one can be bounded in number of entries, in total weight, and can
+ * expire the entries that have not been accessed for a while, by setting the
+ * {@link #CACHE_LIMITS_PREFIX} property followed by the cache name, for example
+ * <code>GEOSERVER_RESOURCEPOOL_CACHE_DATASTORES=maximumSize=200,expireAfterAccess=30m</code>.
+ * Hit, miss, load time and eviction statistics are available via {@link #getCacheStatistics()}.
  * </p>
  * 
  * @author Justin Deoliveira, Boundless
@@ -179,6 +196,37 @@ public class ResourcePool {
      * Default number of hard references
      */
     static int FEATURETYPE_CACHE_SIZE_DEFAULT = 100;
+
+    /**
+     * Prefix of the properties setting the limits of the caches, the full property name is
+     * obtained appending the cache name, the value is a comma separated list of
+     * <code>maximumSize=count</code>, <code>maximumWeight=weight</code> and
+     * <code>expireAfterAccess=duration</code>, where the duration is expressed in milliseconds,
+     * or followed by one of the <code>s</code>, <code>m</code>, <code>h</code>, <code>d</code>
+     * units. Caches are unbounded by default.
+     */
+    public static final String CACHE_LIMITS_PREFIX = "GEOSERVER_RESOURCEPOOL_CACHE_";
+
+    public static final String DATASTORE_CACHE = "DATASTORES";
+
+    public static final String FEATURETYPE_CACHE = "FEATURETYPES";
+
+    public static final String ATTRIBUTE_CACHE = "ATTRIBUTES";
+
+    public static final String COVERAGEREADER_CACHE = "COVERAGEREADERS";
+
+    public static final String HINTCOVERAGEREADER_CACHE = "HINTCOVERAGEREADERS";
+
+    public static final String WMS_CACHE = "WMS";
+
+    public static final String STYLE_CACHE = "STYLES";
+
+    public static final String COMPILED_STYLE_CACHE = "COMPILEDSTYLES";
+
+    /**
+     * Runs the periodic expiration of the cache entries, created on demand
+     */
+    static ScheduledExecutorService cacheCleaner;
     
     private static final String IMAGE_PYRAMID = "ImagePyramid";
     private static final String IMAGE_MOSAIC = "ImageMosaic";
@@ -192,6 +240,8 @@ public class ResourcePool {
     Map<String, GridCoverageReader>  coverageReaderCache;
     Map<CoverageHintReaderKey, GridCoverageReader> hintCoverageReaderCache;
     Map<StyleInfo,Style> styleCache;
+    Map<StyleInfo, CompiledStyle> compiledStyleCache;
+    Map<String, Long> storeAccessTimes;
     List<Listener> listeners;
     ThreadPoolExecutor coverageExecutor;
     CatalogRepository repository;
@@ -229,7 +279,9 @@ public class ResourcePool {
         
         wmsCache = createWmsCache();
         styleCache = createStyleCache();
+        compiledStyleCache = createCompiledStyleCache();
 
+        storeAccessTimes = new ConcurrentHashMap<String, Long>();
         listeners = new CopyOnWriteArrayList<Listener>();
     }
 
@@ -286,6 +338,27 @@ public class ResourcePool {
     public Map<String, DataAccess> getDataStoreCache() {
         return dataStoreCache;
     }
+    /**
+     * Returns the time of the last access to the data stores and coverage readers handed out
+     * by this pool, keyed by store id.
+     * <p>
+     * The map survives {@link #dispose()}, so that it can be used to figure out which stores
+     * were in use before a reload or a restart, see {@link ResourcePoolWarmer}.
+     * </p>
+     */
+    public Map<String, Long> getStoreAccessTimes() {
+        return storeAccessTimes;
+    }
+
+    /**
+     * Records an access to the specified store
+     */
+    void touch(String storeId) {
+        if (storeId != null) {
+            storeAccessTimes.put(storeId, System.currentTimeMillis());
+        }
+    }
+
     /**
      * DataStoreCache implementation responsible for freeing DataAccess resources
      * when they are no longer in use.
@@ -377,7 +450,21 @@ public class ResourcePool {
     }
 
     protected Map<StyleInfo, Style> createStyleCache() {
-        return new HashMap<StyleInfo, Style>();
+        return new StyleCache();
+    }
+
+    /**
+     * Returns the cache for {@link CompiledStyle} objects for a particular style.
+     * <p>
+     * The concrete Map implementation is determined by {@link #createCompiledStyleCache()}
+     * </p>
+     */
+    public Map<StyleInfo, CompiledStyle> getCompiledStyleCache() {
+        return compiledStyleCache;
+    }
+
+    protected Map<StyleInfo, CompiledStyle> createCompiledStyleCache() {
+        return new CompiledStyleCache();
     }
 
     /**
@@ -397,6 +484,34 @@ public class ResourcePool {
         return new WMSCache();
     }
 
+    /**
+     * Returns a snapshot of the statistics of the caches
+     */
+    public List<ResourceCacheStats> getCacheStatistics() {
+        List<ResourceCacheStats> result = new ArrayList<ResourceCacheStats>();
+        for (Map<?, ?> cache : Arrays.<Map<?, ?>> asList(dataStoreCache, featureTypeCache,
+                featureTypeAttributeCache, coverageReaderCache, hintCoverageReaderCache,
+                wmsCache, styleCache, compiledStyleCache)) {
+            if (cache instanceof CatalogResourceCache) {
+                result.add(((CatalogResourceCache<?, ?>) cache).getStats());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the cache with the specified name, or null if not
+     * found
+     */
+    public ResourceCacheStats getCacheStatistics(String name) {
+        for (ResourceCacheStats stats : getCacheStatistics()) {
+            if (stats.getName().equals(name)) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
     /**
      * Sets the size of the feature type cache.
      * <p>
@@ -522,6 +637,7 @@ public class ResourcePool {
         DataAccess<? extends FeatureType, ? extends Feature> dataStore = null;
         try {
             String id = info.getId();
+            touch(id);
             dataStore = dataStoreCache.get(id);
             if ( dataStore == null ) {
                 synchronized (dataStoreCache) {
@@ -1387,6 +1503,8 @@ public class ResourcePool {
             throw new IOException("Could not find the raster plugin for format " + info.getType());
         }
         
+        touch(info.getId());
+
         // look into the cache
         GridCoverageReader reader = null;
         Object key;
@@ -1764,6 +1882,7 @@ public class ResourcePool {
                         @Override
                         public void changed(ResourceNotification notify) {
                             styleCache.remove(info);
+                            compiledStyleCache.remove(info);
                             styleResource.removeListener( this );
                         }
                     });
@@ -1782,6 +1901,27 @@ public class ResourcePool {
      */
     public void clear(StyleInfo info) {
         styleCache.remove( info );
+        compiledStyleCache.remove( info );
+    }
+
+    /**
+     * Returns the style pre-processed for rendering, see {@link CompiledStyle}.
+     * <p>
+     * The compiled style is cached along with the style, and cleared with it.
+     * </p>
+     * @param info The style metadata.
+     * 
+     * @throws IOException Any parsing errors.
+     */
+    public CompiledStyle getCompiledStyle(StyleInfo info) throws IOException {
+        Style style = getStyle(info);
+        CompiledStyle compiled = compiledStyleCache.get(info);
+        // the style might have been reloaded since the compiled one was built
+        if (compiled == null || compiled.getStyle() != style) {
+            compiled = new CompiledStyle(style);
+            compiledStyleCache.put(info, compiled);
+        }
+        return compiled;
     }
     
     /**
@@ -1915,12 +2055,18 @@ public class ResourcePool {
         hintCoverageReaderCache.clear();
         wmsCache.clear();
         styleCache.clear();
+        compiledStyleCache.clear();
         listeners.clear();
     }
     
     /**
      * Base class for all the resource caches, ensures type safety and provides
-     * an easier way to handle with resource disposal 
+     * an easier way to handle with resource disposal.
+     * <p>
+     * The cache keeps track of the access order and weight of its entries, evicting (and
+     * disposing) the least recently used ones when the configured limits are exceeded, and
+     * collects the statistics returned by {@link #getStats()}.
+     * </p>
      * @author Andrea Aime
      *
      * @param <K>
@@ -1928,11 +2074,51 @@ public class ResourcePool {
      */
     abstract class CatalogResourceCache<K, V> extends SoftValueHashMap<K, V> {
 
+        String name;
+
+        long maximumSize = -1;
+
+        long maximumWeight = -1;
+
+        long expireAfterAccess = -1;
+
+        boolean cleanUpScheduled;
+
+        /**
+         * The entries in access order, with their last access time and weight, guarded by its
+         * own monitor along with {@link #weight}
+         */
+        LinkedHashMap<K, Usage> usages = new LinkedHashMap<K, Usage>(16, 0.75f, true);
+
+        long weight;
+
+        AtomicLong hits = new AtomicLong();
+
+        AtomicLong misses = new AtomicLong();
+
+        AtomicLong evictions = new AtomicLong();
+
+        AtomicLong loadNanos = new AtomicLong();
+
+        /**
+         * Time of the last failed lookup performed by the current thread, the load time is
+         * measured from it to the insertion of the loaded value
+         */
+        ThreadLocal<Long> loadStart = new ThreadLocal<Long>();
+
         public CatalogResourceCache() {
             this(100);
         }
 
         public CatalogResourceCache(int hardReferences) {
+            this(null, hardReferences);
+        }
+
+        public CatalogResourceCache(String name) {
+            this(name, 100);
+        }
+
+        public CatalogResourceCache(String name, int hardReferences) {
             super(hardReferences);
             super.cleaner = new ValueCleaner() {
 
@@ -1941,11 +2127,140 @@ public class ResourcePool {
                     dispose((K) key, (V) object);
                 }
             };
+            this.name = name != null ? name : getClass().getSimpleName();
+            if (name != null) {
+                String limits = GeoServerExtensions.getProperty(CACHE_LIMITS_PREFIX + name);
+                if (limits != null) {
+                    configure(limits);
+                }
+            }
+            scheduleCleanUp();
+        }
+
+        void scheduleCleanUp() {
+            if (expireAfterAccess > 0 && !cleanUpScheduled) {
+                cleanUpScheduled = true;
+                ResourcePool.scheduleCleanUp(this, Math.max(1000, expireAfterAccess / 2));
+            }
+        }
+
+        /**
+         * Parses the cache limits, see {@link ResourcePool#CACHE_LIMITS_PREFIX}
+         */
+        void configure(String limits) {
+            for (String setting : limits.split(",")) {
+                if (setting.trim().isEmpty()) {
+                    continue;
+                }
+                String[] kvp = setting.split("=");
+                try {
+                    if (kvp.length != 2) {
+                        throw new IllegalArgumentException();
+                    }
+                    String key = kvp[0].trim();
+                    String value = kvp[1].trim();
+                    if ("maximumSize".equals(key)) {
+                        maximumSize = Long.parseLong(value);
+                    } else if ("maximumWeight".equals(key)) {
+                        maximumWeight = Long.parseLong(value);
+                    } else if ("expireAfterAccess".equals(key)) {
+                        expireAfterAccess = parseDuration(value);
+                    } else {
+                        throw new IllegalArgumentException();
+                    }
+                } catch (IllegalArgumentException e) {
+                    LOGGER.warning("Invalid value for " + CACHE_LIMITS_PREFIX + name + ": "
+                            + setting + ", ignoring it");
+                }
+            }
+        }
+
+        long parseDuration(String value) {
+            TimeUnit unit = TimeUnit.MILLISECONDS;
+            switch (value.charAt(value.length() - 1)) {
+            case 's':
+                unit = TimeUnit.SECONDS;
+                break;
+            case 'm':
+                unit = TimeUnit.MINUTES;
+                break;
+            case 'h':
+                unit = TimeUnit.HOURS;
+                break;
+            case 'd':
+                unit = TimeUnit.DAYS;
+                break;
+            }
+            if (unit != TimeUnit.MILLISECONDS) {
+                value = value.substring(0, value.length() - 1);
+            }
+            return unit.toMillis(Long.parseLong(value.trim()));
+        }
+
+        /**
+         * Sets the cache limits, a negative value means no limit
+         */
+        public void setLimits(long maximumSize, long maximumWeight, long expireAfterAccess) {
+            this.maximumSize = maximumSize;
+            this.maximumWeight = maximumWeight;
+            this.expireAfterAccess = expireAfterAccess;
+            scheduleCleanUp();
+            cleanUp();
+        }
+
+        /**
+         * Returns the weight of an entry, used to enforce the maximum weight limit. By default
+         * all entries weigh one.
+         */
+        protected int weigh(K key, V value) {
+            return 1;
+        }
+
+        @Override
+        public V get(Object key) {
+            V value = super.get(key);
+            if (value != null) {
+                hits.incrementAndGet();
+                loadStart.remove();
+                synchronized (usages) {
+                    Usage usage = usages.get(key);
+                    if (usage != null) {
+                        usage.access = System.currentTimeMillis();
+                    }
+                }
+            } else {
+                loadStart.set(System.nanoTime());
+            }
+            return value;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            V previous = super.put(key, value);
+            Long start = loadStart.get();
+            loadStart.remove();
+            if (previous == null) {
+                misses.incrementAndGet();
+                if (start != null) {
+                    loadNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+
+            List<K> evicted;
+            synchronized (usages) {
+                Usage usage = new Usage(System.currentTimeMillis(), weigh(key, value));
+                Usage old = usages.put(key, usage);
+                weight += usage.weight - (old != null ? old.weight : 0);
+                evicted = selectEvictions(key);
+            }
+            evict(evicted);
+            return previous;
         }
 
         @Override
         public V remove(Object key) {
             V object = super.remove(key);
+            forget(key);
             if (object != null) {
                 dispose((K) key, object);
             }
@@ -1963,15 +2278,180 @@ public class ResourcePool {
                 }
             }
             super.clear();
+            synchronized (usages) {
+                usages.clear();
+                weight = 0;
+            }
+        }
+
+        /**
+         * Evicts the expired entries, and the least recently used ones if the cache is over its
+         * limits. Called periodically if the entries can expire, but can be invoked at any time.
+         */
+        public void cleanUp() {
+            synchronized (this) {
+                // forget about the values reclaimed by the garbage collector
+                List<K> keys;
+                synchronized (usages) {
+                    keys = new ArrayList<K>(usages.keySet());
+                }
+                for (K key : keys) {
+                    if (super.get(key) == null) {
+                        forget(key);
+                    }
+                }
+
+                List<K> evicted;
+                synchronized (usages) {
+                    evicted = selectEvictions(null);
+                }
+                evict(evicted);
+            }
+        }
+
+        /**
+         * Returns the keys of the entries that have expired or that must be removed to get back
+         * within the size and weight limits, in least recently used order. Must be called while
+         * holding the {@link #usages} lock.
+         * 
+         * @param retained The key of an entry that must not be evicted, or null
+         */
+        List<K> selectEvictions(K retained) {
+            List<K> result = new ArrayList<K>();
+            if (maximumSize < 0 && maximumWeight < 0 && expireAfterAccess < 0) {
+                return result;
+            }
+            long now = System.currentTimeMillis();
+            long size = usages.size();
+            long total = weight;
+            for (Map.Entry<K, Usage> entry : usages.entrySet()) {
+                Usage usage = entry.getValue();
+                boolean expired = expireAfterAccess >= 0 && now - usage.access > expireAfterAccess;
+                boolean full = (maximumSize >= 0 && size > maximumSize)
+                        || (maximumWeight >= 0 && total > maximumWeight);
+                if (!expired && !full) {
+                    // entries are sorted by access time, the following ones are more recent
+                    break;
+                }
+                if (entry.getKey().equals(retained)) {
+                    continue;
+                }
+                result.add(entry.getKey());
+                size--;
+                total -= usage.weight;
+            }
+            return result;
+        }
+
+        void evict(List<K> keys) {
+            for (K key : keys) {
+                try {
+                    if (remove(key) != null) {
+                        evictions.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Error evicting entry " + key + " from the " + name
+                            + " cache", e);
+                }
+            }
+        }
+
+        void forget(Object key) {
+            synchronized (usages) {
+                Usage usage = usages.remove(key);
+                if (usage != null) {
+                    weight -= usage.weight;
+                }
+            }
+        }
+
+        /**
+         * Returns a snapshot of the cache statistics
+         */
+        public ResourceCacheStats getStats() {
+            ResourceCacheStats stats = new ResourceCacheStats(name);
+            synchronized (usages) {
+                stats.size = usages.size();
+                stats.weight = weight;
+            }
+            stats.maximumSize = maximumSize;
+            stats.maximumWeight = maximumWeight;
+            stats.expireAfterAccess = expireAfterAccess;
+            stats.hitCount = hits.get();
+            stats.missCount = misses.get();
+            stats.evictionCount = evictions.get();
+            stats.totalLoadTime = TimeUnit.NANOSECONDS.toMillis(loadNanos.get());
+            return stats;
         }
 
         protected abstract void dispose(K key, V object);
     }
+
+    /**
+     * Last access time and weight of a cache entry
+     */
+    static class Usage {
+
+        long access;
+
+        int weight;
+
+        Usage(long access, int weight) {
+            this.access = access;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Periodically cleans up the specified cache, until it gets garbage collected
+     */
+    static synchronized void scheduleCleanUp(CatalogResourceCache<?, ?> cache, long period) {
+        if (cacheCleaner == null) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+                    "ResourcePoolCacheCleaner-");
+            threadFactory.setDaemon(true);
+            cacheCleaner = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        }
+        CleanUpTask task = new CleanUpTask(cache);
+        task.future = cacheCleaner.scheduleWithFixedDelay(task, period, period,
+                TimeUnit.MILLISECONDS);
+    }
+
+    static class CleanUpTask implements Runnable {
+
+        WeakReference<CatalogResourceCache<?, ?>> cache;
+
+        volatile ScheduledFuture<?> future;
+
+        CleanUpTask(CatalogResourceCache<?, ?> cache) {
+            this.cache = new WeakReference<CatalogResourceCache<?, ?>>(cache);
+        }
+
+        public void run() {
+            CatalogResourceCache<?, ?> target = cache.get();
+            if (target == null) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            try {
+                target.cleanUp();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Error cleaning up the " + target.name + " cache", e);
+            }
+        }
+    }
     
     class FeatureTypeCache extends CatalogResourceCache<String, FeatureType> {
         
         public FeatureTypeCache(int maxSize) {
-            super(maxSize);
+            super(FEATURETYPE_CACHE, maxSize);
+        }
+
+        @Override
+        protected int weigh(String key, FeatureType featureType) {
+            return Math.max(1, featureType.getDescriptors().size());
         }
         
         protected void dispose(String key, FeatureType featureType) {
@@ -1996,6 +2476,11 @@ public class ResourcePool {
      */
     @SuppressWarnings("rawtypes")
     class DataStoreCache extends CatalogResourceCache<String, DataAccess> {
+
+        public DataStoreCache() {
+            super(DATASTORE_CACHE);
+        }
+
         /**
          * Ensure data access entry is removed from catalog, and
          * ensure DataAccess dispose is called to return system resources.
@@ -2029,7 +2514,11 @@ public class ResourcePool {
     }
     
     class CoverageReaderCache extends CatalogResourceCache<String, GridCoverageReader> {
-        
+
+        public CoverageReaderCache() {
+            super(COVERAGEREADER_CACHE);
+        }
+
         protected void dispose(String id, GridCoverageReader reader) {
         	CoverageStoreInfo info = catalog.getCoverageStore(id);
         	if(info != null) {
@@ -2049,7 +2538,11 @@ public class ResourcePool {
     }
     
     class CoverageHintReaderCache extends CatalogResourceCache<CoverageHintReaderKey, GridCoverageReader> {
-        
+
+        public CoverageHintReaderCache() {
+            super(HINTCOVERAGEREADER_CACHE);
+        }
+
         protected void dispose(CoverageHintReaderKey key, GridCoverageReader reader) {
         	CoverageStoreInfo info = catalog.getCoverageStore(key.id);
         	if(info != null) {
@@ -2119,7 +2612,12 @@ public class ResourcePool {
     class FeatureTypeAttributeCache extends CatalogResourceCache<String, List<AttributeTypeInfo>> {
 
         FeatureTypeAttributeCache(int size) {
-            super(size);
+            super(ATTRIBUTE_CACHE, size);
+        }
+
+        @Override
+        protected int weigh(String key, List<AttributeTypeInfo> attributes) {
+            return Math.max(1, attributes.size());
         }
 
         @Override
@@ -2130,6 +2628,10 @@ public class ResourcePool {
 
     class WMSCache extends CatalogResourceCache<String, WebMapServer> {
 
+        public WMSCache() {
+            super(WMS_CACHE);
+        }
+
         @Override
         protected void dispose(String key, WebMapServer server) {
             HTTPClient client = server.getHTTPClient();
@@ -2149,10 +2651,34 @@ public class ResourcePool {
 
     }
     
+    class StyleCache extends CatalogResourceCache<StyleInfo, Style> {
+
+        public StyleCache() {
+            super(STYLE_CACHE);
+        }
+
+        @Override
+        protected void dispose(StyleInfo info, Style style) {
+            // nothing to release, the style will be parsed again on the next access
+        }
+    }
+
+    class CompiledStyleCache extends CatalogResourceCache<StyleInfo, CompiledStyle> {
+
+        public CompiledStyleCache() {
+            super(COMPILED_STYLE_CACHE);
+        }
+
+        @Override
+        protected void dispose(StyleInfo info, CompiledStyle style) {
+            // nothing to release, the style will be compiled again on the next access
+        }
+    }
+
     /**
      * Listens to catalog events clearing cache entires when resources are modified.
      */
-    public class CacheClearingListener extends CatalogVisitorAdapter implements CatalogListener {
+    public class CacheClearingListener extends CatalogVisitorAdapter implements SynchronousCatalogListener {
 
         public void handleAddEvent(CatalogAddEvent event) {
         }
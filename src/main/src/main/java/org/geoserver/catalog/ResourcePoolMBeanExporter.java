@@ -0,0 +1,131 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInitializer;
+import org.geoserver.platform.PlatformMBeanExporter;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Publishes the statistics of the {@link ResourcePool} caches in the platform MBean server, one
+ * MBean per cache, named <code>org.geoserver:type=ResourcePool,cache=&lt;cache name&gt;</code>.
+ * <p>
+ * The MBeans look up the statistics from the current resource pool of the catalog on each
+ * access, as the pool and its caches can be replaced at runtime.
+ * </p>
+ */
+public class ResourcePoolMBeanExporter implements GeoServerInitializer, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger("org.geoserver.catalog");
+
+    static final String DOMAIN = "org.geoserver";
+
+    Catalog catalog;
+
+    List<ObjectName> names = new ArrayList<ObjectName>();
+
+    public ResourcePoolMBeanExporter(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    public void initialize(GeoServer geoServer) throws Exception {
+        for (ResourceCacheStats stats : catalog.getResourcePool().getCacheStatistics()) {
+            ObjectName name;
+            try {
+                name = new ObjectName(DOMAIN + ":type=ResourcePool,cache=" + stats.getName());
+            } catch (MalformedObjectNameException e) {
+                LOGGER.log(Level.WARNING, "Invalid MBean name for the " + stats.getName()
+                        + " resource pool cache", e);
+                continue;
+            }
+            ResourceCacheStatsMBean mbean = new CacheStats(stats.getName());
+            if (PlatformMBeanExporter.register(name, mbean, ResourceCacheStatsMBean.class)) {
+                names.add(name);
+            }
+        }
+    }
+
+    public void destroy() throws Exception {
+        for (ObjectName name : names) {
+            PlatformMBeanExporter.unregister(name);
+        }
+        names.clear();
+    }
+
+    /**
+     * Live view of the statistics of a cache
+     */
+    class CacheStats implements ResourceCacheStatsMBean {
+
+        String name;
+
+        CacheStats(String name) {
+            this.name = name;
+        }
+
+        ResourceCacheStats stats() {
+            ResourceCacheStats stats = catalog.getResourcePool().getCacheStatistics(name);
+            return stats != null ? stats : new ResourceCacheStats(name);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getSize() {
+            return stats().getSize();
+        }
+
+        public long getWeight() {
+            return stats().getWeight();
+        }
+
+        public long getMaximumSize() {
+            return stats().getMaximumSize();
+        }
+
+        public long getMaximumWeight() {
+            return stats().getMaximumWeight();
+        }
+
+        public long getExpireAfterAccess() {
+            return stats().getExpireAfterAccess();
+        }
+
+        public long getHitCount() {
+            return stats().getHitCount();
+        }
+
+        public long getMissCount() {
+            return stats().getMissCount();
+        }
+
+        public double getHitRate() {
+            return stats().getHitRate();
+        }
+
+        public long getEvictionCount() {
+            return stats().getEvictionCount();
+        }
+
+        public long getTotalLoadTime() {
+            return stats().getTotalLoadTime();
+        }
+
+        public double getAverageLoadTime() {
+            return stats().getAverageLoadTime();
+        }
+    }
+}
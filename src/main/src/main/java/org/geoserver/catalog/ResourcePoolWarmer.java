@@ -0,0 +1,445 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInitializer;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.Resource.Type;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Opens data stores and coverage readers in the background on startup, so that the first
+ * requests hitting them do not have to pay for connection pool setup, index loading and the
+ * like.
+ * <p>
+ * The warm-up is configured with the following system properties, environment variables or
+ * servlet context parameters:
+ * <ul>
+ * <li>{@link #WARMUP_STORES_KEY}: the maximum number of stores to be warmed up, the warm-up is
+ * disabled if missing or not positive</li>
+ * <li>{@link #WARMUP_SOURCE_KEY}: {@code usage} (the default) to warm up the most recently used
+ * stores of the previous run, or {@code all} to warm up the enabled stores in catalog order</li>
+ * <li>{@link #WARMUP_THREADS_KEY}: the number of threads opening the stores, defaults to
+ * {@value #DEFAULT_THREADS}</li>
+ * </ul>
+ * The store usage is tracked by {@link ResourcePool#getStoreAccessTimes()} and, when the warm-up
+ * is enabled, saved in the {@link #USAGE_FILE} resource of the data directory on shutdown. When
+ * the usage list is missing the enabled stores are used instead.
+ * </p>
+ * <p>
+ * Progress and failures of the last warm-up run are available via {@link #getStatus()}.
+ * </p>
+ */
+public class ResourcePoolWarmer implements GeoServerInitializer, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger("org.geoserver.catalog");
+
+    /**
+     * Maximum number of stores to warm up
+     */
+    public static final String WARMUP_STORES_KEY = "GEOSERVER_WARMUP_STORES";
+
+    /**
+     * Source of the stores to warm up, either {@code usage} or {@code all}
+     */
+    public static final String WARMUP_SOURCE_KEY = "GEOSERVER_WARMUP_SOURCE";
+
+    /**
+     * Number of threads used for the warm-up
+     */
+    public static final String WARMUP_THREADS_KEY = "GEOSERVER_WARMUP_THREADS";
+
+    /**
+     * Name of the resource holding the store usage of the previous run
+     */
+    public static final String USAGE_FILE = "resourcepool.usage";
+
+    static final int DEFAULT_THREADS = 4;
+
+    /**
+     * Where the list of stores to warm up comes from
+     */
+    public enum Source {
+        USAGE, ALL
+    }
+
+    /**
+     * State of the warm-up
+     */
+    public enum State {
+        DISABLED, RUNNING, COMPLETED
+    }
+
+    Catalog catalog;
+
+    GeoServerResourceLoader resourceLoader;
+
+    volatile Status status = new Status(State.DISABLED, 0);
+
+    ExecutorService executor;
+
+    public ResourcePoolWarmer(Catalog catalog, GeoServerResourceLoader resourceLoader) {
+        this.catalog = catalog;
+        this.resourceLoader = resourceLoader;
+    }
+
+    public void initialize(GeoServer geoServer) throws Exception {
+        // carry over the usage of the previous run, so that stores not used in this run are
+        // not forgotten when the usage is saved again
+        Map<String, Long> accessTimes = catalog.getResourcePool().getStoreAccessTimes();
+        for (Map.Entry<String, Long> entry : readUsage().entrySet()) {
+            if (!accessTimes.containsKey(entry.getKey())) {
+                accessTimes.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        int max = getIntProperty(WARMUP_STORES_KEY, 0);
+        if (max <= 0) {
+            return;
+        }
+        Source source = Source.USAGE;
+        String value = GeoServerExtensions.getProperty(WARMUP_SOURCE_KEY);
+        if (value != null) {
+            try {
+                source = Source.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Invalid value for " + WARMUP_SOURCE_KEY + ": " + value
+                        + ", using the store usage list");
+            }
+        }
+        warmUp(selectStores(source, max), getIntProperty(WARMUP_THREADS_KEY, DEFAULT_THREADS));
+    }
+
+    /**
+     * Returns a copy of the current warm-up status
+     */
+    public Status getStatus() {
+        return status.copy();
+    }
+
+    /**
+     * Returns the stores to warm up, at most <code>max</code> of them
+     */
+    List<StoreInfo> selectStores(Source source, int max) {
+        List<StoreInfo> stores = new ArrayList<StoreInfo>();
+        if (source == Source.USAGE) {
+            final Map<String, Long> usage = new HashMap<String, Long>(catalog.getResourcePool()
+                    .getStoreAccessTimes());
+            List<String> ids = new ArrayList<String>(usage.keySet());
+            Collections.sort(ids, new Comparator<String>() {
+                public int compare(String id1, String id2) {
+                    return usage.get(id2).compareTo(usage.get(id1));
+                }
+            });
+            for (String id : ids) {
+                if (stores.size() >= max) {
+                    break;
+                }
+                StoreInfo store = catalog.getStore(id, StoreInfo.class);
+                if (isWarmable(store)) {
+                    stores.add(store);
+                }
+            }
+            if (!stores.isEmpty()) {
+                return stores;
+            }
+            LOGGER.info("No store usage information available, warming up the enabled stores");
+        }
+
+        CloseableIterator<StoreInfo> it = catalog.list(StoreInfo.class,
+                Predicates.equal("enabled", true));
+        try {
+            while (it.hasNext() && stores.size() < max) {
+                StoreInfo store = it.next();
+                if (isWarmable(store)) {
+                    stores.add(store);
+                }
+            }
+        } finally {
+            it.close();
+        }
+        return stores;
+    }
+
+    boolean isWarmable(StoreInfo store) {
+        return store != null && store.isEnabled()
+                && (store instanceof DataStoreInfo || store instanceof CoverageStoreInfo);
+    }
+
+    /**
+     * Starts warming up the specified stores in the background
+     */
+    public synchronized void warmUp(List<StoreInfo> stores, int threads) {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        LOGGER.info("Warming up " + stores.size() + " stores using " + threads + " threads");
+
+        final Status current = new Status(State.RUNNING, stores.size());
+        status = current;
+        if (stores.isEmpty()) {
+            current.complete();
+            return;
+        }
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+                "ResourcePoolWarmer-");
+        threadFactory.setDaemon(true);
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), threadFactory);
+        for (final StoreInfo store : stores) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    warmUp(store, current);
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    void warmUp(StoreInfo store, Status current) {
+        ResourcePool pool = catalog.getResourcePool();
+        Map<String, Long> accessTimes = pool.getStoreAccessTimes();
+        Long lastAccess = accessTimes.get(store.getId());
+        try {
+            if (store instanceof DataStoreInfo) {
+                DataStoreInfo ds = (DataStoreInfo) store;
+                pool.getDataStore(ds);
+                for (FeatureTypeInfo ft : catalog.getFeatureTypesByDataStore(ds)) {
+                    if (ft.isEnabled()) {
+                        pool.getFeatureType(ft);
+                        pool.getAttributes(ft);
+                    }
+                }
+            } else {
+                pool.getGridCoverageReader((CoverageStoreInfo) store, null);
+            }
+            current.warmed();
+        } catch (Throwable t) {
+            LOGGER.log(Level.WARNING, "Failed to warm up store " + name(store), t);
+            current.failed(name(store), t);
+        } finally {
+            // the warm-up is not a real usage of the store
+            if (lastAccess != null) {
+                accessTimes.put(store.getId(), lastAccess);
+            } else {
+                accessTimes.remove(store.getId());
+            }
+        }
+    }
+
+    static String name(StoreInfo store) {
+        return store.getWorkspace() != null ? store.getWorkspace().getName() + ":"
+                + store.getName() : store.getName();
+    }
+
+    /**
+     * Reads the store usage saved by the previous run
+     */
+    Map<String, Long> readUsage() {
+        Map<String, Long> usage = new HashMap<String, Long>();
+        Resource resource = resourceLoader.get(USAGE_FILE);
+        if (resource.getType() != Type.RESOURCE) {
+            return usage;
+        }
+        Properties props = new Properties();
+        try {
+            InputStream in = resource.in();
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+            for (String id : props.stringPropertyNames()) {
+                usage.put(id, Long.valueOf(props.getProperty(id)));
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to read the store usage list", e);
+        }
+        return usage;
+    }
+
+    /**
+     * Saves the store usage for the next run
+     */
+    void writeUsage() {
+        Properties props = new Properties();
+        for (Map.Entry<String, Long> entry : catalog.getResourcePool().getStoreAccessTimes()
+                .entrySet()) {
+            if (catalog.getStore(entry.getKey(), StoreInfo.class) != null) {
+                props.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+        }
+        Resource resource = resourceLoader.get(USAGE_FILE);
+        try {
+            OutputStream out = resource.out();
+            try {
+                props.store(out, "Last access time of the stores, used for the warm-up");
+            } finally {
+                out.close();
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to save the store usage list", e);
+        }
+    }
+
+    public void destroy() throws Exception {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        if (getIntProperty(WARMUP_STORES_KEY, 0) > 0) {
+            writeUsage();
+        }
+    }
+
+    static int getIntProperty(String key, int defaultValue) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + key + ": " + value + ", using "
+                        + defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Progress of a warm-up run
+     */
+    public static class Status {
+
+        State state;
+
+        int total;
+
+        int warmed;
+
+        int failed;
+
+        Date started;
+
+        Date finished;
+
+        List<Failure> failures = new ArrayList<Failure>();
+
+        Status(State state, int total) {
+            this.state = state;
+            this.total = total;
+            if (state == State.RUNNING) {
+                started = new Date();
+            }
+        }
+
+        synchronized void warmed() {
+            warmed++;
+            checkCompleted();
+        }
+
+        synchronized void failed(String store, Throwable t) {
+            failed++;
+            failures.add(new Failure(store, t.getMessage() != null ? t.getMessage() : t
+                    .toString()));
+            checkCompleted();
+        }
+
+        void checkCompleted() {
+            if (warmed + failed >= total) {
+                complete();
+            }
+        }
+
+        synchronized void complete() {
+            state = State.COMPLETED;
+            finished = new Date();
+            LOGGER.info("Store warm-up completed, " + warmed + " stores warmed up, " + failed
+                    + " failed, in " + (finished.getTime() - started.getTime()) + " ms");
+        }
+
+        synchronized Status copy() {
+            Status copy = new Status(state, total);
+            copy.warmed = warmed;
+            copy.failed = failed;
+            copy.started = started;
+            copy.finished = finished;
+            copy.failures = new ArrayList<Failure>(failures);
+            return copy;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getWarmed() {
+            return warmed;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public Date getStarted() {
+            return started;
+        }
+
+        public Date getFinished() {
+            return finished;
+        }
+
+        public List<Failure> getFailures() {
+            return failures;
+        }
+    }
+
+    /**
+     * A store that could not be warmed up
+     */
+    public static class Failure {
+
+        String store;
+
+        String message;
+
+        Failure(String store, String message) {
+            this.store = store;
+            this.message = message;
+        }
+
+        public String getStore() {
+            return store;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.event;
+
+/**
+ * Marks a {@link CatalogListener} that must be notified on the thread changing the catalog,
+ * before the change operation returns, even when asynchronous event dispatching is enabled.
+ * <p>
+ * Listeners that veto changes throwing a {@link org.geoserver.catalog.CatalogException},
+ * change the catalog themselves in response to an event, or keep state that must be consistent
+ * with the catalog as soon as a change is done should implement this interface.
+ * </p>
+ * 
+ * @see org.geoserver.catalog.impl.AsyncCatalogEventDispatcher
+ */
+public interface SynchronousCatalogListener extends CatalogListener {
+
+}
@@ -0,0 +1,363 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.event.SynchronousCatalogListener;
+import org.geoserver.catalog.event.impl.CatalogModifyEventImpl;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Delivers catalog events to the listeners on a background thread pool, so that the thread
+ * changing the catalog does not have to wait for them.
+ * <p>
+ * Each listener gets its own queue, events are delivered to it in the order they were fired, one
+ * at a time, while different listeners are notified in parallel. A modify event is queued only
+ * once its post modify event is fired, and the two are delivered back to back on the same
+ * thread, as listeners often pass state between the two callbacks. Multiple modifications of the
+ * same object that are still waiting to be delivered are collapsed into a single modify/post
+ * modify pair, keeping the oldest old values and the newest new values of each property.
+ * </p>
+ * <p>
+ * Listeners implementing {@link SynchronousCatalogListener} are still notified synchronously by
+ * the catalog. Exceptions thrown by the other listeners are logged, since the change they refer
+ * to has already been completed.
+ * </p>
+ * <p>
+ * Asynchronous dispatching is enabled by setting the {@link #ASYNC_EVENTS_KEY} system property,
+ * environment variable or servlet context parameter to {@code true}, the size of the thread pool
+ * can be set with {@link #EVENT_THREADS_KEY}. The thread pool is shared by all the catalogs in
+ * the JVM, and sized when the first dispatcher is created.
+ * </p>
+ */
+public class AsyncCatalogEventDispatcher {
+
+    static final Logger LOGGER = Logging.getLogger(AsyncCatalogEventDispatcher.class);
+
+    /**
+     * Enables asynchronous catalog event dispatching
+     */
+    public static final String ASYNC_EVENTS_KEY = "GEOSERVER_ASYNC_CATALOG_EVENTS";
+
+    /**
+     * Number of threads delivering the catalog events
+     */
+    public static final String EVENT_THREADS_KEY = "GEOSERVER_CATALOG_EVENT_THREADS";
+
+    static final int DEFAULT_THREADS = 2;
+
+    /**
+     * The pool shared by the dispatchers returned by {@link #lookup()}, created lazily
+     */
+    static ThreadPoolExecutor sharedExecutor;
+
+    final ThreadPoolExecutor executor;
+
+    Map<CatalogListener, ListenerQueue> queues = new IdentityHashMap<CatalogListener, ListenerQueue>();
+
+    /**
+     * Number of events queued and not yet delivered, guarded by this object monitor
+     */
+    long pending;
+
+    AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Builds a dispatcher with its own thread pool
+     */
+    AsyncCatalogEventDispatcher(int threads) {
+        this(createExecutor(threads));
+    }
+
+    AsyncCatalogEventDispatcher(ThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    static ThreadPoolExecutor createExecutor(int threads) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+                "CatalogEventDispatcher-");
+        threadFactory.setDaemon(true);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns the pool shared by all the catalogs, creating it on first use
+     */
+    static synchronized ThreadPoolExecutor getSharedExecutor() {
+        if (sharedExecutor == null) {
+            sharedExecutor = createExecutor(getConfiguredThreads());
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * Returns a new dispatcher, backed by the shared thread pool, if asynchronous dispatching has
+     * been enabled in the configuration, null otherwise
+     */
+    public static AsyncCatalogEventDispatcher lookup() {
+        if (!Boolean.valueOf(GeoServerExtensions.getProperty(ASYNC_EVENTS_KEY))) {
+            return null;
+        }
+        return new AsyncCatalogEventDispatcher(getSharedExecutor());
+    }
+
+    static int getConfiguredThreads() {
+        int threads = DEFAULT_THREADS;
+        String value = GeoServerExtensions.getProperty(EVENT_THREADS_KEY);
+        if (value != null) {
+            try {
+                threads = Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + EVENT_THREADS_KEY + ": " + value
+                        + ", using " + DEFAULT_THREADS);
+            }
+        }
+        return threads;
+    }
+
+    /**
+     * Returns true if the listener can be notified asynchronously
+     */
+    public boolean accepts(CatalogListener listener) {
+        return !(listener instanceof SynchronousCatalogListener);
+    }
+
+    /**
+     * Queues the event for delivery to the specified listener
+     */
+    public void dispatch(CatalogListener listener, CatalogEvent event) {
+        ListenerQueue queue;
+        synchronized (queues) {
+            queue = queues.get(listener);
+            if (queue == null) {
+                queue = new ListenerQueue(listener);
+                queues.put(listener, queue);
+            }
+        }
+        queue.add(event);
+    }
+
+    /**
+     * Forgets about a listener, the events already queued for it are still delivered
+     */
+    public void remove(CatalogListener listener) {
+        synchronized (queues) {
+            queues.remove(listener);
+        }
+    }
+
+    /**
+     * Waits for all the queued events to be delivered
+     *
+     * @return true if all events have been delivered, false if the timeout expired first
+     */
+    public synchronized boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (pending > 0) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                return false;
+            }
+            wait(wait);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of modify events that have been collapsed into previous ones
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    synchronized void queued(int count) {
+        pending += count;
+    }
+
+    synchronized void delivered() {
+        pending--;
+        if (pending == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Notifies the listener of the event, dispatching it to the appropriate callback
+     */
+    static void deliver(CatalogListener listener, CatalogEvent event) {
+        if (event instanceof CatalogAddEvent) {
+            listener.handleAddEvent((CatalogAddEvent) event);
+        } else if (event instanceof CatalogRemoveEvent) {
+            listener.handleRemoveEvent((CatalogRemoveEvent) event);
+        } else if (event instanceof CatalogModifyEvent) {
+            listener.handleModifyEvent((CatalogModifyEvent) event);
+        } else if (event instanceof CatalogPostModifyEvent) {
+            listener.handlePostModifyEvent((CatalogPostModifyEvent) event);
+        }
+    }
+
+    static String id(CatalogEvent event) {
+        return event.getSource() != null ? event.getSource().getId() : null;
+    }
+
+    static CatalogModifyEventImpl copy(CatalogModifyEvent event) {
+        CatalogModifyEventImpl copy = new CatalogModifyEventImpl();
+        copy.setSource(event.getSource());
+        copy.setPropertyNames(new ArrayList(event.getPropertyNames()));
+        copy.setOldValues(new ArrayList(event.getOldValues()));
+        copy.setNewValues(new ArrayList(event.getNewValues()));
+        return copy;
+    }
+
+    /**
+     * Merges the changes of a later modify event into an earlier one
+     */
+    static void merge(CatalogModifyEventImpl target, CatalogModifyEvent event) {
+        List names = target.getPropertyNames();
+        List oldValues = target.getOldValues();
+        List newValues = target.getNewValues();
+        for (int i = 0; i < event.getPropertyNames().size(); i++) {
+            Object name = event.getPropertyNames().get(i);
+            Object newValue = event.getNewValues().get(i);
+            int idx = names.indexOf(name);
+            if (idx >= 0) {
+                newValues.set(idx, newValue);
+            } else {
+                names.add(name);
+                oldValues.add(event.getOldValues().get(i));
+                newValues.add(newValue);
+            }
+        }
+    }
+
+    /**
+     * The events waiting to be delivered to a single listener
+     */
+    class ListenerQueue implements Runnable {
+
+        CatalogListener listener;
+
+        LinkedList<CatalogEvent> events = new LinkedList<CatalogEvent>();
+
+        /**
+         * Modify events waiting for their post modify event, by object id
+         */
+        Map<String, CatalogModifyEventImpl> staged = new HashMap<String, CatalogModifyEventImpl>();
+
+        /**
+         * Modify events in the queue that are not yet delivered, by object id
+         */
+        Map<String, CatalogModifyEventImpl> queued = new HashMap<String, CatalogModifyEventImpl>();
+
+        boolean scheduled;
+
+        ListenerQueue(CatalogListener listener) {
+            this.listener = listener;
+        }
+
+        void add(CatalogEvent event) {
+            int count = 0;
+            boolean schedule = false;
+            synchronized (this) {
+                String id = id(event);
+                if (id == null || event.getSource() instanceof Catalog) {
+                    // changes to the catalog defaults have no post modify event
+                    events.add(event);
+                    count = 1;
+                } else if (event instanceof CatalogModifyEvent) {
+                    CatalogModifyEventImpl modify = staged.get(id);
+                    if (modify == null) {
+                        staged.put(id, copy((CatalogModifyEvent) event));
+                    } else {
+                        merge(modify, (CatalogModifyEvent) event);
+                    }
+                } else if (event instanceof CatalogPostModifyEvent) {
+                    CatalogModifyEventImpl modify = staged.remove(id);
+                    CatalogModifyEventImpl previous = queued.get(id);
+                    if (modify == null) {
+                        events.add(event);
+                        count = 1;
+                    } else if (previous != null) {
+                        // the previous modification has not been delivered yet, collapse
+                        merge(previous, modify);
+                        coalesced.incrementAndGet();
+                    } else {
+                        events.add(modify);
+                        events.add(event);
+                        queued.put(id, modify);
+                        count = 2;
+                    }
+                } else {
+                    // adds and removes cannot be reordered with the modifications
+                    queued.remove(id);
+                    events.add(event);
+                    count = 1;
+                }
+
+                if (count > 0) {
+                    queued(count);
+                    if (!scheduled) {
+                        scheduled = true;
+                        schedule = true;
+                    }
+                }
+            }
+            if (schedule) {
+                executor.execute(this);
+            }
+        }
+
+        public void run() {
+            while (true) {
+                CatalogEvent event;
+                synchronized (this) {
+                    event = events.poll();
+                    if (event == null) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (event instanceof CatalogModifyEvent) {
+                        String id = id(event);
+                        if (queued.get(id) == event) {
+                            queued.remove(id);
+                        }
+                    }
+                }
+                try {
+                    AsyncCatalogEventDispatcher.deliver(listener, event);
+                } catch (Throwable t) {
+                    LOGGER.log(Level.WARNING, "Catalog listener threw exception handling event.",
+                            t);
+                } finally {
+                    delivered();
+                }
+            }
+        }
+    }
+}
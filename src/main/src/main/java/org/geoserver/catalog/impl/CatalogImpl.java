@@ -47,12 +47,8 @@ import org.geoserver.catalog.ValidationResult;
 import org.geoserver.catalog.WMSLayerInfo;
 import org.geoserver.catalog.WMSStoreInfo;
 import org.geoserver.catalog.WorkspaceInfo;
-import org.geoserver.catalog.event.CatalogAddEvent;
 import org.geoserver.catalog.event.CatalogEvent;
 import org.geoserver.catalog.event.CatalogListener;
-import org.geoserver.catalog.event.CatalogModifyEvent;
-import org.geoserver.catalog.event.CatalogPostModifyEvent;
-import org.geoserver.catalog.event.CatalogRemoveEvent;
 import org.geoserver.catalog.event.impl.CatalogAddEventImpl;
 import org.geoserver.catalog.event.impl.CatalogModifyEventImpl;
 import org.geoserver.catalog.event.impl.CatalogPostModifyEventImpl;
@@ -93,6 +89,11 @@ public class CatalogImpl implements Catalog {
      */
     protected List listeners = new ArrayList();
 
+    /**
+     * asynchronous event dispatcher, null if events are delivered synchronously
+     */
+    protected AsyncCatalogEventDispatcher dispatcher;
+
     /** 
      * resources
      */
@@ -105,8 +106,13 @@ public class CatalogImpl implements Catalog {
     protected boolean extendedValidation = true;
 
     public CatalogImpl() {
-        facade = new DefaultCatalogFacade(this);
+        if (Boolean.valueOf(GeoServerExtensions.getProperty(IndexedCatalogFacade.INDEXED_FACADE_KEY))) {
+            facade = new IndexedCatalogFacade(this);
+        } else {
+            facade = new DefaultCatalogFacade(this);
+        }
         resourcePool = ResourcePool.create(this);
+        dispatcher = AsyncCatalogEventDispatcher.lookup();
     }
     
     public CatalogFacade getFacade() {
@@ -1405,6 +1411,9 @@ public class CatalogImpl implements Catalog {
 
     public void removeListener(CatalogListener listener) {
         listeners.remove(listener);
+        if (dispatcher != null) {
+            dispatcher.remove(listener);
+        }
     }
     
     @Override
@@ -1413,10 +1422,29 @@ public class CatalogImpl implements Catalog {
             CatalogListener listener = (CatalogListener) it.next();
             if(listenerClass.isInstance(listener)) {
                 it.remove();
+                if (dispatcher != null) {
+                    dispatcher.remove(listener);
+                }
             }
         }
     }
 
+    /**
+     * Returns the dispatcher delivering events asynchronously, or null if events are delivered
+     * synchronously
+     */
+    public AsyncCatalogEventDispatcher getEventDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Sets the dispatcher used to deliver events asynchronously, null to deliver them
+     * synchronously
+     */
+    public void setEventDispatcher(AsyncCatalogEventDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
     public Iterator search(String cql) {
         // TODO Auto-generated method stub
         return null;
@@ -1488,14 +1516,10 @@ public class CatalogImpl implements Catalog {
         for (Iterator l = listeners.iterator(); l.hasNext();) {
             try {
                 CatalogListener listener = (CatalogListener) l.next();
-                if (event instanceof CatalogAddEvent) {
-                    listener.handleAddEvent((CatalogAddEvent) event);
-                } else if (event instanceof CatalogRemoveEvent) {
-                    listener.handleRemoveEvent((CatalogRemoveEvent) event);
-                } else if (event instanceof CatalogModifyEvent) {
-                    listener.handleModifyEvent((CatalogModifyEvent) event);
-                } else if (event instanceof CatalogPostModifyEvent) {
-                    listener.handlePostModifyEvent((CatalogPostModifyEvent)event);
+                if (dispatcher != null && dispatcher.accepts(listener)) {
+                    dispatcher.dispatch(listener, event);
+                } else {
+                    AsyncCatalogEventDispatcher.deliver(listener, event);
                 }
             } catch(Throwable t) {
                 if ( t instanceof CatalogException && toThrow == null) {
@@ -929,6 +929,14 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         if ( styles != null ) styles.clear();
     }
     
+    /**
+     * Hook called after the contents of this facade have been replaced wholesale, for example
+     * by an optimized {@link #syncTo(CatalogFacade)}. Subclasses keeping derived state about the
+     * catalog contents should rebuild it here, the default implementation does nothing.
+     */
+    protected void reindex() {
+    }
+
     public void resolve() {
         //JD creation checks are done here b/c when xstream depersists 
         // some members may be left null
@@ -1012,6 +1020,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             other.maps = maps;
             other.layerGroups = layerGroups;
             other.styles = styles;
+            other.reindex();
         }
         else {
             //do a manual import
@@ -1145,32 +1154,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
     public <T extends CatalogInfo> Iterable<T> iterable(final Class<? super T> of,
             final Filter filter, final SortBy[] sortByList) {
-        List<T> all;
-
-        T t = null;
-        if (NamespaceInfo.class.isAssignableFrom(of)) {
-            all = getNamespaces();
-        } else if (WorkspaceInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) getWorkspaces();
-        } else if (StoreInfo.class.isAssignableFrom(of)) {
-            all = getStores(of);
-        } else if (ResourceInfo.class.isAssignableFrom(of)) {
-            all = getResources(of);
-        } else if (LayerInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) getLayers();
-        } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) getLayerGroups();
-        } else if (PublishedInfo.class.isAssignableFrom(of)) {
-            all = new ArrayList<>();
-            all.addAll((List<T>) getLayers());
-            all.addAll((List<T>) getLayerGroups());
-        } else if (StyleInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) getStyles();
-        } else if (MapInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) getMaps();
-        } else {
-            throw new IllegalArgumentException("Unknown type: " + of);
-        }
+        List<T> all = candidates(of, filter);
 
         if (null != sortByList) {
             for (int i = sortByList.length - 1; i >=0 ; i--) {
@@ -1198,6 +1182,42 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         return Iterables.filter(all, filterAdapter);
     }
 
+    /**
+     * Returns the objects of type {@code of} that {@link #iterable} will sort and evaluate
+     * {@code filter} against. The default implementation returns all objects of the requested
+     * type, subclasses keeping secondary indexes can narrow down the list when the filter allows
+     * it.
+     */
+    protected <T extends CatalogInfo> List<T> candidates(final Class<? super T> of,
+            final Filter filter) {
+        List<T> all;
+
+        if (NamespaceInfo.class.isAssignableFrom(of)) {
+            all = getNamespaces();
+        } else if (WorkspaceInfo.class.isAssignableFrom(of)) {
+            all = (List<T>) getWorkspaces();
+        } else if (StoreInfo.class.isAssignableFrom(of)) {
+            all = getStores(of);
+        } else if (ResourceInfo.class.isAssignableFrom(of)) {
+            all = getResources(of);
+        } else if (LayerInfo.class.isAssignableFrom(of)) {
+            all = (List<T>) getLayers();
+        } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
+            all = (List<T>) getLayerGroups();
+        } else if (PublishedInfo.class.isAssignableFrom(of)) {
+            all = new ArrayList<>();
+            all.addAll((List<T>) getLayers());
+            all.addAll((List<T>) getLayerGroups());
+        } else if (StyleInfo.class.isAssignableFrom(of)) {
+            all = (List<T>) getStyles();
+        } else if (MapInfo.class.isAssignableFrom(of)) {
+            all = (List<T>) getMaps();
+        } else {
+            throw new IllegalArgumentException("Unknown type: " + of);
+        }
+        return all;
+    }
+
     private Comparator<Object> comparator(final SortBy sortOrder) {
         return new Comparator<Object>() {
             @Override
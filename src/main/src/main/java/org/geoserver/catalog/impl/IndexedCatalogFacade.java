@@ -0,0 +1,803 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.opengis.filter.And;
+import org.opengis.filter.Filter;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+
+/**
+ * In memory catalog facade that, on top of the collections managed by
+ * {@link DefaultCatalogFacade}, keeps secondary indexes on the most frequently looked up
+ * properties, turning the linear scans performed by the default facade into hash lookups.
+ * <p>
+ * The following indexes are maintained on add, save and remove:
+ * <ul>
+ * <li>id for stores, resources, layers, layer groups and styles</li>
+ * <li>name for stores, resources, layers, layer groups and styles</li>
+ * <li>prefixed name for layers</li>
+ * <li>workspace for stores</li>
+ * <li>store for resources</li>
+ * <li>resource, default style and styles for layers</li>
+ * </ul>
+ * {@link #list(Class, Filter, Integer, Integer, org.opengis.filter.sort.SortBy...)} also
+ * uses the indexes when the filter is a property equality (possibly and-ed with other
+ * conditions) against one of the indexed properties.
+ * </p>
+ * <p>
+ * The facade is used by {@link CatalogImpl} when the {@link #INDEXED_FACADE_KEY} system
+ * property, environment variable or servlet context parameter is set to {@code true}.
+ * </p>
+ */
+public class IndexedCatalogFacade extends DefaultCatalogFacade {
+
+    /**
+     * Enables the usage of the indexed facade in {@link CatalogImpl}
+     */
+    public static final String INDEXED_FACADE_KEY = "GEOSERVER_INDEXED_CATALOG_FACADE";
+
+    /**
+     * Serializes all index modifications, lookups are performed without locking
+     */
+    private final Object indexLock = new Object();
+
+    ConcurrentMap<String, StoreInfo> storesById = new ConcurrentHashMap<String, StoreInfo>();
+
+    Index<StoreInfo> storesByName = new Index<StoreInfo>();
+
+    Index<StoreInfo> storesByWorkspace = new Index<StoreInfo>();
+
+    ConcurrentMap<String, ResourceInfo> resourcesById = new ConcurrentHashMap<String, ResourceInfo>();
+
+    Index<ResourceInfo> resourcesByName = new Index<ResourceInfo>();
+
+    Index<ResourceInfo> resourcesByStore = new Index<ResourceInfo>();
+
+    ConcurrentMap<String, LayerInfo> layersById = new ConcurrentHashMap<String, LayerInfo>();
+
+    Index<LayerInfo> layersByName = new Index<LayerInfo>();
+
+    Index<LayerInfo> layersByPrefixedName = new Index<LayerInfo>();
+
+    Index<LayerInfo> layersByResource = new Index<LayerInfo>();
+
+    Index<LayerInfo> layersByDefaultStyle = new Index<LayerInfo>();
+
+    Index<LayerInfo> layersByStyle = new Index<LayerInfo>();
+
+    ConcurrentMap<String, LayerGroupInfo> layerGroupsById = new ConcurrentHashMap<String, LayerGroupInfo>();
+
+    Index<LayerGroupInfo> layerGroupsByName = new Index<LayerGroupInfo>();
+
+    ConcurrentMap<String, StyleInfo> stylesById = new ConcurrentHashMap<String, StyleInfo>();
+
+    Index<StyleInfo> stylesByName = new Index<StyleInfo>();
+
+    public IndexedCatalogFacade(Catalog catalog) {
+        super(catalog);
+    }
+
+    //
+    // Stores
+    //
+    @Override
+    public StoreInfo add(StoreInfo store) {
+        StoreInfo added = super.add(store);
+        synchronized (indexLock) {
+            index(unwrap(store));
+        }
+        return added;
+    }
+
+    @Override
+    public void remove(StoreInfo store) {
+        super.remove(store);
+        synchronized (indexLock) {
+            unindex(unwrap(store));
+        }
+    }
+
+    @Override
+    public void save(StoreInfo store) {
+        StoreInfo real = unwrap(store);
+        beforeSaved(store);
+        synchronized (indexLock) {
+            unindex(real);
+            commitProxy(store);
+            index(real);
+        }
+        afterSaved(store);
+    }
+
+    @Override
+    public <T extends StoreInfo> T getStore(String id, Class<T> clazz) {
+        StoreInfo store = storesById.get(id);
+        if (clazz.isInstance(store)) {
+            return ModificationProxy.create((T) store, clazz);
+        }
+        return null;
+    }
+
+    @Override
+    public <T extends StoreInfo> T getStoreByName(WorkspaceInfo workspace, String name,
+            Class<T> clazz) {
+        List<T> matches = new ArrayList<T>(2);
+        for (StoreInfo store : storesByName.get(name)) {
+            if (!clazz.isInstance(store)) {
+                continue;
+            }
+            if (workspace == ANY_WORKSPACE) {
+                matches.add((T) store);
+            } else if (store.getWorkspace() != null && store.getWorkspace().equals(workspace)) {
+                return ModificationProxy.create((T) store, clazz);
+            }
+        }
+        if (matches.size() == 1) {
+            return ModificationProxy.create(matches.get(0), clazz);
+        }
+        return null;
+    }
+
+    @Override
+    public <T extends StoreInfo> List<T> getStoresByWorkspace(WorkspaceInfo workspace,
+            Class<T> clazz) {
+        if (workspace == null) {
+            workspace = getDefaultWorkspace();
+        }
+        if (workspace == null) {
+            return Collections.emptyList();
+        }
+
+        return ModificationProxy.createList(
+                filter(storesByWorkspace.get(workspace.getId()), clazz), clazz);
+    }
+
+    //
+    // Resources
+    //
+    @Override
+    public ResourceInfo add(ResourceInfo resource) {
+        ResourceInfo added = super.add(resource);
+        synchronized (indexLock) {
+            index(unwrap(resource));
+        }
+        return added;
+    }
+
+    @Override
+    public void remove(ResourceInfo resource) {
+        super.remove(resource);
+        synchronized (indexLock) {
+            unindex(unwrap(resource));
+        }
+    }
+
+    @Override
+    public void save(ResourceInfo resource) {
+        ResourceInfo real = unwrap(resource);
+        beforeSaved(resource);
+        synchronized (indexLock) {
+            // the layer names are derived from the resource ones
+            List<LayerInfo> published = layersByResource.get(real.getId());
+            unindex(real);
+            for (LayerInfo layer : published) {
+                unindex(layer);
+            }
+            commitProxy(resource);
+            index(real);
+            for (LayerInfo layer : published) {
+                index(layer);
+            }
+        }
+        afterSaved(resource);
+    }
+
+    @Override
+    public <T extends ResourceInfo> T getResource(String id, Class<T> clazz) {
+        ResourceInfo resource = resourcesById.get(id);
+        if (clazz.isInstance(resource)) {
+            return ModificationProxy.create((T) resource, clazz);
+        }
+        return null;
+    }
+
+    @Override
+    public <T extends ResourceInfo> T getResourceByName(NamespaceInfo namespace, String name,
+            Class<T> clazz) {
+        List<T> matches = new ArrayList<T>(2);
+        for (ResourceInfo resource : resourcesByName.get(name)) {
+            if (!clazz.isInstance(resource)) {
+                continue;
+            }
+            if (namespace == ANY_NAMESPACE) {
+                matches.add((T) resource);
+            } else if (resource.getNamespace() != null
+                    && resource.getNamespace().equals(namespace)) {
+                return ModificationProxy.create((T) resource, clazz);
+            }
+        }
+        if (matches.size() == 1) {
+            return ModificationProxy.create(matches.get(0), clazz);
+        }
+        return null;
+    }
+
+    @Override
+    public <T extends ResourceInfo> T getResourceByStore(StoreInfo store, String name,
+            Class<T> clazz) {
+        for (ResourceInfo resource : resourcesByStore.get(store.getId())) {
+            if (clazz.isInstance(resource) && name.equals(resource.getName())) {
+                return ModificationProxy.create((T) resource, clazz);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public <T extends ResourceInfo> List<T> getResourcesByStore(StoreInfo store, Class<T> clazz) {
+        return ModificationProxy.createList(filter(resourcesByStore.get(store.getId()), clazz),
+                clazz);
+    }
+
+    //
+    // Layers
+    //
+    @Override
+    public LayerInfo add(LayerInfo layer) {
+        LayerInfo added = super.add(layer);
+        synchronized (indexLock) {
+            index(unwrap(layer));
+        }
+        return added;
+    }
+
+    @Override
+    public void remove(LayerInfo layer) {
+        super.remove(layer);
+        synchronized (indexLock) {
+            unindex(unwrap(layer));
+        }
+    }
+
+    @Override
+    public void save(LayerInfo layer) {
+        LayerInfo real = unwrap(layer);
+        beforeSaved(layer);
+        synchronized (indexLock) {
+            unindex(real);
+            commitProxy(layer);
+            index(real);
+        }
+        afterSaved(layer);
+    }
+
+    @Override
+    public LayerInfo getLayer(String id) {
+        LayerInfo layer = layersById.get(id);
+        return layer != null ? ModificationProxy.create(layer, LayerInfo.class) : null;
+    }
+
+    @Override
+    public LayerInfo getLayerByName(String name) {
+        List<LayerInfo> matches = layersByName.get(name);
+        if (matches.isEmpty()) {
+            return null;
+        }
+        return ModificationProxy.create(matches.get(0), LayerInfo.class);
+    }
+
+    @Override
+    public List<LayerInfo> getLayers(ResourceInfo resource) {
+        return ModificationProxy.createList(layersByResource.get(resource.getId()),
+                LayerInfo.class);
+    }
+
+    @Override
+    public List<LayerInfo> getLayers(StyleInfo style) {
+        // preserve the order in which layers have been added to the catalog
+        Map<String, LayerInfo> matches = new LinkedHashMap<String, LayerInfo>();
+        for (LayerInfo layer : layersByDefaultStyle.get(style.getId())) {
+            matches.put(layer.getId(), layer);
+        }
+        for (LayerInfo layer : layersByStyle.get(style.getId())) {
+            matches.put(layer.getId(), layer);
+        }
+        return ModificationProxy.createList(new ArrayList<LayerInfo>(matches.values()),
+                LayerInfo.class);
+    }
+
+    //
+    // Layer groups
+    //
+    @Override
+    public LayerGroupInfo add(LayerGroupInfo layerGroup) {
+        LayerGroupInfo added = super.add(layerGroup);
+        synchronized (indexLock) {
+            index(unwrap(layerGroup));
+        }
+        return added;
+    }
+
+    @Override
+    public void remove(LayerGroupInfo layerGroup) {
+        super.remove(layerGroup);
+        synchronized (indexLock) {
+            unindex(unwrap(layerGroup));
+        }
+    }
+
+    @Override
+    public void save(LayerGroupInfo layerGroup) {
+        LayerGroupInfo real = unwrap(layerGroup);
+        beforeSaved(layerGroup);
+        synchronized (indexLock) {
+            unindex(real);
+            commitProxy(layerGroup);
+            index(real);
+        }
+        afterSaved(layerGroup);
+    }
+
+    @Override
+    public LayerGroupInfo getLayerGroup(String id) {
+        LayerGroupInfo group = layerGroupsById.get(id);
+        return group != null ? ModificationProxy.create(group, LayerGroupInfo.class) : null;
+    }
+
+    @Override
+    public LayerGroupInfo getLayerGroupByName(WorkspaceInfo workspace, String name) {
+        List<LayerGroupInfo> matches = new ArrayList<LayerGroupInfo>(2);
+        for (LayerGroupInfo layerGroup : layerGroupsByName.get(name)) {
+            WorkspaceInfo lgWorkspace = layerGroup.getWorkspace();
+            if (NO_WORKSPACE == workspace) {
+                if (lgWorkspace == null) {
+                    matches.add(layerGroup);
+                }
+            } else if (ANY_WORKSPACE == workspace) {
+                matches.add(layerGroup);
+            } else if (lgWorkspace != null && workspace.equals(lgWorkspace)) {
+                matches.add(layerGroup);
+            }
+            if (matches.size() > 1) {
+                break;
+            }
+        }
+
+        if (matches.size() == 1) {
+            return ModificationProxy.create(matches.get(0), LayerGroupInfo.class);
+        }
+        return null;
+    }
+
+    //
+    // Namespaces
+    //
+    @Override
+    public void save(NamespaceInfo namespace) {
+        NamespaceInfo real = unwrap(namespace);
+        String oldPrefix = real.getPrefix();
+        super.save(namespace);
+        if (oldPrefix != null && !oldPrefix.equals(real.getPrefix())) {
+            // the prefixed names of the layers changed
+            synchronized (indexLock) {
+                layersByPrefixedName.clear();
+                for (LayerInfo layer : layers) {
+                    layersByPrefixedName.add(prefixedName(layer), layer);
+                }
+            }
+        }
+    }
+
+    //
+    // Styles
+    //
+    @Override
+    public StyleInfo add(StyleInfo style) {
+        StyleInfo added = super.add(style);
+        synchronized (indexLock) {
+            index(unwrap(style));
+        }
+        return added;
+    }
+
+    @Override
+    public void remove(StyleInfo style) {
+        super.remove(style);
+        synchronized (indexLock) {
+            unindex(unwrap(style));
+        }
+    }
+
+    @Override
+    public void save(StyleInfo style) {
+        StyleInfo real = unwrap(style);
+        beforeSaved(style);
+        synchronized (indexLock) {
+            unindex(real);
+            commitProxy(style);
+            index(real);
+        }
+        afterSaved(style);
+    }
+
+    @Override
+    public StyleInfo getStyle(String id) {
+        StyleInfo style = stylesById.get(id);
+        return style != null ? ModificationProxy.create(style, StyleInfo.class) : null;
+    }
+
+    @Override
+    public StyleInfo getStyleByName(String name) {
+        for (StyleInfo style : stylesByName.get(name)) {
+            if (style.getWorkspace() == null) {
+                return ModificationProxy.create(style, StyleInfo.class);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public StyleInfo getStyleByName(WorkspaceInfo workspace, String name) {
+        if (null == workspace) {
+            throw new NullPointerException("workspace");
+        }
+        if (null == name) {
+            throw new NullPointerException("name");
+        }
+        List<StyleInfo> matches = new ArrayList<StyleInfo>(2);
+        for (StyleInfo style : stylesByName.get(name)) {
+            if (workspace == ANY_WORKSPACE) {
+                matches.add(style);
+            } else if (style.getWorkspace() != null && style.getWorkspace().equals(workspace)
+                    || style.getWorkspace() == null && workspace == NO_WORKSPACE) {
+                return ModificationProxy.create(style, StyleInfo.class);
+            }
+        }
+        if (matches.size() == 1) {
+            return ModificationProxy.create(matches.get(0), StyleInfo.class);
+        }
+        return null;
+    }
+
+    //
+    // Querying
+    //
+    @Override
+    protected <T extends CatalogInfo> List<T> candidates(Class<? super T> of, Filter filter) {
+        List<? extends CatalogInfo> indexed = indexLookup(of, filter);
+        if (indexed == null) {
+            return super.candidates(of, filter);
+        }
+
+        List<T> result = new ArrayList<T>(indexed.size());
+        for (CatalogInfo info : indexed) {
+            if (of.isInstance(info)) {
+                result.add((T) info);
+            }
+        }
+        return ModificationProxy.createList(result, (Class<T>) of);
+    }
+
+    /**
+     * Uses the indexes to locate the objects that might match the filter, returns {@code null}
+     * if the filter cannot be resolved against an index
+     */
+    List<? extends CatalogInfo> indexLookup(Class<?> of, Filter filter) {
+        if (filter instanceof And) {
+            for (Filter child : ((And) filter).getChildren()) {
+                List<? extends CatalogInfo> result = indexLookup(of, child);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return null;
+        }
+        if (!(filter instanceof PropertyIsEqualTo)) {
+            return null;
+        }
+        PropertyIsEqualTo equal = (PropertyIsEqualTo) filter;
+        Expression ex1 = equal.getExpression1();
+        Expression ex2 = equal.getExpression2();
+        if (ex1 instanceof Literal && ex2 instanceof PropertyName) {
+            Expression tmp = ex1;
+            ex1 = ex2;
+            ex2 = tmp;
+        }
+        if (!(ex1 instanceof PropertyName) || !(ex2 instanceof Literal)
+                || !equal.isMatchingCase()) {
+            return null;
+        }
+        String property = ((PropertyName) ex1).getPropertyName();
+        Object value = ((Literal) ex2).getValue();
+        if (!(value instanceof String)) {
+            return null;
+        }
+        String key = (String) value;
+
+        if ("id".equals(property)) {
+            CatalogInfo info = null;
+            if (StoreInfo.class.isAssignableFrom(of)) {
+                info = storesById.get(key);
+            } else if (ResourceInfo.class.isAssignableFrom(of)) {
+                info = resourcesById.get(key);
+            } else if (LayerInfo.class.isAssignableFrom(of)) {
+                info = layersById.get(key);
+            } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
+                info = layerGroupsById.get(key);
+            } else if (StyleInfo.class.isAssignableFrom(of)) {
+                info = stylesById.get(key);
+            } else if (PublishedInfo.class.equals(of)) {
+                info = layersById.get(key);
+                if (info == null) {
+                    info = layerGroupsById.get(key);
+                }
+            } else {
+                return null;
+            }
+            return info == null ? Collections.<CatalogInfo> emptyList() : Collections
+                    .singletonList(info);
+        } else if (StoreInfo.class.isAssignableFrom(of)) {
+            if ("name".equals(property)) {
+                return storesByName.get(key);
+            } else if ("workspace.id".equals(property)) {
+                return storesByWorkspace.get(key);
+            }
+        } else if (ResourceInfo.class.isAssignableFrom(of)) {
+            if ("name".equals(property)) {
+                return resourcesByName.get(key);
+            } else if ("store.id".equals(property)) {
+                return resourcesByStore.get(key);
+            }
+        } else if (LayerInfo.class.isAssignableFrom(of)) {
+            if ("name".equals(property)) {
+                return layersByName.get(key);
+            } else if ("prefixedName".equals(property)) {
+                return layersByPrefixedName.get(key);
+            } else if ("resource.id".equals(property)) {
+                return layersByResource.get(key);
+            } else if ("defaultStyle.id".equals(property)) {
+                return layersByDefaultStyle.get(key);
+            }
+        } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
+            if ("name".equals(property)) {
+                return layerGroupsByName.get(key);
+            }
+        } else if (StyleInfo.class.isAssignableFrom(of)) {
+            if ("name".equals(property)) {
+                return stylesByName.get(key);
+            }
+        }
+
+        return null;
+    }
+
+    //
+    // Index maintenance
+    //
+    @Override
+    protected void reindex() {
+        synchronized (indexLock) {
+            clearIndexes();
+            for (StoreInfo store : lookup(StoreInfo.class, stores)) {
+                index(store);
+            }
+            for (ResourceInfo resource : lookup(ResourceInfo.class, resources)) {
+                index(resource);
+            }
+            for (StyleInfo style : styles) {
+                index(style);
+            }
+            for (LayerInfo layer : layers) {
+                index(layer);
+            }
+            for (LayerGroupInfo layerGroup : layerGroups) {
+                index(layerGroup);
+            }
+        }
+    }
+
+    @Override
+    public void resolve() {
+        super.resolve();
+        reindex();
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        synchronized (indexLock) {
+            clearIndexes();
+        }
+    }
+
+    private void clearIndexes() {
+        storesById.clear();
+        storesByName.clear();
+        storesByWorkspace.clear();
+        resourcesById.clear();
+        resourcesByName.clear();
+        resourcesByStore.clear();
+        layersById.clear();
+        layersByName.clear();
+        layersByPrefixedName.clear();
+        layersByResource.clear();
+        layersByDefaultStyle.clear();
+        layersByStyle.clear();
+        layerGroupsById.clear();
+        layerGroupsByName.clear();
+        stylesById.clear();
+        stylesByName.clear();
+    }
+
+    private void index(StoreInfo store) {
+        storesById.put(store.getId(), store);
+        storesByName.add(store.getName(), store);
+        storesByWorkspace.add(id(store.getWorkspace()), store);
+    }
+
+    private void unindex(StoreInfo store) {
+        storesById.remove(store.getId());
+        storesByName.remove(store.getName(), store);
+        storesByWorkspace.remove(id(store.getWorkspace()), store);
+    }
+
+    private void index(ResourceInfo resource) {
+        resourcesById.put(resource.getId(), resource);
+        resourcesByName.add(resource.getName(), resource);
+        resourcesByStore.add(id(resource.getStore()), resource);
+    }
+
+    private void unindex(ResourceInfo resource) {
+        resourcesById.remove(resource.getId());
+        resourcesByName.remove(resource.getName(), resource);
+        resourcesByStore.remove(id(resource.getStore()), resource);
+    }
+
+    private void index(LayerInfo layer) {
+        layersById.put(layer.getId(), layer);
+        layersByName.add(layer.getName(), layer);
+        layersByPrefixedName.add(prefixedName(layer), layer);
+        layersByResource.add(id(layer.getResource()), layer);
+        layersByDefaultStyle.add(id(layer.getDefaultStyle()), layer);
+        for (StyleInfo style : layer.getStyles()) {
+            layersByStyle.add(id(style), layer);
+        }
+    }
+
+    private void unindex(LayerInfo layer) {
+        layersById.remove(layer.getId());
+        layersByName.remove(layer.getName(), layer);
+        layersByPrefixedName.remove(prefixedName(layer), layer);
+        layersByResource.remove(id(layer.getResource()), layer);
+        layersByDefaultStyle.remove(id(layer.getDefaultStyle()), layer);
+        for (StyleInfo style : layer.getStyles()) {
+            layersByStyle.remove(id(style), layer);
+        }
+    }
+
+    private void index(LayerGroupInfo layerGroup) {
+        layerGroupsById.put(layerGroup.getId(), layerGroup);
+        layerGroupsByName.add(layerGroup.getName(), layerGroup);
+    }
+
+    private void unindex(LayerGroupInfo layerGroup) {
+        layerGroupsById.remove(layerGroup.getId());
+        layerGroupsByName.remove(layerGroup.getName(), layerGroup);
+    }
+
+    private void index(StyleInfo style) {
+        stylesById.put(style.getId(), style);
+        stylesByName.add(style.getName(), style);
+    }
+
+    private void unindex(StyleInfo style) {
+        stylesById.remove(style.getId());
+        stylesByName.remove(style.getName(), style);
+    }
+
+    private static String id(CatalogInfo info) {
+        return info == null ? null : info.getId();
+    }
+
+    private static String prefixedName(LayerInfo layer) {
+        ResourceInfo resource = layer.getResource();
+        if (resource == null || resource.getNamespace() == null) {
+            return layer.getName();
+        }
+        return resource.getNamespace().getPrefix() + ":" + layer.getName();
+    }
+
+    private static <T> List<T> filter(Collection<?> infos, Class<T> clazz) {
+        List<T> result = new ArrayList<T>(infos.size());
+        for (Object info : infos) {
+            if (clazz.isInstance(info)) {
+                result.add((T) info);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A multi valued index, associating a key to all the catalog objects sharing it. Objects
+     * are tracked by identifier as the equality of the catalog info objects depends on mutable
+     * state, and are returned in insertion order.
+     * <p>
+     * Modifications are expected to be serialized by the caller, lookups can be performed
+     * concurrently.
+     * </p>
+     */
+    static class Index<T extends CatalogInfo> {
+
+        ConcurrentMap<String, Map<String, T>> buckets = new ConcurrentHashMap<String, Map<String, T>>();
+
+        void add(String key, T info) {
+            if (key == null || info.getId() == null) {
+                return;
+            }
+            Map<String, T> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new LinkedHashMap<String, T>();
+                buckets.put(key, bucket);
+            }
+            synchronized (bucket) {
+                bucket.put(info.getId(), info);
+            }
+        }
+
+        void remove(String key, T info) {
+            if (key == null) {
+                return;
+            }
+            Map<String, T> bucket = buckets.get(key);
+            if (bucket != null) {
+                synchronized (bucket) {
+                    bucket.remove(info.getId());
+                    if (bucket.isEmpty()) {
+                        buckets.remove(key);
+                    }
+                }
+            }
+        }
+
+        List<T> get(String key) {
+            if (key == null) {
+                return Collections.emptyList();
+            }
+            Map<String, T> bucket = buckets.get(key);
+            if (bucket == null) {
+                return Collections.emptyList();
+            }
+            synchronized (bucket) {
+                return new ArrayList<T>(bucket.values());
+            }
+        }
+
+        void clear() {
+            buckets.clear();
+        }
+    }
+}
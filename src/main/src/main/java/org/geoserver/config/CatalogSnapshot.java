@@ -0,0 +1,315 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.Resource.Type;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Binary snapshot of the catalog and of the global configuration, used to speed up the startup
+ * of GeoServer on large data directories.
+ * <p>
+ * The snapshot is written with java serialization in the {@link #SNAPSHOT_FILE} resource at the
+ * root of the data directory, along with the paths and last modified dates of all the catalog
+ * configuration files. The snapshot is used on startup only if the configuration files have not
+ * been added, removed or modified since the snapshot has been taken, otherwise GeoServer falls
+ * back on a normal load, and writes a new snapshot after it.
+ * </p>
+ * <p>
+ * Snapshots are enabled by setting the {@link #SNAPSHOT_KEY} system property, environment
+ * variable or servlet context parameter to {@code true}.
+ * </p>
+ */
+public class CatalogSnapshot {
+
+    static final Logger LOGGER = Logging.getLogger("org.geoserver");
+
+    /**
+     * Enables the usage of catalog snapshots
+     */
+    public static final String SNAPSHOT_KEY = "GEOSERVER_CATALOG_SNAPSHOT";
+
+    /**
+     * Name of the snapshot resource in the data directory
+     */
+    public static final String SNAPSHOT_FILE = "catalog.snapshot";
+
+    /**
+     * Version of the snapshot format, to be incremented whenever the format, or the catalog
+     * classes serialized form, changes in an incompatible way
+     */
+    static final int VERSION = 1;
+
+    GeoServerResourceLoader resourceLoader;
+
+    /**
+     * The global configuration read along with the catalog, if any
+     */
+    GeoServerInfo global;
+
+    public CatalogSnapshot(GeoServerResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    /**
+     * Returns true if catalog snapshots have been enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.valueOf(GeoServerExtensions.getProperty(SNAPSHOT_KEY));
+    }
+
+    /**
+     * Reads the catalog from the snapshot, returns null if the snapshot is missing, out of date,
+     * or cannot be read.
+     */
+    public CatalogImpl readCatalog() {
+        global = null;
+        Resource resource = resourceLoader.get(SNAPSHOT_FILE);
+        if (resource.getType() != Type.RESOURCE) {
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+        Contents contents;
+        try {
+            ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(
+                    new BufferedInputStream(resource.in())));
+            try {
+                if (in.readInt() != VERSION) {
+                    LOGGER.info("Catalog snapshot has a different version, ignoring it");
+                    return null;
+                }
+                Map<String, Long> files = (Map<String, Long>) in.readObject();
+                if (!files.equals(scan())) {
+                    LOGGER.info("Configuration files changed since the catalog snapshot "
+                            + "was taken, ignoring it");
+                    return null;
+                }
+                contents = (Contents) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to read the catalog snapshot, ignoring it", e);
+            return null;
+        }
+
+        CatalogImpl catalog = new CatalogImpl();
+        catalog.setResourceLoader(resourceLoader);
+        try {
+            contents.restore(catalog);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to restore the catalog snapshot, ignoring it", e);
+            return null;
+        }
+        catalog.resolve();
+        global = contents.global;
+
+        LOGGER.info("Catalog loaded from snapshot in " + (System.currentTimeMillis() - start)
+                + " ms");
+        return catalog;
+    }
+
+    /**
+     * Returns the global configuration read by the last successful {@link #readCatalog()} call,
+     * or null if not available
+     */
+    public GeoServerInfo getGlobal() {
+        return global;
+    }
+
+    /**
+     * Writes down a new snapshot of the specified catalog and global configuration
+     */
+    public void write(Catalog catalog, GeoServerInfo global) {
+        long start = System.currentTimeMillis();
+        Resource resource = resourceLoader.get(SNAPSHOT_FILE);
+        try {
+            Map<String, Long> files = scan();
+            Contents contents = new Contents(catalog, global);
+            ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(resource.out())));
+            try {
+                out.writeInt(VERSION);
+                out.writeObject(files);
+                out.writeObject(contents);
+            } finally {
+                out.close();
+            }
+            LOGGER.info("Catalog snapshot written in " + (System.currentTimeMillis() - start)
+                    + " ms");
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to write the catalog snapshot", e);
+            resource.delete();
+        }
+    }
+
+    /**
+     * Collects the paths and last modified dates of the configuration files the catalog and the
+     * global configuration are loaded from
+     */
+    Map<String, Long> scan() {
+        Map<String, Long> files = new HashMap<String, Long>();
+        scan(resourceLoader.get("global.xml"), files);
+        scan(resourceLoader.get("catalog.xml"), files);
+        scan(resourceLoader.get("styles"), files);
+        scan(resourceLoader.get("layergroups"), files);
+        scan(resourceLoader.get("workspaces"), files);
+        return files;
+    }
+
+    void scan(Resource resource, Map<String, Long> files) {
+        if (resource.getType() == Type.DIRECTORY) {
+            for (Resource child : resource.list()) {
+                scan(child, files);
+            }
+        } else if (resource.getType() == Type.RESOURCE && resource.name().endsWith(".xml")) {
+            files.put(resource.path(), resource.lastmodified());
+        }
+    }
+
+    /**
+     * The serialized contents of the snapshot
+     */
+    static class Contents implements Serializable {
+
+        private static final long serialVersionUID = -3085573470566219447L;
+
+        List<WorkspaceInfo> workspaces = new ArrayList<WorkspaceInfo>();
+
+        List<NamespaceInfo> namespaces = new ArrayList<NamespaceInfo>();
+
+        List<StyleInfo> styles = new ArrayList<StyleInfo>();
+
+        List<StoreInfo> stores = new ArrayList<StoreInfo>();
+
+        List<ResourceInfo> resources = new ArrayList<ResourceInfo>();
+
+        List<LayerInfo> layers = new ArrayList<LayerInfo>();
+
+        List<LayerGroupInfo> layerGroups = new ArrayList<LayerGroupInfo>();
+
+        WorkspaceInfo defaultWorkspace;
+
+        NamespaceInfo defaultNamespace;
+
+        Map<String, DataStoreInfo> defaultDataStores = new HashMap<String, DataStoreInfo>();
+
+        GeoServerInfo global;
+
+        Contents(Catalog catalog, GeoServerInfo global) {
+            workspaces.addAll(unwrap(catalog.getWorkspaces()));
+            namespaces.addAll(unwrap(catalog.getNamespaces()));
+            styles.addAll(unwrap(catalog.getStyles()));
+            stores.addAll(unwrap(catalog.getStores(StoreInfo.class)));
+            resources.addAll(unwrap(catalog.getResources(ResourceInfo.class)));
+            layers.addAll(unwrap(catalog.getLayers()));
+            layerGroups.addAll(unwrap(catalog.getLayerGroups()));
+            defaultWorkspace = ModificationProxy.unwrap(catalog.getDefaultWorkspace());
+            defaultNamespace = ModificationProxy.unwrap(catalog.getDefaultNamespace());
+            for (WorkspaceInfo ws : workspaces) {
+                DataStoreInfo ds = catalog.getDefaultDataStore(ws);
+                if (ds != null) {
+                    defaultDataStores.put(ws.getId(), ModificationProxy.unwrap(ds));
+                }
+            }
+            this.global = ModificationProxy.unwrap(global);
+        }
+
+        /**
+         * Adds the snapshot contents to the catalog
+         */
+        void restore(Catalog catalog) {
+            for (WorkspaceInfo ws : workspaces) {
+                catalog.add(ws);
+            }
+            for (NamespaceInfo ns : namespaces) {
+                catalog.add(ns);
+            }
+            if (defaultWorkspace != null) {
+                catalog.setDefaultWorkspace(defaultWorkspace);
+            }
+            if (defaultNamespace != null) {
+                catalog.setDefaultNamespace(defaultNamespace);
+            }
+            for (StyleInfo s : styles) {
+                catalog.add(s);
+            }
+            for (StoreInfo s : stores) {
+                catalog.add(s);
+            }
+            for (WorkspaceInfo ws : workspaces) {
+                DataStoreInfo ds = defaultDataStores.get(ws.getId());
+                if (ds != null) {
+                    catalog.setDefaultDataStore(ws, ds);
+                }
+            }
+            for (ResourceInfo r : resources) {
+                catalog.add(r);
+            }
+            for (LayerInfo l : layers) {
+                catalog.add(l);
+            }
+            for (LayerGroupInfo lg : layerGroups) {
+                catalog.add(lg);
+            }
+
+            // the stores disabled due to connection errors in the previous run are not disabled
+            // in the configuration files, check them again like a normal load does
+            for (StoreInfo s : stores) {
+                if (!(s instanceof DataStoreInfo) || s.getError() == null) {
+                    continue;
+                }
+                s.setError(null);
+                s.setEnabled(true);
+                try {
+                    ((DataStoreInfo) s).getDataStore(null);
+                } catch (Throwable t) {
+                    LOGGER.warning("Error connecting to '" + s.getName() + "'. Disabling.");
+                    LOGGER.log(Level.INFO, "", t);
+
+                    s.setError(t);
+                    s.setEnabled(false);
+                }
+            }
+        }
+
+        static <T> List<T> unwrap(List<T> infos) {
+            List<T> result = new ArrayList<T>(infos.size());
+            for (T info : infos) {
+                result.add(ModificationProxy.unwrap(info));
+            }
+            return result;
+        }
+    }
+}
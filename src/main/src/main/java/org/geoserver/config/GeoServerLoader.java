@@ -66,9 +66,17 @@ public abstract class GeoServerLoader {
 
     static Logger LOGGER = Logging.getLogger( "org.geoserver" );
     
+    /**
+     * The number of threads used to parse the catalog configuration files, values greater than
+     * one enable the parallel catalog loading
+     */
+    public static final String LOADER_THREADS_KEY = "GEOSERVER_LOADER_THREADS";
+    
     protected GeoServerResourceLoader resourceLoader;
     GeoServer geoserver;
     XStreamPersisterFactory xpf = new XStreamPersisterFactory();
+    Integer loaderThreads;
+    CatalogSnapshot snapshot;
     
     //JD: this is a hack for the moment, it is used only to maintain tests since the test setup relies
     // on the old data directory structure, once the tests have been ported to the new structure
@@ -87,6 +95,43 @@ public abstract class GeoServerLoader {
         this.xpf = xpf;
     }
     
+    /**
+     * Sets the number of threads used to parse the catalog configuration files. When not set
+     * the {@link #LOADER_THREADS_KEY} property is used, and the catalog is loaded sequentially
+     * if the latter is missing too.
+     */
+    public void setLoaderThreads(int loaderThreads) {
+        this.loaderThreads = loaderThreads;
+    }
+    
+    int getLoaderThreads() {
+        if (loaderThreads != null) {
+            return loaderThreads;
+        }
+        String value = GeoServerExtensions.getProperty(LOADER_THREADS_KEY);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + LOADER_THREADS_KEY + ": " + value
+                        + ", loading the catalog sequentially");
+            }
+        }
+        return 1;
+    }
+    
+    /**
+     * Returns the catalog snapshot support, or null if snapshots are not enabled
+     * 
+     * @see CatalogSnapshot#SNAPSHOT_KEY
+     */
+    CatalogSnapshot getSnapshot() {
+        if (snapshot == null && CatalogSnapshot.isEnabled()) {
+            snapshot = new CatalogSnapshot(resourceLoader);
+        }
+        return snapshot;
+    }
+    
     public static void setLegacy(boolean legacy) {
         GeoServerLoader.legacy = legacy;
     }
@@ -128,6 +173,8 @@ public abstract class GeoServerLoader {
                 
                 //load initializers
                 loadInitializers(geoserver);
+                
+                writeSnapshot();
             } 
             catch (Exception e) {
                 throw new RuntimeException( e );
@@ -209,6 +256,28 @@ public abstract class GeoServerLoader {
         
         loadCatalog( catalog, xp );
         loadGeoServer( geoserver, xp);
+        
+        writeSnapshot();
+    }
+    
+    /**
+     * Writes down a new catalog snapshot, unless snapshots are disabled or the configuration
+     * has just been loaded from an up to date one
+     */
+    void writeSnapshot() {
+        CatalogSnapshot snapshot = getSnapshot();
+        if (snapshot == null) {
+            return;
+        }
+        if (snapshot.getGlobal() == null) {
+            Catalog catalog = geoserver.getCatalog();
+            if ( catalog instanceof Wrapper ) {
+                catalog = ((Wrapper)catalog).unwrap(Catalog.class);
+            }
+            snapshot.write(catalog, geoserver.getGlobal());
+        } else {
+            snapshot.global = null;
+        }
     }
 
     protected void readCatalog(Catalog catalog, XStreamPersister xp) throws Exception {
@@ -222,8 +291,15 @@ public abstract class GeoServerLoader {
         // an old data directory
         File f = resourceLoader.find( "catalog.xml" );
         if ( f == null ) {
-            //assume 2.x style data directory
-            CatalogImpl catalog2 = (CatalogImpl) readCatalog( xp );
+            //assume 2.x style data directory, use the snapshot if available and up to date
+            CatalogImpl catalog2 = null;
+            CatalogSnapshot snapshot = getSnapshot();
+            if (snapshot != null) {
+                catalog2 = snapshot.readCatalog();
+            }
+            if (catalog2 == null) {
+                catalog2 = (CatalogImpl) readCatalog( xp );
+            }
             // make to remove the old resource pool catalog listener
             ((CatalogImpl)catalog).sync( catalog2 );
         } else {
@@ -243,6 +319,11 @@ public abstract class GeoServerLoader {
      * Reads the catalog from disk.
      */
     Catalog readCatalog( XStreamPersister xp ) throws Exception {
+        int threads = getLoaderThreads();
+        if (threads > 1) {
+            return new ParallelCatalogReader(this, threads).read(xp);
+        }
+        
         CatalogImpl catalog = new CatalogImpl();
         catalog.setResourceLoader(resourceLoader);
         xp.setCatalog( catalog );
@@ -535,7 +616,7 @@ public abstract class GeoServerLoader {
      * @param f
      * @return
      */
-    private boolean isConfigDirectory(File dir) {
+    boolean isConfigDirectory(File dir) {
         String name = dir.getName();
         boolean result = "styles".equals(name) || "layergroups".equals(name);
         return result;
@@ -618,7 +699,9 @@ public abstract class GeoServerLoader {
             //assume 2.x style
             f = resourceLoader.find( "global.xml");
             if ( f != null ) {
-                GeoServerInfo global = depersist(xp, f, GeoServerInfo.class);
+                CatalogSnapshot snapshot = getSnapshot();
+                GeoServerInfo global = snapshot != null && snapshot.getGlobal() != null ? 
+                        snapshot.getGlobal() : depersist(xp, f, GeoServerInfo.class);
                 geoServer.setGlobal( global );
             }
             
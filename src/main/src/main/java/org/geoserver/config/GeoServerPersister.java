@@ -40,10 +40,10 @@ import org.geoserver.catalog.WMSLayerInfo;
 import org.geoserver.catalog.WMSStoreInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.event.CatalogAddEvent;
-import org.geoserver.catalog.event.CatalogListener;
 import org.geoserver.catalog.event.CatalogModifyEvent;
 import org.geoserver.catalog.event.CatalogPostModifyEvent;
 import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.event.SynchronousCatalogListener;
 import org.geoserver.config.util.XStreamPersister;
 import org.geoserver.platform.GeoServerResourceLoader;
 import org.geoserver.platform.resource.Files;
@@ -56,7 +56,7 @@ import org.geotools.util.logging.Logging;
 
 
 
-public class GeoServerPersister implements CatalogListener, ConfigurationListener {
+public class GeoServerPersister implements SynchronousCatalogListener, ConfigurationListener {
 
     private static final int MAX_RENAME_ATTEMPTS = 100;
 
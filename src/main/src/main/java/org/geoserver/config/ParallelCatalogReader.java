@@ -0,0 +1,469 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.filefilter.DirectoryFileFilter;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CoverageInfo;
+import org.geoserver.catalog.CoverageStoreInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WMSLayerInfo;
+import org.geoserver.catalog.WMSStoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Reads the catalog from a 2.x style data directory parsing the configuration files
+ * concurrently.
+ * <p>
+ * The load is split in phases (workspaces and namespaces, styles, stores, resources, layers, layer
+ * groups). Within each phase the files are parsed by a fork join pool, the parsed objects are then
+ * added to the catalog by the calling thread, in the same order used by the sequential loader.
+ * Parsing resolves the references to other catalog objects, so the catalog is never modified
+ * while a phase is being parsed. Layer groups can reference each other and are thus loaded
+ * sequentially.
+ * </p>
+ *
+ * @see GeoServerLoader#setLoaderThreads(int)
+ */
+class ParallelCatalogReader {
+
+    static final Logger LOGGER = Logging.getLogger("org.geoserver");
+
+    GeoServerLoader loader;
+
+    GeoServerResourceLoader resourceLoader;
+
+    int threads;
+
+    ForkJoinPool pool;
+
+    CatalogImpl catalog;
+
+    ThreadLocal<XStreamPersister> persisters = new ThreadLocal<XStreamPersister>() {
+        protected XStreamPersister initialValue() {
+            XStreamPersister xp = loader.xpf.createXMLPersister();
+            xp.setCatalog(catalog);
+            xp.setUnwrapNulls(false);
+            return xp;
+        }
+    };
+
+    public ParallelCatalogReader(GeoServerLoader loader, int threads) {
+        this.loader = loader;
+        this.resourceLoader = loader.resourceLoader;
+        this.threads = threads;
+    }
+
+    /**
+     * Reads the catalog from disk.
+     */
+    Catalog read(XStreamPersister xp) throws Exception {
+        long start = System.currentTimeMillis();
+        catalog = new CatalogImpl();
+        catalog.setResourceLoader(resourceLoader);
+        xp.setCatalog(catalog);
+        xp.setUnwrapNulls(false);
+
+        pool = new ForkJoinPool(threads);
+        try {
+            File workspaces = resourceLoader.find("workspaces");
+            List<File> workspaceDirs = new ArrayList<File>();
+            List<File> loadedWorkspaceDirs = new ArrayList<File>();
+            if (workspaces != null) {
+                workspaceDirs.addAll(loader.list(workspaces, DirectoryFileFilter.INSTANCE));
+                loadedWorkspaceDirs = loadWorkspaces(workspaces, workspaceDirs, xp);
+            } else {
+                LOGGER.warning("No 'workspaces' directory found, unable to load any stores.");
+            }
+
+            loadStyles(loadedWorkspaceDirs);
+
+            List<Entry<StoreInfo>> stores = loadStores(workspaceDirs);
+            List<Entry<ResourceInfo>> resources = loadResources(stores);
+            loadLayers(resources);
+
+            // layer groups can be nested, load them sequentially
+            long phaseStart = System.currentTimeMillis();
+            for (File wsd : workspaceDirs) {
+                File layergroups = resourceLoader.find(wsd, "layergroups");
+                if (layergroups != null) {
+                    loader.loadLayerGroups(layergroups, catalog, xp);
+                }
+            }
+            File layergroups = resourceLoader.find("layergroups");
+            if (layergroups != null) {
+                loader.loadLayerGroups(layergroups, catalog, xp);
+            }
+            logPhase("layer groups", catalog.getLayerGroups().size(), phaseStart);
+        } finally {
+            pool.shutdown();
+        }
+
+        xp.setUnwrapNulls(true);
+        catalog.resolve();
+
+        LOGGER.info("Catalog loaded in " + (System.currentTimeMillis() - start) + " ms using "
+                + threads + " threads");
+        return catalog;
+    }
+
+    List<File> loadWorkspaces(File workspaces, List<File> workspaceDirs, XStreamPersister xp)
+            throws Exception {
+        long start = System.currentTimeMillis();
+
+        // the default workspace
+        File dws = new File(workspaces, "default.xml");
+        WorkspaceInfo defaultWorkspace = null;
+        if (dws.exists()) {
+            try {
+                defaultWorkspace = loader.depersist(xp, dws, WorkspaceInfo.class);
+                LOGGER.info("Loaded default workspace " + defaultWorkspace.getName());
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load default workspace", e);
+            }
+        } else {
+            LOGGER.warning("No default workspace was found.");
+        }
+
+        List<File> workspaceFiles = new ArrayList<File>();
+        List<File> namespaceFiles = new ArrayList<File>();
+        for (File wsd : workspaceDirs) {
+            workspaceFiles.add(new File(wsd, "workspace.xml"));
+            namespaceFiles.add(new File(wsd, "namespace.xml"));
+        }
+        List<WorkspaceInfo> parsedWorkspaces = parse(workspaceFiles, WorkspaceInfo.class,
+                "workspace");
+        List<NamespaceInfo> parsedNamespaces = parse(namespaceFiles, NamespaceInfo.class,
+                "namespace");
+
+        List<File> loaded = new ArrayList<File>();
+        for (int i = 0; i < workspaceDirs.size(); i++) {
+            File wsd = workspaceDirs.get(i);
+            WorkspaceInfo ws = parsedWorkspaces.get(i);
+            if (ws == null) {
+                continue;
+            }
+            try {
+                catalog.add(ws);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load workspace '" + wsd.getName() + "'", e);
+                continue;
+            }
+            loaded.add(wsd);
+            LOGGER.info("Loaded workspace '" + ws.getName() + "'");
+
+            NamespaceInfo ns = parsedNamespaces.get(i);
+            if (ns != null) {
+                try {
+                    catalog.add(ns);
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Failed to load namespace for '" + wsd.getName()
+                            + "'", e);
+                    ns = null;
+                }
+            }
+
+            // set the default workspace, see GeoServerLoader#readCatalog(XStreamPersister)
+            if (defaultWorkspace != null) {
+                if (ws.getName().equals(defaultWorkspace.getName())) {
+                    catalog.setDefaultWorkspace(ws);
+                    if (ns != null) {
+                        catalog.setDefaultNamespace(ns);
+                    }
+                }
+            } else {
+                defaultWorkspace = catalog.getDefaultWorkspace();
+                if (defaultWorkspace != null) {
+                    try {
+                        loader.persist(xp, defaultWorkspace, dws);
+                    } catch (Exception e) {
+                        LOGGER.log(Level.WARNING, "Failed to persist default workspace '"
+                                + wsd.getName() + "'", e);
+                    }
+                }
+            }
+        }
+        logPhase("workspaces", loaded.size(), start);
+        return loaded;
+    }
+
+    void loadStyles(List<File> workspaceDirs) throws Exception {
+        long start = System.currentTimeMillis();
+
+        List<File> files = new ArrayList<File>();
+        collectStyles(resourceLoader.find("styles"), files);
+        for (File wsd : workspaceDirs) {
+            collectStyles(resourceLoader.find(wsd, "styles"), files);
+        }
+
+        List<StyleInfo> styles = parse(files, StyleInfo.class, "style");
+        int count = 0;
+        for (int i = 0; i < files.size(); i++) {
+            StyleInfo s = styles.get(i);
+            if (s == null) {
+                continue;
+            }
+            try {
+                catalog.add(s);
+                count++;
+                LOGGER.info("Loaded style '" + s.getName() + "'");
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load style from file '"
+                        + files.get(i).getName() + "'", e);
+            }
+        }
+        logPhase("styles", count, start);
+    }
+
+    void collectStyles(File styles, List<File> files) {
+        for (File sf : loader.list(styles, new SuffixFileFilter(".xml"))) {
+            // handle the .xml.xml case
+            if (!new File(styles, sf.getName() + ".xml").exists()) {
+                files.add(sf);
+            }
+        }
+    }
+
+    List<Entry<StoreInfo>> loadStores(List<File> workspaceDirs) throws Exception {
+        long start = System.currentTimeMillis();
+
+        List<Entry<StoreInfo>> entries = new ArrayList<Entry<StoreInfo>>();
+        for (File wsd : workspaceDirs) {
+            for (File sd : loader.list(wsd, DirectoryFileFilter.INSTANCE)) {
+                File f;
+                if ((f = new File(sd, "datastore.xml")).exists()) {
+                    entries.add(new Entry<StoreInfo>(sd, f, DataStoreInfo.class));
+                } else if ((f = new File(sd, "coveragestore.xml")).exists()) {
+                    entries.add(new Entry<StoreInfo>(sd, f, CoverageStoreInfo.class));
+                } else if ((f = new File(sd, "wmsstore.xml")).exists()) {
+                    entries.add(new Entry<StoreInfo>(sd, f, WMSStoreInfo.class));
+                } else if (!loader.isConfigDirectory(sd)) {
+                    LOGGER.warning("Ignoring store directory '" + sd.getName() + "'");
+                }
+            }
+        }
+
+        List<Entry<StoreInfo>> loaded = new ArrayList<Entry<StoreInfo>>();
+        for (Entry<StoreInfo> entry : parse(entries, "store")) {
+            try {
+                catalog.add(entry.info);
+                loaded.add(entry);
+                LOGGER.info("Loaded store '" + entry.info.getName() + "'");
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load store '" + entry.dir.getName() + "'", e);
+            }
+        }
+        logPhase("stores", loaded.size(), start);
+
+        // connect to the enabled data stores to determine if we should disable them
+        start = System.currentTimeMillis();
+        List<Callable<Void>> connections = new ArrayList<Callable<Void>>();
+        for (Entry<StoreInfo> entry : loaded) {
+            if (entry.info instanceof DataStoreInfo && entry.info.isEnabled()) {
+                final DataStoreInfo ds = (DataStoreInfo) entry.info;
+                connections.add(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            ds.getDataStore(null);
+                        } catch (Throwable t) {
+                            LOGGER.warning("Error connecting to '" + ds.getName()
+                                    + "'. Disabling.");
+                            LOGGER.log(Level.INFO, "", t);
+
+                            ds.setError(t);
+                            ds.setEnabled(false);
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+        for (Future<Void> future : pool.invokeAll(connections)) {
+            future.get();
+        }
+        logPhase("data store connections", connections.size(), start);
+
+        return loaded;
+    }
+
+    List<Entry<ResourceInfo>> loadResources(List<Entry<StoreInfo>> stores) throws Exception {
+        long start = System.currentTimeMillis();
+
+        List<Entry<ResourceInfo>> entries = new ArrayList<Entry<ResourceInfo>>();
+        for (Entry<StoreInfo> store : stores) {
+            String fileName;
+            Class<? extends ResourceInfo> clazz;
+            if (store.info instanceof DataStoreInfo) {
+                fileName = "featuretype.xml";
+                clazz = FeatureTypeInfo.class;
+            } else if (store.info instanceof CoverageStoreInfo) {
+                fileName = "coverage.xml";
+                clazz = CoverageInfo.class;
+            } else {
+                fileName = "wmslayer.xml";
+                clazz = WMSLayerInfo.class;
+            }
+            for (File rd : loader.list(store.dir, DirectoryFileFilter.INSTANCE)) {
+                File f = new File(rd, fileName);
+                if (f.exists()) {
+                    entries.add(new Entry<ResourceInfo>(rd, f, clazz));
+                } else {
+                    LOGGER.warning("Ignoring resource directory " + rd.getAbsolutePath());
+                }
+            }
+        }
+
+        List<Entry<ResourceInfo>> loaded = new ArrayList<Entry<ResourceInfo>>();
+        for (Entry<ResourceInfo> entry : parse(entries, "resource")) {
+            try {
+                catalog.add(entry.info);
+                loaded.add(entry);
+                LOGGER.info("Loaded resource '" + entry.info.getName() + "'");
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load resource '" + entry.dir.getName()
+                        + "'", e);
+            }
+        }
+        logPhase("resources", loaded.size(), start);
+
+        return loaded;
+    }
+
+    void loadLayers(List<Entry<ResourceInfo>> resources) throws Exception {
+        long start = System.currentTimeMillis();
+
+        List<Entry<LayerInfo>> entries = new ArrayList<Entry<LayerInfo>>();
+        for (Entry<ResourceInfo> resource : resources) {
+            File f = new File(resource.dir, "layer.xml");
+            if (f.exists()) {
+                entries.add(new Entry<LayerInfo>(resource.dir, f, LayerInfo.class));
+            }
+        }
+
+        int count = 0;
+        for (Entry<LayerInfo> entry : parse(entries, "layer")) {
+            try {
+                catalog.add(entry.info);
+                count++;
+                LOGGER.info("Loaded layer '" + entry.info.getName() + "'");
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load layer '" + entry.dir.getName() + "'",
+                        e);
+            }
+        }
+        logPhase("layers", count, start);
+    }
+
+    /**
+     * Parses the entries in parallel, returning the ones that could be successfully parsed
+     */
+    <T> List<Entry<T>> parse(List<Entry<T>> entries, String description) throws Exception {
+        List<Callable<Entry<T>>> tasks = new ArrayList<Callable<Entry<T>>>(entries.size());
+        for (final Entry<T> entry : entries) {
+            tasks.add(new Callable<Entry<T>>() {
+
+                @Override
+                public Entry<T> call() throws Exception {
+                    entry.info = depersist(entry.file, entry.clazz);
+                    return entry;
+                }
+            });
+        }
+
+        List<Entry<T>> result = new ArrayList<Entry<T>>(entries.size());
+        List<Future<Entry<T>>> futures = pool.invokeAll(tasks);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                result.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                LOGGER.log(Level.WARNING, "Failed to load " + description + " '"
+                        + entries.get(i).dir.getName() + "'", e.getCause());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses the files in parallel, returning a list with the parsed objects in the same order
+     * as the files, with a null value for the files that do not exist or could not be parsed
+     */
+    <T> List<T> parse(List<File> files, final Class<T> clazz, String description)
+            throws Exception {
+        List<Callable<T>> tasks = new ArrayList<Callable<T>>(files.size());
+        for (final File file : files) {
+            tasks.add(new Callable<T>() {
+
+                @Override
+                public T call() throws Exception {
+                    return file.exists() ? depersist(file, clazz) : null;
+                }
+            });
+        }
+
+        List<T> result = new ArrayList<T>(files.size());
+        List<Future<T>> futures = pool.invokeAll(tasks);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                result.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                LOGGER.log(Level.WARNING, "Failed to load " + description + " from file '"
+                        + files.get(i).getPath() + "'", e.getCause());
+                result.add(null);
+            }
+        }
+        return result;
+    }
+
+    <T> T depersist(File f, Class<T> clazz) throws Exception {
+        return loader.depersist(persisters.get(), f, clazz);
+    }
+
+    void logPhase(String phase, int count, long start) {
+        LOGGER.info("Loaded " + count + " " + phase + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * A configuration file to be parsed, along with its directory and target class
+     */
+    static class Entry<T> {
+        File dir;
+
+        File file;
+
+        Class<? extends T> clazz;
+
+        T info;
+
+        Entry(File dir, File file, Class<? extends T> clazz) {
+            this.dir = dir;
+            this.file = file;
+            this.clazz = clazz;
+        }
+    }
+}
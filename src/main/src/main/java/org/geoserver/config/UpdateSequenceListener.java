@@ -9,15 +9,15 @@ import java.util.List;
 
 import org.geoserver.catalog.CatalogException;
 import org.geoserver.catalog.event.CatalogAddEvent;
-import org.geoserver.catalog.event.CatalogListener;
 import org.geoserver.catalog.event.CatalogModifyEvent;
 import org.geoserver.catalog.event.CatalogPostModifyEvent;
 import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.event.SynchronousCatalogListener;
 
 /**
  * Updates the updateSequence on Catalog events.
  */
-class UpdateSequenceListener implements CatalogListener, ConfigurationListener {
+class UpdateSequenceListener implements SynchronousCatalogListener, ConfigurationListener {
     
     GeoServer geoServer;
     boolean updating = false;
@@ -0,0 +1,406 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.event.SynchronousCatalogListener;
+import org.geoserver.config.ConfigurationListenerAdapter;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInfo;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.config.SettingsInfo;
+import org.geoserver.ows.util.ResponseUtils;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.security.impl.DataAccessRuleDAO;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * Dispatcher callback caching the WMS and WFS capabilities documents.
+ * <p>
+ * Documents are cached the first time they are requested, keyed by service, version, virtual
+ * service, base URL, the current user and their roles, and the request parameters, and are
+ * thrown away as soon as the catalog or the service configuration change. The user name is part
+ * of the key because a {@link org.geoserver.security.ResourceAccessManager} is free to filter
+ * layers per user, not just per role. Cached responses carry an
+ * <code>ETag</code> header, requests with a matching <code>If-None-Match</code> header get back
+ * a <code>304 Not Modified</code> response with no body.
+ * </p>
+ * <p>
+ * The cache is enabled by setting the {@link #CAPABILITIES_CACHE_KEY} system property,
+ * environment variable or servlet context parameter to {@code true}, its maximum size in bytes
+ * can be set with {@link #CAPABILITIES_CACHE_SIZE_KEY}.
+ * </p>
+ */
+public class CapabilitiesCache extends AbstractDispatcherCallback {
+
+    static final Logger LOGGER = Logging.getLogger(CapabilitiesCache.class);
+
+    /**
+     * Enables the capabilities cache
+     */
+    public static final String CAPABILITIES_CACHE_KEY = "GEOSERVER_CAPABILITIES_CACHE";
+
+    /**
+     * Maximum size of the capabilities cache, in bytes
+     */
+    public static final String CAPABILITIES_CACHE_SIZE_KEY = "GEOSERVER_CAPABILITIES_CACHE_SIZE";
+
+    static final long DEFAULT_CACHE_SIZE = 64 * 1024 * 1024;
+
+    static final Set<String> SERVICES = new HashSet<String>(Arrays.asList("WMS", "WFS"));
+
+    boolean enabled;
+
+    Cache<List<Object>, Document> cache;
+
+    /**
+     * Incremented at each invalidation, documents built across an invalidation are not cached
+     */
+    AtomicLong generation = new AtomicLong();
+
+    public CapabilitiesCache(GeoServer geoServer) {
+        this(geoServer, Boolean.valueOf(GeoServerExtensions.getProperty(CAPABILITIES_CACHE_KEY)),
+                lookupCacheSize());
+    }
+
+    public CapabilitiesCache(GeoServer geoServer, boolean enabled, long maxSize) {
+        this.enabled = enabled;
+        this.cache = CacheBuilder.newBuilder().maximumWeight(maxSize)
+                .weigher(new Weigher<List<Object>, Document>() {
+
+                    public int weigh(List<Object> key, Document document) {
+                        return document.bytes.length;
+                    }
+                }).recordStats().build();
+        geoServer.getCatalog().addListener(new CatalogInvalidator());
+        geoServer.addListener(new ConfigurationInvalidator());
+    }
+
+    static long lookupCacheSize() {
+        String value = GeoServerExtensions.getProperty(CAPABILITIES_CACHE_SIZE_KEY);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + CAPABILITIES_CACHE_SIZE_KEY + ": " + value
+                        + ", using " + DEFAULT_CACHE_SIZE);
+            }
+        }
+        return DEFAULT_CACHE_SIZE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the cache, the cached documents are dropped in both cases
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        invalidate();
+    }
+
+    /**
+     * Drops all the cached documents
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the number of cached documents
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    @Override
+    public Response responseDispatched(Request request, Operation operation, Object result,
+            Response response) {
+        if (!enabled || !isCacheable(request, operation)) {
+            return response;
+        }
+        return new CachingResponse(response, key(request, operation));
+    }
+
+    boolean isCacheable(Request request, Operation operation) {
+        return "GetCapabilities".equalsIgnoreCase(operation.getId())
+                && SERVICES.contains(operation.getService().getId().toUpperCase())
+                && request.isGet() && !request.isSOAP();
+    }
+
+    /**
+     * Builds the cache key, made of all the request properties that can alter the document
+     */
+    List<Object> key(Request request, Operation operation) {
+        WorkspaceInfo ws = LocalWorkspace.get();
+        LayerInfo layer = LocalLayer.get();
+
+        String user = null;
+        Set<String> roles = new TreeSet<String>();
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null) {
+            user = auth.getName();
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+        }
+
+        // data access rules can be changed by editing the property file directly
+        DataAccessRuleDAO dao = DataAccessRuleDAO.get();
+        long rulesModified = dao != null ? dao.getLastModified() : 0;
+
+        Map<String, String> kvp = new TreeMap<String, String>();
+        if (request.getRawKvp() != null) {
+            for (Object o : request.getRawKvp().entrySet()) {
+                Map.Entry entry = (Map.Entry) o;
+                kvp.put(String.valueOf(entry.getKey()).toUpperCase(),
+                        String.valueOf(entry.getValue()));
+            }
+        }
+
+        return Arrays.<Object> asList(operation.getService().getId(),
+                String.valueOf(operation.getService().getVersion()),
+                ws != null ? ws.getName() : null, layer != null ? layer.getName() : null,
+                ResponseUtils.baseURL(request.getHttpRequest()), user, roles, rulesModified,
+                kvp);
+    }
+
+    /**
+     * An encoded capabilities document
+     */
+    static class Document {
+
+        byte[] bytes;
+
+        String etag;
+
+        Document(byte[] bytes) {
+            this.bytes = bytes;
+            try {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(bytes);
+                this.etag = "\"" + new BigInteger(1, digest).toString(16) + "\"";
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Returns true if the <code>If-None-Match</code> header value matches this document
+         */
+        boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Serves the document from the cache, encoding it with the original response on a miss.
+     * <p>
+     * The document is encoded before the headers are set, so that the <code>ETag</code> can be
+     * returned for the first request as well.
+     * </p>
+     */
+    class CachingResponse extends Response {
+
+        Response delegate;
+
+        List<Object> key;
+
+        Document document;
+
+        CachingResponse(Response delegate, List<Object> key) {
+            super(delegate.getBinding(), delegate.getOutputFormats());
+            this.delegate = delegate;
+            this.key = key;
+        }
+
+        Document document(Object value, Operation operation) throws IOException {
+            if (document == null) {
+                document = cache.getIfPresent(key);
+                if (document == null) {
+                    long start = generation.get();
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    delegate.write(value, bos, operation);
+                    document = new Document(bos.toByteArray());
+                    if (generation.get() == start) {
+                        cache.put(key, document);
+                    }
+                }
+            }
+            return document;
+        }
+
+        @Override
+        public boolean canHandle(Operation operation) {
+            return delegate.canHandle(operation);
+        }
+
+        @Override
+        public String getMimeType(Object value, Operation operation) throws ServiceException {
+            return delegate.getMimeType(value, operation);
+        }
+
+        @Override
+        public String[][] getHeaders(Object value, Operation operation)
+                throws ServiceException {
+            Document document;
+            try {
+                document = document(value, operation);
+            } catch (IOException e) {
+                throw new ServiceException(e);
+            }
+            String[][] headers = delegate.getHeaders(value, operation);
+            int n = headers != null ? headers.length : 0;
+            String[][] result = new String[n + 1][];
+            if (n > 0) {
+                System.arraycopy(headers, 0, result, 0, n);
+            }
+            result[n] = new String[] { "ETag", document.etag };
+            return result;
+        }
+
+        @Override
+        public void write(Object value, OutputStream output, Operation operation)
+                throws IOException, ServiceException {
+            Document document = document(value, operation);
+            Request request = Dispatcher.REQUEST.get();
+            if (request != null && request.getHttpRequest() != null
+                    && document.matches(request.getHttpRequest().getHeader("If-None-Match"))) {
+                request.getHttpResponse().setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            output.write(document.bytes);
+        }
+
+        @Override
+        public String getPreferredDisposition(Object value, Operation operation) {
+            return delegate.getPreferredDisposition(value, operation);
+        }
+
+        @Override
+        public String getAttachmentFileName(Object value, Operation operation) {
+            return delegate.getAttachmentFileName(value, operation);
+        }
+
+        @Override
+        public String getCharset(Operation operation) {
+            return delegate.getCharset(operation);
+        }
+    }
+
+    /**
+     * Drops the cached documents on any catalog change
+     */
+    class CatalogInvalidator implements SynchronousCatalogListener {
+
+        public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+            invalidate();
+        }
+
+        public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+            invalidate();
+        }
+
+        public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+            invalidate();
+        }
+
+        public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+            invalidate();
+        }
+
+        public void reloaded() {
+            invalidate();
+        }
+    }
+
+    /**
+     * Drops the cached documents on any configuration change
+     */
+    class ConfigurationInvalidator extends ConfigurationListenerAdapter {
+
+        @Override
+        public void handlePostGlobalChange(GeoServerInfo global) {
+            invalidate();
+        }
+
+        @Override
+        public void handleSettingsAdded(SettingsInfo settings) {
+            invalidate();
+        }
+
+        @Override
+        public void handleSettingsPostModified(SettingsInfo settings) {
+            invalidate();
+        }
+
+        @Override
+        public void handleSettingsRemoved(SettingsInfo settings) {
+            invalidate();
+        }
+
+        @Override
+        public void handlePostServiceChange(ServiceInfo service) {
+            invalidate();
+        }
+
+        @Override
+        public void handleServiceRemove(ServiceInfo service) {
+            invalidate();
+        }
+
+        @Override
+        public void reloaded() {
+            invalidate();
+        }
+    }
+}
@@ -8,12 +8,18 @@ package org.geoserver.security.impl;
 import static org.geoserver.security.impl.DataAccessRule.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.geoserver.catalog.CatalogException;
 import org.geoserver.catalog.CatalogInfo;
 import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
@@ -25,12 +31,20 @@ import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WMSLayerInfo;
 import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.event.SynchronousCatalogListener;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.AccessLimits;
 import org.geoserver.security.AccessMode;
 import org.geoserver.security.AdminRequest;
 import org.geoserver.security.CatalogMode;
 import org.geoserver.security.CoverageAccessLimits;
 import org.geoserver.security.DataAccessLimits;
 import org.geoserver.security.DataAccessManager;
+import org.geoserver.security.GeoServerSecurityFilterChainProxy;
 import org.geoserver.security.InMemorySecurityFilter;
 import org.geoserver.security.LayerGroupAccessLimits;
 import org.geoserver.security.ResourceAccessManager;
@@ -41,6 +55,12 @@ import org.geoserver.security.WorkspaceAccessLimits;
 import org.geotools.util.logging.Logging;
 import org.opengis.filter.Filter;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 
 /**
  * Default implementation of {@link DataAccessManager}, loads simple access
@@ -68,12 +88,23 @@ import org.springframework.security.core.Authentication;
  * If no {@link Properties} is provided, one will be looked upon in
  * <code>GEOSERVER_DATA_DIR/security/layers.properties, and the class will
  * keep up to date vs changes in the file</code>
+ * <p>
+ * The access limits computed for workspaces and resources are cached by role set, the cache is
+ * cleared whenever the rules are reloaded or the catalog changes. The cache size can be set with
+ * the {@link #CACHE_SIZE_KEY} property, a size of zero disables the cache.
  * 
  * @author Andrea Aime - TOPP
  */
 public class DefaultResourceAccessManager implements ResourceAccessManager, DataAccessManager {
     static final Logger LOGGER = Logging.getLogger(DefaultResourceAccessManager.class);
 
+    /**
+     * Maximum number of access limits kept in the cache
+     */
+    public static final String CACHE_SIZE_KEY = "GEOSERVER_ACCESS_LIMITS_CACHE_SIZE";
+
+    static final int DEFAULT_CACHE_SIZE = 10000;
+
     SecureTreeNode root;
 
 //    Catalog catalog;
@@ -82,9 +113,56 @@ public class DefaultResourceAccessManager implements ResourceAccessManager, Data
 
     long lastLoaded = Long.MIN_VALUE;
 
+    Cache<LimitsKey, Optional<AccessLimits>> limitsCache;
+
     public DefaultResourceAccessManager(DataAccessRuleDAO dao) {
         this.dao = dao;
         this.root = buildAuthorizationTree(dao);
+        int cacheSize = lookupCacheSize();
+        if (cacheSize > 0) {
+            this.limitsCache = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats()
+                    .build();
+            if (dao != null && dao.rawCatalog != null) {
+                dao.rawCatalog.addListener(new CacheClearingListener());
+            }
+        }
+    }
+
+    static int lookupCacheSize() {
+        String value = GeoServerExtensions.getProperty(CACHE_SIZE_KEY);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + CACHE_SIZE_KEY + ": " + value + ", using "
+                        + DEFAULT_CACHE_SIZE);
+            }
+        }
+        return DEFAULT_CACHE_SIZE;
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of the access limits cache, or null if the
+     * cache is disabled
+     */
+    public CacheStats getCacheStats() {
+        return limitsCache != null ? limitsCache.stats() : null;
+    }
+
+    /**
+     * Returns the number of entries in the access limits cache
+     */
+    public long getCacheSize() {
+        return limitsCache != null ? limitsCache.size() : 0;
+    }
+
+    /**
+     * Empties the access limits cache
+     */
+    public void clearCache() {
+        if (limitsCache != null) {
+            limitsCache.invalidateAll();
+        }
     }
 
     public CatalogMode getMode() {
@@ -131,6 +209,7 @@ public class DefaultResourceAccessManager implements ResourceAccessManager, Data
         if(lastLoaded < daoLastModified) {
             root = buildAuthorizationTree(dao);
             lastLoaded = daoLastModified;
+            clearCache();
         }
     }
 
@@ -180,6 +259,9 @@ public class DefaultResourceAccessManager implements ResourceAccessManager, Data
     }
 
     public DataAccessLimits getAccessLimits(Authentication user, LayerInfo layer) {
+        if (layer.getResource() != null) {
+            return getAccessLimits(user, layer.getResource());
+        }
         boolean read = canAccess(user, layer, AccessMode.READ);
         boolean write = canAccess(user, layer, AccessMode.WRITE);
         Filter readFilter = read ? Filter.INCLUDE : Filter.EXCLUDE;
@@ -187,7 +269,22 @@ public class DefaultResourceAccessManager implements ResourceAccessManager, Data
         return buildLimits(layer.getResource().getClass(), readFilter, writeFilter);
     }
 
-    public DataAccessLimits getAccessLimits(Authentication user, ResourceInfo resource) {
+    public DataAccessLimits getAccessLimits(final Authentication user, final ResourceInfo resource) {
+        LimitsKey key = null;
+        try {
+            key = cacheKey(user, resource.getStore().getWorkspace().getName(),
+                    resource.getName(), resource.getClass());
+        } catch (Exception e) {
+            // no workspace to key on, canAccess will grant access
+        }
+        return cached(key, new Callable<DataAccessLimits>() {
+            public DataAccessLimits call() {
+                return buildAccessLimits(user, resource);
+            }
+        });
+    }
+
+    DataAccessLimits buildAccessLimits(Authentication user, ResourceInfo resource) {
         boolean read = canAccess(user, resource, AccessMode.READ);
         boolean write = canAccess(user, resource, AccessMode.WRITE);
         Filter readFilter = read ? Filter.INCLUDE : Filter.EXCLUDE;
@@ -222,7 +319,17 @@ public class DefaultResourceAccessManager implements ResourceAccessManager, Data
         }
     }
 
-    public WorkspaceAccessLimits getAccessLimits(Authentication user, WorkspaceInfo workspace) {
+    public WorkspaceAccessLimits getAccessLimits(final Authentication user,
+            final WorkspaceInfo workspace) {
+        LimitsKey key = cacheKey(user, workspace.getName(), null, WorkspaceInfo.class);
+        return cached(key, new Callable<WorkspaceAccessLimits>() {
+            public WorkspaceAccessLimits call() {
+                return buildAccessLimits(user, workspace);
+            }
+        });
+    }
+
+    WorkspaceAccessLimits buildAccessLimits(Authentication user, WorkspaceInfo workspace) {
         boolean readable = canAccess(user, workspace, AccessMode.READ);
         boolean writable = canAccess(user, workspace, AccessMode.WRITE);
         boolean adminable = canAccess(user, workspace, AccessMode.ADMIN);
@@ -382,4 +489,127 @@ public class DefaultResourceAccessManager implements ResourceAccessManager, Data
         }
     }
 
+
+    /**
+     * Builds the cache key for the specified user and resource, or returns null if the access
+     * limits cannot be cached
+     */
+    LimitsKey cacheKey(Authentication user, String workspace, String resource, Class<?> type) {
+        if (limitsCache == null || workspace == null
+                || !GeoServerSecurityFilterChainProxy.isSecurityEnabledForCurrentRequest()) {
+            return null;
+        }
+        Set<String> roles;
+        if (user == null || user.getAuthorities() == null) {
+            roles = Collections.emptySet();
+        } else {
+            roles = new HashSet<String>();
+            for (GrantedAuthority authority : user.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+        }
+        return new LimitsKey(roles, workspace, resource, type, AdminRequest.get() != null);
+    }
+
+    /**
+     * Looks up the access limits in the cache, computing them with the loader on a cache miss
+     */
+    @SuppressWarnings("unchecked")
+    <T extends AccessLimits> T cached(LimitsKey key, final Callable<T> loader) {
+        // the rules might have been changed on disk
+        getMode();
+        checkPropertyFile();
+        try {
+            if (key == null) {
+                return loader.call();
+            }
+            return (T) limitsCache.get(key, new Callable<Optional<AccessLimits>>() {
+                public Optional<AccessLimits> call() throws Exception {
+                    return Optional.<AccessLimits> fromNullable(loader.call());
+                }
+            }).orNull();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Key of the access limits cache, the limits depend only on the user roles, on the resource
+     * names and type, and on whether the request is an administrative one
+     */
+    static class LimitsKey {
+        Set<String> roles;
+
+        String workspace;
+
+        String resource;
+
+        Class<?> type;
+
+        boolean admin;
+
+        LimitsKey(Set<String> roles, String workspace, String resource, Class<?> type,
+                boolean admin) {
+            this.roles = roles;
+            this.workspace = workspace;
+            this.resource = resource;
+            this.type = type;
+            this.admin = admin;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + (admin ? 1231 : 1237);
+            result = prime * result + ((resource == null) ? 0 : resource.hashCode());
+            result = prime * result + roles.hashCode();
+            result = prime * result + type.hashCode();
+            result = prime * result + workspace.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof LimitsKey))
+                return false;
+            LimitsKey other = (LimitsKey) obj;
+            return admin == other.admin && type == other.type
+                    && workspace.equals(other.workspace) && roles.equals(other.roles)
+                    && (resource == null ? other.resource == null : resource
+                            .equals(other.resource));
+        }
+    }
+
+    /**
+     * Clears the access limits cache on catalog changes
+     */
+    class CacheClearingListener implements SynchronousCatalogListener {
+
+        public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+            clearCache();
+        }
+
+        public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+            clearCache();
+        }
+
+        public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+            // wait for the post modify event
+        }
+
+        public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+            clearCache();
+        }
+
+        public void reloaded() {
+            clearCache();
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.filter.text.ecql.ECQL;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+
+public class CompiledStyleTest {
+
+    static final FilterFactory FF = CommonFactoryFinder.getFilterFactory();
+
+    StyleBuilder sb = new StyleBuilder();
+
+    Rule near;
+
+    Rule far;
+
+    Rule always;
+
+    Style style;
+
+    @Before
+    public void buildStyle() throws Exception {
+        near = sb.createRule(sb.createPointSymbolizer());
+        near.setName("near");
+        near.setMaxScaleDenominator(10000);
+        near.setFilter(FF.and(Filter.INCLUDE, ECQL.toFilter("name = 'a'")));
+
+        far = sb.createRule(sb.createLineSymbolizer());
+        far.setName("far");
+        far.setMinScaleDenominator(10000);
+        far.setFilter(ECQL.toFilter("length > 10"));
+
+        always = sb.createRule(sb.createPolygonSymbolizer());
+        always.setName("always");
+        always.setFilter(ECQL.toFilter("type = 'road'"));
+
+        FeatureTypeStyle fts = sb.createFeatureTypeStyle("Feature", new Rule[] { near, far,
+                always });
+        style = sb.createStyle();
+        style.setName("test");
+        style.featureTypeStyles().add(fts);
+    }
+
+    @Test
+    public void testBands() {
+        CompiledStyle compiled = new CompiledStyle(style);
+        List<CompiledStyle.ScaleBand> bands = compiled.getBands();
+        assertEquals(2, bands.size());
+        assertEquals(0, bands.get(0).getMinScaleDenominator(), 0d);
+        assertEquals(10000, bands.get(0).getMaxScaleDenominator(), 0d);
+        assertEquals(10000, bands.get(1).getMinScaleDenominator(), 0d);
+        assertEquals(Double.POSITIVE_INFINITY, bands.get(1).getMaxScaleDenominator(), 0d);
+
+        assertTrue(bands.get(0).getAttributes().contains("name"));
+        assertTrue(bands.get(0).getAttributes().contains("type"));
+        assertTrue(!bands.get(0).getAttributes().contains("length"));
+        assertTrue(bands.get(1).getAttributes().contains("length"));
+        assertTrue(!bands.get(1).getAttributes().contains("name"));
+    }
+
+    @Test
+    public void testScaleLookup() throws Exception {
+        CompiledStyle compiled = new CompiledStyle(style);
+
+        Style nearStyle = compiled.getStyle(5000);
+        assertEquals("test", nearStyle.getName());
+        List<Rule> rules = nearStyle.featureTypeStyles().get(0).rules();
+        assertEquals(2, rules.size());
+        assertEquals("near", rules.get(0).getName());
+        // the redundant condition has been simplified, symbolizers are shared
+        assertEquals(ECQL.toFilter("name = 'a'"), rules.get(0).getFilter());
+        assertSame(near.symbolizers().get(0), rules.get(0).symbolizers().get(0));
+        assertSame(always, rules.get(1));
+
+        rules = compiled.getStyle(50000).featureTypeStyles().get(0).rules();
+        assertEquals(2, rules.size());
+        assertSame(far, rules.get(0));
+        assertSame(always, rules.get(1));
+
+        // same band, same style
+        assertSame(compiled.getStyle(50000), compiled.getStyle(1e9));
+
+        // too close to the limit, the renderer decides
+        assertNull(compiled.getBand(10000));
+        assertSame(style, compiled.getStyle(10000));
+        assertSame(style, compiled.getStyle(Double.NaN));
+    }
+
+    @Test
+    public void testExcludedRules() throws Exception {
+        far.setFilter(Filter.EXCLUDE);
+        near.setFilter(FF.and(ECQL.toFilter("name = 'a'"), Filter.EXCLUDE));
+        always.setFilter(Filter.EXCLUDE);
+        CompiledStyle compiled = new CompiledStyle(style);
+
+        // no rules can ever match, the feature type style is gone
+        assertEquals(0, compiled.getStyle(5000).featureTypeStyles().size());
+        assertEquals(0, compiled.getStyle(50000).featureTypeStyles().size());
+    }
+
+    @Test
+    public void testUnchangedFeatureTypeStyle() {
+        near.setMaxScaleDenominator(Double.POSITIVE_INFINITY);
+        near.setFilter(null);
+        far.setMinScaleDenominator(0);
+        far.setFilter(null);
+        always.setFilter(null);
+        CompiledStyle compiled = new CompiledStyle(style);
+
+        assertEquals(1, compiled.getBands().size());
+        assertSame(style.featureTypeStyles().get(0), compiled.getStyle(5000)
+                .featureTypeStyles().get(0));
+    }
+}
@@ -0,0 +1,140 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResourcePoolCacheTest {
+
+    ResourcePool pool;
+
+    List<String> disposed;
+
+    ResourcePool.CatalogResourceCache<String, String> cache;
+
+    @Before
+    public void setUp() {
+        pool = new CatalogImpl().getResourcePool();
+        disposed = new ArrayList<String>();
+        cache = pool.new CatalogResourceCache<String, String>("TEST") {
+
+            @Override
+            protected int weigh(String key, String value) {
+                return value.length();
+            }
+
+            @Override
+            protected void dispose(String key, String value) {
+                disposed.add(key);
+            }
+        };
+    }
+
+    @Test
+    public void testMaximumSize() {
+        cache.setLimits(2, -1, -1);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        // b is the least recently used one
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(1, disposed.size());
+        assertEquals("b", disposed.get(0));
+
+        ResourceCacheStats stats = cache.getStats();
+        assertEquals("TEST", stats.getName());
+        assertEquals(2, stats.getSize());
+        assertEquals(3, stats.getHitCount());
+        assertEquals(3, stats.getMissCount());
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(0.5, stats.getHitRate(), 0d);
+    }
+
+    @Test
+    public void testMaximumWeight() {
+        cache.setLimits(-1, 5, -1);
+        cache.put("a", "123");
+        cache.put("b", "12");
+        assertEquals(5, cache.getStats().getWeight());
+        assertTrue(disposed.isEmpty());
+
+        cache.put("c", "1");
+        assertEquals(3, cache.getStats().getWeight());
+        assertEquals(1, disposed.size());
+        assertEquals("a", disposed.get(0));
+
+        // an entry heavier than the limit is kept until the next one comes in
+        cache.put("d", "123456");
+        assertEquals("123456", cache.get("d"));
+        assertEquals(3, disposed.size());
+    }
+
+    @Test
+    public void testExpireAfterAccess() throws Exception {
+        cache.setLimits(-1, -1, 50);
+        cache.put("a", "1");
+        Thread.sleep(100);
+        cache.put("b", "2");
+        assertNull(cache.get("a"));
+        assertEquals(1, disposed.size());
+
+        Thread.sleep(100);
+        cache.cleanUp();
+        assertTrue(cache.isEmpty());
+        assertEquals(2, disposed.size());
+        assertEquals(2, cache.getStats().getEvictionCount());
+        assertEquals(0, cache.getStats().getWeight());
+    }
+
+    @Test
+    public void testRemoveIsNotEviction() {
+        cache.put("a", "1");
+        cache.remove("a");
+        assertEquals(1, disposed.size());
+        assertEquals(0, cache.getStats().getEvictionCount());
+        assertEquals(0, cache.getStats().getSize());
+    }
+
+    @Test
+    public void testConfigure() {
+        cache.configure("maximumSize=10, maximumWeight=1000,expireAfterAccess=5m,foo=bar");
+        assertEquals(10, cache.maximumSize);
+        assertEquals(1000, cache.maximumWeight);
+        assertEquals(TimeUnit.MINUTES.toMillis(5), cache.expireAfterAccess);
+
+        cache.configure("expireAfterAccess=1500,maximumSize=abc");
+        assertEquals(1500, cache.expireAfterAccess);
+        assertEquals(10, cache.maximumSize);
+    }
+
+    @Test
+    public void testPoolStatistics() {
+        List<String> names = new ArrayList<String>();
+        for (ResourceCacheStats stats : pool.getCacheStatistics()) {
+            names.add(stats.getName());
+        }
+        assertTrue(names.contains(ResourcePool.DATASTORE_CACHE));
+        assertTrue(names.contains(ResourcePool.FEATURETYPE_CACHE));
+        assertTrue(names.contains(ResourcePool.ATTRIBUTE_CACHE));
+        assertTrue(names.contains(ResourcePool.COVERAGEREADER_CACHE));
+        assertTrue(names.contains(ResourcePool.HINTCOVERAGEREADER_CACHE));
+        assertTrue(names.contains(ResourcePool.WMS_CACHE));
+        assertTrue(names.contains(ResourcePool.STYLE_CACHE));
+        assertNotNull(pool.getCacheStatistics(ResourcePool.STYLE_CACHE));
+        assertNull(pool.getCacheStatistics("NOT_THERE"));
+    }
+}
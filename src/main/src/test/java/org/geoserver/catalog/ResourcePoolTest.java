@@ -288,6 +288,23 @@ public class ResourcePoolTest extends GeoServerSystemTestSupport {
         assertEquals("foo", lakes.getTitle());
     }
     
+    @Test
+    public void testCompiledStyleCache() throws IOException {
+        Catalog catalog = getCatalog();
+        ResourcePool pool = new ResourcePool(catalog);
+        StyleInfo si = catalog.getStyleByName("relative");
+
+        CompiledStyle compiled = pool.getCompiledStyle(si);
+        assertSame(pool.getStyle(si), compiled.getStyle());
+        assertSame(compiled, pool.getCompiledStyle(si));
+
+        // clearing the style clears the compiled one too
+        pool.clear(si);
+        CompiledStyle recompiled = pool.getCompiledStyle(si);
+        assertNotSame(compiled, recompiled);
+        assertSame(pool.getStyle(si), recompiled.getStyle());
+    }
+
     @Test
     public void testSEStyleWithRelativePath() throws IOException {
         StyleInfo si = getCatalog().getStyleByName("relative");
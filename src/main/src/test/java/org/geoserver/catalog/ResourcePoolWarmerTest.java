@@ -0,0 +1,109 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.catalog.ResourcePoolWarmer.Source;
+import org.geoserver.catalog.ResourcePoolWarmer.State;
+import org.geoserver.catalog.ResourcePoolWarmer.Status;
+import org.geoserver.data.test.MockData;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResourcePoolWarmerTest extends GeoServerSystemTestSupport {
+
+    ResourcePoolWarmer warmer;
+
+    @Before
+    public void setUpWarmer() {
+        warmer = new ResourcePoolWarmer(getCatalog(), getResourceLoader());
+        getCatalog().getResourcePool().getStoreAccessTimes().clear();
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        DataStoreInfo cite = getCatalog().getDataStoreByName(MockData.CITE_PREFIX);
+        DataStoreInfo sf = getCatalog().getDataStoreByName(MockData.SF_PREFIX);
+        warmer.warmUp(Arrays.<StoreInfo> asList(cite, sf), 2);
+        assertTrue(warmer.executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        Status status = warmer.getStatus();
+        assertEquals(State.COMPLETED, status.getState());
+        assertEquals(2, status.getTotal());
+        assertEquals(2, status.getWarmed());
+        assertEquals(0, status.getFailed());
+        assertNotNull(status.getFinished());
+
+        ResourcePool pool = getCatalog().getResourcePool();
+        assertTrue(pool.getDataStoreCache().containsKey(cite.getId()));
+        assertTrue(pool.getDataStoreCache().containsKey(sf.getId()));
+
+        // the warm-up does not count as usage
+        assertTrue(pool.getStoreAccessTimes().isEmpty());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        DataStoreInfo broken = getCatalog().getFactory().createDataStore();
+        broken.setName("broken");
+        broken.setWorkspace(getCatalog().getDefaultWorkspace());
+        broken.setEnabled(true);
+        broken.getConnectionParameters().put("not", "a store");
+        getCatalog().add(broken);
+        try {
+            warmer.warmUp(Arrays.<StoreInfo> asList(broken), 1);
+            assertTrue(warmer.executor.awaitTermination(60, TimeUnit.SECONDS));
+
+            Status status = warmer.getStatus();
+            assertEquals(State.COMPLETED, status.getState());
+            assertEquals(1, status.getFailed());
+            assertEquals(1, status.getFailures().size());
+            assertTrue(status.getFailures().get(0).getStore().endsWith(":broken"));
+        } finally {
+            getCatalog().remove(broken);
+        }
+    }
+
+    @Test
+    public void testUsageRoundTrip() throws Exception {
+        Catalog catalog = getCatalog();
+        DataStoreInfo cite = catalog.getDataStoreByName(MockData.CITE_PREFIX);
+        DataStoreInfo sf = catalog.getDataStoreByName(MockData.SF_PREFIX);
+        Map<String, Long> accessTimes = catalog.getResourcePool().getStoreAccessTimes();
+        accessTimes.put(cite.getId(), 1000l);
+        accessTimes.put(sf.getId(), 2000l);
+        warmer.writeUsage();
+
+        accessTimes.clear();
+        Map<String, Long> usage = warmer.readUsage();
+        assertEquals(Long.valueOf(1000), usage.get(cite.getId()));
+        assertEquals(Long.valueOf(2000), usage.get(sf.getId()));
+
+        // most recently used first
+        warmer.initialize(getGeoServer());
+        List<StoreInfo> stores = warmer.selectStores(Source.USAGE, 1);
+        assertEquals(1, stores.size());
+        assertEquals(sf.getId(), stores.get(0).getId());
+
+        getResourceLoader().get(ResourcePoolWarmer.USAGE_FILE).delete();
+    }
+
+    @Test
+    public void testSelectAll() throws Exception {
+        // no usage information, falls back on the enabled stores
+        List<StoreInfo> stores = warmer.selectStores(Source.USAGE, 3);
+        assertEquals(3, stores.size());
+        for (StoreInfo store : stores) {
+            assertTrue(store.isEnabled());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.event.SynchronousCatalogListener;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncCatalogEventDispatcherTest {
+
+    CatalogImpl catalog;
+
+    AsyncCatalogEventDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        catalog = new CatalogImpl();
+        dispatcher = new AsyncCatalogEventDispatcher(2);
+        catalog.setEventDispatcher(dispatcher);
+    }
+
+    @Test
+    public void testSharedPool() {
+        System.setProperty(AsyncCatalogEventDispatcher.ASYNC_EVENTS_KEY, "true");
+        try {
+            AsyncCatalogEventDispatcher first = AsyncCatalogEventDispatcher.lookup();
+            AsyncCatalogEventDispatcher second = AsyncCatalogEventDispatcher.lookup();
+            assertNotSame(first, second);
+            assertSame(first.executor, second.executor);
+        } finally {
+            System.clearProperty(AsyncCatalogEventDispatcher.ASYNC_EVENTS_KEY);
+        }
+        assertNull(AsyncCatalogEventDispatcher.lookup());
+    }
+
+    @Test
+    public void testOrderAndCoalescing() throws Exception {
+        addWorkspace("ws0");
+        addWorkspace("ws1");
+
+        CountDownLatch latch = new CountDownLatch(1);
+        RecordingListener async = new RecordingListener(latch);
+        SyncListener sync = new SyncListener();
+        catalog.addListener(async);
+        catalog.addListener(sync);
+
+        // the async listener blocks on the first modification, the next ones pile up
+        rename("ws0", "other");
+        rename("ws1", "ws2");
+        rename("ws2", "ws3");
+
+        // the synchronous listener got everything already
+        assertEquals(6, sync.events.size());
+
+        latch.countDown();
+        assertTrue(dispatcher.flush(10, TimeUnit.SECONDS));
+
+        assertEquals(4, async.events.size());
+        assertEquals("other", ((CatalogModifyEvent) async.events.get(0)).getNewValues().get(0));
+        assertTrue(async.events.get(1) instanceof CatalogPostModifyEvent);
+        CatalogModifyEvent modify = (CatalogModifyEvent) async.events.get(2);
+        assertEquals(Collections.singletonList("name"), modify.getPropertyNames());
+        assertEquals("ws1", modify.getOldValues().get(0));
+        assertEquals("ws3", modify.getNewValues().get(0));
+        assertTrue(async.events.get(3) instanceof CatalogPostModifyEvent);
+        assertEquals(1, dispatcher.getCoalescedCount());
+
+        // remove is delivered after the modifications
+        catalog.remove(catalog.getWorkspaceByName("ws3"));
+        assertTrue(dispatcher.flush(10, TimeUnit.SECONDS));
+        assertEquals(5, async.events.size());
+        assertTrue(async.events.get(4) instanceof CatalogRemoveEvent);
+    }
+
+    void addWorkspace(String name) {
+        WorkspaceInfo ws = catalog.getFactory().createWorkspace();
+        ws.setName(name);
+        catalog.add(ws);
+    }
+
+    void rename(String name, String newName) {
+        WorkspaceInfo ws = catalog.getWorkspaceByName(name);
+        ws.setName(newName);
+        catalog.save(ws);
+    }
+
+    @Test
+    public void testAsyncExceptionsDoNotPropagate() throws Exception {
+        catalog.addListener(new CatalogListener() {
+
+            public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+                throw new CatalogException("async veto is ignored");
+            }
+
+            public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+            }
+
+            public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+            }
+
+            public void handlePostModifyEvent(CatalogPostModifyEvent event)
+                    throws CatalogException {
+            }
+
+            public void reloaded() {
+            }
+        });
+
+        addWorkspace("ws1");
+        assertTrue(dispatcher.flush(10, TimeUnit.SECONDS));
+        assertNotNull(catalog.getWorkspaceByName("ws1"));
+    }
+
+    static class RecordingListener implements CatalogListener {
+
+        List<CatalogEvent> events = Collections.synchronizedList(new ArrayList<CatalogEvent>());
+
+        CountDownLatch latch;
+
+        RecordingListener(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        void record(CatalogEvent event) {
+            try {
+                latch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            events.add(event);
+        }
+
+        public void handleAddEvent(CatalogAddEvent event) {
+            record(event);
+        }
+
+        public void handleRemoveEvent(CatalogRemoveEvent event) {
+            record(event);
+        }
+
+        public void handleModifyEvent(CatalogModifyEvent event) {
+            record(event);
+        }
+
+        public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+            record(event);
+        }
+
+        public void reloaded() {
+        }
+    }
+
+    static class SyncListener extends RecordingListener implements SynchronousCatalogListener {
+
+        SyncListener() {
+            super(new CountDownLatch(0));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.Predicates;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Runs the catalog tests against the {@link IndexedCatalogFacade}, and checks the indexes are
+ * kept in synch with the catalog contents
+ */
+public class IndexedCatalogFacadeTest extends CatalogImplTest {
+
+    @Override
+    protected Catalog createCatalog() {
+        CatalogImpl catalog = new CatalogImpl();
+        catalog.setFacade(new IndexedCatalogFacade(catalog));
+        return catalog;
+    }
+
+    @Test
+    public void testLayerLookupsAfterResourceRename() {
+        addLayer();
+
+        FeatureTypeInfo ft2 = catalog.getFeatureTypeByName(ft.getName());
+        ft2.setName("renamed");
+        catalog.save(ft2);
+
+        assertNull(catalog.getLayerByName(ft.getName()));
+        LayerInfo layer = catalog.getLayerByName("renamed");
+        assertNotNull(layer);
+        assertEquals(l.getId(), layer.getId());
+        assertNotNull(catalog.getLayerByName(ns.getPrefix() + ":renamed"));
+        assertEquals(1, catalog.getLayers(catalog.getFeatureTypeByName("renamed")).size());
+    }
+
+    @Test
+    public void testLayersByStyle() {
+        addLayer();
+
+        StyleInfo s2 = catalog.getFactory().createStyle();
+        s2.setName("s2");
+        s2.setFilename("s2.sld");
+        catalog.add(s2);
+
+        assertEquals(1, catalog.getLayers(s).size());
+        assertTrue(catalog.getLayers(s2).isEmpty());
+
+        LayerInfo layer = catalog.getLayerByName(ft.getName());
+        layer.getStyles().add(s2);
+        catalog.save(layer);
+        assertEquals(1, catalog.getLayers(s2).size());
+
+        layer = catalog.getLayerByName(ft.getName());
+        layer.setDefaultStyle(s2);
+        catalog.save(layer);
+        assertTrue(catalog.getLayers(s).isEmpty());
+        assertEquals(1, catalog.getLayers(s2).size());
+
+        catalog.remove(catalog.getLayerByName(ft.getName()));
+        assertTrue(catalog.getLayers(s2).isEmpty());
+    }
+
+    @Test
+    public void testListByIndexedProperty() {
+        addLayer();
+
+        CloseableIterator<LayerInfo> it = catalog.list(LayerInfo.class,
+                Predicates.equal("resource.id", ft.getId()));
+        List<LayerInfo> layers = Lists.newArrayList(it);
+        it.close();
+        assertEquals(1, layers.size());
+        assertEquals(l.getId(), layers.get(0).getId());
+
+        it = catalog.list(LayerInfo.class, Predicates.and(
+                Predicates.equal("prefixedName", ns.getPrefix() + ":" + ft.getName()),
+                Predicates.equal("enabled", false)));
+        assertFalse(it.hasNext());
+        it.close();
+
+        CloseableIterator<ResourceInfo> resources = catalog.list(ResourceInfo.class,
+                Predicates.equal("store.id", ds.getId()));
+        assertTrue(resources.hasNext());
+        assertEquals(ft.getId(), resources.next().getId());
+        assertFalse(resources.hasNext());
+        resources.close();
+    }
+
+    @Test
+    public void testPrefixedNameAfterNamespaceRename() {
+        addLayer();
+
+        NamespaceInfo ns2 = catalog.getNamespaceByPrefix(ns.getPrefix());
+        ns2.setPrefix("renamedPrefix");
+        catalog.save(ns2);
+
+        CloseableIterator<LayerInfo> it = catalog.list(LayerInfo.class,
+                Predicates.equal("prefixedName", "renamedPrefix:" + ft.getName()));
+        assertTrue(it.hasNext());
+        it.close();
+    }
+}
@@ -0,0 +1,117 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.URL;
+
+import org.apache.commons.io.FileUtils;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.config.impl.GeoServerInfoImpl;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.config.util.XStreamPersisterFactory;
+import org.geoserver.platform.GeoServerExtensionsHelper;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geotools.data.DataUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CatalogSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    GeoServerResourceLoader resourceLoader;
+
+    DefaultGeoServerLoader loader;
+
+    Catalog catalog;
+
+    @Before
+    public void setUp() throws Exception {
+        URL url = CatalogSnapshotTest.class.getResource("/data_dir/nested_layer_groups");
+        File dataDir = folder.newFolder("data");
+        FileUtils.copyDirectory(DataUtilities.urlToFile(url), dataDir);
+        resourceLoader = new GeoServerResourceLoader(dataDir);
+        GeoServerExtensionsHelper.singleton("resourceLoader", resourceLoader,
+                GeoServerResourceLoader.class);
+
+        loader = new DefaultGeoServerLoader(resourceLoader);
+        catalog = new CatalogImpl();
+        catalog.setResourceLoader(resourceLoader);
+        XStreamPersister xp = new XStreamPersisterFactory().createXMLPersister();
+        loader.readCatalog(catalog, xp);
+    }
+
+    @After
+    public void tearDown() {
+        GeoServerExtensionsHelper.clear();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        GeoServerInfoImpl global = new GeoServerInfoImpl();
+        global.setUpdateSequence(42);
+
+        CatalogSnapshot snapshot = new CatalogSnapshot(resourceLoader);
+        snapshot.write(catalog, global);
+        assertTrue(new File(resourceLoader.getBaseDirectory(), CatalogSnapshot.SNAPSHOT_FILE)
+                .exists());
+
+        Catalog restored = snapshot.readCatalog();
+        assertNotNull(restored);
+        assertEquals(42, snapshot.getGlobal().getUpdateSequence());
+        assertEquals(catalog.getWorkspaces().size(), restored.getWorkspaces().size());
+        assertEquals(catalog.getDefaultWorkspace().getName(), restored.getDefaultWorkspace()
+                .getName());
+        assertEquals(catalog.getStores(StoreInfo.class).size(),
+                restored.getStores(StoreInfo.class).size());
+        assertEquals(catalog.getResources(ResourceInfo.class).size(),
+                restored.getResources(ResourceInfo.class).size());
+        assertEquals(catalog.getLayers().size(), restored.getLayers().size());
+        assertEquals(catalog.getStyles().size(), restored.getStyles().size());
+
+        LayerGroupInfo nested = restored.getLayerGroupByName("topp", "nestedgroup");
+        assertNotNull(nested);
+        assertTrue(nested.getLayers().get(0) instanceof LayerGroupInfo);
+        assertTrue(nested.getLayers().get(1) instanceof LayerInfo);
+    }
+
+    @Test
+    public void testOutdatedSnapshot() throws Exception {
+        CatalogSnapshot snapshot = new CatalogSnapshot(resourceLoader);
+        snapshot.write(catalog, new GeoServerInfoImpl());
+
+        // touch one of the configuration files
+        File workspace = new File(resourceLoader.getBaseDirectory(),
+                "workspaces/topp/workspace.xml");
+        assertTrue(workspace.setLastModified(workspace.lastModified() + 10000));
+
+        assertNull(snapshot.readCatalog());
+        assertNull(snapshot.getGlobal());
+    }
+
+    @Test
+    public void testRemovedFile() throws Exception {
+        CatalogSnapshot snapshot = new CatalogSnapshot(resourceLoader);
+        snapshot.write(catalog, new GeoServerInfoImpl());
+
+        File group = new File(resourceLoader.getBaseDirectory(),
+                "workspaces/topp/layergroups/nestedgroup.xml");
+        assertTrue(group.delete());
+
+        assertNull(snapshot.readCatalog());
+    }
+}
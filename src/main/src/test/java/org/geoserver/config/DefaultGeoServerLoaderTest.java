@@ -14,6 +14,8 @@ import java.net.URL;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.impl.CatalogImpl;
 import org.geoserver.config.impl.GeoServerImpl;
@@ -119,6 +121,32 @@ public class DefaultGeoServerLoaderTest {
         assertTrue(nestedLayerGroup.getLayers().get(1) instanceof LayerInfo);
     }
 
+    @Test
+    public void testLoadNestedLayerGroupsParallel() throws Exception {
+        loader.setLoaderThreads(4);
+        loader.readCatalog(catalog, xp);
+        assertNotNull(catalog.getLayerGroupByName("topp", "simplegroup"));
+        LayerGroupInfo nestedLayerGroup = catalog.getLayerGroupByName("topp", "nestedgroup");
+        assertNotNull(nestedLayerGroup);
+        assertEquals(2, nestedLayerGroup.getLayers().size());
+        assertTrue(nestedLayerGroup.getLayers().get(0) instanceof LayerGroupInfo);
+        assertTrue(nestedLayerGroup.getLayers().get(1) instanceof LayerInfo);
+        
+        // same contents as the sequential load
+        Catalog sequential = new CatalogImpl();
+        sequential.setResourceLoader(catalog.getResourceLoader());
+        loader.setLoaderThreads(1);
+        loader.readCatalog(sequential, xp);
+        assertEquals(sequential.getWorkspaces().size(), catalog.getWorkspaces().size());
+        assertEquals(sequential.getStores(StoreInfo.class).size(), 
+                catalog.getStores(StoreInfo.class).size());
+        assertEquals(sequential.getResources(ResourceInfo.class).size(), 
+                catalog.getResources(ResourceInfo.class).size());
+        assertEquals(sequential.getLayers().size(), catalog.getLayers().size());
+        assertEquals(sequential.getStyles().size(), catalog.getStyles().size());
+        assertEquals(sequential.getLayerGroups().size(), catalog.getLayerGroups().size());
+    }
+
     @Test
     public void testLoadWithoutResaving() throws Exception {
         GeoServerImpl gs = new GeoServerImpl();
@@ -10,8 +10,12 @@ import org.springframework.security.core.Authentication;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.security.AccessMode;
 import org.geoserver.security.CatalogMode;
+import org.geoserver.security.DataAccessLimits;
 import org.geoserver.security.DataAccessManager;
 import org.junit.Test;
+import org.opengis.filter.Filter;
+
+import com.google.common.cache.CacheStats;
 
 
 public class DefaultDataAccessManagerAuthTest extends AbstractAuthorizationTest {
@@ -144,4 +148,30 @@ public class DefaultDataAccessManagerAuthTest extends AbstractAuthorizationTest
         assertEquals(CatalogMode.HIDE, wo.getMode());
     }
     
+
+    @Test
+    public void testAccessLimitsCache() throws Exception {
+        DefaultResourceAccessManager manager = (DefaultResourceAccessManager) buildLegacyAccessManager("complex.properties");
+
+        DataAccessLimits limits = manager.getAccessLimits(anonymous, statesLayer);
+        assertEquals(Filter.EXCLUDE, limits.getReadFilter());
+        CacheStats stats = manager.getCacheStats();
+        assertEquals(1, stats.missCount());
+        assertEquals(0, stats.hitCount());
+
+        // the layer and its resource share the same cache entry
+        assertSame(limits, manager.getAccessLimits(anonymous, statesLayer.getResource()));
+        assertEquals(1, manager.getCacheStats().hitCount());
+
+        // a different role set gets its own entry, unlimited access is cached as well
+        assertNull(manager.getAccessLimits(rwUser, statesLayer));
+        assertNull(manager.getAccessLimits(rwUser, statesLayer));
+        stats = manager.getCacheStats();
+        assertEquals(2, stats.missCount());
+        assertEquals(2, stats.hitCount());
+        assertEquals(2, manager.getCacheSize());
+
+        manager.clearCache();
+        assertEquals(0, manager.getCacheSize());
+    }
 }
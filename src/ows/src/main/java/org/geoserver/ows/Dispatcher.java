@@ -862,43 +862,79 @@ public class Dispatcher extends AbstractController {
         return result;
     }
     
-    void response(Object result, Request req, Operation opDescriptor)
-        throws Throwable {
-        //step 6: write response
-        if (result != null) {
-            //look up respones
-            List responses = GeoServerExtensions.extensions(Response.class);
+    /**
+     * Looks up the responses able to encode the result of an operation, in the requested output
+     * format if not null. The responses are sorted by binding, the ones bound to the most specific
+     * class coming first.
+     * 
+     * @param result The operation result
+     * @param outputFormat The requested output format, or null
+     * @param operation The operation that produced the result
+     */
+    public static List<Response> findResponses(Object result, String outputFormat,
+            Operation operation) {
+        List<Response> responses = GeoServerExtensions.extensions(Response.class);
 
-            //first filter by binding, and canHandle
-         O: for (Iterator itr = responses.iterator(); itr.hasNext();) {
-                Response response = (Response) itr.next();
+        //first filter by binding, and canHandle
+     O: for (Iterator<Response> itr = responses.iterator(); itr.hasNext();) {
+            Response response = itr.next();
 
-                Class binding = response.getBinding();
+            Class binding = response.getBinding();
 
-                if (!binding.isAssignableFrom(result.getClass())
-                        || !response.canHandle(opDescriptor)) {
-                    itr.remove();
+            if (!binding.isAssignableFrom(result.getClass())
+                    || !response.canHandle(operation)) {
+                itr.remove();
 
-                    continue;
-                }
+                continue;
+            }
 
-                //filter by output format
-                Set outputFormats = response.getOutputFormats();
+            //filter by output format
+            Set outputFormats = response.getOutputFormats();
 
-                if ((req.getOutputFormat() != null) && (!outputFormats.isEmpty())
-                        && !outputFormats.contains(req.getOutputFormat())) {
-                    
-                    //must do a case insensitive check
-                    for ( Iterator of = outputFormats.iterator(); of.hasNext(); ) {
-                        String outputFormat = (String) of.next();
-                        if( req.getOutputFormat().equalsIgnoreCase( outputFormat ) ) {
-                            continue O;
-                        }
+            if ((outputFormat != null) && (!outputFormats.isEmpty())
+                    && !outputFormats.contains(outputFormat)) {
+                
+                //must do a case insensitive check
+                for ( Iterator of = outputFormats.iterator(); of.hasNext(); ) {
+                    String format = (String) of.next();
+                    if( outputFormat.equalsIgnoreCase( format ) ) {
+                        continue O;
                     }
-                    
-                    itr.remove();
                 }
+                
+                itr.remove();
             }
+        }
+
+        if (responses.size() > 1) {
+            //sort by class hierarchy
+            Collections.sort(responses,
+                new Comparator<Response>() {
+                    public int compare(Response o1, Response o2) {
+                        Class c1 = o1.getBinding();
+                        Class c2 = o2.getBinding();
+
+                        if (c1.equals(c2)) {
+                            return 0;
+                        }
+
+                        if (c1.isAssignableFrom(c2)) {
+                            return 1;
+                        }
+
+                        return -1;
+                    }
+                });
+        }
+        return responses;
+    }
+
+    void response(Object result, Request req, Operation opDescriptor)
+        throws Throwable {
+        //step 6: write response
+        if (result != null) {
+            //look up respones
+            List<Response> responses = findResponses(result, req.getOutputFormat(), opDescriptor);
 
             if (responses.isEmpty()) {
                 if(req.getOutputFormat() != null) { 
@@ -918,32 +954,9 @@ public class Dispatcher extends AbstractController {
             }
 
             if (responses.size() > 1) {
-                //sort by class hierarchy
-                Collections.sort(responses,
-                    new Comparator() {
-                        public int compare(Object o1, Object o2) {
-                            Class c1 = ((Response) o1).getBinding();
-                            Class c2 = ((Response) o2).getBinding();
-
-                            if (c1.equals(c2)) {
-                                return 0;
-                            }
-
-                            if (c1.isAssignableFrom(c2)) {
-                                return 1;
-                            }
-
-                            if (c2.isAssignableFrom(c1)) {
-                                ;
-                            }
-
-                            return -1;
-                        }
-                    });
-
                 //check first two and make sure bindings are not equal
-                Response r1 = (Response) responses.get(0);
-                Response r2 = (Response) responses.get(1);
+                Response r1 = responses.get(0);
+                Response r2 = responses.get(1);
 
                 if (r1.getBinding().equals(r2.getBinding())) {
                     String msg = "Multiple responses: (" + result.getClass() + "): " + r1 + ", " + r2;
@@ -951,7 +964,7 @@ public class Dispatcher extends AbstractController {
                 }
             }
 
-            Response response = (Response) responses.get(0);
+            Response response = responses.get(0);
             response = fireResponseDispatchedCallback(req,opDescriptor,result,response);
 
             //load the output strategy to be used
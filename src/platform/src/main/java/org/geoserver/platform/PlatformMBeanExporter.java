@@ -0,0 +1,100 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Publishes an object in the platform MBean server under the given name, exposing the
+ * attributes and operations of the specified MBean interface. A bean already registered under
+ * the same name (e.g., by a previous application context) is replaced.
+ * <p>
+ * The static {@link #register(ObjectName, Object, Class)} and {@link #unregister(ObjectName)}
+ * methods can be used directly by exporters whose MBeans are only known at runtime.
+ * </p>
+ *
+ * @param <T> The MBean interface
+ */
+public class PlatformMBeanExporter<T> implements InitializingBean, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(PlatformMBeanExporter.class);
+
+    final String objectName;
+
+    final T bean;
+
+    final Class<T> mbeanInterface;
+
+    ObjectName name;
+
+    public PlatformMBeanExporter(String objectName, T bean, Class<T> mbeanInterface) {
+        this.objectName = objectName;
+        this.bean = bean;
+        this.mbeanInterface = mbeanInterface;
+    }
+
+    /**
+     * Registers the bean in the platform MBean server, replacing any bean registered under the
+     * same name
+     *
+     * @return true if the bean was registered, false if the registration failed (the failure is
+     *         logged)
+     */
+    public static <T> boolean register(ObjectName name, T bean, Class<T> mbeanInterface) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(bean, mbeanInterface), name);
+            return true;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to register MBean " + name, e);
+            return false;
+        }
+    }
+
+    /**
+     * Removes the bean from the platform MBean server, if registered
+     */
+    public static void unregister(ObjectName name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Failed to unregister MBean " + name, e);
+        }
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            if (register(name, bean, mbeanInterface)) {
+                this.name = name;
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Invalid MBean name " + objectName, e);
+        }
+    }
+
+    public void destroy() throws Exception {
+        if (name != null) {
+            unregister(name);
+            name = null;
+        }
+    }
+}
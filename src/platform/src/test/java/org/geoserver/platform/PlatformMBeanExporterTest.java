@@ -0,0 +1,68 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class PlatformMBeanExporterTest {
+
+    public interface CounterMBean {
+        int getCount();
+    }
+
+    public static class Counter implements CounterMBean {
+        int count;
+
+        Counter(int count) {
+            this.count = count;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    @Test
+    public void testRegisterReplaceUnregister() throws Exception {
+        String objectName = "org.geoserver:type=PlatformMBeanExporterTest";
+        ObjectName name = new ObjectName(objectName);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        PlatformMBeanExporter<CounterMBean> first = new PlatformMBeanExporter<CounterMBean>(
+                objectName, new Counter(1), CounterMBean.class);
+        first.afterPropertiesSet();
+        assertEquals(1, server.getAttribute(name, "Count"));
+
+        // a new context replaces the bean
+        PlatformMBeanExporter<CounterMBean> second = new PlatformMBeanExporter<CounterMBean>(
+                objectName, new Counter(2), CounterMBean.class);
+        second.afterPropertiesSet();
+        assertEquals(2, server.getAttribute(name, "Count"));
+
+        second.destroy();
+        assertFalse(server.isRegistered(name));
+        // already gone, no failure
+        first.destroy();
+    }
+
+    @Test
+    public void testInvalidName() throws Exception {
+        PlatformMBeanExporter<CounterMBean> exporter = new PlatformMBeanExporter<CounterMBean>(
+                "not a name", new Counter(1), CounterMBean.class);
+        // logged, does not prevent the application context from starting
+        exporter.afterPropertiesSet();
+        assertNull(exporter.name);
+        exporter.destroy();
+    }
+}
@@ -0,0 +1,28 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import org.geoserver.catalog.Catalog;
+import org.restlet.Finder;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.resource.Resource;
+
+/**
+ * Finder for the resource pool cache statistics
+ */
+public class ResourcePoolCachesFinder extends Finder {
+
+    Catalog catalog;
+
+    public ResourcePoolCachesFinder(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public Resource findTarget(Request request, Response response) {
+        return new ResourcePoolCachesResource(getContext(), request, response, catalog);
+    }
+}
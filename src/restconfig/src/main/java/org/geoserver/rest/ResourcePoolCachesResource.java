@@ -0,0 +1,55 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import java.util.ArrayList;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.ResourceCacheStats;
+import org.geoserver.catalog.ResourcePool;
+import org.restlet.Context;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Reports the size, limits, hit/miss, load time and eviction statistics of the resource pool
+ * caches.
+ * 
+ * @see ResourcePool#getCacheStatistics()
+ */
+public class ResourcePoolCachesResource extends ReflectiveResource {
+
+    Catalog catalog;
+
+    public ResourcePoolCachesResource(Context context, Request request, Response response,
+            Catalog catalog) {
+        super(context, request, response);
+        this.catalog = catalog;
+    }
+
+    @Override
+    public boolean allowPost() {
+        return false;
+    }
+
+    @Override
+    public boolean allowPut() {
+        return false;
+    }
+
+    @Override
+    protected Object handleObjectGet() throws Exception {
+        return new ArrayList<ResourceCacheStats>(catalog.getResourcePool().getCacheStatistics());
+    }
+
+    @Override
+    protected void configureXStream(XStream xs) {
+        xs.allowTypes(new Class[] { ResourceCacheStats.class });
+        xs.alias("caches", ArrayList.class);
+        xs.alias("cache", ResourceCacheStats.class);
+    }
+}
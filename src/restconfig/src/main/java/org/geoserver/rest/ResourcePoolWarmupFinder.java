@@ -0,0 +1,28 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import org.geoserver.catalog.ResourcePoolWarmer;
+import org.restlet.Finder;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.resource.Resource;
+
+/**
+ * Finder for the resource pool warm-up status
+ */
+public class ResourcePoolWarmupFinder extends Finder {
+
+    ResourcePoolWarmer warmer;
+
+    public ResourcePoolWarmupFinder(ResourcePoolWarmer warmer) {
+        this.warmer = warmer;
+    }
+
+    @Override
+    public Resource findTarget(Request request, Response response) {
+        return new ResourcePoolWarmupResource(getContext(), request, response, warmer);
+    }
+}
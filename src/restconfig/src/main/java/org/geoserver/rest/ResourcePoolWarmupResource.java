@@ -0,0 +1,52 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import org.geoserver.catalog.ResourcePoolWarmer;
+import org.geoserver.catalog.ResourcePoolWarmer.Failure;
+import org.geoserver.catalog.ResourcePoolWarmer.Status;
+import org.restlet.Context;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Reports the progress and the failures of the resource pool warm-up.
+ * 
+ * @see ResourcePoolWarmer
+ */
+public class ResourcePoolWarmupResource extends ReflectiveResource {
+
+    ResourcePoolWarmer warmer;
+
+    public ResourcePoolWarmupResource(Context context, Request request, Response response,
+            ResourcePoolWarmer warmer) {
+        super(context, request, response);
+        this.warmer = warmer;
+    }
+
+    @Override
+    public boolean allowPost() {
+        return false;
+    }
+
+    @Override
+    public boolean allowPut() {
+        return false;
+    }
+
+    @Override
+    protected Object handleObjectGet() throws Exception {
+        return warmer.getStatus();
+    }
+
+    @Override
+    protected void configureXStream(XStream xs) {
+        xs.allowTypes(new Class[] { Status.class, Failure.class });
+        xs.alias("warmup", Status.class);
+        xs.alias("failure", Failure.class);
+    }
+}
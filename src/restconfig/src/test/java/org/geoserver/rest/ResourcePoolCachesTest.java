@@ -0,0 +1,35 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import static org.custommonkey.xmlunit.XMLAssert.assertXpathEvaluatesTo;
+import static org.junit.Assert.*;
+
+import org.custommonkey.xmlunit.XMLUnit;
+import org.custommonkey.xmlunit.XpathEngine;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.ResourcePool;
+import org.geoserver.data.test.MockData;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class ResourcePoolCachesTest extends GeoServerSystemTestSupport {
+
+    @Test
+    public void testGet() throws Exception {
+        FeatureTypeInfo ft = getCatalog().getFeatureTypeByName(getLayerId(MockData.BUILDINGS));
+        ft.getFeatureType();
+        ft.getFeatureType();
+
+        Document dom = getAsDOM("/rest/resourcepool/caches.xml");
+        assertXpathEvaluatesTo("7", "count(/caches/cache)", dom);
+        XpathEngine xp = XMLUnit.newXpathEngine();
+        String path = "/caches/cache[name='" + ResourcePool.FEATURETYPE_CACHE + "']";
+        assertXpathEvaluatesTo("-1", path + "/maximumSize", dom);
+        assertTrue(Integer.parseInt(xp.evaluate(path + "/size", dom)) > 0);
+        assertTrue(Integer.parseInt(xp.evaluate(path + "/hitCount", dom)) > 0);
+    }
+}
@@ -0,0 +1,43 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import static org.custommonkey.xmlunit.XMLAssert.assertXpathEvaluatesTo;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import net.sf.json.JSONObject;
+
+import org.geoserver.catalog.ResourcePoolWarmer;
+import org.geoserver.catalog.ResourcePoolWarmer.State;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class ResourcePoolWarmupTest extends GeoServerSystemTestSupport {
+
+    @Test
+    public void testCompleted() throws Exception {
+        ResourcePoolWarmer warmer = GeoServerExtensions.bean(ResourcePoolWarmer.class);
+        StoreInfo cite = getCatalog().getDataStoreByName(MockData.CITE_PREFIX);
+        warmer.warmUp(Arrays.asList(cite), 1);
+        for (int i = 0; i < 600 && warmer.getStatus().getState() != State.COMPLETED; i++) {
+            Thread.sleep(100);
+        }
+
+        Document dom = getAsDOM("/rest/resourcepool/warmup.xml");
+        assertXpathEvaluatesTo("COMPLETED", "/warmup/state", dom);
+        assertXpathEvaluatesTo("1", "/warmup/total", dom);
+        assertXpathEvaluatesTo("1", "/warmup/warmed", dom);
+        assertXpathEvaluatesTo("0", "/warmup/failed", dom);
+
+        JSONObject json = (JSONObject) getAsJSON("/rest/resourcepool/warmup.json");
+        assertEquals("COMPLETED", json.getJSONObject("warmup").getString("state"));
+    }
+}
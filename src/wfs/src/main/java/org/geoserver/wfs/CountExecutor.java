@@ -6,6 +6,10 @@
 package org.geoserver.wfs;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.geoserver.catalog.FeatureTypeInfo;
 
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
@@ -27,6 +31,8 @@ class CountExecutor {
 
     int providedCount = COUNT_UNSET;
 
+    Future<Integer> future;
+
     public CountExecutor(FeatureSource source, Query query) {
         this.source = source;
         this.query = query;
@@ -36,9 +42,41 @@ class CountExecutor {
         this.providedCount = providedCount;
     }
     
+    /**
+     * Starts the count in background, using the cache to skip it if possible. The result is then
+     * collected by {@link #getCount()}
+     */
+    public void start(FeatureCountCache cache, FeatureTypeInfo meta) {
+        if (providedCount == COUNT_UNSET && future == null) {
+            future = cache.count(meta, source, query);
+        }
+    }
+
+    /**
+     * Drops the background count if not started yet, a running one completes and gets cached
+     */
+    public void cancel() {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
     public int getCount() throws IOException {
         if(providedCount != COUNT_UNSET) {
             return providedCount;
+        } else if (future != null) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                throw (IOException) new IOException("Interrupted while counting features")
+                        .initCause(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw (IOException) new IOException("Failed to count features").initCause(e
+                        .getCause());
+            }
         } else {
             return source.getCount(query);
         }
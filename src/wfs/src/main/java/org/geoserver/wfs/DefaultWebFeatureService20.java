@@ -55,6 +55,11 @@ public class DefaultWebFeatureService20 implements WebFeatureService20, Applicat
      */
     protected ApplicationContext context;
 
+    /**
+     * Runs and caches the numberMatched counts, optional
+     */
+    protected FeatureCountCache countCache;
+
     public DefaultWebFeatureService20(GeoServer geoServer) {
         this.geoServer = geoServer;
     }
@@ -63,6 +68,10 @@ public class DefaultWebFeatureService20 implements WebFeatureService20, Applicat
         this.filterFactory = filterFactory;
     }
     
+    public void setCountCache(FeatureCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         this.context = applicationContext;
     }
@@ -94,6 +103,7 @@ public class DefaultWebFeatureService20 implements WebFeatureService20, Applicat
         GetFeature gf = new GetFeature(getServiceInfo(), getCatalog());
         gf.setFilterFactory(filterFactory);
         gf.setStoredQueryProvider(getStoredQueryProvider());
+        gf.setCountCache(countCache);
         
         return gf.run(new GetFeatureRequest.WFS20(request));
     }
@@ -0,0 +1,395 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import net.opengis.wfs.TransactionResponseType;
+import net.opengis.wfs.TransactionType;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.factory.Hints;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Runs the feature counts needed to compute the WFS 2.0 numberMatched attribute on a bounded
+ * thread pool, so that they proceed in parallel with each other and with the preparation of the
+ * response, and remembers their results.
+ * <p>
+ * Counts are keyed by feature type, filter, view parameters and user. Caching is opt-in: at most
+ * {@value #CACHE_SIZE_KEY} of them are kept (zero by default, which disables caching but keeps
+ * the parallel execution) for {@value #TTL_KEY} seconds ({@value #DEFAULT_TTL} by default). WFS
+ * transactions drop the counts of the modified feature type, both when the change happens and
+ * after the commit, catalog changes to feature types and stores drop the affected ones.
+ * </p>
+ * <p>
+ * Changes made directly in the data source, outside of GeoServer, are not noticed: a cached
+ * count, and thus <code>numberMatched</code> and the availability of the next link, can be wrong
+ * until it expires. Enable the cache only when the data is edited through WFS-T, or when such
+ * staleness is acceptable.
+ * </p>
+ * <p>
+ * When {@value #ESTIMATED_KEY} is set to true expired counts are still returned, while a fresh
+ * one is computed in background, trading some accuracy against changes made outside of GeoServer
+ * for not having to wait for the count.
+ * </p>
+ */
+public class FeatureCountCache implements TransactionPlugin, CatalogListener, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(FeatureCountCache.class);
+
+    /**
+     * Max number of cached counts
+     */
+    public static final String CACHE_SIZE_KEY = "GEOSERVER_WFS_COUNT_CACHE_SIZE";
+
+    /**
+     * Time to live of the cached counts, in seconds
+     */
+    public static final String TTL_KEY = "GEOSERVER_WFS_COUNT_CACHE_TTL";
+
+    /**
+     * Number of threads running the counts
+     */
+    public static final String THREADS_KEY = "GEOSERVER_WFS_COUNT_THREADS";
+
+    /**
+     * Enables returning expired counts while they are being refreshed
+     */
+    public static final String ESTIMATED_KEY = "GEOSERVER_WFS_COUNT_ESTIMATED";
+
+    static final int DEFAULT_CACHE_SIZE = 0;
+
+    static final int DEFAULT_TTL = 60;
+
+    static final int DEFAULT_THREADS = 4;
+
+    /**
+     * Max number of counts waiting for a thread, further ones are run by the requesting thread
+     */
+    static final int QUEUE_SIZE = 100;
+
+    static class CachedCount {
+        final String typeName;
+
+        final int count;
+
+        final long created = System.currentTimeMillis();
+
+        CachedCount(String typeName, int count) {
+            this.typeName = typeName;
+            this.count = count;
+        }
+    }
+
+    /**
+     * The cached counts, in access order
+     */
+    private final LinkedHashMap<String, CachedCount> cache = new LinkedHashMap<String, CachedCount>(
+            16, 0.75f, true);
+
+    /**
+     * The feature types modified by the transaction running in the current thread
+     */
+    private final ThreadLocal<Set<String>> modifiedTypes = new ThreadLocal<Set<String>>() {
+        protected Set<String> initialValue() {
+            return new HashSet<String>();
+        }
+    };
+
+    /**
+     * Bumped at each invalidation, counts started before it are not cached
+     */
+    private long generation;
+
+    private final int maxSize;
+
+    private final long timeToLive;
+
+    private final boolean estimated;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public FeatureCountCache(Catalog catalog) {
+        this(getConfiguredInt(CACHE_SIZE_KEY, DEFAULT_CACHE_SIZE),
+                getConfiguredInt(TTL_KEY, DEFAULT_TTL) * 1000l,
+                Boolean.valueOf(GeoServerExtensions.getProperty(ESTIMATED_KEY)),
+                Math.max(1, getConfiguredInt(THREADS_KEY, DEFAULT_THREADS)));
+        catalog.addListener(this);
+    }
+
+    FeatureCountCache(int maxSize, long timeToLive, boolean estimated, int threads) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.estimated = estimated;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("FeatureCount-");
+        threadFactory.setDaemon(true);
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), threadFactory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    static int getConfiguredInt(String key, int defaultValue) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                return Math.max(0, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + key + ": " + value + ", using "
+                        + defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Starts counting the features matched by the query, unless a valid count is already cached
+     *
+     * @param meta The feature type being counted, used to invalidate the count
+     * @param source The feature source
+     * @param query The query, without paging
+     */
+    public Future<Integer> count(FeatureTypeInfo meta, final FeatureSource source,
+            final Query query) {
+        final String typeName = getTypeName(meta);
+        final String key = getKey(typeName, query);
+        final long startGeneration;
+        Integer stale = null;
+        synchronized (this) {
+            CachedCount cached = cache.get(key);
+            startGeneration = generation;
+            if (cached != null) {
+                if (!isExpired(cached)) {
+                    hits.incrementAndGet();
+                    return done(cached.count);
+                }
+                cache.remove(key);
+                if (estimated) {
+                    stale = cached.count;
+                }
+            }
+        }
+        FutureTask<Integer> task = new FutureTask<Integer>(countTask(source, query, key, typeName,
+                startGeneration));
+        if (stale != null) {
+            // serve the old value, and refresh it for the next requests
+            hits.incrementAndGet();
+            executor.execute(task);
+            return done(stale);
+        }
+        misses.incrementAndGet();
+        executor.execute(task);
+        return task;
+    }
+
+    static String getTypeName(FeatureTypeInfo meta) {
+        return new QName(meta.getNamespace().getURI(), meta.getName()).toString();
+    }
+
+    Callable<Integer> countTask(final FeatureSource source, final Query query, final String key,
+            final String typeName, final long startGeneration) {
+        // the count runs on another thread, carry over the user, secured sources need it
+        final SecurityContext security = SecurityContextHolder.getContext();
+        return new Callable<Integer>() {
+
+            public Integer call() throws Exception {
+                SecurityContext previous = SecurityContextHolder.getContext();
+                SecurityContextHolder.setContext(security);
+                try {
+                    int count = source.getCount(query);
+                    put(key, new CachedCount(typeName, count), startGeneration);
+                    return count;
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to count features of " + typeName, e);
+                    throw e;
+                } finally {
+                    SecurityContextHolder.setContext(previous);
+                }
+            }
+        };
+    }
+
+    static Future<Integer> done(int count) {
+        FutureTask<Integer> task = new FutureTask<Integer>(new Runnable() {
+            public void run() {
+                // nothing to do
+            }
+        }, count);
+        task.run();
+        return task;
+    }
+
+    String getKey(String typeName, Query query) {
+        StringBuilder sb = new StringBuilder(typeName);
+        sb.append('|').append(query.getTypeName());
+        sb.append('|').append(query.getFilter());
+        sb.append('|').append(query.getStartIndex()).append('|').append(query.getMaxFeatures());
+        if (query.getJoins() != null && !query.getJoins().isEmpty()) {
+            sb.append('|').append(query.getJoins());
+        }
+        Hints hints = query.getHints();
+        if (hints != null && hints.get(Hints.VIRTUAL_TABLE_PARAMETERS) != null) {
+            sb.append('|').append(hints.get(Hints.VIRTUAL_TABLE_PARAMETERS));
+        }
+        // data security limits are applied inside the feature source, counts depend on the user
+        Authentication user = SecurityContextHolder.getContext().getAuthentication();
+        if (user != null) {
+            sb.append('|').append(user.getName());
+        }
+        return sb.toString();
+    }
+
+    synchronized void put(String key, CachedCount count, long startGeneration) {
+        // negative counts mean the store could not compute them, do not cache
+        if (maxSize == 0 || count.count < 0 || startGeneration != generation) {
+            return;
+        }
+        cache.put(key, count);
+        Iterator<CachedCount> it = cache.values().iterator();
+        while (cache.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private boolean isExpired(CachedCount count) {
+        return System.currentTimeMillis() - count.created > timeToLive;
+    }
+
+    /**
+     * Drops the counts of the specified feature type, in <code>{namespace}name</code> form, or all
+     * of them if the name is null
+     */
+    synchronized void invalidate(String typeName) {
+        generation++;
+        for (Iterator<CachedCount> it = cache.values().iterator(); it.hasNext();) {
+            CachedCount count = it.next();
+            if (typeName == null || typeName.equals(count.typeName)) {
+                it.remove();
+            }
+        }
+    }
+
+    void invalidate(CatalogInfo info) {
+        if (info instanceof FeatureTypeInfo) {
+            invalidate(getTypeName((FeatureTypeInfo) info));
+        } else if (info instanceof StoreInfo) {
+            invalidate((String) null);
+        }
+    }
+
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        QName name = event.getLayerName();
+        String typeName = null;
+        if (name != null && name.getNamespaceURI() != null && !name.getNamespaceURI().isEmpty()) {
+            typeName = new QName(name.getNamespaceURI(), name.getLocalPart()).toString();
+        }
+        // can't tell which feature type changed if there is no name, play it safe
+        invalidate(typeName);
+        modifiedTypes.get().add(typeName);
+    }
+
+    public TransactionType beforeTransaction(TransactionType request) throws WFSException {
+        modifiedTypes.get().clear();
+        return request;
+    }
+
+    public void beforeCommit(TransactionType request) throws WFSException {
+        // nothing to do
+    }
+
+    public void afterTransaction(TransactionType request, TransactionResponseType result,
+            boolean committed) {
+        // counts run between the changes and the commit did not see them, drop them again
+        Set<String> types = modifiedTypes.get();
+        if (committed) {
+            for (String typeName : types) {
+                invalidate(typeName);
+            }
+        }
+        modifiedTypes.remove();
+    }
+
+    public int getPriority() {
+        return 0;
+    }
+
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // nothing cached for a new object yet
+    }
+
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        invalidate(event.getSource());
+    }
+
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        invalidate(event.getSource());
+    }
+
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        invalidate(event.getSource());
+    }
+
+    public void reloaded() {
+        invalidate((String) null);
+    }
+
+    public boolean isEstimated() {
+        return estimated;
+    }
+
+    public synchronized int getSize() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public void destroy() throws Exception {
+        executor.shutdownNow();
+    }
+}
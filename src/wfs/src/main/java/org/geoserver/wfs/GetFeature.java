@@ -15,6 +15,7 @@ import java.util.Calendar;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.namespace.QName;
@@ -178,6 +179,9 @@ public class GetFeature {
     /** stored query provider */
     StoredQueryProvider storedQueryProvider;
 
+    /** runs and caches the numberMatched counts */
+    FeatureCountCache countCache;
+
     /**
      * Creates the WFS 1.0/1.1 GetFeature operation.
      */
@@ -223,6 +227,14 @@ public class GetFeature {
         this.storedQueryProvider = storedQueryProvider;
     }
 
+    /**
+     * Sets the cache used to run the WFS 2.0 numberMatched counts in background, when null the
+     * counts are run by the requesting thread
+     */
+    public void setCountCache(FeatureCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     public FeatureCollectionResponse run(GetFeatureRequest request)
         throws WFSException {
         List<Query> queries = request.getQueries();
@@ -310,6 +322,19 @@ public class GetFeature {
         }
         int offset = totalOffset;
 
+        // cursor based paging, resuming from the last sort key of the previous page
+        boolean cursorPaging = PagingCursor.isEnabled() && request.getVersion().startsWith("2")
+                && queries.size() == 1;
+        PagingCursor cursor = getPagingCursor(request);
+        if (cursor != null) {
+            if (!cursorPaging) {
+                throw new WFSException(request, "Cursor paging is not available for this request",
+                        "InvalidParameterValue").locator("cursor");
+            }
+            totalOffset = offset = cursor.getOffset();
+        }
+        PagingCursor.Scan cursorScan = null;
+
         List results = new ArrayList();
         List<CountExecutor> totalCountExecutors = new ArrayList<CountExecutor>();
         try {
@@ -498,6 +523,30 @@ public class GetFeature {
                         queryMaxFeatures, source, request, allPropNames.get(0), viewParam,
                             joins, primaryTypeName, primaryAlias);
 
+                if (cursorPaging && joins == null
+                        && PagingCursor.supports(meta.getFeatureType(), sortBy)) {
+                    // ties in the sort key are broken in the same way on every page
+                    List<SortBy> cursorSort = new ArrayList<SortBy>(sortBy);
+                    cursorSort.add(SortBy.NATURAL_ORDER);
+                    gtQuery.setSortBy(cursorSort.toArray(new SortBy[cursorSort.size()]));
+                    if (cursor != null) {
+                        try {
+                            Filter cursorFilter = cursor.toFilter(filterFactory, sortBy,
+                                    (SimpleFeatureType) source.getSchema());
+                            gtQuery.setFilter(filterFactory.and(gtQuery.getFilter(), cursorFilter));
+                        } catch (IllegalArgumentException e) {
+                            throw new WFSException(request, e.getMessage(), e,
+                                    "InvalidParameterValue").locator("cursor");
+                        }
+                        gtQuery.setStartIndex(cursor.getSkip());
+                    }
+                    cursorScan = new PagingCursor.Scan(source, gtQuery, sortBy, cursor);
+                } else if (cursor != null) {
+                    throw new WFSException(request, "Cursor paging is not available for this "
+                            + "request, it needs a sort on non nillable attributes",
+                            "InvalidParameterValue").locator("cursor");
+                }
+
                 LOGGER.fine("Query is " + query + "\n To gt2: " + gtQuery);
 
                 FeatureCollection<? extends FeatureType, ? extends Feature> features = getFeatures(request, source, gtQuery);
@@ -571,7 +620,12 @@ public class GetFeature {
                         org.geotools.data.Query qTotal = toDataQuery(query, filter, 0,
                                 Integer.MAX_VALUE, source, request, allPropNames.get(0), viewParam,
                                 joins, primaryTypeName, primaryAlias);
-                        totalCountExecutors.add(new CountExecutor(source, qTotal));
+                        CountExecutor executor = new CountExecutor(source, qTotal);
+                        if (countCache != null && request.getVersion().startsWith("2")) {
+                            // get the count going while the other queries are set up
+                            executor.start(countCache, primaryMeta);
+                        }
+                        totalCountExecutors.add(executor);
                     }
                 }
 
@@ -634,6 +688,9 @@ public class GetFeature {
                     // optimization: if count < max features then total count == count
                     if(count < maxFeatures) {
                         totalCount = count;
+                        for (CountExecutor q : totalCountExecutors) {
+                            q.cancel();
+                        }
                     } else {
                         // ok, in this case we're forced to run the queries to discover the actual total count
                         for (CountExecutor q : totalCountExecutors) {
@@ -687,7 +744,28 @@ public class GetFeature {
             lockId = response.getLockId();
         }
 
-        return buildResults(request, totalOffset, maxFeatures, count, totalCount, results, lockId);
+        return buildResults(request, totalOffset, maxFeatures, count, totalCount, results, lockId,
+                cursorScan);
+    }
+
+    /**
+     * Returns the paging cursor of the request, if any
+     */
+    PagingCursor getPagingCursor(GetFeatureRequest request) {
+        Request req = Dispatcher.REQUEST.get();
+        if (req == null || req.getRawKvp() == null) {
+            return null;
+        }
+        Object token = new KvpMap(req.getRawKvp()).get(PagingCursor.CURSOR);
+        if (token == null || "".equals(token)) {
+            return null;
+        }
+        try {
+            return PagingCursor.decode(token.toString());
+        } catch (IllegalArgumentException e) {
+            throw new WFSException(request, e.getMessage(), e, "InvalidParameterValue")
+                    .locator("cursor");
+        }
     }
 
 
@@ -723,6 +801,16 @@ public class GetFeature {
      */
     protected FeatureCollectionResponse buildResults(GetFeatureRequest request, int offset, int maxFeatures, 
         int count, int total, List results, String lockId) {
+        return buildResults(request, offset, maxFeatures, count, total, results, lockId, null);
+    }
+
+    /**
+     * Allows subclasses to alter the result generation, the cursor scan is used to build cursor
+     * based next links, if not null
+     */
+    protected FeatureCollectionResponse buildResults(GetFeatureRequest request, int offset,
+            int maxFeatures, int count, int total, List results, String lockId,
+            PagingCursor.Scan cursorScan) {
 
         FeatureCollectionResponse result = request.createResponse();
         result.setNumberOfFeatures(BigInteger.valueOf(count));
@@ -752,6 +840,7 @@ public class GetFeature {
                 //generate kvp map from request object
                 kvp = buildKvpFromRequest(request);
             }
+            kvp.remove(PagingCursor.CURSOR);
 
             if (offset > 0) {
                 //previous
@@ -771,7 +860,21 @@ public class GetFeature {
 
                 //calculate the count of the next result set 
                 int nextCount = total - (offset + count);
-                if (nextCount > 0) {
+                PagingCursor next = null;
+                if (nextCount > 0 && cursorScan != null && req.isGet()) {
+                    try {
+                        next = cursorScan.next(offset, count);
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to build the paging cursor, "
+                                + "falling back on startIndex", e);
+                    }
+                }
+                if (next != null) {
+                    kvp.remove("STARTINDEX");
+                    kvp.put(PagingCursor.CURSOR, next.encode());
+                    kvp.put("count", String.valueOf(maxFeatures));
+                    result.setNext(buildURL(request.getBaseUrl(), "wfs", kvp, URLType.SERVICE));
+                } else if (nextCount > 0) {
                     kvp.put("startIndex", String.valueOf(offset > 0 ? offset + count : count));
                     //kvp.put("count", String.valueOf(nextCount));
                     kvp.put("count", String.valueOf(maxFeatures));
@@ -0,0 +1,278 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Base64;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.util.Converters;
+import org.opengis.feature.Feature;
+import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+/**
+ * Position of a WFS 2.0 page in a sorted result, used to build "next" links that resume from the
+ * last returned sort key instead of skipping <code>startIndex</code> features, so that deep pages
+ * cost the same as the first ones.
+ * <p>
+ * The cursor holds the sort key of the last feature returned, and how many features with that
+ * same key have already been returned, as the key is not necessarily unique. The next page is
+ * then read with a "key greater or equal than the last one" filter, skipping only those features.
+ * It travels in the <code>cursor</code> vendor parameter as an opaque token, and it's used only
+ * when enabled with the {@value #CURSOR_PAGING_KEY} system/context/environment variable, for
+ * single query requests sorted on non nillable numeric and text attributes.
+ * </p>
+ */
+public class PagingCursor {
+
+    /**
+     * Enables cursor based paging
+     */
+    public static final String CURSOR_PAGING_KEY = "GEOSERVER_WFS_CURSOR_PAGING";
+
+    /**
+     * The vendor parameter carrying the cursor token
+     */
+    public static final String CURSOR = "CURSOR";
+
+    static final String SEPARATOR = "|";
+
+    final int offset;
+
+    final int skip;
+
+    final List<String> key;
+
+    PagingCursor(int offset, int skip, List<String> key) {
+        this.offset = offset;
+        this.skip = skip;
+        this.key = key;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.valueOf(GeoServerExtensions.getProperty(CURSOR_PAGING_KEY));
+    }
+
+    /**
+     * Returns true if the sort is suitable for cursor based paging, that is, it sorts on
+     * attributes that can be compared and are never null
+     */
+    public static boolean supports(FeatureType schema, List<SortBy> sortBy) {
+        if (!(schema instanceof SimpleFeatureType) || sortBy == null || sortBy.isEmpty()) {
+            return false;
+        }
+        for (SortBy sort : sortBy) {
+            if (sort == SortBy.NATURAL_ORDER || sort == SortBy.REVERSE_ORDER
+                    || sort.getPropertyName() == null) {
+                return false;
+            }
+            AttributeDescriptor ad = ((SimpleFeatureType) schema).getDescriptor(sort
+                    .getPropertyName().getPropertyName());
+            if (ad == null || ad.isNillable()) {
+                return false;
+            }
+            Class<?> binding = ad.getType().getBinding();
+            if (!Number.class.isAssignableFrom(binding) && !String.class.equals(binding)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The position of the first feature of the page in the whole result
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * The number of features having the cursor key that have already been returned
+     */
+    public int getSkip() {
+        return skip;
+    }
+
+    /**
+     * Builds the filter selecting the features sorting after the cursor key, included
+     */
+    public Filter toFilter(FilterFactory2 ff, List<SortBy> sortBy, SimpleFeatureType schema) {
+        if (sortBy.size() != key.size()) {
+            throw new IllegalArgumentException("The cursor does not match the sort order");
+        }
+        // (k1 > v1) or (k1 = v1 and ((k2 > v2) or (k2 = v2 and ... (kn >= vn))))
+        Filter filter = null;
+        for (int i = sortBy.size() - 1; i >= 0; i--) {
+            SortBy sort = sortBy.get(i);
+            PropertyName property = sort.getPropertyName();
+            Class<?> binding = schema.getDescriptor(property.getPropertyName()).getType()
+                    .getBinding();
+            Object value = Converters.convert(key.get(i), binding);
+            if (value == null) {
+                throw new IllegalArgumentException("Invalid cursor value " + key.get(i));
+            }
+            Literal literal = ff.literal(value);
+            boolean ascending = sort.getSortOrder() != SortOrder.DESCENDING;
+            if (filter == null) {
+                filter = ascending ? ff.greaterOrEqual(property, literal) : ff.lessOrEqual(
+                        property, literal);
+            } else {
+                Filter after = ascending ? ff.greater(property, literal) : ff.less(property,
+                        literal);
+                filter = ff.or(after, ff.and(ff.equals(property, literal), filter));
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Encodes the cursor as an opaque, url safe token
+     */
+    public String encode() {
+        try {
+            StringBuilder sb = new StringBuilder();
+            sb.append(offset).append(SEPARATOR).append(skip);
+            for (String value : key) {
+                sb.append(SEPARATOR).append(URLEncoder.encode(value, "UTF-8"));
+            }
+            return Base64.encodeBase64URLSafeString(sb.toString().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Parses a token built by {@link #encode()}
+     *
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    public static PagingCursor decode(String token) {
+        try {
+            String decoded = new String(Base64.decodeBase64(token), "UTF-8");
+            String[] elements = decoded.split("\\" + SEPARATOR, -1);
+            if (elements.length < 3) {
+                throw new IllegalArgumentException("Invalid cursor " + token);
+            }
+            int offset = Integer.parseInt(elements[0]);
+            int skip = Integer.parseInt(elements[1]);
+            if (offset < 0 || skip < 0) {
+                throw new IllegalArgumentException("Invalid cursor " + token);
+            }
+            List<String> key = new ArrayList<String>();
+            for (String value : Arrays.asList(elements).subList(2, elements.length)) {
+                key.add(URLDecoder.decode(value, "UTF-8"));
+            }
+            return new PagingCursor(offset, skip, key);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor " + token, e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the sort keys of a page to build the cursor of the following one
+     */
+    public static class Scan {
+
+        final FeatureSource<? extends FeatureType, ? extends Feature> source;
+
+        final Query query;
+
+        final List<SortBy> sortBy;
+
+        final PagingCursor previous;
+
+        /**
+         * @param source The feature source
+         * @param query The query that read the page
+         * @param sortBy The sort order of the page, as requested
+         * @param previous The cursor the page has been read with, or null if it was read with an
+         *        offset
+         */
+        public Scan(FeatureSource<? extends FeatureType, ? extends Feature> source, Query query,
+                List<SortBy> sortBy, PagingCursor previous) {
+            this.source = source;
+            this.query = query;
+            this.sortBy = sortBy;
+            this.previous = previous;
+        }
+
+        /**
+         * Builds the cursor of the page after this one
+         *
+         * @param offset The position of the page in the whole result
+         * @param count The number of features in the page
+         * @return The cursor, or null if the page is empty or a sort key is null, in which case
+         *         the caller should fall back on <code>startIndex</code>
+         */
+        public PagingCursor next(int offset, int count) throws IOException {
+            // only the sort keys are needed
+            Query keys = new Query(query);
+            String[] names = new String[sortBy.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = sortBy.get(i).getPropertyName().getPropertyName();
+            }
+            keys.setPropertyNames(names);
+            keys.setMaxFeatures(count);
+
+            List<String> last = null;
+            int lastCount = 0;
+            int read = 0;
+            FeatureIterator<? extends Feature> it = source.getFeatures(keys).features();
+            try {
+                while (it.hasNext()) {
+                    Feature f = it.next();
+                    List<String> key = new ArrayList<String>(names.length);
+                    for (String name : names) {
+                        Property property = f.getProperty(name);
+                        Object value = property != null ? property.getValue() : null;
+                        if (value == null) {
+                            // the schema did not tell the whole story, nulls cannot be compared
+                            return null;
+                        }
+                        key.add(Converters.convert(value, String.class));
+                    }
+                    if (key.equals(last)) {
+                        lastCount++;
+                    } else {
+                        last = key;
+                        lastCount = 1;
+                    }
+                    read++;
+                }
+            } finally {
+                it.close();
+            }
+
+            if (last == null) {
+                return null;
+            }
+            // if the whole page shares the key we resumed from, keep skipping the older ones too
+            if (lastCount == read && previous != null && last.equals(previous.key)) {
+                lastCount += previous.skip;
+            }
+            return new PagingCursor(offset + read, lastCount, last);
+        }
+    }
+}
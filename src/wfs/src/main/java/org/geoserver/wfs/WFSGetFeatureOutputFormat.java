@@ -202,6 +202,22 @@ public abstract class WFSGetFeatureOutputFormat extends WFSResponse {
     }
 
     protected int getNumDecimals(List featureCollections, GeoServer geoServer, Catalog catalog) {
+        int numDecimals = getLayerNumDecimals(featureCollections, catalog);
+
+        SettingsInfo settings = geoServer.getSettings();
+
+        if (numDecimals == -1) {
+            numDecimals = settings.getNumDecimals();
+        }
+
+        return numDecimals;
+    }
+
+    /**
+     * Returns the number of decimals configured in the layers of the feature collections, or -1
+     * if none of them has a specific configuration
+     */
+    protected int getLayerNumDecimals(List featureCollections, Catalog catalog) {
         int numDecimals = -1;
         for (int i = 0; i < featureCollections.size(); i++) {
             FeatureCollection features = (FeatureCollection) featureCollections.get(i);
@@ -221,13 +237,6 @@ public abstract class WFSGetFeatureOutputFormat extends WFSResponse {
                 }
             }
         }
-
-        SettingsInfo settings = geoServer.getSettings();
-
-        if (numDecimals == -1) {
-            numDecimals = settings.getNumDecimals();
-        }
-
         return numDecimals;
     }
 
@@ -5,12 +5,10 @@
  */
 package org.geoserver.wfs.json;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.math.BigInteger;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -125,8 +123,6 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
             id_option = JSONType.getIdPolicy( request.getKvp() );
         }
         // prepare to write out
-        OutputStreamWriter osw = null;
-        Writer outWriter = null;
         boolean hasGeom = false;
 
         // get feature count for request
@@ -145,14 +141,16 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
         }
         
         try {
-            osw = new OutputStreamWriter(output, gs.getGlobal().getSettings().getCharset());
-            outWriter = new BufferedWriter(osw);
-
+            Charset charset = Charset.forName(gs.getGlobal().getSettings().getCharset());
             if (jsonp) {
-                outWriter.write(getCallbackFunction() + "(");
+                output.write((getCallbackFunction() + "(").getBytes(charset));
             }
 
-            final GeoJSONBuilder jsonWriter = new GeoJSONBuilder(outWriter);
+            final GeoJSONWriter jsonWriter = new GeoJSONWriter(output, charset);
+            // round coordinates only if the layers ask for it, by default they are written
+            // at full precision
+            List<FeatureCollection> resultsList = featureCollection.getFeature();
+            jsonWriter.setNumberOfDecimals(getLayerNumDecimals(resultsList, gs.getCatalog()));
             jsonWriter.object().key("type").value("FeatureCollection");
             if(featureCount != null) {
                 jsonWriter.key("totalFeatures").value(featureCount);
@@ -166,7 +164,6 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
             // including the lockID
             //
             // execute should also fail if all of the locks could not be aquired
-            List<FeatureCollection> resultsList = featureCollection.getFeature();
             CoordinateReferenceSystem crs = null;
             for (int i = 0; i < resultsList.size(); i++) {
                 FeatureCollection collection = resultsList.get(i);
@@ -313,12 +310,13 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
             }
 
             jsonWriter.endObject(); // end featurecollection
+            jsonWriter.flush();
 
             if (jsonp) {
-                outWriter.write(")");
+                output.write(")".getBytes(charset));
             }
 
-            outWriter.flush();
+            output.flush();
 
         } catch (JSONException jsonException) {
             ServiceException serviceException = new ServiceException("Error: "
@@ -328,8 +326,8 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
         }
     }
 
-    private void writeCrs(final GeoJSONBuilder jsonWriter,
-            CoordinateReferenceSystem crs) throws FactoryException {
+    private void writeCrs(final GeoJSONWriter jsonWriter,
+            CoordinateReferenceSystem crs) throws FactoryException, IOException {
         if (crs != null) {
             String identifier = null;
             Integer code = CRS.lookupEpsgCode(crs, true);
@@ -357,8 +355,8 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
     }
     
     // Doesn't follow spec, but GeoServer used to do this.
-    private void writeCrsLegacy(final GeoJSONBuilder jsonWriter,
-            CoordinateReferenceSystem crs) {
+    private void writeCrsLegacy(final GeoJSONWriter jsonWriter,
+            CoordinateReferenceSystem crs) throws IOException {
         // Coordinate Referense System, currently only if the namespace is
         // EPSG
         if (crs != null) {
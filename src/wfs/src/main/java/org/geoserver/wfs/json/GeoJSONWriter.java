@@ -0,0 +1,680 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Map;
+
+import net.sf.json.JSONException;
+import net.sf.json.util.JSONUtils;
+
+import org.geotools.geometry.jts.coordinatesequence.CoordinateSequences;
+import org.geotools.referencing.CRS;
+import org.geotools.util.Converters;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Streaming GeoJSON writer producing the same output as {@link GeoJSONBuilder}, but writing
+ * straight into a byte buffer: coordinates are read from the {@link CoordinateSequence} and
+ * formatted without boxing or intermediate strings, and the nesting state is kept in a plain
+ * array.
+ * <p>
+ * Coordinates can be rounded to a number of decimals with {@link #setNumberOfDecimals(int)}, the
+ * result is the same as reducing the geometry with a {@link com.vividsolutions.jts.geom.PrecisionModel}
+ * of the same scale before encoding it. The writer is not thread safe, and must be flushed at the
+ * end of the encoding.
+ * </p>
+ * <p>
+ * By default strings follow the json-lib rules, so that the output matches {@link GeoJSONBuilder}
+ * byte by byte. Those rules write the "null" string as a JSON null, and strings starting with
+ * "function" without quotes. {@link #setStrictStrings(boolean)} turns them off, quoting every
+ * string, for the outputs that are expected to be plain JSON.
+ * </p>
+ */
+public class GeoJSONWriter {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Values above this scaled size lose precision in the fast formatting path
+     */
+    static final double MAX_SCALED = 1e15;
+
+    static final long[] POWERS_OF_TEN = new long[16];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    static final byte[] NULL = "null".getBytes(UTF8);
+
+    static final byte[] TRUE = "true".getBytes(UTF8);
+
+    static final byte[] FALSE = "false".getBytes(UTF8);
+
+    final OutputStream out;
+
+    final Charset charset;
+
+    final byte[] buffer = new byte[BUFFER_SIZE];
+
+    int position;
+
+    /**
+     * Digits of the number being formatted, least significant first
+     */
+    final byte[] digits = new byte[20];
+
+    /**
+     * For each nesting level, whether a value has already been written in it
+     */
+    boolean[] written = new boolean[32];
+
+    int depth;
+
+    boolean afterKey;
+
+    CRS.AxisOrder axisOrder = CRS.AxisOrder.EAST_NORTH;
+
+    int numberOfDecimals = -1;
+
+    double scale;
+
+    boolean strictStrings;
+
+    /**
+     * Creates a UTF-8 writer
+     */
+    public GeoJSONWriter(OutputStream out) {
+        this(out, UTF8);
+    }
+
+    /**
+     * Creates a writer encoding the output in the specified charset. The output is built in UTF-8
+     * and transcoded when flushing the buffer if a different charset is used.
+     */
+    public GeoJSONWriter(OutputStream out, Charset charset) {
+        this.out = out;
+        this.charset = charset;
+    }
+
+    /**
+     * Set the axis order to assume all input will be provided in. Has no effect on geometries
+     * that have already been written.
+     */
+    public void setAxisOrder(CRS.AxisOrder axisOrder) {
+        this.axisOrder = axisOrder;
+    }
+
+    /**
+     * Sets the number of decimals the coordinates are rounded to, a negative value writes them
+     * at full precision
+     */
+    public void setNumberOfDecimals(int numberOfDecimals) {
+        this.numberOfDecimals = Math.min(numberOfDecimals, POWERS_OF_TEN.length - 1);
+        this.scale = numberOfDecimals >= 0 ? POWERS_OF_TEN[this.numberOfDecimals] : 0;
+    }
+
+    public int getNumberOfDecimals() {
+        return numberOfDecimals;
+    }
+
+    /**
+     * When true, every string value is written quoted, and objects that are not numbers, booleans,
+     * dates, collections or maps are written as their quoted string representation
+     */
+    public void setStrictStrings(boolean strictStrings) {
+        this.strictStrings = strictStrings;
+    }
+
+    public boolean isStrictStrings() {
+        return strictStrings;
+    }
+
+    public GeoJSONWriter object() throws IOException {
+        beforeValue();
+        write('{');
+        push();
+        return this;
+    }
+
+    public GeoJSONWriter endObject() throws IOException {
+        pop();
+        write('}');
+        return this;
+    }
+
+    public GeoJSONWriter array() throws IOException {
+        beforeValue();
+        write('[');
+        push();
+        return this;
+    }
+
+    public GeoJSONWriter endArray() throws IOException {
+        pop();
+        write(']');
+        return this;
+    }
+
+    public GeoJSONWriter key(String key) throws IOException {
+        if (key == null) {
+            throw new JSONException("Null key.");
+        }
+        if (afterKey) {
+            throw new JSONException("Misplaced key.");
+        }
+        if (written[depth]) {
+            write(',');
+        }
+        written[depth] = true;
+        writeQuoted(key);
+        write(':');
+        afterKey = true;
+        return this;
+    }
+
+    /**
+     * Writes a value, following the same conversion rules as {@link GeoJSONBuilder#value(Object)}
+     */
+    public GeoJSONWriter value(Object value) throws IOException {
+        if (value instanceof java.util.Date || value instanceof Calendar) {
+            value = Converters.convert(value, String.class);
+        }
+        beforeValue();
+        if (value == null || (!strictStrings && "null".equals(value))) {
+            // json-lib considers the "null" string the same as null
+            write(NULL);
+        } else if (value instanceof String) {
+            if (strictStrings) {
+                writeEscaped((String) value);
+            } else {
+                writeQuoted((String) value);
+            }
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Float || value instanceof BigDecimal) {
+            writeAscii(JSONUtils.numberToString((Number) value));
+        } else if (strictStrings && !(value instanceof Number) && !(value instanceof Map)
+                && !(value instanceof Collection) && !value.getClass().isArray()) {
+            writeEscaped(value.toString());
+        } else {
+            // arrays, maps and anything else, let json-lib handle it
+            writeAscii(JSONUtils.valueToString(value));
+        }
+        return this;
+    }
+
+    public GeoJSONWriter value(double value) throws IOException {
+        beforeValue();
+        writeDouble(value);
+        return this;
+    }
+
+    public GeoJSONWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public GeoJSONWriter value(boolean value) throws IOException {
+        beforeValue();
+        write(value ? TRUE : FALSE);
+        return this;
+    }
+
+    /**
+     * Writes any geometry object
+     */
+    public GeoJSONWriter writeGeom(Geometry geometry) throws IOException {
+        object();
+        key("type").value(GeoJSONBuilder.getGeometryName(geometry));
+
+        final int geometryType = GeoJSONBuilder.getGeometryType(geometry);
+        if (geometryType == GeoJSONBuilder.MULTIGEOMETRY) {
+            key("geometries");
+            array();
+            for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                writeGeom(geometry.getGeometryN(i));
+            }
+            endArray();
+        } else {
+            key("coordinates");
+            switch (geometryType) {
+            case GeoJSONBuilder.POINT:
+                CoordinateSequence cs = ((Point) geometry).getCoordinateSequence();
+                writeCoordinate(cs, 0, CoordinateSequences.coordinateDimension(cs));
+                break;
+            case GeoJSONBuilder.LINESTRING:
+                writeCoordinates(((LineString) geometry).getCoordinateSequence());
+                break;
+            case GeoJSONBuilder.MULTIPOINT:
+                array();
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    CoordinateSequence pcs = ((Point) geometry.getGeometryN(i))
+                            .getCoordinateSequence();
+                    writeCoordinate(pcs, 0, CoordinateSequences.coordinateDimension(pcs));
+                }
+                endArray();
+                break;
+            case GeoJSONBuilder.POLYGON:
+                writePolygon((Polygon) geometry);
+                break;
+            case GeoJSONBuilder.MULTILINESTRING:
+                array();
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    writeCoordinates(((LineString) geometry.getGeometryN(i))
+                            .getCoordinateSequence());
+                }
+                endArray();
+                break;
+            case GeoJSONBuilder.MULTIPOLYGON:
+                array();
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    writePolygon((Polygon) geometry.getGeometryN(i));
+                }
+                endArray();
+                break;
+            }
+        }
+        return endObject();
+    }
+
+    private void writePolygon(Polygon polygon) throws IOException {
+        array();
+        writeCoordinates(polygon.getExteriorRing().getCoordinateSequence());
+        for (int i = 0, n = polygon.getNumInteriorRing(); i < n; i++) {
+            writeCoordinates(polygon.getInteriorRingN(i).getCoordinateSequence());
+        }
+        endArray();
+    }
+
+    private void writeCoordinates(CoordinateSequence cs) throws IOException {
+        array();
+        int dimension = CoordinateSequences.coordinateDimension(cs);
+        for (int i = 0, n = cs.size(); i < n; i++) {
+            writeCoordinate(cs, i, dimension);
+        }
+        endArray();
+    }
+
+    private void writeCoordinate(CoordinateSequence cs, int i, int dimension) throws IOException {
+        array();
+        if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
+            writeOrdinate(cs.getY(i));
+            writeOrdinate(cs.getX(i));
+        } else {
+            writeOrdinate(cs.getX(i));
+            writeOrdinate(cs.getY(i));
+        }
+        if (dimension > 2) {
+            double z = cs.getOrdinate(i, 2);
+            if (!Double.isNaN(z)) {
+                writeOrdinate(z);
+            }
+        }
+        endArray();
+    }
+
+    private void writeOrdinate(double value) throws IOException {
+        beforeValue();
+        if (numberOfDecimals < 0) {
+            writeDouble(value);
+        } else {
+            writeRounded(value);
+        }
+    }
+
+    /**
+     * Turns an envelope into an array [minX,minY,maxX,maxY]
+     */
+    public GeoJSONWriter writeBoundingBox(Envelope env) throws IOException {
+        key("bbox");
+        array();
+        if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
+            writeOrdinate(env.getMinY());
+            writeOrdinate(env.getMinX());
+            writeOrdinate(env.getMaxY());
+            writeOrdinate(env.getMaxX());
+        } else {
+            writeOrdinate(env.getMinX());
+            writeOrdinate(env.getMinY());
+            writeOrdinate(env.getMaxX());
+            writeOrdinate(env.getMaxY());
+        }
+        return endArray();
+    }
+
+    /**
+     * Writes the buffered output to the stream, and flushes it
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // structure
+
+    private void beforeValue() throws IOException {
+        if (afterKey) {
+            afterKey = false;
+        } else if (depth > 0) {
+            if (written[depth]) {
+                write(',');
+            }
+            written[depth] = true;
+        }
+    }
+
+    private void push() {
+        depth++;
+        if (depth == written.length) {
+            boolean[] grown = new boolean[written.length * 2];
+            System.arraycopy(written, 0, grown, 0, written.length);
+            written = grown;
+        }
+        written[depth] = false;
+    }
+
+    private void pop() {
+        if (depth == 0 || afterKey) {
+            throw new JSONException("Misplaced end of object or array.");
+        }
+        depth--;
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // numbers
+
+    /**
+     * Writes a double the same way json-lib does, that is, {@link Double#toString()} without
+     * trailing zeroes in the decimal part
+     */
+    private void writeDouble(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JSONException("JSON does not allow non-finite numbers.");
+        }
+        long integer = (long) value;
+        if (integer == value && Math.abs(value) < 1e7 && !isNegativeZero(value)) {
+            // fast path, Double.toString would print it as "n.0", json-lib strips the zero
+            writeLong(integer);
+        } else {
+            writeAscii(JSONUtils.numberToString(value));
+        }
+    }
+
+    /**
+     * Writes a double rounded to the configured number of decimals, matching the output of
+     * {@link #writeDouble(double)} on the same value reduced by a precision model
+     */
+    private void writeRounded(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JSONException("JSON does not allow non-finite numbers.");
+        }
+        double scaled = value * scale;
+        if (Math.abs(scaled) >= MAX_SCALED) {
+            // too many digits to be formatted exactly out of a long, go the slow way
+            writeDouble(Math.round(scaled) / scale);
+            return;
+        }
+        long units = Math.round(scaled);
+        if (units == 0) {
+            // a precision model rounds to a positive zero
+            write('0');
+            return;
+        }
+        double abs = Math.abs(units / scale);
+        if (abs < 1e-3 || abs >= 1e7) {
+            // Double.toString would use the exponent notation
+            writeDouble(units / scale);
+            return;
+        }
+        if (units < 0) {
+            write('-');
+            units = -units;
+        }
+        long unit = POWERS_OF_TEN[numberOfDecimals];
+        writeLong(units / unit);
+        long fraction = units % unit;
+        if (fraction != 0) {
+            int fractionDigits = numberOfDecimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                fractionDigits--;
+            }
+            write('.');
+            int count = 0;
+            while (fraction > 0) {
+                digits[count++] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            for (int i = count; i < fractionDigits; i++) {
+                write('0');
+            }
+            while (count > 0) {
+                write(digits[--count]);
+            }
+        }
+    }
+
+    private static boolean isNegativeZero(double value) {
+        return value == 0 && Double.doubleToRawLongBits(value) != 0;
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        ensureCapacity(count);
+        while (count > 0) {
+            buffer[position++] = digits[--count];
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // strings
+
+    /**
+     * Writes a quoted string. Plain ASCII strings are written directly, the others are quoted by
+     * {@link JSONUtils#quote(String)}, so that its escaping rules are followed exactly
+     */
+    private void writeQuoted(String s) throws IOException {
+        int n = s.length();
+        boolean plain = !s.startsWith("function");
+        for (int i = 0; i < n && plain; i++) {
+            char c = s.charAt(i);
+            plain = c >= ' ' && c < 0x7F && c != '"' && c != '\\' && c != '/';
+        }
+        if (!plain) {
+            writeAscii(JSONUtils.quote(s));
+            return;
+        }
+        ensureCapacity(n + 2);
+        if (n + 2 > buffer.length) {
+            write('"');
+            for (int i = 0; i < n; i++) {
+                write(s.charAt(i));
+            }
+            write('"');
+        } else {
+            buffer[position++] = '"';
+            for (int i = 0; i < n; i++) {
+                buffer[position++] = (byte) s.charAt(i);
+            }
+            buffer[position++] = '"';
+        }
+    }
+
+    /**
+     * Writes a quoted string escaping it according to the JSON specification, with no special
+     * cases
+     */
+    private void writeEscaped(String s) throws IOException {
+        write('"');
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                write('\\');
+                write('"');
+                break;
+            case '\\':
+                write('\\');
+                write('\\');
+                break;
+            case '\b':
+                write('\\');
+                write('b');
+                break;
+            case '\f':
+                write('\\');
+                write('f');
+                break;
+            case '\n':
+                write('\\');
+                write('n');
+                break;
+            case '\r':
+                write('\\');
+                write('r');
+                break;
+            case '\t':
+                write('\\');
+                write('t');
+                break;
+            default:
+                if (c < ' ') {
+                    writeAscii(String.format("\\u%04x", (int) c));
+                } else if (c < 0x80) {
+                    write(c);
+                } else if (Character.isHighSurrogate(c) && i + 1 < n
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    writeCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+                } else {
+                    writeCodePoint(c);
+                }
+            }
+        }
+        write('"');
+    }
+
+    /**
+     * Writes a non ASCII code point in UTF-8
+     */
+    private void writeCodePoint(int cp) throws IOException {
+        ensureCapacity(4);
+        if (cp < 0x800) {
+            buffer[position++] = (byte) (0xC0 | (cp >> 6));
+            buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            if (cp >= 0xD800 && cp <= 0xDFFF) {
+                // unpaired surrogate, not representable
+                cp = '?';
+                buffer[position++] = (byte) cp;
+                return;
+            }
+            buffer[position++] = (byte) (0xE0 | (cp >> 12));
+            buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+            buffer[position++] = (byte) (0xF0 | (cp >> 18));
+            buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+        }
+    }
+
+    /**
+     * Writes an already encoded JSON fragment, as produced by json-lib, which can contain non
+     * ASCII characters only inside strings
+     */
+    private void writeAscii(String s) throws IOException {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                write(c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n) {
+                writeCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+            } else {
+                writeCodePoint(c);
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // buffer
+
+    private void write(char c) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) c;
+    }
+
+    private void write(byte b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = b;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Flushes the buffer, which always ends on a character boundary
+     */
+    private void flushBuffer() throws IOException {
+        if (position == 0) {
+            return;
+        }
+        if (charset == UTF8 || UTF8.equals(charset)) {
+            out.write(buffer, 0, position);
+        } else {
+            out.write(new String(buffer, 0, position, UTF8).getBytes(charset));
+        }
+        position = 0;
+    }
+}
@@ -7,6 +7,7 @@ package org.geoserver.wfs.xml;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -111,11 +112,21 @@ public class GML32OutputFormat extends GML3OutputFormat {
     }
 
     @Override
-    protected void setAdditionalSchemaLocations(Encoder encoder, GetFeatureRequest request, WFSInfo wfs) {
+    protected void setAdditionalSchemaLocations(Map<String, String> schemaLocations,
+            GetFeatureRequest request, WFSInfo wfs) {
         //since wfs 2.0 schema does not depend on gml 3.2 schema we register it manually
         String loc = wfs.isCanonicalSchemaLocation() ? GML.CANONICAL_SCHEMA_LOCATION : 
             ResponseUtils.buildSchemaURL(request.getBaseUrl(), "gml/3.2.1/gml.xsd");
-        encoder.setSchemaLocation(GML.NAMESPACE, loc);
+        schemaLocations.put(GML.NAMESPACE, loc);
+    }
+
+    @Override
+    protected GML3FeatureCollectionWriter createDirectWriter(WFSInfo wfs, int numDecimals) {
+        GML3FeatureCollectionWriter writer = new GML3FeatureCollectionWriter(true);
+        writer.setSrsSyntax(wfs.getGML().get(WFSInfo.Version.V_20).getSrsNameStyle()
+                .toSrsSyntax());
+        configureDirectWriter(writer, wfs, numDecimals);
+        return writer;
     }
 
     @Override
@@ -144,6 +155,17 @@ public class GML32OutputFormat extends GML3OutputFormat {
         return GML32OutputFormat.xslt;
     }
 
+    /**
+     * numberReturned is mandatory in WFS 2.0, it is kept as computed by GetFeature from the sizes of
+     * the collections (app-schema counts the distinct features there, no extra pass over the data
+     * is made here), while numberMatched is reported as unknown, same as the XSLT based encoding
+     * does
+     */
+    @Override
+    protected void setComplexFeatureCount(FeatureCollectionResponse results) {
+        results.setTotalNumberOfFeatures(BigInteger.valueOf(-1));
+    }
+
     protected void setNumDecimals(int numDecimals) {
         GMLConfiguration gml = configuration.getDependency(GMLConfiguration.class);
         if (gml != null) {
@@ -0,0 +1,527 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.gml2.SrsSyntax;
+import org.geotools.gml2.bindings.GML2EncodingUtils;
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Writes WFS 1.1 (GML 3.1) and WFS 2.0 (GML 3.2) feature collections of simple features straight
+ * to a {@link XMLStreamWriter}, as a much faster alternative to the schema driven
+ * {@link org.geotools.xml.Encoder}.
+ * <p>
+ * The output follows the same structure as the optimized GML3 encoders: geometries are encoded
+ * with <code>gml:pos</code> and <code>gml:posList</code>, multi polygons as
+ * <code>gml:MultiSurface</code>, and the attributes are converted to text with
+ * {@link Converters}. Null attributes are omitted, as they are optional in the feature type
+ * schemas GeoServer publishes.
+ * </p>
+ */
+public class GML3FeatureCollectionWriter {
+
+    static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+
+    static final String GML_NAMESPACE = org.geotools.gml3.GML.NAMESPACE;
+
+    static final String GML32_NAMESPACE = org.geotools.gml3.v3_2.GML.NAMESPACE;
+
+    static final String WFS_NAMESPACE = org.geoserver.wfs.xml.v1_1_0.WFS.NAMESPACE;
+
+    static final String WFS20_NAMESPACE = org.geotools.wfs.v2_0.WFS.NAMESPACE;
+
+    static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+
+    final boolean gml32;
+
+    final String gml;
+
+    final String wfs;
+
+    SrsSyntax srsSyntax = SrsSyntax.OGC_URN_EXPERIMENTAL;
+
+    int numDecimals = -1;
+
+    double scale;
+
+    boolean featureBounding;
+
+    boolean encodeFeatureMember;
+
+    boolean srsDimension = true;
+
+    /**
+     * Namespace URI to prefix, for the feature types being encoded
+     */
+    Map<String, String> prefixes = new LinkedHashMap<String, String>();
+
+    /**
+     * Namespace URI to schema location
+     */
+    Map<String, String> schemaLocations = new LinkedHashMap<String, String>();
+
+    /**
+     * Cache of the srsName of the coordinate reference systems met during the encoding
+     */
+    Map<CoordinateReferenceSystem, String> srsNames = new HashMap<CoordinateReferenceSystem, String>();
+
+    XMLStreamWriter writer;
+
+    /**
+     * Formatting buffer for coordinates
+     */
+    StringBuilder sb = new StringBuilder();
+
+    char[] chars = new char[1024];
+
+    /**
+     * The feature being encoded, and the counter used to build the GML 3.2 geometry ids
+     */
+    String featureId;
+
+    int geometryCount;
+
+    /**
+     * @param gml32 true to encode a WFS 2.0 response in GML 3.2, false for WFS 1.1 and GML 3.1
+     */
+    public GML3FeatureCollectionWriter(boolean gml32) {
+        this.gml32 = gml32;
+        this.gml = gml32 ? GML32_NAMESPACE : GML_NAMESPACE;
+        this.wfs = gml32 ? WFS20_NAMESPACE : WFS_NAMESPACE;
+    }
+
+    public void setSrsSyntax(SrsSyntax srsSyntax) {
+        this.srsSyntax = srsSyntax;
+    }
+
+    /**
+     * Sets the number of decimals ordinates are rounded to, a negative value writes them at full
+     * precision
+     */
+    public void setNumDecimals(int numDecimals) {
+        this.numDecimals = Math.min(numDecimals, 15);
+        this.scale = Math.pow(10, this.numDecimals);
+    }
+
+    public void setFeatureBounding(boolean featureBounding) {
+        this.featureBounding = featureBounding;
+    }
+
+    /**
+     * Uses a <code>gml:featureMember</code> per feature instead of a single
+     * <code>gml:featureMembers</code> element. Only used in WFS 1.1.
+     */
+    public void setEncodeFeatureMember(boolean encodeFeatureMember) {
+        this.encodeFeatureMember = encodeFeatureMember;
+    }
+
+    /**
+     * Enables the <code>srsDimension</code> attribute, cite compliant output omits it
+     */
+    public void setSrsDimension(boolean srsDimension) {
+        this.srsDimension = srsDimension;
+    }
+
+    public void declarePrefix(String prefix, String namespaceURI) {
+        prefixes.put(namespaceURI, prefix);
+    }
+
+    public void setSchemaLocation(String namespaceURI, String location) {
+        schemaLocations.put(namespaceURI, location);
+    }
+
+    /**
+     * Returns true if the response can be encoded by this writer, that is, it contains only simple
+     * features, and a single collection in WFS 2.0, as multiple collections need to be nested in
+     * additional feature collections
+     */
+    public boolean canEncode(FeatureCollectionResponse results) {
+        List<FeatureCollection> collections = results.getFeature();
+        if (gml32 && collections.size() != 1) {
+            return false;
+        }
+        for (FeatureCollection fc : collections) {
+            if (!(fc instanceof SimpleFeatureCollection)
+                    || !(fc.getSchema() instanceof SimpleFeatureType)
+                    || !prefixes.containsKey(fc.getSchema().getName().getNamespaceURI())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void write(FeatureCollectionResponse results, OutputStream output, Charset charset)
+            throws IOException {
+        try {
+            writer = FACTORY.createXMLStreamWriter(output, charset.name());
+            writer.writeStartDocument(charset.name(), "1.0");
+            writeStartCollection(results);
+            if (!gml32 && !encodeFeatureMember) {
+                writer.writeStartElement("gml", "featureMembers", gml);
+            }
+            for (FeatureCollection fc : results.getFeature()) {
+                SimpleFeatureIterator it = ((SimpleFeatureCollection) fc).features();
+                try {
+                    while (it.hasNext()) {
+                        SimpleFeature feature = it.next();
+                        if (gml32) {
+                            writer.writeStartElement("wfs", "member", wfs);
+                        } else if (encodeFeatureMember) {
+                            writer.writeStartElement("gml", "featureMember", gml);
+                        }
+                        writeFeature(feature);
+                        if (gml32 || encodeFeatureMember) {
+                            writer.writeEndElement();
+                        }
+                    }
+                } finally {
+                    it.close();
+                }
+            }
+            if (!gml32 && !encodeFeatureMember) {
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw (IOException) new IOException("Failed to encode the features").initCause(e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (XMLStreamException e) {
+                    // nothing to do, the stream is closed by the dispatcher anyways
+                }
+                writer = null;
+            }
+        }
+    }
+
+    void writeStartCollection(FeatureCollectionResponse results) throws XMLStreamException {
+        writer.writeStartElement("wfs", "FeatureCollection", wfs);
+        writer.writeNamespace("wfs", wfs);
+        writer.writeNamespace("gml", gml);
+        writer.writeNamespace("xsi", XSI_NAMESPACE);
+        for (Map.Entry<String, String> entry : prefixes.entrySet()) {
+            writer.writeNamespace(entry.getValue(), entry.getKey());
+        }
+
+        if (gml32) {
+            BigInteger matched = results.getTotalNumberOfFeatures();
+            writer.writeAttribute("numberMatched", matched == null || matched.signum() < 0 ?
+                    "unknown" : matched.toString());
+            BigInteger returned = results.getNumberOfFeatures();
+            writer.writeAttribute("numberReturned", returned == null ? "0" : returned.toString());
+        } else if (results.getNumberOfFeatures() != null) {
+            writer.writeAttribute("numberOfFeatures", results.getNumberOfFeatures().toString());
+        }
+        Calendar timeStamp = results.getTimeStamp();
+        if (timeStamp != null) {
+            writer.writeAttribute("timeStamp", DatatypeConverter.printDateTime(timeStamp));
+        }
+        if (results.getLockId() != null) {
+            writer.writeAttribute("lockId", results.getLockId());
+        }
+        if (gml32) {
+            if (results.getNext() != null) {
+                writer.writeAttribute("next", results.getNext());
+            }
+            if (results.getPrevious() != null) {
+                writer.writeAttribute("previous", results.getPrevious());
+            }
+        }
+
+        if (!schemaLocations.isEmpty()) {
+            StringBuilder locations = new StringBuilder();
+            for (Map.Entry<String, String> entry : schemaLocations.entrySet()) {
+                if (locations.length() > 0) {
+                    locations.append(' ');
+                }
+                locations.append(entry.getKey()).append(' ').append(entry.getValue());
+            }
+            writer.writeAttribute("xsi", XSI_NAMESPACE, "schemaLocation", locations.toString());
+        }
+    }
+
+    void writeFeature(SimpleFeature feature) throws XMLStreamException {
+        SimpleFeatureType type = feature.getFeatureType();
+        String ns = type.getName().getNamespaceURI();
+        String prefix = prefixes.get(ns);
+
+        featureId = feature.getID();
+        geometryCount = 0;
+        writer.writeStartElement(prefix, type.getTypeName(), ns);
+        if (featureId != null) {
+            writer.writeAttribute("gml", gml, "id", featureId);
+        }
+
+        if (featureBounding) {
+            ReferencedEnvelope bounds = ReferencedEnvelope.reference(feature.getBounds());
+            if (bounds != null && !bounds.isEmpty()) {
+                writeBounds(bounds);
+            }
+        }
+
+        List<AttributeDescriptor> descriptors = type.getAttributeDescriptors();
+        for (int i = 0; i < descriptors.size(); i++) {
+            Object value = feature.getAttribute(i);
+            if (value == null) {
+                continue;
+            }
+            AttributeDescriptor ad = descriptors.get(i);
+            writer.writeStartElement(prefix, ad.getLocalName(), ns);
+            if (value instanceof Geometry) {
+                CoordinateReferenceSystem crs = ad instanceof GeometryDescriptor ?
+                        ((GeometryDescriptor) ad).getCoordinateReferenceSystem() : null;
+                writeGeometry((Geometry) value, getSrsName(crs));
+            } else {
+                writer.writeCharacters(toString(value));
+            }
+            writer.writeEndElement();
+        }
+
+        writer.writeEndElement();
+    }
+
+    String toString(Object value) {
+        String converted = Converters.convert(value, String.class);
+        return converted != null ? converted : value.toString();
+    }
+
+    String getSrsName(CoordinateReferenceSystem crs) {
+        if (crs == null) {
+            return null;
+        }
+        String srsName = srsNames.get(crs);
+        if (srsName == null && !srsNames.containsKey(crs)) {
+            String code = GML2EncodingUtils.epsgCode(crs);
+            srsName = code != null ? srsSyntax.getPrefix() + code : null;
+            srsNames.put(crs, srsName);
+        }
+        return srsName;
+    }
+
+    void writeBounds(ReferencedEnvelope bounds) throws XMLStreamException {
+        writer.writeStartElement("gml", "boundedBy", gml);
+        writer.writeStartElement("gml", "Envelope", gml);
+        String srsName = getSrsName(bounds.getCoordinateReferenceSystem());
+        if (srsName != null) {
+            writer.writeAttribute("srsName", srsName);
+        }
+        if (srsDimension) {
+            writer.writeAttribute("srsDimension", "2");
+        }
+        writer.writeStartElement("gml", "lowerCorner", gml);
+        sb.setLength(0);
+        appendOrdinate(bounds.getMinX());
+        sb.append(' ');
+        appendOrdinate(bounds.getMinY());
+        writeBuffer();
+        writer.writeEndElement();
+        writer.writeStartElement("gml", "upperCorner", gml);
+        sb.setLength(0);
+        appendOrdinate(bounds.getMaxX());
+        sb.append(' ');
+        appendOrdinate(bounds.getMaxY());
+        writeBuffer();
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // geometries
+
+    void writeGeometry(Geometry g, String srsName) throws XMLStreamException {
+        Coordinate c = g.getCoordinate();
+        int dimension = c != null && !Double.isNaN(c.z) ? 3 : 2;
+        writeGeometry(g, srsName, dimension);
+    }
+
+    void writeGeometry(Geometry g, String srsName, int dimension) throws XMLStreamException {
+        if (g instanceof Point) {
+            startGeometry("Point", srsName, dimension);
+            writer.writeStartElement("gml", "pos", gml);
+            sb.setLength(0);
+            appendCoordinates(((Point) g).getCoordinateSequence(), dimension);
+            writeBuffer();
+            writer.writeEndElement();
+        } else if (g instanceof LineString) {
+            startGeometry("LineString", srsName, dimension);
+            writePosList(((LineString) g).getCoordinateSequence(), dimension);
+        } else if (g instanceof Polygon) {
+            Polygon polygon = (Polygon) g;
+            startGeometry("Polygon", srsName, dimension);
+            writeRing("exterior", polygon.getExteriorRing(), dimension);
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                writeRing("interior", polygon.getInteriorRingN(i), dimension);
+            }
+        } else if (g instanceof MultiPoint) {
+            startGeometry("MultiPoint", srsName, dimension);
+            writeMembers("pointMember", (GeometryCollection) g, dimension);
+        } else if (g instanceof MultiLineString) {
+            // MultiLineString is deprecated in GML 3.2
+            if (gml32) {
+                startGeometry("MultiCurve", srsName, dimension);
+                writeMembers("curveMember", (GeometryCollection) g, dimension);
+            } else {
+                startGeometry("MultiLineString", srsName, dimension);
+                writeMembers("lineStringMember", (GeometryCollection) g, dimension);
+            }
+        } else if (g instanceof MultiPolygon) {
+            startGeometry("MultiSurface", srsName, dimension);
+            writeMembers("surfaceMember", (GeometryCollection) g, dimension);
+        } else if (g instanceof GeometryCollection) {
+            startGeometry("MultiGeometry", srsName, dimension);
+            writeMembers("geometryMember", (GeometryCollection) g, dimension);
+        } else {
+            throw new IllegalArgumentException("Unsupported geometry type " + g.getClass());
+        }
+        writer.writeEndElement();
+    }
+
+    void startGeometry(String name, String srsName, int dimension) throws XMLStreamException {
+        writer.writeStartElement("gml", name, gml);
+        if (gml32) {
+            // geometries are GML objects in GML 3.2, the id is mandatory
+            writer.writeAttribute("gml", gml, "id", featureId + "." + (++geometryCount));
+        }
+        if (srsName != null) {
+            writer.writeAttribute("srsName", srsName);
+        }
+        if (srsDimension) {
+            writer.writeAttribute("srsDimension", String.valueOf(dimension));
+        }
+    }
+
+    void writeMembers(String member, GeometryCollection collection, int dimension)
+            throws XMLStreamException {
+        for (int i = 0; i < collection.getNumGeometries(); i++) {
+            writer.writeStartElement("gml", member, gml);
+            writeGeometry(collection.getGeometryN(i), null, dimension);
+            writer.writeEndElement();
+        }
+    }
+
+    void writeRing(String name, LineString ring, int dimension) throws XMLStreamException {
+        writer.writeStartElement("gml", name, gml);
+        writer.writeStartElement("gml", "LinearRing", gml);
+        writePosList(ring.getCoordinateSequence(), dimension);
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+
+    void writePosList(CoordinateSequence cs, int dimension) throws XMLStreamException {
+        writer.writeStartElement("gml", "posList", gml);
+        sb.setLength(0);
+        appendCoordinates(cs, dimension);
+        writeBuffer();
+        writer.writeEndElement();
+    }
+
+    void appendCoordinates(CoordinateSequence cs, int dimension) throws XMLStreamException {
+        boolean z = dimension > 2 && cs.getDimension() > 2;
+        for (int i = 0, n = cs.size(); i < n; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            appendOrdinate(cs.getX(i));
+            sb.append(' ');
+            appendOrdinate(cs.getY(i));
+            if (dimension > 2) {
+                sb.append(' ');
+                appendOrdinate(z ? cs.getOrdinate(i, 2) : Double.NaN);
+            }
+            // keep the buffer small for long sequences
+            if (sb.length() > 8192) {
+                writeBuffer();
+                sb.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Appends a ordinate to the buffer, rounded to the configured number of decimals, without
+     * exponent notation for values that can be represented exactly at that precision
+     */
+    void appendOrdinate(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append(value);
+            return;
+        }
+        double scaled = value * scale;
+        if (numDecimals < 0 || Math.abs(scaled) >= 1e15) {
+            sb.append(value);
+            return;
+        }
+        long units = Math.round(scaled);
+        if (units < 0) {
+            sb.append('-');
+            units = -units;
+        }
+        long unit = (long) scale;
+        sb.append(units / unit);
+        long fraction = units % unit;
+        if (fraction != 0) {
+            int digits = numDecimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            sb.append('.');
+            int start = sb.length();
+            sb.append(fraction);
+            for (int i = sb.length() - start; i < digits; i++) {
+                sb.insert(start, '0');
+            }
+        }
+    }
+
+    void writeBuffer() throws XMLStreamException {
+        int length = sb.length();
+        if (length > chars.length) {
+            chars = new char[length];
+        }
+        sb.getChars(0, length, chars, 0);
+        writer.writeCharacters(chars, 0, length);
+    }
+}
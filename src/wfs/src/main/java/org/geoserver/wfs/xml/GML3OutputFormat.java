@@ -24,15 +24,19 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
@@ -46,6 +50,7 @@ import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.ows.URLMangler.URLType;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.WFSException;
@@ -74,9 +79,30 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
     public static final boolean OPTIMIZED_ENCODING = Boolean.parseBoolean(System.getProperty(
             "GML_OPTIMIZED_ENCODING", "true"));
 
+    /**
+     * System/context/environment variable enabling the encoding of simple features with a
+     * {@link GML3FeatureCollectionWriter} instead of the {@link Encoder}. Used only along with the
+     * optimized encoding, disabling the latter falls back on the full schema driven encoding.
+     * Read on each request
+     */
+    public static final String DIRECT_ENCODING_KEY = "GML_DIRECT_ENCODING";
+
+    /**
+     * System/context/environment variable enabling the streaming of complex features straight to
+     * the output, instead of encoding them to a temporary file and fixing the feature count with a
+     * XSLT pass afterwards. Read on each request
+     */
+    public static final String COMPLEX_STREAMING_KEY = "GML_COMPLEX_STREAMING";
+
+    /**
+     * The compiled XSLT, by source, they are thread safe and can be shared among transformations
+     */
+    static final Map<DOMSource, Templates> TEMPLATES = new ConcurrentHashMap<DOMSource, Templates>();
+
     GeoServer geoServer;
     Catalog catalog;
     WFSConfiguration configuration;
+    final boolean directEncodingSupported;
     protected static DOMSource xslt;
     
     static {
@@ -105,6 +131,24 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
         this.catalog = geoServer.getCatalog();
         
         this.configuration = configuration;
+        this.directEncodingSupported = !overridesEncoderHook(getClass());
+    }
+
+    /**
+     * Returns true if the class customizes the {@link Encoder} schema locations with the deprecated
+     * hook, which the direct writer cannot honour
+     */
+    static boolean overridesEncoderHook(Class<?> clazz) {
+        for (Class<?> c = clazz; c != null && c != GML3OutputFormat.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("setAdditionalSchemaLocations", Encoder.class,
+                        GetFeatureRequest.class, WFSInfo.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // keep looking
+            }
+        }
+        return false;
     }
 
     public String getMimeType(Object value, Operation operation) {
@@ -217,14 +261,13 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
 
         //declare wfs schema location
         Object gft = getFeature.getParameters()[0];
-        
-        Encoder encoder = createEncoder(configuration, ns2metas, gft);
-        encoder.setEncoding(Charset.forName( geoServer.getSettings().getCharset() ));
+        Map<String, String> schemaLocations = new LinkedHashMap<String, String>();
+        Map<String, String> prefixes = new LinkedHashMap<String, String>();
 
         if (wfs.isCanonicalSchemaLocation()) {
-            encoder.setSchemaLocation(getWfsNamespace(), getCanonicalWfsSchemaLocation());
+            schemaLocations.put(getWfsNamespace(), getCanonicalWfsSchemaLocation());
         } else {
-            encoder.setSchemaLocation(getWfsNamespace(),
+            schemaLocations.put(getWfsNamespace(),
                     buildSchemaURL(request.getBaseURL(), getRelativeWfsSchemaLocation()));
         }
 
@@ -241,6 +284,7 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
             StringBuffer typeNames = new StringBuffer();
             for (Iterator m = metas.iterator(); m.hasNext();) {
                 ResourceInfo ri = (ResourceInfo) m.next();
+                prefixes.put(ri.getNamespace().getPrefix(), namespaceURI);
                 if(ri instanceof FeatureTypeInfo) {
                     FeatureTypeInfo meta = (FeatureTypeInfo) ri;
                     FeatureType featureType = meta.getFeatureType();
@@ -248,7 +292,7 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
                     if (userSchemaLocation != null && userSchemaLocation instanceof Map) {
                         Map<String, String> schemaURIs = (Map<String, String>) userSchemaLocation;
                         for (String namespace : schemaURIs.keySet()) {
-                            encoder.setSchemaLocation(namespace, schemaURIs.get(namespace));
+                            schemaLocations.put(namespace, schemaURIs.get(namespace));
                         }
                     } else {
                         typeNames.append(meta.getPrefixedName());
@@ -256,9 +300,6 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
                             typeNames.append(",");
                         }
                     }
-                } else {
-                    encoder.getNamespaces().declarePrefix(ri.getStore().getWorkspace().getName(),
-                            namespaceURI);
                 }
             }
 
@@ -268,18 +309,83 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
                 String schemaLocation = buildURL(request.getBaseURL(), "wfs", params, URLType.SERVICE);
                 LOGGER.finer("Unable to find user-defined schema location for: " + namespaceURI
                         + ". Using a built schema location by default: " + schemaLocation);
-                encoder.setSchemaLocation(namespaceURI, schemaLocation);
+                schemaLocations.put(namespaceURI, schemaLocation);
             }
         }
 
+        setAdditionalSchemaLocations(schemaLocations, request, wfs);
+        Charset charset = Charset.forName(geoServer.getSettings().getCharset());
+
+        if (directEncodingSupported && isDirectEncoding() && OPTIMIZED_ENCODING
+                && !isComplexFeature(results)) {
+            GML3FeatureCollectionWriter writer = createDirectWriter(wfs, numDecimals);
+            for (Map.Entry<String, String> entry : prefixes.entrySet()) {
+                writer.declarePrefix(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, String> entry : schemaLocations.entrySet()) {
+                writer.setSchemaLocation(entry.getKey(), entry.getValue());
+            }
+            if (writer.canEncode(results)) {
+                writer.write(results, output, charset);
+                return;
+            }
+        }
+
+        Encoder encoder = createEncoder(configuration, ns2metas, gft);
+        encoder.setEncoding(charset);
+        for (Map.Entry<String, String> entry : schemaLocations.entrySet()) {
+            encoder.setSchemaLocation(entry.getKey(), entry.getValue());
+        }
         setAdditionalSchemaLocations(encoder, request, wfs);
+        // resources that are not feature types are not part of the application schema
+        for (Map.Entry<String, Set<ResourceInfo>> entry : ns2metas.entrySet()) {
+            for (ResourceInfo ri : entry.getValue()) {
+                if (!(ri instanceof FeatureTypeInfo)) {
+                    encoder.getNamespaces().declarePrefix(ri.getStore().getWorkspace().getName(),
+                            entry.getKey());
+                }
+            }
+        }
+
         if (this.isComplexFeature(results)) {
-            complexFeatureStreamIntercept(results, output, encoder);
+            if (isComplexStreaming()) {
+                complexFeatureStream(results, output, encoder);
+            } else {
+                complexFeatureStreamIntercept(results, output, encoder);
+            }
         } else {
             encode(results, output, encoder);
         }
         
     }
+
+    /**
+     * Returns true if simple features are to be encoded with the direct writer, see
+     * {@link #DIRECT_ENCODING_KEY}
+     */
+    static boolean isDirectEncoding() {
+        return Boolean.parseBoolean(GeoServerExtensions.getProperty(DIRECT_ENCODING_KEY));
+    }
+
+    /**
+     * Creates the writer used to encode simple features without going through the
+     * {@link Encoder}, when {@link #DIRECT_ENCODING_KEY} is enabled
+     */
+    protected GML3FeatureCollectionWriter createDirectWriter(WFSInfo wfs, int numDecimals) {
+        GML3FeatureCollectionWriter writer = new GML3FeatureCollectionWriter(false);
+        writer.setSrsSyntax(wfs.getGML().get(WFSInfo.Version.V_11).getSrsNameStyle()
+                .toSrsSyntax());
+        writer.setEncodeFeatureMember(wfs.isEncodeFeatureMember());
+        configureDirectWriter(writer, wfs, numDecimals);
+        return writer;
+    }
+
+    protected void configureDirectWriter(GML3FeatureCollectionWriter writer, WFSInfo wfs,
+            int numDecimals) {
+        writer.setNumDecimals(numDecimals);
+        writer.setFeatureBounding(wfs.isFeatureBounding());
+        writer.setSrsDimension(!wfs.isCiteCompliant());
+    }
     
     protected void setNumDecimals(int numDecimals) {
         GMLConfiguration gml = configuration.getDependency(GMLConfiguration.class);
@@ -293,7 +399,24 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
         return new Encoder(configuration, configuration.schema());
     }
 
-    protected void setAdditionalSchemaLocations(Encoder encoder, GetFeatureRequest request, WFSInfo wfs) {
+    /**
+     * Hook for subclasses, allows to add schema locations used by both the {@link Encoder} and the
+     * direct writer
+     */
+    protected void setAdditionalSchemaLocations(Map<String, String> schemaLocations,
+            GetFeatureRequest request, WFSInfo wfs) {
+        //hook for subclasses
+    }
+
+    /**
+     * Hook for subclasses, called only when encoding with the {@link Encoder}
+     * 
+     * @deprecated override {@link #setAdditionalSchemaLocations(Map, GetFeatureRequest, WFSInfo)}
+     *             instead, subclasses overriding this method do not use the direct writer
+     */
+    @Deprecated
+    protected void setAdditionalSchemaLocations(Encoder encoder, GetFeatureRequest request,
+            WFSInfo wfs) {
         //hook for subclasses
     }
     
@@ -307,6 +430,33 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
         return GML3OutputFormat.xslt;
     }
 
+    /**
+     * Returns true if complex features are to be streamed straight to the output, see
+     * {@link #COMPLEX_STREAMING_KEY}
+     */
+    static boolean isComplexStreaming() {
+        return Boolean.parseBoolean(GeoServerExtensions.getProperty(COMPLEX_STREAMING_KEY));
+    }
+
+    /**
+     * Encodes the complex features directly to the output, the feature count is set by
+     * {@link #setComplexFeatureCount} before the encoding starts
+     */
+    private void complexFeatureStream(FeatureCollectionResponse results, OutputStream output,
+            Encoder encoder) throws IOException {
+        setComplexFeatureCount(results);
+        encode(results, output, encoder);
+    }
+
+    /**
+     * Sets the feature count of a complex feature response, before it gets streamed out. The
+     * numberOfFeatures attribute is optional in WFS 1.1, it is omitted rather than counting the
+     * features with an extra pass over the data
+     */
+    protected void setComplexFeatureCount(FeatureCollectionResponse results) {
+        results.setNumberOfFeatures(null);
+    }
+
     private void complexFeatureStreamIntercept(FeatureCollectionResponse results, OutputStream output,
             Encoder encoder) throws IOException {
         if (this.getXSLT() == null) {
@@ -358,13 +508,28 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
 
     public void transform(InputStream in, DOMSource xslt, OutputStream out)
             throws TransformerException {
-        TransformerFactory factory = TransformerFactory.newInstance();
-        Transformer transformer = (xslt == null ? factory.newTransformer() : factory
-                .newTransformer(xslt));
+        Transformer transformer;
+        if (xslt == null) {
+            transformer = TransformerFactory.newInstance().newTransformer();
+        } else {
+            transformer = getTemplates(xslt).newTransformer();
+        }
         transformer.setErrorListener(new TransformerErrorListener());
         transformer.transform(new StreamSource(in), new StreamResult(out));
     }
 
+    /**
+     * Returns the compiled XSLT, compiling and caching it on first use
+     */
+    static Templates getTemplates(DOMSource xslt) throws TransformerConfigurationException {
+        Templates templates = TEMPLATES.get(xslt);
+        if (templates == null) {
+            templates = TransformerFactory.newInstance().newTemplates(xslt);
+            TEMPLATES.put(xslt, templates);
+        }
+        return templates;
+    }
+
     // If an application does not register its own custom ErrorListener, the default ErrorListener
     // is used which reports all warnings and errors to System.err and does not throw any Exceptions
     private class TransformerErrorListener implements ErrorListener {
@@ -0,0 +1,116 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import javax.xml.namespace.QName;
+
+import org.easymock.IAnswer;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.filter.text.ecql.ECQL;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FeatureCountCacheTest {
+
+    FeatureTypeInfo lakes;
+
+    FeatureSource source;
+
+    FeatureCountCache cache;
+
+    volatile int counts;
+
+    @Before
+    public void setUp() throws Exception {
+        NamespaceInfo ns = createNiceMock(NamespaceInfo.class);
+        expect(ns.getURI()).andReturn("http://www.geoserver.org").anyTimes();
+        lakes = createNiceMock(FeatureTypeInfo.class);
+        expect(lakes.getNamespace()).andReturn(ns).anyTimes();
+        expect(lakes.getName()).andReturn("Lakes").anyTimes();
+        replay(ns, lakes);
+
+        counts = 0;
+        source = createNiceMock(SimpleFeatureSource.class);
+        expect(source.getCount((Query) anyObject())).andAnswer(
+                new IAnswer<Integer>() {
+                    public Integer answer() throws Throwable {
+                        return 10 + counts++;
+                    }
+                }).anyTimes();
+        replay(source);
+
+        cache = new FeatureCountCache(10, 60000, false, 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.destroy();
+    }
+
+    Query query(String cql) throws Exception {
+        return new Query("Lakes", ECQL.toFilter(cql));
+    }
+
+    @Test
+    public void testCached() throws Exception {
+        assertEquals(10, (int) cache.count(lakes, source, query("FID > 0")).get());
+        assertEquals(10, (int) cache.count(lakes, source, query("FID > 0")).get());
+        assertEquals(1, cache.getHitCount());
+        // a different filter is a different count
+        assertEquals(11, (int) cache.count(lakes, source, query("FID > 1")).get());
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    public void testTransactionInvalidates() throws Exception {
+        assertEquals(10, (int) cache.count(lakes, source, query("FID > 0")).get());
+        // another layer does not matter
+        cache.dataStoreChange(new TransactionEvent(TransactionEventType.PRE_INSERT, null,
+                new QName("http://www.geoserver.org", "Forests"), null));
+        assertEquals(1, cache.getSize());
+        cache.dataStoreChange(new TransactionEvent(TransactionEventType.PRE_INSERT, null,
+                new QName("http://www.geoserver.org", "Lakes"), null));
+        assertEquals(0, cache.getSize());
+        assertEquals(11, (int) cache.count(lakes, source, query("FID > 0")).get());
+    }
+
+    @Test
+    public void testEstimated() throws Exception {
+        cache.destroy();
+        cache = new FeatureCountCache(10, 0, true, 2);
+        assertEquals(10, (int) cache.count(lakes, source, query("FID > 0")).get());
+        Thread.sleep(5);
+        // expired, the old value is returned while refreshing
+        assertEquals(10, (int) cache.count(lakes, source, query("FID > 0")).get());
+        for (int i = 0; i < 100 && counts < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, counts);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailure() throws Exception {
+        FeatureSource failing = createNiceMock(SimpleFeatureSource.class);
+        expect(failing.getCount((Query) anyObject())).andThrow(
+                new IOException("boom")).anyTimes();
+        replay(failing);
+        CountExecutor executor = new CountExecutor(failing, query("FID > 0"));
+        executor.start(cache, lakes);
+        executor.getCount();
+    }
+}
@@ -0,0 +1,144 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+public class PagingCursorTest {
+
+    FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+
+    SimpleFeatureType schema;
+
+    @Before
+    public void setUp() throws Exception {
+        schema = DataUtilities.createType("test", "num:Integer,name:String");
+    }
+
+    SimpleFeature feature(Integer num, String name) {
+        return SimpleFeatureBuilder.build(schema, new Object[] { num, name }, null);
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        PagingCursor cursor = new PagingCursor(20, 3, Arrays.asList("15", "a|b c&d=%\u00e9"));
+        String token = cursor.encode();
+        // url safe
+        assertTrue(token, token.matches("[A-Za-z0-9_\\-]+"));
+
+        PagingCursor decoded = PagingCursor.decode(token);
+        assertEquals(20, decoded.getOffset());
+        assertEquals(3, decoded.getSkip());
+        assertEquals(cursor.key, decoded.key);
+    }
+
+    @Test
+    public void testDecodeInvalid() {
+        String[] tokens = new String[] { "abc",
+                new PagingCursor(1, 1, Collections.<String> emptyList()).encode(),
+                new PagingCursor(-1, 0, Arrays.asList("a")).encode() };
+        for (String token : tokens) {
+            try {
+                PagingCursor.decode(token);
+                fail("Should have failed to decode " + token);
+            } catch (IllegalArgumentException e) {
+                // fine
+            }
+        }
+    }
+
+    @Test
+    public void testFilterAscending() {
+        PagingCursor cursor = new PagingCursor(4, 1, Arrays.asList("2", "b"));
+        List<SortBy> sortBy = Arrays.asList(ff.sort("num", SortOrder.ASCENDING),
+                ff.sort("name", SortOrder.ASCENDING));
+        Filter filter = cursor.toFilter(ff, sortBy, schema);
+
+        // the cursor key itself is included, the skip takes care of it
+        assertTrue(filter.evaluate(feature(2, "b")));
+        assertTrue(filter.evaluate(feature(2, "c")));
+        assertTrue(filter.evaluate(feature(3, "a")));
+        assertFalse(filter.evaluate(feature(2, "a")));
+        assertFalse(filter.evaluate(feature(1, "z")));
+    }
+
+    @Test
+    public void testFilterDescending() {
+        PagingCursor cursor = new PagingCursor(4, 1, Arrays.asList("2", "b"));
+        List<SortBy> sortBy = Arrays.asList(ff.sort("num", SortOrder.DESCENDING),
+                ff.sort("name", SortOrder.ASCENDING));
+        Filter filter = cursor.toFilter(ff, sortBy, schema);
+
+        assertTrue(filter.evaluate(feature(2, "b")));
+        assertTrue(filter.evaluate(feature(2, "c")));
+        assertTrue(filter.evaluate(feature(1, "a")));
+        assertFalse(filter.evaluate(feature(2, "a")));
+        assertFalse(filter.evaluate(feature(3, "z")));
+    }
+
+    @Test
+    public void testFilterMismatch() {
+        PagingCursor cursor = new PagingCursor(4, 1, Arrays.asList("2"));
+        List<SortBy> sortBy = Arrays.asList(ff.sort("num", SortOrder.ASCENDING),
+                ff.sort("name", SortOrder.ASCENDING));
+        try {
+            cursor.toFilter(ff, sortBy, schema);
+            fail("The key does not match the sort");
+        } catch (IllegalArgumentException e) {
+            // fine
+        }
+
+        cursor = new PagingCursor(4, 1, Arrays.asList("abc"));
+        try {
+            cursor.toFilter(ff, sortBy.subList(0, 1), schema);
+            fail("The key is not a number");
+        } catch (IllegalArgumentException e) {
+            // fine
+        }
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        List<SortBy> sortBy = Arrays.asList(ff.sort("num", SortOrder.ASCENDING));
+        PagingCursor.Scan scan = new PagingCursor.Scan(DataUtilities.source(new SimpleFeature[] {
+                feature(1, "a"), feature(2, "b"), feature(2, "c") }), Query.ALL, sortBy, null);
+        PagingCursor next = scan.next(10, 3);
+        assertNotNull(next);
+        assertEquals(13, next.getOffset());
+        assertEquals(2, next.getSkip());
+        assertEquals(Arrays.asList("2"), next.key);
+    }
+
+    @Test
+    public void testScanNullKey() throws Exception {
+        List<SortBy> sortBy = Arrays.asList(ff.sort("num", SortOrder.ASCENDING));
+        PagingCursor.Scan scan = new PagingCursor.Scan(DataUtilities.source(new SimpleFeature[] {
+                feature(1, "a"), feature(null, "b") }), Query.ALL, sortBy, null);
+        // no cursor, the next link falls back on startIndex
+        assertNull(scan.next(0, 2));
+    }
+}
@@ -0,0 +1,132 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.geotools.referencing.CRS;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.io.WKTReader;
+import com.vividsolutions.jts.precision.CoordinatePrecisionReducerFilter;
+
+public class GeoJSONWriterTest {
+
+    String write(Geometry g, int decimals) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GeoJSONWriter writer = new GeoJSONWriter(bos);
+        writer.setNumberOfDecimals(decimals);
+        writer.writeGeom(g);
+        writer.flush();
+        return bos.toString("UTF-8");
+    }
+
+    String build(Geometry g) {
+        StringWriter sw = new StringWriter();
+        new GeoJSONBuilder(sw).writeGeom(g);
+        return sw.toString();
+    }
+
+    void assertSameGeometry(String wkt) throws Exception {
+        Geometry g = new WKTReader().read(wkt);
+        assertEquals(build(g), write(g, -1));
+    }
+
+    @Test
+    public void testGeometries() throws Exception {
+        assertSameGeometry("POINT(1 2)");
+        assertSameGeometry("POINT(1 2 3)");
+        assertSameGeometry("LINESTRING(0.1 -0.25, 0.00001 1234567.125, 12345678.5 -0.0)");
+        assertSameGeometry("MULTIPOINT((0 0), (1 1))");
+        assertSameGeometry("POLYGON((0 0, 10 0, 10 10, 0 0), (1 1, 2 1, 2 2, 1 1))");
+        assertSameGeometry("MULTILINESTRING((0 0, 1 1), (2 2, 3 3))");
+        assertSameGeometry("MULTIPOLYGON(((0 0, 10 0, 10 10, 0 0)), ((20 20, 30 20, 30 30, 20 20)))");
+        assertSameGeometry("GEOMETRYCOLLECTION(POINT(1 2), LINESTRING(0 0, 1 1))");
+    }
+
+    @Test
+    public void testAxisOrder() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GeoJSONWriter writer = new GeoJSONWriter(bos);
+        writer.setAxisOrder(CRS.AxisOrder.NORTH_EAST);
+        writer.writeGeom(new WKTReader().read("POINT(1 2)"));
+        writer.flush();
+        assertEquals("{\"type\":\"Point\",\"coordinates\":[2,1]}", bos.toString("UTF-8"));
+    }
+
+    @Test
+    public void testDecimals() throws Exception {
+        String wkt = "LINESTRING(0.123456789 -0.987654321, 123.00049 -45.5, 0.00001 -0.00004, "
+                + "1234567.891 98765.4321, 0.0005 -0.0015, 0.0015 9999999.996)";
+        for (int decimals = 0; decimals < 8; decimals++) {
+            Geometry g = new WKTReader().read(wkt);
+            String rounded = write(g, decimals);
+            g.apply(new CoordinatePrecisionReducerFilter(new PrecisionModel(Math.pow(10,
+                    decimals))));
+            assertEquals("Decimals: " + decimals, build(g), rounded);
+        }
+    }
+
+    @Test
+    public void testValues() throws Exception {
+        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        cal.clear();
+        cal.set(2011, 9, 25);
+        java.sql.Date date = new java.sql.Date(cal.getTimeInMillis());
+        Object[] values = new Object[] { "plain", "quote \" and \\ backslash", "</script>",
+                "tab\tnew line\n", "caf\u00e9 \u20ac \u2028", "function() {}", "null", null,
+                1, 15L, 1.5, 100d, 1e-7, 3.5f, true, date };
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GeoJSONWriter writer = new GeoJSONWriter(bos);
+        StringWriter sw = new StringWriter();
+        GeoJSONBuilder builder = new GeoJSONBuilder(sw);
+        writer.object().key("values").array();
+        builder.object().key("values").array();
+        for (Object value : values) {
+            writer.value(value);
+            builder.value(value);
+        }
+        writer.endArray().key("nested").object().key("a").value(1).endObject().endObject();
+        builder.endArray().key("nested").object().key("a").value(1).endObject().endObject();
+        writer.flush();
+
+        assertEquals(sw.toString(), bos.toString("UTF-8"));
+    }
+
+    @Test
+    public void testStrictStrings() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GeoJSONWriter writer = new GeoJSONWriter(bos);
+        writer.setStrictStrings(true);
+        writer.array();
+        writer.value("null").value(null).value("function() {}").value("a/b");
+        writer.value("quote \" and \\ backslash").value("tab\tnew line\n\u0001");
+        writer.value("caf\u00e9 \ud83d\ude00").value(new StringBuilder("text")).value(1.5);
+        writer.endArray();
+        writer.flush();
+        assertEquals("[\"null\",null,\"function() {}\",\"a/b\","
+                + "\"quote \\\" and \\\\ backslash\",\"tab\\tnew line\\n\\u0001\","
+                + "\"caf\u00e9 \ud83d\ude00\",\"text\",1.5]", bos.toString("UTF-8"));
+    }
+
+    @Test
+    public void testCharset() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Charset latin1 = Charset.forName("ISO-8859-1");
+        GeoJSONWriter writer = new GeoJSONWriter(bos, latin1);
+        writer.object().key("name").value("caf\u00e9").endObject();
+        writer.flush();
+        assertEquals("{\"name\":\"caf\u00e9\"}", new String(bos.toByteArray(), latin1));
+    }
+}
@@ -8,9 +8,11 @@ package org.geoserver.wfs.v2_0;
 import static org.junit.Assert.*;
 import java.io.ByteArrayInputStream;
 import java.net.URLDecoder;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -21,6 +23,7 @@ import org.geoserver.catalog.DataStoreInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.data.test.SystemTestData;
 import org.geoserver.ows.util.KvpMap;
+import org.geoserver.wfs.PagingCursor;
 import org.geotools.data.DataStore;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.FeatureStore;
@@ -31,6 +34,7 @@ import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.filter.v2_0.FESConfiguration;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.xml.Parser;
 import org.junit.Test;
 import org.opengis.feature.simple.SimpleFeature;
@@ -40,6 +44,11 @@ import org.opengis.filter.FilterFactory;
 import org.opengis.filter.Id;
 import org.opengis.filter.identity.Identifier;
 import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
 
 public class GetFeaturePagingTest extends WFS20TestSupport {
 
@@ -87,6 +96,31 @@ public class GetFeaturePagingTest extends WFS20TestSupport {
         
         ft = cb.buildFeatureType(fs);
         cat.add(ft);
+
+        // cursor paging needs non nillable sort attributes, "grp" repeats across pages
+        tb = new SimpleFeatureTypeBuilder();
+        tb.setName("Cursors");
+        tb.nillable(false);
+        tb.add("geom", Point.class, DefaultGeographicCRS.WGS84);
+        tb.add("grp", Integer.class);
+        tb.add("num", Integer.class);
+        store.createSchema(tb.buildFeatureType());
+
+        fs = (FeatureStore) store.getFeatureSource("Cursors");
+        SimpleFeatureBuilder b = new SimpleFeatureBuilder((SimpleFeatureType) fs.getSchema());
+        DefaultFeatureCollection toAdd = new DefaultFeatureCollection(null, null);
+        GeometryFactory gf = new GeometryFactory();
+        int[] groups = new int[] { 1, 1, 1, 2, 2, 2, 2, 2, 2, 3, 3, 4 };
+        for (int i = 0; i < groups.length; i++) {
+            b.add(gf.createPoint(new Coordinate(i, i)));
+            b.add(groups[i]);
+            b.add(i);
+            toAdd.add(b.buildFeature(null));
+        }
+        fs.addFeatures(toAdd);
+
+        ft = cb.buildFeatureType(fs);
+        cat.add(ft);
     }
 
     void addFeatures(FeatureStore fs, FeatureCollection features) throws Exception {
@@ -519,6 +553,81 @@ public class GetFeaturePagingTest extends WFS20TestSupport {
         XMLAssert.assertXpathExists("//gs:Fifteen/gs:num[text() = '14']", dom);
     }
 
+    /**
+     * Follows the next links from the first page, checking they all use a cursor, and returns
+     * the values of the "num" attribute
+     */
+    List<String> readCursorPages(String first, int expectedPages) throws Exception {
+        String next = first;
+        List<String> nums = new ArrayList<String>();
+        int pages = 0;
+        while (next != null) {
+            Document doc = getAsDOM(next);
+            NodeList values = doc.getElementsByTagName("gs:num");
+            for (int i = 0; i < values.getLength(); i++) {
+                nums.add(values.item(i).getTextContent());
+            }
+            pages++;
+            if (doc.getDocumentElement().hasAttribute("next")) {
+                next = doc.getDocumentElement().getAttribute("next");
+                KvpMap kvp = toKvpMap(next);
+                assertTrue(kvp.containsKey("cursor"));
+                assertFalse(kvp.containsKey("startIndex"));
+                next = next.substring(next.indexOf("wfs"));
+            } else {
+                next = null;
+            }
+        }
+        assertEquals(expectedPages, pages);
+        return nums;
+    }
+
+    @Test
+    public void testCursorNextGET() throws Exception {
+        System.setProperty(PagingCursor.CURSOR_PAGING_KEY, "true");
+        try {
+            List<String> nums = readCursorPages("wfs?request=GetFeature&version=2.0.0"
+                    + "&service=wfs&typeName=gs:Cursors&sortBy=num DESC&startIndex=0&count=5", 3);
+            assertEquals(12, nums.size());
+            for (int i = 0; i < nums.size(); i++) {
+                assertEquals(String.valueOf(11 - i), nums.get(i));
+            }
+        } finally {
+            System.clearProperty(PagingCursor.CURSOR_PAGING_KEY);
+        }
+    }
+
+    @Test
+    public void testCursorRepeatedKeyGET() throws Exception {
+        System.setProperty(PagingCursor.CURSOR_PAGING_KEY, "true");
+        try {
+            // grp 2 starts at the end of the first page, fills the second one and ends in the
+            // third one, the cursor has to skip the ones already returned each time
+            List<String> nums = readCursorPages("wfs?request=GetFeature&version=2.0.0"
+                    + "&service=wfs&typeName=gs:Cursors&sortBy=grp&startIndex=0&count=4", 3);
+            assertEquals(12, nums.size());
+            for (int i = 0; i < nums.size(); i++) {
+                assertEquals(String.valueOf(i), nums.get(i));
+            }
+        } finally {
+            System.clearProperty(PagingCursor.CURSOR_PAGING_KEY);
+        }
+    }
+
+    @Test
+    public void testInvalidCursor() throws Exception {
+        System.setProperty(PagingCursor.CURSOR_PAGING_KEY, "true");
+        try {
+            Document doc = getAsDOM("wfs?request=GetFeature&version=2.0.0&service=wfs"
+                    + "&typeName=gs:Cursors&sortBy=num&count=4&cursor=abc");
+            XMLAssert.assertXpathEvaluatesTo("InvalidParameterValue",
+                    "//ows:Exception/@exceptionCode", doc);
+            XMLAssert.assertXpathEvaluatesTo("cursor", "//ows:Exception/@locator", doc);
+        } finally {
+            System.clearProperty(PagingCursor.CURSOR_PAGING_KEY);
+        }
+    }
+
     @Test
     public void testNextPreviousHitsGET() throws Exception {
         doTestNextPreviousHitsGET("gs:Fifteen");
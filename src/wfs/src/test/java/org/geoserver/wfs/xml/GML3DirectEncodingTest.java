@@ -0,0 +1,186 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.geoserver.config.GeoServer;
+import org.geoserver.data.test.MockData;
+import org.geoserver.wfs.WFSInfo;
+import org.geoserver.wfs.WFSTestSupport;
+import org.geoserver.wfs.request.GetFeatureRequest;
+import org.geoserver.wfs.xml.v1_1_0.WFSConfiguration;
+import org.geotools.xml.Encoder;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Compares the GetFeature output of the {@link GML3FeatureCollectionWriter} with the one of the
+ * schema driven {@link Encoder}
+ */
+public class GML3DirectEncodingTest extends WFSTestSupport {
+
+    static final String GML31 = "http://www.opengis.net/gml";
+
+    static final String GML32 = "http://www.opengis.net/gml/3.2";
+
+    static class LegacyOutputFormat extends GML3OutputFormat {
+
+        public LegacyOutputFormat(GeoServer geoServer, WFSConfiguration configuration) {
+            super(geoServer, configuration);
+        }
+
+        @Override
+        protected void setAdditionalSchemaLocations(Encoder encoder, GetFeatureRequest request,
+                WFSInfo wfs) {
+            encoder.setSchemaLocation("http://www.geoserver.org/legacy", "http://legacy.xsd");
+        }
+    }
+
+    Document getFeature(String path, boolean direct) throws Exception {
+        if (direct) {
+            System.setProperty(GML3OutputFormat.DIRECT_ENCODING_KEY, "true");
+        }
+        try {
+            return getAsDOM(path);
+        } finally {
+            System.clearProperty(GML3OutputFormat.DIRECT_ENCODING_KEY);
+        }
+    }
+
+    List<String> coordinates(Element element) {
+        List<String> result = new ArrayList<String>();
+        for (String tag : new String[] { "pos", "posList" }) {
+            NodeList nodes = element.getElementsByTagNameNS("*", tag);
+            for (int i = 0; i < nodes.getLength(); i++) {
+                result.addAll(Arrays.asList(nodes.item(i).getTextContent().trim().split("\\s+")));
+            }
+        }
+        return result;
+    }
+
+    void assertSameFeatures(Document expected, Document actual, String gml, String typeName) {
+        Element expectedRoot = expected.getDocumentElement();
+        Element actualRoot = actual.getDocumentElement();
+        assertEquals(expectedRoot.getNamespaceURI(), actualRoot.getNamespaceURI());
+        assertEquals(expectedRoot.getLocalName(), actualRoot.getLocalName());
+        for (String attribute : new String[] { "numberOfFeatures", "numberReturned",
+                "numberMatched" }) {
+            assertEquals(attribute, expectedRoot.getAttribute(attribute),
+                    actualRoot.getAttribute(attribute));
+        }
+        String xsi = "http://www.w3.org/2001/XMLSchema-instance";
+        assertEquals(
+                new HashSet<String>(Arrays.asList(expectedRoot.getAttributeNS(xsi,
+                        "schemaLocation").trim().split("\\s+"))),
+                new HashSet<String>(Arrays.asList(actualRoot.getAttributeNS(xsi,
+                        "schemaLocation").trim().split("\\s+"))));
+
+        NodeList expectedFeatures = expected.getElementsByTagName(typeName);
+        NodeList actualFeatures = actual.getElementsByTagName(typeName);
+        assertTrue(expectedFeatures.getLength() > 0);
+        assertEquals(expectedFeatures.getLength(), actualFeatures.getLength());
+        for (int i = 0; i < expectedFeatures.getLength(); i++) {
+            Element ef = (Element) expectedFeatures.item(i);
+            Element af = (Element) actualFeatures.item(i);
+            assertEquals(ef.getAttributeNS(gml, "id"), af.getAttributeNS(gml, "id"));
+
+            // same properties, in the same order
+            List<Element> expectedProperties = children(ef);
+            List<Element> actualProperties = children(af);
+            assertEquals(expectedProperties.size(), actualProperties.size());
+            for (int j = 0; j < expectedProperties.size(); j++) {
+                Element ep = expectedProperties.get(j);
+                Element ap = actualProperties.get(j);
+                assertEquals(ep.getTagName(), ap.getTagName());
+                if (children(ep).isEmpty()) {
+                    assertEquals(ep.getTagName(), ep.getTextContent(), ap.getTextContent());
+                } else {
+                    Element eg = children(ep).get(0);
+                    Element ag = children(ap).get(0);
+                    assertEquals(eg.getTagName(), ag.getTagName());
+                    assertEquals(eg.getAttribute("srsName"), ag.getAttribute("srsName"));
+                    List<String> ec = coordinates(eg);
+                    List<String> ac = coordinates(ag);
+                    assertEquals(ec.size(), ac.size());
+                    for (int k = 0; k < ec.size(); k++) {
+                        assertEquals(Double.parseDouble(ec.get(k)),
+                                Double.parseDouble(ac.get(k)), 1e-9);
+                    }
+                }
+            }
+        }
+    }
+
+    List<Element> children(Element element) {
+        List<Element> result = new ArrayList<Element>();
+        for (Node n = element.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element) {
+                result.add((Element) n);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testRuntimeSwitch() {
+        assertFalse(GML3OutputFormat.isDirectEncoding());
+        System.setProperty(GML3OutputFormat.DIRECT_ENCODING_KEY, "true");
+        try {
+            assertTrue(GML3OutputFormat.isDirectEncoding());
+        } finally {
+            System.clearProperty(GML3OutputFormat.DIRECT_ENCODING_KEY);
+        }
+    }
+
+    @Test
+    public void testDeprecatedHook() {
+        assertFalse(GML3OutputFormat.overridesEncoderHook(GML3OutputFormat.class));
+        assertFalse(GML3OutputFormat.overridesEncoderHook(GML32OutputFormat.class));
+        assertTrue(GML3OutputFormat.overridesEncoderHook(LegacyOutputFormat.class));
+    }
+
+    @Test
+    public void testWFS11() throws Exception {
+        String path = "wfs?request=GetFeature&version=1.1.0&service=wfs&typeName="
+                + getLayerId(MockData.BUILDINGS);
+        assertSameFeatures(getFeature(path, false), getFeature(path, true), GML31,
+                getLayerId(MockData.BUILDINGS));
+    }
+
+    @Test
+    public void testWFS11Points() throws Exception {
+        String path = "wfs?request=GetFeature&version=1.1.0&service=wfs&typeName="
+                + getLayerId(MockData.POINTS) + "&srsName=urn:ogc:def:crs:EPSG::4326";
+        assertSameFeatures(getFeature(path, false), getFeature(path, true), GML31,
+                getLayerId(MockData.POINTS));
+    }
+
+    @Test
+    public void testWFS20() throws Exception {
+        String path = "wfs?request=GetFeature&version=2.0.0&service=wfs&typeNames="
+                + getLayerId(MockData.BUILDINGS);
+        assertSameFeatures(getFeature(path, false), getFeature(path, true), GML32,
+                getLayerId(MockData.BUILDINGS));
+    }
+
+    @Test
+    public void testWFS20Lines() throws Exception {
+        String path = "wfs?request=GetFeature&version=2.0.0&service=wfs&typeNames="
+                + getLayerId(MockData.LINES) + "&count=2";
+        assertSameFeatures(getFeature(path, false), getFeature(path, true), GML32,
+                getLayerId(MockData.LINES));
+    }
+}
@@ -0,0 +1,144 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import net.opengis.wfs.WfsFactory;
+import net.opengis.wfs20.Wfs20Factory;
+
+import org.custommonkey.xmlunit.SimpleNamespaceContext;
+import org.custommonkey.xmlunit.XMLUnit;
+import org.custommonkey.xmlunit.XpathEngine;
+import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.gml2.SrsSyntax;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.w3c.dom.Document;
+
+import com.vividsolutions.jts.io.WKTReader;
+
+public class GML3FeatureCollectionWriterTest {
+
+    static final String NAMESPACE = "http://www.geoserver.org/test";
+
+    SimpleFeatureCollection roads;
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType(NAMESPACE, "Roads",
+                "the_geom:MultiLineString:srid=4326,name:String,lanes:Integer");
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        WKTReader reader = new WKTReader();
+        fb.add(reader.read("MULTILINESTRING((0 0, 10.123456 20.5), (1 1, 2 2))"));
+        fb.add("Main <street>");
+        fb.add(2);
+        SimpleFeature first = fb.buildFeature("Roads.1");
+        fb.add(reader.read("MULTILINESTRING((5 5, 6 6))"));
+        fb.add(null);
+        fb.add(1);
+        SimpleFeature second = fb.buildFeature("Roads.2");
+        roads = DataUtilities.collection(new SimpleFeature[] { first, second });
+    }
+
+    Document write(GML3FeatureCollectionWriter writer, FeatureCollectionResponse response)
+            throws Exception {
+        writer.declarePrefix("test", NAMESPACE);
+        writer.setSrsSyntax(SrsSyntax.EPSG_CODE);
+        writer.setNumDecimals(2);
+        response.getFeature().add(roads);
+        assertTrue(writer.canEncode(response));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writer.write(response, bos, Charset.forName("UTF-8"));
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(bos.toByteArray()));
+    }
+
+    XpathEngine xpath(String wfs, String gml) {
+        Map<String, String> namespaces = new HashMap<String, String>();
+        namespaces.put("wfs", wfs);
+        namespaces.put("gml", gml);
+        namespaces.put("test", NAMESPACE);
+        XpathEngine xp = XMLUnit.newXpathEngine();
+        xp.setNamespaceContext(new SimpleNamespaceContext(namespaces));
+        return xp;
+    }
+
+    @Test
+    public void testGML31() throws Exception {
+        FeatureCollectionResponse response = FeatureCollectionResponse.adapt(WfsFactory.eINSTANCE
+                .createFeatureCollectionType());
+        response.setNumberOfFeatures(BigInteger.valueOf(2));
+        Document dom = write(new GML3FeatureCollectionWriter(false), response);
+
+        XpathEngine xp = xpath("http://www.opengis.net/wfs", "http://www.opengis.net/gml");
+        assertEquals("2", xp.evaluate("/wfs:FeatureCollection/@numberOfFeatures", dom));
+        assertEquals("2", xp.evaluate(
+                "count(//gml:featureMembers/test:Roads)", dom));
+        String road = "//test:Roads[@gml:id='Roads.1']";
+        assertEquals("Main <street>", xp.evaluate(road + "/test:name", dom));
+        assertEquals("2", xp.evaluate(road + "/test:lanes", dom));
+        assertEquals("EPSG:4326", xp.evaluate(road
+                + "/test:the_geom/gml:MultiLineString/@srsName", dom));
+        assertEquals("0 0 10.12 20.5", xp.evaluate(road
+                + "/test:the_geom/gml:MultiLineString/gml:lineStringMember[1]"
+                + "/gml:LineString/gml:posList", dom));
+        // null values are skipped
+        assertEquals("0", xp.evaluate("count(//test:Roads[@gml:id='Roads.2']/test:name)", dom));
+    }
+
+    @Test
+    public void testGML32() throws Exception {
+        FeatureCollectionResponse response = FeatureCollectionResponse.adapt(Wfs20Factory.eINSTANCE
+                .createFeatureCollectionType());
+        response.setNumberOfFeatures(BigInteger.valueOf(2));
+        response.setTotalNumberOfFeatures(BigInteger.valueOf(-1));
+        response.setNext("http://localhost/next");
+        Document dom = write(new GML3FeatureCollectionWriter(true), response);
+
+        XpathEngine xp = xpath("http://www.opengis.net/wfs/2.0", "http://www.opengis.net/gml/3.2");
+        assertEquals("unknown", xp.evaluate("/wfs:FeatureCollection/@numberMatched", dom));
+        assertEquals("2", xp.evaluate("/wfs:FeatureCollection/@numberReturned", dom));
+        assertEquals("http://localhost/next", xp.evaluate("/wfs:FeatureCollection/@next", dom));
+        assertEquals("2", xp.evaluate("count(/wfs:FeatureCollection/wfs:member/test:Roads)",
+                dom));
+        String geom = "//test:Roads[@gml:id='Roads.1']/test:the_geom/gml:MultiCurve";
+        assertEquals("Roads.1.1", xp.evaluate(geom + "/@gml:id", dom));
+        assertEquals("Roads.1.3", xp.evaluate(geom + "/gml:curveMember[2]/gml:LineString/@gml:id",
+                dom));
+        assertEquals("1 1 2 2", xp.evaluate(geom
+                + "/gml:curveMember[2]/gml:LineString/gml:posList", dom));
+    }
+
+    @Test
+    public void testMultipleCollectionsGML32() throws Exception {
+        GML3FeatureCollectionWriter writer = new GML3FeatureCollectionWriter(true);
+        writer.declarePrefix("test", NAMESPACE);
+        FeatureCollectionResponse response = FeatureCollectionResponse.adapt(Wfs20Factory.eINSTANCE
+                .createFeatureCollectionType());
+        response.getFeature().add(roads);
+        response.getFeature().add(roads);
+        // needs nested collections, left to the encoder
+        assertFalse(writer.canEncode(response));
+    }
+}
@@ -8,6 +8,12 @@ package org.geoserver.wfs.xml;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.xml.transform.Templates;
 
 import org.geoserver.data.test.MockData;
 import org.geoserver.wfs.WFSTestSupport;
@@ -93,4 +99,25 @@ public class GMLOutputFormatTest extends WFSTestSupport {
         assertEquals( "FeatureCollection", dom.getDocumentElement().getLocalName() );
     }
     
+
+    @Test
+    public void testComplexFeatureXSLTCached() throws Exception {
+        GML3OutputFormat format = (GML3OutputFormat) applicationContext.getBean("gml3OutputFormat");
+        String collection = "<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                + "xmlns:gml=\"http://www.opengis.net/gml\" numberOfFeatures=\"5\">"
+                + "<gml:featureMember/><gml:featureMember/></wfs:FeatureCollection>";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.transform(new ByteArrayInputStream(collection.getBytes("UTF-8")),
+                GML3OutputFormat.xslt, out);
+        Document dom = dom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("2", dom.getDocumentElement().getAttribute("numberOfFeatures"));
+
+        // compiled once, then reused
+        Templates templates = GML3OutputFormat.TEMPLATES.get(GML3OutputFormat.xslt);
+        assertNotNull(templates);
+        format.transform(new ByteArrayInputStream(collection.getBytes("UTF-8")),
+                GML3OutputFormat.xslt, new ByteArrayOutputStream());
+        assertSame(templates, GML3OutputFormat.getTemplates(GML3OutputFormat.xslt));
+    }
 }
@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 import net.opengis.wfs.FeatureCollectionType;
 
@@ -28,6 +29,7 @@ import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.referencing.operation.projection.ProjectionException;
 import org.geotools.styling.Style;
 import org.geotools.styling.StyledLayerDescriptor;
+import org.geotools.util.logging.Logging;
 import org.geotools.xml.transform.TransformerBase;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.NoSuchAuthorityCodeException;
@@ -67,6 +69,9 @@ import com.vividsolutions.jts.geom.Envelope;
  */
 public class DefaultWebMapService implements WebMapService, ApplicationContextAware,
         DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(DefaultWebMapService.class);
+
     /**
      * default for 'format' parameter.
      */
@@ -148,6 +153,11 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
      */
     private static Boolean USE_GLOBAL_RENDERING_POOL = null;
 
+    /**
+     * Max number of layers a single GetMap request can render concurrently
+     */
+    private static Integer MAX_PARALLEL_LAYERS = null;
+
     private GetCapabilities getCapabilities;
 
     private DescribeLayer describeLayer;
@@ -247,6 +257,21 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
             else
                 USE_GLOBAL_RENDERING_POOL = Boolean.valueOf(usePool);
         }
+
+        // concurrent layer rendering, off by default
+        if (MAX_PARALLEL_LAYERS == null) {
+            String parallel = GeoServerExtensions.getProperty("MAX_PARALLEL_LAYERS", context);
+            int value = 1;
+            if (parallel != null) {
+                try {
+                    value = Integer.parseInt(parallel.trim());
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Invalid value for MAX_PARALLEL_LAYERS: " + parallel
+                            + ", using default");
+                }
+            }
+            MAX_PARALLEL_LAYERS = Math.max(1, value);
+        }
     }
 
     /**
@@ -269,6 +294,16 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
         return MAX_FILTER_RULES;
     }
     
+    /**
+     * Returns the max number of layers a single GetMap request is allowed to render in
+     * parallel, 1 (the default) means layers are rendered one after the other
+     * 
+     * @return
+     */
+    public static int getMaxParallelLayers() {
+        return MAX_PARALLEL_LAYERS == null ? 1 : MAX_PARALLEL_LAYERS;
+    }
+
     /**
      * If true (default) the direct raster rendering path is enabled
      * @return
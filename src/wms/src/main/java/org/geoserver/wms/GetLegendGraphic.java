@@ -5,10 +5,22 @@
  */
 package org.geoserver.wms;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Request;
 import org.geoserver.ows.Response;
+import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.legendgraphic.BufferedImageLegendGraphic;
+import org.geoserver.wms.legendgraphic.EncodedLegendGraphic;
+import org.geoserver.wms.legendgraphic.LegendGraphicCache;
 import org.geotools.filter.function.EnvFunction;
+import org.geotools.util.logging.Logging;
 
 /**
  * WMS GetLegendGraphic operation default implementation.
@@ -17,12 +29,23 @@ import org.geotools.filter.function.EnvFunction;
  */
 public class GetLegendGraphic {
 
+    static final Logger LOGGER = Logging.getLogger(GetLegendGraphic.class);
+
     private final WMS wms;
 
+    private LegendGraphicCache legendCache;
+
     public GetLegendGraphic(final WMS wms) {
         this.wms = wms;
     }
 
+    /**
+     * Sets the cache used to store the encoded legends, if null legends are built on each request
+     */
+    public void setLegendCache(LegendGraphicCache legendCache) {
+        this.legendCache = legendCache;
+    }
+
     /**
      * Produces a representation of the map's legend graphic given by the {@code request} by means
      * of a {@link GetLegendGraphicOutputFormat}.
@@ -46,8 +69,54 @@ public class GetLegendGraphic {
             throw new ServiceException("There is no support for creating legends in "
                     + outputFormat + " format", "InvalidFormat");
         }
+
+        String key = legendCache != null ? legendCache.getKey(request) : null;
+        if (key != null) {
+            EncodedLegendGraphic cached = legendCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
         Object legend = format.produceLegendGraphic(request);
+        if (key != null) {
+            EncodedLegendGraphic encoded = encode(legend, request);
+            if (encoded != null) {
+                legendCache.put(key, request, encoded.getLegend(), encoded.getMimeType());
+                return encoded;
+            }
+        }
         return legend;
     }
 
+    /**
+     * Encodes the legend with the response the dispatcher would pick for the requested format, or
+     * returns null if the legend cannot be encoded outside of the dispatcher
+     */
+    private EncodedLegendGraphic encode(Object legend, GetLegendGraphicRequest request) {
+        Request owsRequest = Dispatcher.REQUEST.get();
+        Operation operation = owsRequest != null ? owsRequest.getOperation() : null;
+        if (operation == null) {
+            return null;
+        }
+        List<Response> responses = Dispatcher.findResponses(legend, request.getFormat(),
+                operation);
+        if (responses.isEmpty()
+                || (responses.size() > 1 && responses.get(0).getBinding()
+                        .equals(responses.get(1).getBinding()))) {
+            // no response, or an ambiguous one, let the dispatcher report it
+            return null;
+        }
+        Response response = responses.get(0);
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            response.write(legend, bos, operation);
+            return new EncodedLegendGraphic(bos.toByteArray(), response.getMimeType(legend,
+                    operation), null);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to encode the legend for caching", e);
+            return null;
+        }
+    }
+
 }
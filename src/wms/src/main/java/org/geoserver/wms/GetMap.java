@@ -22,7 +22,9 @@ import java.util.logging.Logger;
 
 import javax.media.jai.RenderedImageList;
 
+import org.geoserver.catalog.CompiledStyle;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WMSLayerInfo;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
@@ -181,6 +183,10 @@ public class GetMap {
 
         GetMapOutputFormat delegate = getDelegate(outputFormat);
 
+        if (delegate instanceof RenderedImageMapOutputFormat) {
+            GetMapTimings.start();
+        }
+
         final boolean isTiled = MetatileMapOutputFormat.isRequestTiled(request, delegate);
 
         //
@@ -267,6 +273,9 @@ public class GetMap {
         final List<Map<String, String>> viewParams = request.getViewParams();
         
         final Style[] styles = request.getStyles().toArray(new Style[] {});
+        // time the queries only when rendering, other formats may need the raw feature sources
+        final GetMapTimings timings = delegate instanceof RenderedImageMapOutputFormat
+                || delegate instanceof MetatileMapOutputFormat ? GetMapTimings.current() : null;
         final Filter[] filters = buildLayersFilters(request.getFilter(), layers);
 
         // if there's a crs in the request, use that. If not, assume its 4326
@@ -309,6 +318,11 @@ public class GetMap {
         
         fireMapContentInit(mapContent);
 
+        // rendering formats can work off the styles reduced to the current scale
+        final double scaleDenominator = delegate instanceof RenderedImageMapOutputFormat
+                || delegate instanceof MetatileMapOutputFormat ? getScaleDenominator(mapContent)
+                : Double.NaN;
+
         // track the external caching strategy for any map layers
         boolean cachingPossible = request.isGet();
         final String featureVersion = request.getFeatureVersion();
@@ -323,7 +337,7 @@ public class GetMap {
                 cachingPossible = false;
             }
 
-            final Style layerStyle = styles[i];
+            final Style layerStyle = getScaleStyle(mapLayerInfo, styles[i], scaleDenominator);
             final Filter layerFilter = SimplifyingFilterVisitor.simplify(filters[i]);
 
             final org.geotools.map.Layer layer;
@@ -378,6 +392,9 @@ public class GetMap {
 
                     throw new ServiceException("Internal error", exp);
                 }
+                if (timings != null && source instanceof SimpleFeatureSource) {
+                    source = new QueryTimingFeatureSource((SimpleFeatureSource) source, timings);
+                }
                 FeatureLayer featureLayer = new FeatureLayer(source, layerStyle);
                 featureLayer.setTitle(mapLayerInfo.getFeature().prefixedName());
                 featureLayer.getUserData().put("abstract", mapLayerInfo.getDescription());
@@ -512,10 +529,53 @@ public class GetMap {
             format.setTimeZone(TimeZone.getTimeZone("GMT"));
             map.setResponseHeader("Expires", format.format(calendar.getTime()));
         }
+        if (timings != null) {
+            timings.addServerTiming(map);
+        }
 
         return map;
     }
 
+    double getScaleDenominator(WMSMapContent mapContent) {
+        try {
+            return mapContent.getScaleDenominator(true);
+        } catch (Exception e) {
+            // the renderer will report the issue, if any
+            LOGGER.log(Level.FINE, "Could not compute the map scale denominator", e);
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Returns the catalog style reduced to the rules active at the given scale denominator, or
+     * the style itself if the scale is not known, or the style is not one of the layer styles
+     * (e.g., it comes from a SLD in the request)
+     */
+    Style getScaleStyle(MapLayerInfo mapLayerInfo, Style style, double scaleDenominator) {
+        LayerInfo layer = mapLayerInfo.getLayerInfo();
+        if (style == null || layer == null || Double.isNaN(scaleDenominator)) {
+            return style;
+        }
+        List<StyleInfo> candidates = new ArrayList<StyleInfo>();
+        if (layer.getDefaultStyle() != null) {
+            candidates.add(layer.getDefaultStyle());
+        }
+        candidates.addAll(layer.getStyles());
+        try {
+            for (StyleInfo candidate : candidates) {
+                if (candidate.getStyle() == style) {
+                    CompiledStyle compiled = wms.getCatalog().getResourcePool()
+                            .getCompiledStyle(candidate);
+                    return compiled.getStyle(scaleDenominator);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not compile style " + style.getName()
+                    + ", using it as is", e);
+        }
+        return style;
+    }
+
     /**
      * Computes the rendering buffer in case the user did not specify one in the request, and the
      * admin setup some rendering buffer hints in the layer configurations
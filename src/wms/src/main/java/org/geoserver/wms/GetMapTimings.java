@@ -0,0 +1,201 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Request;
+import org.geoserver.platform.GeoServerExtensions;
+
+/**
+ * Collects the time spent in the various phases of a GetMap request.
+ * <p>
+ * The timings are attached to the HTTP request being dispatched, so that they can be picked up
+ * by the monitoring extension once the request is done, and optionally reported to the client
+ * in a W3C <code>Server-Timing</code> response header, enabled by setting the
+ * {@value #SERVER_TIMING_KEY} system/context/environment variable to <code>true</code>.
+ * </p>
+ * <p>
+ * Phases are recorded as <code>(phase, start)</code> pairs by the code executing them, and can
+ * be recorded from multiple threads. Some phases nest into others, the reported times are
+ * exclusive: the style resolution time is removed from the request parsing one, the queries and
+ * labelling ones from the rendering one. Queries executed by parallel layer renderers are
+ * accounted cumulatively.
+ * </p>
+ */
+public class GetMapTimings {
+
+    /**
+     * The HTTP request attribute holding the timings
+     */
+    public static final String ATTRIBUTE = GetMapTimings.class.getName();
+
+    /**
+     * HTTP request attribute set by the components consuming the timings (e.g. the monitoring
+     * filter) to have them collected even if the <code>Server-Timing</code> header is disabled
+     */
+    public static final String ENABLED_ATTRIBUTE = GetMapTimings.class.getName() + ".enabled";
+
+    /**
+     * Enables the <code>Server-Timing</code> response header
+     */
+    public static final String SERVER_TIMING_KEY = "GEOSERVER_GETMAP_SERVER_TIMING";
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    public static enum Phase {
+        PARSE("Request parsing"), STYLES("Style resolution"), QUERY("Feature queries"), RENDER(
+                "Rendering"), LABELS("Labelling"), ENCODE("Encoding");
+
+        final String description;
+
+        private Phase(String description) {
+            this.description = description;
+        }
+
+        /**
+         * The phase name, as used in the <code>Server-Timing</code> header and in the monitoring
+         * data
+         */
+        public String getName() {
+            return name().toLowerCase();
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    final AtomicLongArray times = new AtomicLongArray(Phase.values().length);
+
+    final AtomicLongArray counts = new AtomicLongArray(Phase.values().length);
+
+    /**
+     * Returns the timings of the current GetMap request, or null if the current thread is not
+     * running one
+     */
+    public static GetMapTimings current() {
+        return current(false);
+    }
+
+    /**
+     * Returns the timings of the current request, creating them if missing. Returns null if the
+     * current thread is not serving an OWS request, or if nobody is going to use the timings,
+     * that is, the <code>Server-Timing</code> header is disabled and the request is not monitored
+     */
+    public static GetMapTimings start() {
+        return current(true);
+    }
+
+    static GetMapTimings current(boolean create) {
+        Request request = Dispatcher.REQUEST.get();
+        HttpServletRequest httpRequest = request != null ? request.getHttpRequest() : null;
+        if (httpRequest == null) {
+            return null;
+        }
+        GetMapTimings timings = (GetMapTimings) httpRequest.getAttribute(ATTRIBUTE);
+        if (timings == null && create && isEnabled(httpRequest)) {
+            timings = new GetMapTimings();
+            httpRequest.setAttribute(ATTRIBUTE, timings);
+        }
+        return timings;
+    }
+
+    /**
+     * Records the time elapsed since <code>start</code>, as returned by
+     * {@link System#nanoTime()}, in the given phase
+     */
+    public void record(Phase phase, long start) {
+        times.addAndGet(phase.ordinal(), System.nanoTime() - start);
+        counts.incrementAndGet(phase.ordinal());
+    }
+
+    /**
+     * Returns true if the phase has been recorded at least once
+     */
+    public boolean isRecorded(Phase phase) {
+        return counts.get(phase.ordinal()) > 0;
+    }
+
+    /**
+     * Returns the exclusive time spent in the phase, in nanoseconds
+     */
+    public long getTime(Phase phase) {
+        long time = times.get(phase.ordinal());
+        switch (phase) {
+        case PARSE:
+            time -= times.get(Phase.STYLES.ordinal());
+            break;
+        case RENDER:
+            time -= times.get(Phase.QUERY.ordinal()) + times.get(Phase.LABELS.ordinal());
+            break;
+        default:
+            break;
+        }
+        return Math.max(0, time);
+    }
+
+    /**
+     * Returns the exclusive time of the recorded phases, in milliseconds, in execution order
+     */
+    public Map<String, Long> getPhaseTimes() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Phase phase : Phase.values()) {
+            if (isRecorded(phase)) {
+                result.put(phase.getName(), TimeUnit.NANOSECONDS.toMillis(getTime(phase)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the <code>Server-Timing</code> header value for the phases recorded so far, or
+     * null if none was recorded
+     */
+    public String getServerTiming() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            if (isRecorded(phase)) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                double millis = getTime(phase) / 1e6;
+                sb.append(phase.getName()).append(";dur=")
+                        .append(String.format(Locale.ENGLISH, "%.1f", millis))
+                        .append(";desc=\"").append(phase.getDescription()).append("\"");
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    /**
+     * Adds the <code>Server-Timing</code> header to the map, if enabled. Encoding happens after
+     * the headers are sent, so it's not part of the header unless already done (e.g., meta tiles)
+     */
+    public void addServerTiming(WebMap map) {
+        if (isServerTimingEnabled()) {
+            String value = getServerTiming();
+            if (value != null) {
+                map.setResponseHeader(SERVER_TIMING_HEADER, value);
+            }
+        }
+    }
+
+    static boolean isEnabled(HttpServletRequest httpRequest) {
+        return Boolean.TRUE.equals(httpRequest.getAttribute(ENABLED_ATTRIBUTE))
+                || isServerTimingEnabled();
+    }
+
+    static boolean isServerTimingEnabled() {
+        return Boolean.valueOf(GeoServerExtensions.getProperty(SERVER_TIMING_KEY));
+    }
+}
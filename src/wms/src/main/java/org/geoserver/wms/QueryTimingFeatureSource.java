@@ -0,0 +1,121 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.geoserver.security.decorators.DecoratingSimpleFeatureSource;
+import org.geoserver.wms.GetMapTimings.Phase;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.collection.DecoratingSimpleFeatureCollection;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+
+/**
+ * Accounts the time spent running the queries and reading the features in the
+ * {@link Phase#QUERY} phase of the GetMap timings
+ */
+class QueryTimingFeatureSource extends DecoratingSimpleFeatureSource {
+
+    final GetMapTimings timings;
+
+    public QueryTimingFeatureSource(SimpleFeatureSource delegate, GetMapTimings timings) {
+        super(delegate);
+        this.timings = timings;
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures() throws IOException {
+        long start = System.nanoTime();
+        try {
+            return new TimingFeatureCollection(delegate.getFeatures(), timings);
+        } finally {
+            timings.record(Phase.QUERY, start);
+        }
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures(Filter filter) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return new TimingFeatureCollection(delegate.getFeatures(filter), timings);
+        } finally {
+            timings.record(Phase.QUERY, start);
+        }
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures(Query query) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return new TimingFeatureCollection(delegate.getFeatures(query), timings);
+        } finally {
+            timings.record(Phase.QUERY, start);
+        }
+    }
+
+    static class TimingFeatureCollection extends DecoratingSimpleFeatureCollection {
+
+        final GetMapTimings timings;
+
+        protected TimingFeatureCollection(SimpleFeatureCollection delegate, GetMapTimings timings) {
+            super(delegate);
+            this.timings = timings;
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            long start = System.nanoTime();
+            try {
+                return new TimingFeatureIterator(delegate.features(), timings);
+            } finally {
+                timings.record(Phase.QUERY, start);
+            }
+        }
+    }
+
+    static class TimingFeatureIterator implements SimpleFeatureIterator {
+
+        final SimpleFeatureIterator delegate;
+
+        final GetMapTimings timings;
+
+        public TimingFeatureIterator(SimpleFeatureIterator delegate, GetMapTimings timings) {
+            this.delegate = delegate;
+            this.timings = timings;
+        }
+
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            try {
+                return delegate.hasNext();
+            } finally {
+                timings.record(Phase.QUERY, start);
+            }
+        }
+
+        public SimpleFeature next() throws NoSuchElementException {
+            long start = System.nanoTime();
+            try {
+                return delegate.next();
+            } finally {
+                timings.record(Phase.QUERY, start);
+            }
+        }
+
+        public void close() {
+            long start = System.nanoTime();
+            try {
+                delegate.close();
+            } finally {
+                timings.record(Phase.QUERY, start);
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@ import javax.media.jai.RenderedImageList;
 
 import org.geoserver.ows.AbstractDispatcherCallback;
 import org.geoserver.ows.Request;
+import org.geoserver.wms.map.DrawingSurfacePool;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.resources.image.ImageUtilities;
 
@@ -89,6 +90,8 @@ public class RasterCleaner extends AbstractDispatcherCallback {
         } else if (image instanceof BufferedImage) {
             BufferedImage bi = (BufferedImage) image;
             bi.flush();
+            // give back the raster if it's a pooled drawing surface
+            DrawingSurfacePool.getInstance().release(bi);
         } 
     }
 
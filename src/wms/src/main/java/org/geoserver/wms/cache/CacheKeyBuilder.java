@@ -0,0 +1,71 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Builds cache keys out of the raw KVP parameters of a request. The parameter names are upper
+ * cased and sorted, so that their order and case do not matter, and the parameters that do not
+ * affect the cached response are skipped.
+ */
+public class CacheKeyBuilder {
+
+    final Set<String> ignoredParameters;
+
+    /**
+     * @param ignoredParameters The upper case names of the parameters left out of the key
+     */
+    public CacheKeyBuilder(String... ignoredParameters) {
+        this.ignoredParameters = Collections.unmodifiableSet(new HashSet<String>(Arrays
+                .asList(ignoredParameters)));
+    }
+
+    public Set<String> getIgnoredParameters() {
+        return ignoredParameters;
+    }
+
+    /**
+     * Returns the parameters that make up the key, upper cased and sorted. The map can be
+     * modified, and turned into the key with {@link #toKey(Map)}
+     */
+    public SortedMap<String, String> getParameters(Map<String, String> rawKvp) {
+        SortedMap<String, String> sorted = new TreeMap<String, String>();
+        for (Map.Entry<String, String> entry : rawKvp.entrySet()) {
+            String name = entry.getKey().toUpperCase();
+            if (!ignoredParameters.contains(name)) {
+                sorted.put(name, entry.getValue());
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Joins the parameters in a query string like key (not url-encoded)
+     */
+    public String toKey(Map<String, String> parameters) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds the key of the raw KVP parameters
+     */
+    public String getKey(Map<String, String> rawKvp) {
+        return toKey(getParameters(rawKvp));
+    }
+}
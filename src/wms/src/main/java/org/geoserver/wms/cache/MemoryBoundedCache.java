@@ -0,0 +1,271 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.cache;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A least recently used cache whose entries are bounded by their total size, in bytes, rather
+ * than by their number. The size of each value is provided by the caller when storing it.
+ * <p>
+ * Entries can optionally expire a fixed time after being stored. The cache is disabled when the
+ * max memory is zero, and keeps track of hits, misses, evictions and invalidations, so that the
+ * owners can publish them as JMX statistics.
+ * </p>
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class MemoryBoundedCache<K, V> {
+
+    static final Logger LOGGER = Logging.getLogger(MemoryBoundedCache.class);
+
+    public static final long MB = 1024 * 1024;
+
+    /**
+     * The time to live of entries that never expire
+     */
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    /**
+     * Selects the entries to be dropped by {@link MemoryBoundedCache#invalidate(EntryFilter)}
+     */
+    public interface EntryFilter<K, V> {
+        boolean accept(K key, V value);
+    }
+
+    static class Entry<V> {
+        final V value;
+
+        final long size;
+
+        final long created = System.currentTimeMillis();
+
+        Entry(V value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Reads a memory cap, in megabytes, from the specified system/context/environment variable,
+     * and returns it in bytes
+     *
+     * @param key The variable name
+     * @param defaultSize The size used when the variable is missing or invalid, in megabytes
+     */
+    public static long getConfiguredMaxMemory(String key, int defaultSize) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                return Math.max(0, Long.parseLong(value.trim())) * MB;
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + key + ": " + value + ", using the default of "
+                        + defaultSize + " MB");
+            }
+        }
+        return defaultSize * MB;
+    }
+
+    /**
+     * The cached entries, in access order
+     */
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f,
+            true);
+
+    private final long timeToLive;
+
+    private long maxMemory;
+
+    private long memory;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Builds a cache whose entries never expire
+     *
+     * @param maxMemory The max total size of the entries, in bytes
+     */
+    public MemoryBoundedCache(long maxMemory) {
+        this(maxMemory, NO_EXPIRY);
+    }
+
+    /**
+     * Builds a cache whose entries expire after the given time
+     *
+     * @param maxMemory The max total size of the entries, in bytes
+     * @param timeToLive The entries time to live, in milliseconds
+     */
+    public MemoryBoundedCache(long maxMemory, long timeToLive) {
+        this.maxMemory = Math.max(0, maxMemory);
+        this.timeToLive = timeToLive;
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return timeToLive != NO_EXPIRY && now - entry.created > timeToLive;
+    }
+
+    /**
+     * Returns the cached value, or null if not found or expired
+     */
+    public V get(K key) {
+        Entry<V> entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+                entries.remove(key);
+                memory -= entry.size;
+                evictions.incrementAndGet();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Returns true if a value of the specified size can be cached
+     */
+    public synchronized boolean accepts(long size) {
+        return maxMemory > 0 && size <= maxMemory;
+    }
+
+    /**
+     * Caches the value, evicting the expired and least recently used entries if needed
+     *
+     * @param size The value size, in bytes
+     * @return false if the value is too large to be cached
+     */
+    public synchronized boolean put(K key, V value, long size) {
+        if (!accepts(size)) {
+            return false;
+        }
+        Entry<V> previous = entries.remove(key);
+        if (previous != null) {
+            memory -= previous.size;
+        }
+        if (timeToLive != NO_EXPIRY) {
+            long now = System.currentTimeMillis();
+            for (Iterator<Entry<V>> it = entries.values().iterator(); it.hasNext();) {
+                Entry<V> entry = it.next();
+                if (isExpired(entry, now)) {
+                    memory -= entry.size;
+                    it.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+        evict(maxMemory - size);
+        entries.put(key, new Entry<V>(value, size));
+        memory += size;
+        return true;
+    }
+
+    /**
+     * Drops the least recently used entries until the memory is within the limit
+     */
+    private void evict(long limit) {
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (memory > limit && it.hasNext()) {
+            memory -= it.next().size;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops the entries accepted by the filter
+     *
+     * @return The number of dropped entries
+     */
+    public synchronized int invalidate(EntryFilter<? super K, ? super V> filter) {
+        int count = 0;
+        for (Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<K, Entry<V>> entry = it.next();
+            if (filter.accept(entry.getKey(), entry.getValue().value)) {
+                memory -= entry.getValue().size;
+                it.remove();
+                count++;
+            }
+        }
+        invalidations.addAndGet(count);
+        return count;
+    }
+
+    public boolean isEnabled() {
+        return getMaxMemory() > 0;
+    }
+
+    public synchronized long getMaxMemory() {
+        return maxMemory;
+    }
+
+    public synchronized void setMaxMemory(long maxMemory) {
+        this.maxMemory = Math.max(0, maxMemory);
+        evict(this.maxMemory);
+    }
+
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        memory = 0;
+    }
+
+    /**
+     * Returns a copy of the cached keys
+     */
+    public synchronized Set<K> keys() {
+        return Collections.unmodifiableSet(new HashSet<K>(entries.keySet()));
+    }
+}
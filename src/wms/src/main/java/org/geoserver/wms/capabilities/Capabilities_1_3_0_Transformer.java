@@ -690,9 +690,10 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
             // handle identifiers
             handleLayerIdentifiers(serviceInfo.getIdentifiers());
 
-            Set<LayerInfo> layersAlreadyProcessed = new HashSet<LayerInfo>();
+            Set<String> layersAlreadyProcessed = new HashSet<String>();
             
             // encode layer groups
+            Set<String> nestedGroups = CapabilityUtil.getNestedGroupIds(catalog);
             CloseableIterator<LayerGroupInfo> layerGroups;
             {
                 final Filter lgFilter = Predicates.acceptAll();
@@ -701,7 +702,7 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
                         layerGroupOrder);
             }            
             try {
-                layersAlreadyProcessed = handleLayerGroups(layerGroups);
+                layersAlreadyProcessed = handleLayerGroups(layerGroups, nestedGroups);
             } catch (Exception e) {
                 throw new RuntimeException("Can't obtain Envelope of Layer-Groups: "
                         + e.getMessage(), e);
@@ -816,7 +817,7 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
                 new ReferencedEnvelope(latlonBbox, DefaultGeographicCRS.WGS84), null, null);
         }
 
-        private void handleLayerTree(final Iterator<LayerInfo> layers, Set<LayerInfo> layersAlreadyProcessed) {
+        private void handleLayerTree(final Iterator<LayerInfo> layers, Set<String> layersAlreadyProcessed) {
             // Build a LayerTree only for the layers that have a wms path set. Process the ones that
             // don't first
             LayerTree nestedLayers = new LayerTree();
@@ -824,7 +825,7 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
             //handle non nested layers
             while (layers.hasNext()) {
                 LayerInfo layer = layers.next();
-                if(layersAlreadyProcessed.contains(layer) || !isExposable(layer)){
+                if(layersAlreadyProcessed.contains(layer.getId()) || !isExposable(layer)){
                     continue;
                 }
                 final String path = layer.getPath();
@@ -1062,17 +1063,25 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
             }
         }
         
-        protected Set<LayerInfo> handleLayerGroups(Iterator<LayerGroupInfo> layerGroups) throws FactoryException,
-                TransformException, IOException {
-            Set<LayerInfo> layersAlreadyProcessed = new HashSet<LayerInfo>();
+        /**
+         * Encodes the top level layer groups as they are read, skipping the nested ones
+         * 
+         * @return the ids of the layers encoded as part of a group
+         */
+        protected Set<String> handleLayerGroups(Iterator<LayerGroupInfo> layerGroups,
+                Set<String> nestedGroups) throws FactoryException, TransformException,
+                IOException {
+            Set<String> layersAlreadyProcessed = new HashSet<String>();
             
             if (layerGroups == null) {
                 return layersAlreadyProcessed;
             }
             
-            List<LayerGroupInfo> topLevelGroups = filterNestedGroups(layerGroups);
-
-            for (LayerGroupInfo group : topLevelGroups) {
+            while (layerGroups.hasNext()) {
+                LayerGroupInfo group = layerGroups.next();
+                if (group != null && nestedGroups.contains(group.getId())) {
+                    continue;
+                }
                 try {
                     mark();
                     handleLayerGroup(group, layersAlreadyProcessed);
@@ -1097,34 +1106,8 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
             
             return layersAlreadyProcessed;
         }
-        
-        /**
-         * Returns a list of top level groups, that is, the ones that are not nested within
-         * other layer groups
-         * 
-         * @param allGroups
-         * @return
-         */
-        private List<LayerGroupInfo> filterNestedGroups(Iterator<LayerGroupInfo> iterator) {
-            List<LayerGroupInfo> allGroups = new ArrayList<LayerGroupInfo>();
-            while(iterator.hasNext()) {
-                allGroups.add(iterator.next());
-            }
-            LinkedHashSet<LayerGroupInfo> result = new LinkedHashSet<LayerGroupInfo>(allGroups);
-            for(LayerGroupInfo group : allGroups) {
-                for(PublishedInfo pi : group.getLayers()) {
-                    if(pi instanceof LayerGroupInfo) {
-                        result.remove(pi);
-                    }
-                }
-            }
-            
-            return new ArrayList<LayerGroupInfo>(result);
-        }
-        
-
 
-        protected void handleLayerGroup(LayerGroupInfo layerGroup, Set<LayerInfo> layersAlreadyProcessed) throws TransformException, FactoryException, IOException {
+        protected void handleLayerGroup(LayerGroupInfo layerGroup, Set<String> layersAlreadyProcessed) throws TransformException, FactoryException, IOException {
             String layerName = layerGroup.prefixedName();
 
             AttributesImpl qatts = new AttributesImpl();
@@ -1170,7 +1153,7 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
                     dimensionHelper.handleRasterLayerDimensions(rootLayer);
                 }
                 
-                layersAlreadyProcessed.add(layerGroup.getRootLayer());
+                layersAlreadyProcessed.add(layerGroup.getRootLayer().getId());
             }                
             
             // handle AuthorityURL
@@ -1196,7 +1179,7 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
                         LayerInfo layer = (LayerInfo) child;
                         if (isExposable(layer)) {
                             handleLayer((LayerInfo) child);
-                            layersAlreadyProcessed.add((LayerInfo) child);
+                            layersAlreadyProcessed.add(child.getId());
                         }
                     } else {
                         handleLayerGroup((LayerGroupInfo) child, layersAlreadyProcessed);
@@ -11,8 +11,13 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.Predicates;
+import org.geoserver.catalog.PublishedInfo;
 import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.util.CloseableIterator;
 import org.geotools.styling.FeatureTypeStyle;
 import org.geotools.styling.Rule;
 import org.geotools.styling.Style;
@@ -107,4 +112,29 @@ final class CapabilityUtil {
 		
 		return scaleHint;
 	}
+
+	/**
+	 * Returns the ids of the layer groups nested within other layer groups, streaming over the
+	 * groups visible in the catalog rather than loading them all in memory.
+	 * 
+	 * @param catalog
+	 * @return the ids of the nested groups
+	 */
+	public static Set<String> getNestedGroupIds(final Catalog catalog) {
+		Set<String> result = new HashSet<String>();
+		CloseableIterator<LayerGroupInfo> groups = catalog.list(LayerGroupInfo.class,
+				Predicates.acceptAll());
+		try {
+			while (groups.hasNext()) {
+				for (PublishedInfo pi : groups.next().getLayers()) {
+					if (pi instanceof LayerGroupInfo) {
+						result.add(pi.getId());
+					}
+				}
+			}
+		} finally {
+			groups.close();
+		}
+		return result;
+	}
 }
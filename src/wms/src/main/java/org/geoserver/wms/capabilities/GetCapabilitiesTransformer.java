@@ -5,6 +5,9 @@
  */
 package org.geoserver.wms.capabilities;
 
+import static org.geoserver.catalog.Predicates.and;
+import static org.geoserver.catalog.Predicates.asc;
+import static org.geoserver.catalog.Predicates.equal;
 import static org.geoserver.ows.util.ResponseUtils.appendQueryString;
 import static org.geoserver.ows.util.ResponseUtils.buildSchemaURL;
 import static org.geoserver.ows.util.ResponseUtils.buildURL;
@@ -37,6 +40,7 @@ import javax.xml.transform.TransformerException;
 import org.apache.commons.lang.StringUtils;
 import org.geoserver.catalog.AttributionInfo;
 import org.geoserver.catalog.AuthorityURLInfo;
+import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.DataLinkInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.KeywordInfo;
@@ -45,11 +49,13 @@ import org.geoserver.catalog.LayerIdentifierInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.LegendInfo;
 import org.geoserver.catalog.MetadataLinkInfo;
+import org.geoserver.catalog.Predicates;
 import org.geoserver.catalog.PublishedInfo;
 import org.geoserver.catalog.PublishedType;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WMSLayerInfo;
+import org.geoserver.catalog.util.CloseableIterator;
 import org.geoserver.config.ContactInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.ResourceErrorHandling;
@@ -72,7 +78,8 @@ import org.geotools.styling.Style;
 import org.geotools.util.NumberRange;
 import org.geotools.xml.transform.TransformerBase;
 import org.geotools.xml.transform.Translator;
-import org.opengis.feature.type.Name;
+import org.opengis.filter.Filter;
+import org.opengis.filter.sort.SortBy;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.operation.TransformException;
 import org.springframework.util.Assert;
@@ -657,24 +664,23 @@ public class GetCapabilitiesTransformer extends TransformerBase {
         private void handleLayers() {
             start("Layer");
 
-            final List<LayerInfo> layers;
+            //ask for enabled and advertised to start with
+            Filter filter;
+            {
+                Filter enabled = equal("enabled", Boolean.TRUE);
+                Filter advertised = equal("advertised", Boolean.TRUE);
+                filter = and(enabled, advertised);
+            }
 
             // filter the layers if a namespace filter has been set
             if (request.getNamespace() != null) {
-                final List<LayerInfo> allLayers = wmsConfig.getLayers();
-                layers = new ArrayList<LayerInfo>();
-
-                String namespace = wmsConfig.getNamespaceByPrefix(request.getNamespace());
-                for (LayerInfo layer : allLayers) {
-                    Name name = layer.getResource().getQualifiedName();
-                    if (name.getNamespaceURI().equals(namespace)) {
-                        layers.add(layer);
-                    }
-                }
-            } else {
-                layers = wmsConfig.getLayers();
+                //build a query predicate for the namespace prefix
+                Filter equals = equal("resource.namespace.prefix", request.getNamespace());
+                filter = and(filter, equals);
             }
 
+            final Catalog catalog = wmsConfig.getCatalog();
+
             //WMSInfo serviceInfo = wmsConfig.getServiceInfo();
             element("Title", serviceInfo.getTitle());
             element("Abstract", serviceInfo.getAbstract());
@@ -689,7 +695,12 @@ public class GetCapabilitiesTransformer extends TransformerBase {
             }
             handleRootCrsList(srs);
 
-            handleRootBbox(layers);
+            CloseableIterator<LayerInfo> layers = catalog.list(LayerInfo.class, filter);
+            try {
+                handleRootBbox(layers);
+            } finally {
+                layers.close();
+            }
 
             // handle AuthorityURL
             handleAuthorityURL(serviceInfo.getAuthorityURLs());
@@ -697,20 +708,29 @@ public class GetCapabilitiesTransformer extends TransformerBase {
             // handle identifiers
             handleLayerIdentifiers(serviceInfo.getIdentifiers());
 
-            Set<LayerInfo> layersAlreadyProcessed = new HashSet<LayerInfo>();
+            Set<String> layersAlreadyProcessed = new HashSet<String>();
             
-            // encode layer groups
+            // encode layer groups, in catalog order
+            Set<String> nestedGroups = CapabilityUtil.getNestedGroupIds(catalog);
+            CloseableIterator<LayerGroupInfo> layerGroups = catalog.list(LayerGroupInfo.class,
+                    Predicates.acceptAll());
             try {
-                List<LayerGroupInfo> layerGroups = wmsConfig.getLayerGroups();
-                layersAlreadyProcessed = handleLayerGroups(new ArrayList<LayerGroupInfo>(layerGroups));
+                layersAlreadyProcessed = handleLayerGroups(layerGroups, nestedGroups);
             } catch (Exception e) {
                 throw new RuntimeException("Can't obtain Envelope of Layer-Groups: "
                         + e.getMessage(), e);
-            } 
+            } finally {
+                layerGroups.close();
+            }
             
-            // now encode each layer individually
-            LayerTree featuresLayerTree = new LayerTree(layers);
-            handleLayerTree(featuresLayerTree, layersAlreadyProcessed);
+            // now encode each layer individually, as they are read
+            SortBy layerOrder = asc("name");
+            layers = catalog.list(LayerInfo.class, filter, null, null, layerOrder);
+            try {
+                handleLayerTree(layers, layersAlreadyProcessed);
+            } finally {
+                layers.close();
+            }
 
             end("Layer");
         }
@@ -764,14 +784,15 @@ public class GetCapabilitiesTransformer extends TransformerBase {
          * @param ftypes
          *            the collection of FeatureTypeInfo and CoverageInfo objects to traverse
          */
-        private void handleRootBbox(Collection<LayerInfo> layers) {
+        private void handleRootBbox(Iterator<LayerInfo> layers) {
 
             Envelope latlonBbox = new Envelope();
             Envelope layerBbox = null;
 
             LOGGER.finer("Collecting summarized latlonbbox and common SRS...");
 
-            for (LayerInfo layer : layers) {
+            while (layers.hasNext()) {
+                LayerInfo layer = layers.next();
                 ResourceInfo resource = layer.getResource();
                 layerBbox = resource.getLatLonBoundingBox();
                 if (layerBbox != null)
@@ -803,10 +824,31 @@ public class GetCapabilitiesTransformer extends TransformerBase {
             return wmsExposable;   
         }
         
+        /**
+         * Encodes the layers as they are read, apart from the ones having a WMS path, which are
+         * collected in a {@link LayerTree} and encoded at the end
+         */
+        private void handleLayerTree(final Iterator<LayerInfo> layers,
+                Set<String> layersAlreadyProcessed) {
+            LayerTree nestedLayers = new LayerTree();
+
+            while (layers.hasNext()) {
+                LayerInfo layer = layers.next();
+                final String path = layer.getPath();
+                if (path != null && path.length() > 0 && !"/".equals(path)) {
+                    nestedLayers.add(layer);
+                } else {
+                    handleLayer(layer, layersAlreadyProcessed);
+                }
+            }
+
+            handleLayerTree(nestedLayers, layersAlreadyProcessed);
+        }
+
         /**
          * @param layerTree
          */
-        private void handleLayerTree(final LayerTree layerTree, Set<LayerInfo> layersAlreadyProcessed) {
+        private void handleLayerTree(final LayerTree layerTree, Set<String> layersAlreadyProcessed) {
             final List<LayerInfo> data = new ArrayList<LayerInfo>(layerTree.getData());
             final Collection<LayerTree> children = layerTree.getChildrens();
 
@@ -817,28 +859,7 @@ public class GetCapabilitiesTransformer extends TransformerBase {
             });
 
             for (LayerInfo layer : data) {
-                // ask for enabled() instead of isEnabled() to account for disabled resource/store
-                // don't expose a geometryless layer through wms
-                if (layer.enabled() && !layersAlreadyProcessed.contains(layer) && isExposable(layer)) {
-                    try {
-                        mark();
-                        handleLayer(layer);
-                        commit();
-                    } catch (Exception e) {
-                        if (skipping) {
-                            reset();
-                            LOGGER.log(
-                                Level.WARNING, 
-                                "Error writing metadata; skipping layer: " + layer.getName(),
-                                e);
-                        } else {
-                            // report what layer we failed on to help the admin locate and fix it
-                            throw new ServiceException(
-                                    "Error occurred trying to write out metadata for layer: "
-                                            + layer.getName(), e);
-                        }
-                    }
-                }
+                handleLayer(layer, layersAlreadyProcessed);
             }
 
             for (LayerTree childLayerTree : children) {
@@ -850,6 +871,32 @@ public class GetCapabilitiesTransformer extends TransformerBase {
             }
         }
 
+        private void handleLayer(LayerInfo layer, Set<String> layersAlreadyProcessed) {
+            // ask for enabled() instead of isEnabled() to account for disabled resource/store
+            // don't expose a geometryless layer through wms
+            if (layer.enabled() && !layersAlreadyProcessed.contains(layer.getId())
+                    && isExposable(layer)) {
+                try {
+                    mark();
+                    handleLayer(layer);
+                    commit();
+                } catch (Exception e) {
+                    if (skipping) {
+                        reset();
+                        LOGGER.log(
+                            Level.WARNING, 
+                            "Error writing metadata; skipping layer: " + layer.getName(),
+                            e);
+                    } else {
+                        // report what layer we failed on to help the admin locate and fix it
+                        throw new ServiceException(
+                                "Error occurred trying to write out metadata for layer: "
+                                        + layer.getName(), e);
+                    }
+                }
+            }
+        }
+
         /**
          * Calls super.handleFeatureType to add common FeatureType content such as Name, Title and
          * LatLonBoundingBox, and then writes WMS specific layer properties as Styles, Scale Hint,
@@ -1035,7 +1082,7 @@ public class GetCapabilitiesTransformer extends TransformerBase {
            return srs;
         }
 
-       protected void handleLayerGroup(LayerGroupInfo layerGroup, Set<LayerInfo> layersAlreadyProcessed) throws TransformException, FactoryException, IOException {
+       protected void handleLayerGroup(LayerGroupInfo layerGroup, Set<String> layersAlreadyProcessed) throws TransformException, FactoryException, IOException {
            //String layerName = layerGroup.getName();
            String layerName = layerGroup.prefixedName();
 
@@ -1084,7 +1131,7 @@ public class GetCapabilitiesTransformer extends TransformerBase {
                    dimensionHelper.handleRasterLayerDimensions(rootLayer);
                }
                
-               layersAlreadyProcessed.add(layerGroup.getRootLayer());
+               layersAlreadyProcessed.add(layerGroup.getRootLayer().getId());
            }
            
            // handle AuthorityURL
@@ -1110,7 +1157,7 @@ public class GetCapabilitiesTransformer extends TransformerBase {
                        LayerInfo layer = (LayerInfo) child;
                        if (isExposable(layer)) {
                            handleLayer((LayerInfo) child);
-                           layersAlreadyProcessed.add((LayerInfo) child);
+                           layersAlreadyProcessed.add(child.getId());
                        }
                    } else {
                        handleLayerGroup((LayerGroupInfo) child, layersAlreadyProcessed);
@@ -1125,17 +1172,25 @@ public class GetCapabilitiesTransformer extends TransformerBase {
            end("Layer");
        }
        
-        protected Set<LayerInfo> handleLayerGroups(List<LayerGroupInfo> layerGroups) throws FactoryException,
-                TransformException, IOException {
-            Set<LayerInfo> layersAlreadyProcessed = new HashSet<LayerInfo>();
+        /**
+         * Encodes the top level layer groups as they are read, skipping the nested ones
+         * 
+         * @return the ids of the layers encoded as part of a group
+         */
+        protected Set<String> handleLayerGroups(Iterator<LayerGroupInfo> layerGroups,
+                Set<String> nestedGroups) throws FactoryException, TransformException,
+                IOException {
+            Set<String> layersAlreadyProcessed = new HashSet<String>();
             
-            if (layerGroups == null || layerGroups.size() == 0) {
+            if (layerGroups == null) {
                 return layersAlreadyProcessed;
             }
             
-            List<LayerGroupInfo> topLevelGropus = filterNestedGroups(layerGroups);
-
-            for (LayerGroupInfo layerGroup : topLevelGropus) {
+            while (layerGroups.hasNext()) {
+                LayerGroupInfo layerGroup = layerGroups.next();
+                if (layerGroup != null && nestedGroups.contains(layerGroup.getId())) {
+                    continue;
+                }
                 try {
                     mark();
                     handleLayerGroup(layerGroup, layersAlreadyProcessed);
@@ -1161,26 +1216,6 @@ public class GetCapabilitiesTransformer extends TransformerBase {
             return layersAlreadyProcessed;
         }
 
-        /**
-         * Returns a list of top level groups, that is, the ones that are not nested within
-         * other layer groups
-         * 
-         * @param allGroups
-         * @return
-         */
-        private List<LayerGroupInfo> filterNestedGroups(List<LayerGroupInfo> allGroups) {
-            LinkedHashSet<LayerGroupInfo> result = new LinkedHashSet<LayerGroupInfo>(allGroups);
-            for (LayerGroupInfo group : allGroups) {
-                for(PublishedInfo pi : group.getLayers()) {
-                    if(pi instanceof LayerGroupInfo) {
-                        result.remove(pi);
-                    }
-                }
-            }
-            
-            return new ArrayList<LayerGroupInfo>(result);
-        }
-
         protected void handleAttribution(LayerInfo layer) {
             AttributionInfo attribution = layer.getAttribution();
 
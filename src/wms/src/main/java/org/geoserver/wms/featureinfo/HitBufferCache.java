@@ -0,0 +1,282 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.featureinfo;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.wfs.TransactionEvent;
+import org.geoserver.wfs.TransactionListener;
+import org.geoserver.wfs.WFSException;
+import org.geoserver.wms.FeatureInfoRequestParameters;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.cache.CacheKeyBuilder;
+import org.geoserver.wms.cache.MemoryBoundedCache;
+import org.geoserver.wms.cache.MemoryBoundedCache.EntryFilter;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Keeps, for a short time, the per pixel feature id buffers built to answer GetFeatureInfo
+ * requests, so that the following clicks on the same map can be resolved with a lookup in the
+ * buffer, instead of querying and painting the features around the clicked point.
+ * <p>
+ * The buffers are keyed by the query layer, the GetMap portion of the request and the user, the
+ * clicked point and the output options do not matter. The cache is disabled by default, it is enabled by
+ * setting the max size of the buffers, in megabytes, in the {@value #CACHE_SIZE_KEY}
+ * system/context/environment variable. Buffers older than {@value #TTL_KEY} seconds (
+ * {@value #DEFAULT_TTL} by default) are discarded, as well as the ones of layers modified by a WFS
+ * transaction.
+ * </p>
+ */
+public class HitBufferCache implements TransactionListener {
+
+    static final Logger LOGGER = Logging.getLogger(HitBufferCache.class);
+
+    /**
+     * Max size of the cached hit buffers, in megabytes
+     */
+    public static final String CACHE_SIZE_KEY = "GEOSERVER_FEATUREINFO_HIT_BUFFER_SIZE";
+
+    /**
+     * Time to live of the hit buffers, in seconds
+     */
+    public static final String TTL_KEY = "GEOSERVER_FEATUREINFO_HIT_BUFFER_TTL";
+
+    static final int DEFAULT_TTL = 60;
+
+    /**
+     * Skips the parameters that are specific to the single GetFeatureInfo request, and do not
+     * change the map being clicked
+     */
+    static final CacheKeyBuilder KEY_BUILDER = new CacheKeyBuilder("SERVICE", "REQUEST",
+            "VERSION", "EXCEPTIONS", "FORMAT", "TRANSPARENT", "BGCOLOR", "TILED", "TILESORIGIN",
+            "X", "Y", "I", "J", "INFO_FORMAT", "FEATURE_COUNT", "QUERY_LAYERS", "BUFFER",
+            "PROPERTYNAME");
+
+    /**
+     * The per pixel feature ids of a map layer. The pixels hold the index of the feature painted
+     * on top of them in the feature id list, zero means no feature was painted there
+     */
+    public static class HitBuffer {
+
+        final String layerName;
+
+        final int width;
+
+        final int height;
+
+        final int[] pixels;
+
+        final String[] featureIds;
+
+        /**
+         * Builds a new hit buffer
+         *
+         * @param layerName The layer name
+         * @param width The buffer width
+         * @param height The buffer height
+         * @param pixels The feature indexes, row by row, kept as is (not copied)
+         * @param featureIds The feature ids, the first one is not used
+         */
+        public HitBuffer(String layerName, int width, int height, int[] pixels,
+                String[] featureIds) {
+            this.layerName = layerName;
+            this.width = width;
+            this.height = height;
+            this.featureIds = featureIds;
+            this.pixels = pixels;
+        }
+
+        int getIndex(int x, int y) {
+            return pixels[y * width + x];
+        }
+
+        /**
+         * Returns the ids of the features painted within the specified radius around the point,
+         * the nearest first
+         *
+         * @param x The point column
+         * @param y The point row
+         * @param radius The search radius, in pixels
+         * @param maxFeatures The max number of ids to be returned
+         */
+        public Set<String> getFeatureIds(int x, int y, int radius, int maxFeatures) {
+            Set<String> result = new LinkedHashSet<String>();
+            // walk rings of growing distance from the point
+            for (int r = 0; r <= radius && result.size() < maxFeatures; r++) {
+                for (int dy = -r; dy <= r; dy++) {
+                    for (int dx = -r; dx <= r; dx++) {
+                        if (Math.max(Math.abs(dx), Math.abs(dy)) != r) {
+                            continue;
+                        }
+                        int px = x + dx;
+                        int py = y + dy;
+                        if (px < 0 || py < 0 || px >= width || py >= height) {
+                            continue;
+                        }
+                        int index = getIndex(px, py);
+                        if (index > 0 && index < featureIds.length) {
+                            result.add(featureIds[index]);
+                            if (result.size() >= maxFeatures) {
+                                return result;
+                            }
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        public String getLayerName() {
+            return layerName;
+        }
+
+        /**
+         * Estimated memory used by the buffer, in bytes
+         */
+        public long getSize() {
+            // rough estimate of the feature id strings
+            return pixels.length * 4l + featureIds.length * 64l;
+        }
+
+        /**
+         * Estimated memory a buffer of the given size would use, in bytes (the pixels come
+         * straight from an int image)
+         */
+        static long estimateSize(int width, int height) {
+            return width * (long) height * 4;
+        }
+    }
+
+    /**
+     * The cached buffers
+     */
+    private final MemoryBoundedCache<String, HitBuffer> cache;
+
+    public HitBufferCache() {
+        this(MemoryBoundedCache.getConfiguredMaxMemory(CACHE_SIZE_KEY, 0),
+                getConfiguredTimeToLive());
+    }
+
+    HitBufferCache(long maxMemory, long timeToLive) {
+        this.cache = new MemoryBoundedCache<String, HitBuffer>(maxMemory, timeToLive);
+    }
+
+    static long getConfiguredTimeToLive() {
+        String value = GeoServerExtensions.getProperty(TTL_KEY);
+        if (value != null) {
+            try {
+                return Math.max(0, Long.parseLong(value.trim())) * 1000;
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + TTL_KEY + ": " + value + ", using default");
+            }
+        }
+        return DEFAULT_TTL * 1000;
+    }
+
+    /**
+     * Builds the key of the hit buffer for the current query layer, or returns null if the
+     * request cannot use a hit buffer
+     */
+    public String getKey(FeatureInfoRequestParameters params) {
+        GetMapRequest getMap = params.getGetMapRequest();
+        Map<String, String> rawKvp = getMap.getRawKvp();
+        if (!isEnabled() || rawKvp == null) {
+            return null;
+        }
+        return getKey(params.getLayer().getName(), rawKvp);
+    }
+
+    String getKey(String layerName, Map<String, String> rawKvp) {
+        StringBuilder sb = new StringBuilder(layerName);
+        sb.append('&').append(KEY_BUILDER.getKey(rawKvp));
+        // data security limits are applied while painting, the buffer depends on the user
+        Authentication user = SecurityContextHolder.getContext().getAuthentication();
+        if (user != null) {
+            sb.append('|').append(user.getName());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the hit buffer, or null if not found or expired
+     */
+    public HitBuffer get(String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Returns true if a buffer of the specified size can be cached
+     */
+    public boolean accepts(int width, int height) {
+        return cache.accepts(HitBuffer.estimateSize(width, height));
+    }
+
+    /**
+     * Caches the hit buffer, evicting the expired and least recently used ones if needed
+     */
+    public void put(String key, HitBuffer buffer) {
+        cache.put(key, buffer, buffer.getSize());
+    }
+
+    /**
+     * Drops the buffers of the specified layer, or all of them if the name is null
+     */
+    void invalidate(final String layerName) {
+        cache.invalidate(new EntryFilter<String, HitBuffer>() {
+            public boolean accept(String key, HitBuffer buffer) {
+                return layerName == null || layerName.equals(buffer.getLayerName())
+                        || layerName.equals(localName(buffer.getLayerName()));
+            }
+        });
+    }
+
+    static String localName(String name) {
+        int idx = name.indexOf(':');
+        return idx >= 0 ? name.substring(idx + 1) : name;
+    }
+
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        // the features might have moved, the buffers would be misleading
+        invalidate(event.getLayerName() != null ? event.getLayerName().getLocalPart() : null);
+    }
+
+    public boolean isEnabled() {
+        return getMaxMemory() > 0;
+    }
+
+    public long getMaxMemory() {
+        return cache.getMaxMemory();
+    }
+
+    public void setMaxMemory(long maxMemory) {
+        cache.setMaxMemory(maxMemory);
+    }
+
+    public long getMemory() {
+        return cache.getMemory();
+    }
+
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+}
@@ -15,6 +15,7 @@ import java.awt.RenderingHints.Key;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
 import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
@@ -22,6 +23,7 @@ import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -45,6 +47,8 @@ import org.geoserver.wms.RenderingVariables;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.map.RenderedImageMapOutputFormat;
+import org.geoserver.wms.utfgrid.UTFGridColorFunction;
+import org.geoserver.wms.utfgrid.UTFGridStyleVisitor;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
 import org.geotools.data.QueryCapabilities;
@@ -63,10 +67,11 @@ import org.geotools.renderer.lite.GraphicsAwareDpiRescaleStyleVisitor;
 import org.geotools.renderer.lite.MetaBufferEstimator;
 import org.geotools.renderer.lite.RendererUtilities;
 import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.FeatureTypeStyle;
 import org.geotools.styling.Rule;
 import org.geotools.styling.Style;
 import org.geotools.styling.StyleAttributeExtractor;
-import org.geotools.styling.visitor.DpiRescaleStyleVisitor;
+import org.geotools.styling.visitor.DuplicatingStyleVisitor;
 import org.geotools.styling.visitor.UomRescaleStyleVisitor;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.Feature;
@@ -76,6 +81,7 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.FeatureType;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
 import org.opengis.filter.spatial.BBOX;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.operation.TransformException;
@@ -99,6 +105,7 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
     
     private WMS wms;
     private VectorBasicLayerIdentifier fallback;
+    private HitBufferCache hitBufferCache;
     private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
     
     static {
@@ -114,6 +121,14 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
         this.fallback = fallback;
     }
     
+    /**
+     * Sets the cache of the per pixel feature id buffers, used to speed up repeated
+     * GetFeatureInfo requests against the same map
+     */
+    public void setHitBufferCache(HitBufferCache hitBufferCache) {
+        this.hitBufferCache = hitBufferCache;
+    }
+
     @Override
     public boolean canHandle(MapLayerInfo layer) {
         // selectively disable based on system settings
@@ -144,6 +159,14 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
         if (rules.size() == 0) {
             return null;
         }
+        if (hitBufferCache != null && hitBufferCache.isEnabled()) {
+            List<FeatureCollection> result = identifyFromHitBuffer(params, style, buffer,
+                    maxFeatures);
+            if (result != null) {
+                return result;
+            }
+        }
+
         GetMapRequest getMap = params.getGetMapRequest();
         getMap.getFormatOptions().put("antialias", "NONE");
         WMSMapContent mc = new WMSMapContent(getMap);
@@ -209,6 +232,149 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
         }
     }
 
+    /**
+     * Looks up the features around the clicked point in the hit buffer of the map, building it
+     * if missing, and fetches them by id. Returns null if a hit buffer cannot be used for this
+     * request.
+     */
+    private List<FeatureCollection> identifyFromHitBuffer(FeatureInfoRequestParameters params,
+            Style style, int buffer, int maxFeatures) throws Exception {
+        GetMapRequest getMap = params.getGetMapRequest();
+        // rotated maps and transformations producing new features are not supported
+        if (getMap.getAngle() != 0 || hasTransformation(style)
+                || !hitBufferCache.accepts(params.getWidth(), params.getHeight())) {
+            return null;
+        }
+        String key = hitBufferCache.getKey(params);
+        if (key == null) {
+            return null;
+        }
+        HitBufferCache.HitBuffer hitBuffer = hitBufferCache.get(key);
+        if (hitBuffer == null) {
+            hitBuffer = buildHitBuffer(params, style);
+            hitBufferCache.put(key, hitBuffer);
+        }
+
+        Set<String> ids = hitBuffer.getFeatureIds(params.getX(), params.getY(), buffer,
+                maxFeatures);
+        if (ids.isEmpty()) {
+            return aggregateByFeatureType(Collections.<Feature> emptyList());
+        }
+
+        // fetch the features by id, preserving the distance order
+        Set<FeatureId> fids = new HashSet<FeatureId>();
+        for (String id : ids) {
+            fids.add(FF.featureId(id));
+        }
+        FeatureLayer layer = getLayer(params, style);
+        Query query = layer.getQuery();
+        Filter idFilter = FF.id(fids);
+        if (query.getFilter() == null || query.getFilter() == Filter.INCLUDE) {
+            query.setFilter(idFilter);
+        } else {
+            query.setFilter(FF.and(query.getFilter(), idFilter));
+        }
+        query.setStartIndex(null);
+        final Map<String, Feature> features = new HashMap<String, Feature>();
+        layer.getFeatureSource().getFeatures(query).accepts(new FeatureVisitor() {
+
+            @Override
+            public void visit(Feature feature) {
+                features.put(feature.getIdentifier().getID(), feature);
+            }
+        }, null);
+        List<Feature> sorted = new ArrayList<Feature>();
+        for (String id : ids) {
+            Feature feature = features.get(id);
+            if (feature != null) {
+                sorted.add(feature);
+            }
+        }
+        return aggregateByFeatureType(sorted);
+    }
+
+    private boolean hasTransformation(Style style) {
+        for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+            if (fts.getTransformation() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Paints the whole map layer, each feature with a color encoding its position in the list of
+     * painted features, and turns the result in a hit buffer
+     */
+    private HitBufferCache.HitBuffer buildHitBuffer(FeatureInfoRequestParameters params,
+            Style style) throws IOException {
+        UTFGridColorFunction colorFunction = new UTFGridColorFunction(
+                Collections.<String> emptySet());
+        Style hitStyle = style;
+        for (DuplicatingStyleVisitor visitor : getRescaleVisitors(params)) {
+            hitStyle.accept(visitor);
+            hitStyle = (Style) visitor.getCopy();
+        }
+        UTFGridStyleVisitor gridVisitor = new UTFGridStyleVisitor(colorFunction);
+        hitStyle.accept(gridVisitor);
+        hitStyle = (Style) gridVisitor.getCopy();
+
+        // paint straight from the original source, all the attributes are loaded on fetch
+        FeatureLayer layer = getLayer(params, style);
+        FeatureLayer hitLayer = new FeatureLayer(params.getLayer().getFeatureSource(true),
+                hitStyle);
+        hitLayer.setQuery(layer.getQuery());
+        int width = params.getWidth();
+        int height = params.getHeight();
+        GetMapRequest getMap = params.getGetMapRequest();
+        WMSMapContent mc = new WMSMapContent(getMap);
+        mc.getViewport().setBounds(params.getRequestedBounds());
+        mc.setMapWidth(width);
+        mc.setMapHeight(height);
+        mc.addLayer(hitLayer);
+        // setup the env variables just like in the original GetMap
+        RenderingVariables.setupEnvironmentVariables(mc);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            Map<Key, Object> hintsMap = new HashMap<Key, Object>();
+            hintsMap.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            graphics.setRenderingHints(hintsMap);
+
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            renderer.setJava2DHints(new RenderingHints(hintsMap));
+            Map<Object, Object> rendererParams = new HashMap<Object, Object>();
+            rendererParams.put("optimizedDataLoadingEnabled", Boolean.TRUE);
+            rendererParams.put(StreamingRenderer.SCALE_COMPUTATION_METHOD_KEY,
+                    mc.getRendererScaleMethod());
+            Integer dpi = (Integer) getMap.getFormatOptions().get("dpi");
+            if (dpi != null) {
+                rendererParams.put(StreamingRenderer.DPI_KEY, dpi);
+            }
+            if (wms.isAdvancedProjectionHandlingEnabled()) {
+                rendererParams.put(StreamingRenderer.ADVANCED_PROJECTION_HANDLING_KEY, true);
+            }
+            renderer.setRendererHints(rendererParams);
+            renderer.paint(graphics, new Rectangle(width, height), params.getRequestedBounds());
+        } finally {
+            graphics.dispose();
+            mc.dispose();
+        }
+
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        String[] featureIds = new String[colorFunction.getEntryCount()];
+        for (int i = 1; i < featureIds.length; i++) {
+            featureIds[i] = colorFunction.getEntry(i).getKey();
+        }
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] &= 0xFFFFFF;
+        }
+        return new HitBufferCache.HitBuffer(params.getLayer().getName(), width, height, pixels,
+                featureIds);
+    }
+
     protected int getBuffer(final int userBuffer) {
         return Math.min(userBuffer, wms.getMaxBuffer());
     }
@@ -251,6 +417,21 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
     }
 
     private void rescaleRules(List<Rule> rules, FeatureInfoRequestParameters params) {
+        for (DuplicatingStyleVisitor visitor : getRescaleVisitors(params)) {
+            for (int i = 0; i < rules.size(); i++) {
+                rules.get(i).accept(visitor);
+                Rule rescaled = (Rule) visitor.getCopy();
+                rules.set(i, rescaled);
+            }
+        }
+    }
+
+    /**
+     * Returns the visitors applying the dpi rescale, if necessary, and the UOM rescale, in this
+     * order
+     */
+    private List<DuplicatingStyleVisitor> getRescaleVisitors(FeatureInfoRequestParameters params) {
+        List<DuplicatingStyleVisitor> visitors = new ArrayList<DuplicatingStyleVisitor>();
         Map<Object, Object> rendererParams = new HashMap<Object, Object>();
         Integer requestedDpi = ((Integer) params.getGetMapRequest().getFormatOptions().get("dpi"));
         if(requestedDpi != null) {
@@ -261,22 +442,13 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
         double standardDpi = RendererUtilities.getDpi(rendererParams);
         if(requestedDpi != null && standardDpi != requestedDpi) {
             double scaleFactor = requestedDpi / standardDpi;
-            DpiRescaleStyleVisitor dpiVisitor = new GraphicsAwareDpiRescaleStyleVisitor(scaleFactor);
-            for (int i = 0; i < rules.size(); i++) {
-                rules.get(i).accept(dpiVisitor);
-                Rule rescaled = (Rule) dpiVisitor.getCopy();
-                rules.set(i, rescaled);
-            }
+            visitors.add(new GraphicsAwareDpiRescaleStyleVisitor(scaleFactor));
         }
 
         // apply UOM rescaling
         double pixelsPerMeters = RendererUtilities.calculatePixelsPerMeterRatio(params.getScaleDenominator(), rendererParams);
-        UomRescaleStyleVisitor uomVisitor = new UomRescaleStyleVisitor(pixelsPerMeters);
-        for (int i = 0; i < rules.size(); i++) {
-            rules.get(i).accept(uomVisitor);
-            Rule rescaled = (Rule) uomVisitor.getCopy();
-            rules.set(i, rescaled);
-        }
+        visitors.add(new UomRescaleStyleVisitor(pixelsPerMeters));
+        return visitors;
     }
 
     private Style preprocessStyle(Style style, FeatureType schema) {
@@ -0,0 +1,48 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.legendgraphic;
+
+import java.util.Set;
+
+/**
+ * A legend graphic already encoded in its output format, as stored in the
+ * {@link LegendGraphicCache}
+ */
+public class EncodedLegendGraphic {
+
+    private final byte[] legend;
+
+    private final String mimeType;
+
+    private final Set<String> layerNames;
+
+    public EncodedLegendGraphic(byte[] legend, String mimeType, Set<String> layerNames) {
+        this.legend = legend;
+        this.mimeType = mimeType;
+        this.layerNames = layerNames;
+    }
+
+    /**
+     * The encoded legend, must not be modified
+     */
+    public byte[] getLegend() {
+        return legend;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * The names of the layers the legend depends on
+     */
+    public Set<String> getLayerNames() {
+        return layerNames;
+    }
+
+    public int getSize() {
+        return legend.length;
+    }
+}
@@ -0,0 +1,285 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.legendgraphic;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.ConfigurationListenerAdapter;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInfo;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.ows.LocalLayer;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.wms.GetLegendGraphicRequest;
+import org.geoserver.wms.cache.CacheKeyBuilder;
+import org.geoserver.wms.cache.MemoryBoundedCache;
+import org.geoserver.wms.cache.MemoryBoundedCache.EntryFilter;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Caches the encoded GetLegendGraphic responses.
+ * <p>
+ * Legends are keyed by the request parameters (layer, style, rule, size, format, scale, legend
+ * options and so on) and by the virtual service they were requested through, only requests
+ * referring to catalog styles are cached, those using the <code>SLD</code> or
+ * <code>SLD_BODY</code> parameters are not. The cache is disabled by default, it is enabled by
+ * setting the max size of the cached legends, in megabytes, in the {@value #CACHE_SIZE_KEY}
+ * system/context/environment variable. The least recently used legends are evicted when the cap
+ * is exceeded.
+ * </p>
+ * <p>
+ * Changes to a layer, resource or layer group drop the legends referring to it, style changes and
+ * configuration reloads wipe out the whole cache, as the same style can be used by many layers.
+ * </p>
+ */
+public class LegendGraphicCache implements CatalogListener {
+
+    static final Logger LOGGER = Logging.getLogger(LegendGraphicCache.class);
+
+    /**
+     * Max size of the cached legends, in megabytes
+     */
+    public static final String CACHE_SIZE_KEY = "GEOSERVER_LEGEND_CACHE_SIZE";
+
+    static final int DEFAULT_CACHE_SIZE = 0;
+
+    /**
+     * Skips the parameters that do not change the legend contents
+     */
+    static final CacheKeyBuilder KEY_BUILDER = new CacheKeyBuilder("SERVICE", "REQUEST",
+            "VERSION", "EXCEPTIONS");
+
+    /**
+     * The cached legends
+     */
+    private final MemoryBoundedCache<String, EncodedLegendGraphic> cache;
+
+    private final Catalog catalog;
+
+    public LegendGraphicCache(Catalog catalog, GeoServer geoServer) {
+        this(catalog, MemoryBoundedCache.getConfiguredMaxMemory(CACHE_SIZE_KEY,
+                DEFAULT_CACHE_SIZE));
+        catalog.addListener(this);
+        geoServer.addListener(new ConfigurationListenerAdapter() {
+            public void handleGlobalChange(GeoServerInfo global, List<String> propertyNames,
+                    List<Object> oldValues, List<Object> newValues) {
+                clear();
+            }
+
+            public void handleServiceChange(ServiceInfo service, List<String> propertyNames,
+                    List<Object> oldValues, List<Object> newValues) {
+                clear();
+            }
+
+            public void reloaded() {
+                clear();
+            }
+        });
+    }
+
+    LegendGraphicCache(Catalog catalog, long maxMemory) {
+        this.catalog = catalog;
+        this.cache = new MemoryBoundedCache<String, EncodedLegendGraphic>(maxMemory);
+    }
+
+    /**
+     * Builds the cache key for the request, or returns null if the legend cannot be cached
+     */
+    public String getKey(GetLegendGraphicRequest request) {
+        Map<String, String> rawKvp = request.getRawKvp();
+        if (!isEnabled() || rawKvp == null || rawKvp.get("LAYER") == null) {
+            return null;
+        }
+
+        Map<String, String> sorted = KEY_BUILDER.getParameters(rawKvp);
+        if (sorted.containsKey("SLD") || sorted.containsKey("SLD_BODY")) {
+            // the external style could change at any time
+            return null;
+        }
+        // the same layer name resolves differently in each virtual service (the leading
+        // underscore keeps these apart from the request parameters)
+        WorkspaceInfo workspace = LocalWorkspace.get();
+        if (workspace != null) {
+            sorted.put("_WORKSPACE", workspace.getName());
+        }
+        LayerInfo layer = LocalLayer.get();
+        if (layer != null) {
+            sorted.put("_LAYER", layer.getName());
+        }
+        return KEY_BUILDER.toKey(sorted);
+    }
+
+    /**
+     * Returns the cached legend, or null if not found
+     */
+    public EncodedLegendGraphic get(String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Caches the encoded legend, evicting the least recently used ones if needed
+     */
+    public void put(String key, GetLegendGraphicRequest request, byte[] legend, String mimeType) {
+        if (!isEnabled()) {
+            return;
+        }
+        EncodedLegendGraphic encoded = new EncodedLegendGraphic(legend, mimeType,
+                getLayerNames(request));
+        cache.put(key, encoded, encoded.getSize());
+    }
+
+    /**
+     * Collects the prefixed names of the layers the legend depends on, including the members of
+     * the requested layer groups. Names are resolved in the current virtual service, if any
+     */
+    Set<String> getLayerNames(GetLegendGraphicRequest request) {
+        Set<String> names = new HashSet<String>();
+        for (String name : request.getRawKvp().get("LAYER").split(",")) {
+            name = name.trim();
+            LayerInfo layer = catalog.getLayerByName(name);
+            if (layer != null) {
+                names.add(prefixedName(layer));
+            }
+            LayerGroupInfo group = catalog.getLayerGroupByName(name);
+            if (group != null) {
+                names.add(prefixedName(group));
+                for (LayerInfo member : group.layers()) {
+                    if (member != null) {
+                        names.add(prefixedName(member));
+                    }
+                }
+            }
+            if (layer == null && group == null) {
+                names.add(qualifiedName(name));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Builds the prefixed name from the workspace, the {@link PublishedInfo#prefixedName()} of
+     * the objects returned in a virtual service is not qualified
+     */
+    static String prefixedName(PublishedInfo published) {
+        WorkspaceInfo workspace = null;
+        if (published instanceof LayerInfo) {
+            ResourceInfo resource = ((LayerInfo) published).getResource();
+            if (resource != null && resource.getNamespace() != null) {
+                return resource.getNamespace().getPrefix() + ":" + published.getName();
+            }
+        } else if (published instanceof LayerGroupInfo) {
+            workspace = ((LayerGroupInfo) published).getWorkspace();
+        }
+        return workspace == null ? published.getName() : workspace.getName() + ":"
+                + published.getName();
+    }
+
+    static String qualifiedName(String name) {
+        WorkspaceInfo workspace = LocalWorkspace.get();
+        if (name.indexOf(':') < 0 && workspace != null) {
+            return workspace.getName() + ":" + name;
+        }
+        return name;
+    }
+
+    /**
+     * Drops the legends referring to the specified layer
+     */
+    void invalidate(final String layerName) {
+        cache.invalidate(new EntryFilter<String, EncodedLegendGraphic>() {
+            public boolean accept(String key, EncodedLegendGraphic legend) {
+                return legend.getLayerNames().contains(layerName);
+            }
+        });
+    }
+
+    void invalidate(CatalogInfo info) {
+        if (info instanceof StyleInfo) {
+            clear();
+        } else if (info instanceof PublishedInfo) {
+            invalidate(prefixedName((PublishedInfo) info));
+        } else if (info instanceof ResourceInfo) {
+            invalidate(((ResourceInfo) info).prefixedName());
+        }
+    }
+
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // nothing cached for a new object yet
+    }
+
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        invalidate(event.getSource());
+    }
+
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // the name might be about to change, drop the legends under the old one
+        invalidate(event.getSource());
+    }
+
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        invalidate(event.getSource());
+    }
+
+    public void reloaded() {
+        clear();
+    }
+
+    public boolean isEnabled() {
+        return getMaxMemory() > 0;
+    }
+
+    public long getMaxMemory() {
+        return cache.getMaxMemory();
+    }
+
+    public void setMaxMemory(long maxMemory) {
+        cache.setMaxMemory(maxMemory);
+    }
+
+    public long getMemory() {
+        return cache.getMemory();
+    }
+
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the keys of the cached legends, for testing purposes
+     */
+    Set<String> getKeys() {
+        return cache.keys();
+    }
+}
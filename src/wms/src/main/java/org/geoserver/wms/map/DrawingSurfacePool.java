@@ -0,0 +1,326 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.IndexColorModel;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.geoserver.wms.cache.MemoryBoundedCache;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A pool of raster buffers backing the GetMap drawing surfaces, bucketed by image size and
+ * kind (4 bytes ABGR, 3 bytes BGR, or paletted with a given transfer type).
+ * <p>
+ * Surfaces are borrowed with {@link #borrow(int, int, IndexColorModel, boolean)}, which behaves
+ * like {@link ImageUtils#createImage(int, int, IndexColorModel, boolean)} but may return an
+ * image backed by a recycled (and cleared) raster, and go back to the pool with
+ * {@link #release(RenderedImage)}, usually called by the {@link org.geoserver.wms.RasterCleaner}
+ * at the end of the request. Surfaces that are never released are simply garbage collected.
+ * </p>
+ * <p>
+ * The idle buffers are bounded by a global memory cap, set with the
+ * {@value #POOL_SIZE_KEY} system/context/environment variable in megabytes. The pool is
+ * disabled (every borrow allocates a new image) when the cap is zero, which is the default.
+ * When the cap is exceeded the least recently used buckets are dropped.
+ * </p>
+ */
+public class DrawingSurfacePool implements DrawingSurfacePoolMBean {
+
+    static final Logger LOGGER = Logging.getLogger(DrawingSurfacePool.class);
+
+    /**
+     * Max memory used by the idle buffers, in megabytes
+     */
+    public static final String POOL_SIZE_KEY = "GEOSERVER_DRAWING_SURFACE_POOL_SIZE";
+
+    static final int ABGR = -1;
+
+    static final int BGR = -2;
+
+    static final ColorModel ABGR_MODEL = new BufferedImage(1, 1, BufferedImage.TYPE_4BYTE_ABGR)
+            .getColorModel();
+
+    static final ColorModel BGR_MODEL = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR)
+            .getColorModel();
+
+    static volatile DrawingSurfacePool INSTANCE;
+
+    /**
+     * Returns the pool shared by all GetMap requests
+     */
+    public static DrawingSurfacePool getInstance() {
+        if (INSTANCE == null) {
+            synchronized (DrawingSurfacePool.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new DrawingSurfacePool(MemoryBoundedCache.getConfiguredMaxMemory(
+                            POOL_SIZE_KEY, 0));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * The idle buffers, in access order
+     */
+    final LinkedHashMap<Key, Deque<WritableRaster>> buckets = new LinkedHashMap<Key, Deque<WritableRaster>>(
+            16, 0.75f, true);
+
+    /**
+     * The rasters handed out and not yet released, weak so that surfaces that never make it back
+     * to the pool are not leaked
+     */
+    final Map<WritableRaster, Key> borrowed = new WeakHashMap<WritableRaster, Key>();
+
+    long maxMemory;
+
+    long memory;
+
+    int size;
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    final AtomicLong recycled = new AtomicLong();
+
+    final AtomicLong discarded = new AtomicLong();
+
+    public DrawingSurfacePool(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Returns a cleared drawing surface, see
+     * {@link ImageUtils#createImage(int, int, IndexColorModel, boolean)}
+     */
+    public BufferedImage borrow(int width, int height, IndexColorModel palette,
+            boolean transparent) {
+        if (!isEnabled()) {
+            return ImageUtils.createImage(width, height, palette, transparent);
+        }
+
+        Key key = new Key(palette != null ? palette.getTransferType() : (transparent ? ABGR
+                : BGR), width, height);
+        WritableRaster raster = null;
+        synchronized (this) {
+            Deque<WritableRaster> bucket = buckets.get(key);
+            if (bucket != null) {
+                raster = bucket.poll();
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+                if (raster != null) {
+                    memory -= getMemory(raster);
+                    size--;
+                }
+            }
+        }
+
+        BufferedImage image;
+        if (raster != null) {
+            hits.incrementAndGet();
+            clear(raster);
+            ColorModel cm = palette != null ? palette : (transparent ? ABGR_MODEL : BGR_MODEL);
+            image = new BufferedImage(cm, raster, false, null);
+        } else {
+            misses.incrementAndGet();
+            image = ImageUtils.createImage(width, height, palette, transparent);
+            raster = image.getRaster();
+        }
+
+        synchronized (borrowed) {
+            borrowed.put(raster, key);
+        }
+        return image;
+    }
+
+    /**
+     * Returns the surface raster to the pool, does nothing if the image was not borrowed from
+     * this pool, or has already been released or detached
+     */
+    public void release(RenderedImage image) {
+        if (!(image instanceof BufferedImage)) {
+            return;
+        }
+        WritableRaster raster = ((BufferedImage) image).getRaster();
+        Key key;
+        synchronized (borrowed) {
+            key = borrowed.remove(raster);
+        }
+        if (key == null) {
+            return;
+        }
+
+        long rasterMemory = getMemory(raster);
+        synchronized (this) {
+            if (rasterMemory > maxMemory || !isClearable(raster)) {
+                discarded.incrementAndGet();
+                return;
+            }
+            // make room dropping the least recently used buckets
+            Iterator<Map.Entry<Key, Deque<WritableRaster>>> it = buckets.entrySet().iterator();
+            while (memory + rasterMemory > maxMemory && it.hasNext()) {
+                Deque<WritableRaster> bucket = it.next().getValue();
+                for (WritableRaster r : bucket) {
+                    memory -= getMemory(r);
+                    size--;
+                    discarded.incrementAndGet();
+                }
+                it.remove();
+            }
+
+            Deque<WritableRaster> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayDeque<WritableRaster>();
+                buckets.put(key, bucket);
+            }
+            bucket.push(raster);
+            memory += rasterMemory;
+            size++;
+        }
+        recycled.incrementAndGet();
+    }
+
+    /**
+     * Makes sure the surface will never go back to the pool, to be used when the image outlives
+     * the request (e.g., it gets cached)
+     */
+    public void detach(RenderedImage image) {
+        if (image instanceof BufferedImage) {
+            synchronized (borrowed) {
+                borrowed.remove(((BufferedImage) image).getRaster());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return getMaxMemory() > 0;
+    }
+
+    public synchronized long getMaxMemory() {
+        return maxMemory;
+    }
+
+    public synchronized void setMaxMemory(long maxMemory) {
+        this.maxMemory = Math.max(0, maxMemory);
+        if (memory > this.maxMemory) {
+            clear();
+        }
+    }
+
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    public synchronized int getSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    public long getRecycledCount() {
+        return recycled.get();
+    }
+
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    public synchronized void clear() {
+        buckets.clear();
+        memory = 0;
+        size = 0;
+    }
+
+    static long getMemory(WritableRaster raster) {
+        DataBuffer buffer = raster.getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    static boolean isClearable(WritableRaster raster) {
+        DataBuffer buffer = raster.getDataBuffer();
+        return buffer instanceof DataBufferByte || buffer instanceof DataBufferUShort;
+    }
+
+    static void clear(WritableRaster raster) {
+        DataBuffer buffer = raster.getDataBuffer();
+        if (buffer instanceof DataBufferByte) {
+            for (byte[] bank : ((DataBufferByte) buffer).getBankData()) {
+                Arrays.fill(bank, (byte) 0);
+            }
+        } else if (buffer instanceof DataBufferUShort) {
+            for (short[] bank : ((DataBufferUShort) buffer).getBankData()) {
+                Arrays.fill(bank, (short) 0);
+            }
+        }
+    }
+
+    /**
+     * Identifies a bucket, the kind is either ABGR, BGR, or the transfer type of a paletted image
+     */
+    static final class Key {
+
+        final int kind;
+
+        final int width;
+
+        final int height;
+
+        Key(int kind, int width, int height) {
+            this.kind = kind;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int hashCode() {
+            return (kind * 31 + width) * 31 + height;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return kind == other.kind && width == other.width && height == other.height;
+        }
+
+        @Override
+        public String toString() {
+            return "Key[" + kind + ", " + width + "x" + height + "]";
+        }
+    }
+}
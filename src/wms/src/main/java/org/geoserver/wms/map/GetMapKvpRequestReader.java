@@ -40,6 +40,8 @@ import org.geoserver.ows.KvpRequestReader;
 import org.geoserver.ows.util.KvpUtils;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.GetMapTimings;
+import org.geoserver.wms.GetMapTimings.Phase;
 import org.geoserver.wms.MapLayerInfo;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSErrorCode;
@@ -182,6 +184,19 @@ public class GetMapKvpRequestReader extends KvpRequestReader implements HttpServ
     @SuppressWarnings("rawtypes")
     @Override
     public GetMapRequest read(Object request, Map kvp, Map rawKvp) throws Exception {
+        GetMapTimings timings = GetMapTimings.start();
+        long start = System.nanoTime();
+        try {
+            return readInternal(request, kvp, rawKvp, timings);
+        } finally {
+            if (timings != null) {
+                timings.record(Phase.PARSE, start);
+            }
+        }
+    }
+
+    GetMapRequest readInternal(Object request, Map kvp, Map rawKvp, GetMapTimings timings)
+            throws Exception {
         GetMapRequest getMap = (GetMapRequest) super.read(request, kvp, rawKvp);
         // set the raw params used to create the request
         getMap.setRawKvp(rawKvp);
@@ -269,6 +284,7 @@ public class GetMapKvpRequestReader extends KvpRequestReader implements HttpServ
 
         // styles
         // process SLD_BODY, SLD, then STYLES parameter
+        long stylesStart = System.nanoTime();
         if (getMap.getSldBody() != null) {
             if (LOGGER.isLoggable(Level.FINE)) {
                 LOGGER.fine("Getting layers and styles from SLD_BODY");
@@ -451,6 +467,9 @@ public class GetMapKvpRequestReader extends KvpRequestReader implements HttpServ
                 throw new ServiceException(msg, getClass().getName());
             }
         }
+        if (timings != null) {
+            timings.record(Phase.STYLES, stylesStart);
+        }
         
         // check the view params
         List<Map<String, String>> viewParams = getMap.getViewParams();
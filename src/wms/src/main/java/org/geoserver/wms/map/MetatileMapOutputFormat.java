@@ -11,6 +11,7 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
@@ -21,10 +22,16 @@ import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import javax.media.jai.PlanarImage;
 
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.Response;
 import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.GetMapOutputFormat;
 import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.GetMapTimings;
+import org.geoserver.wms.GetMapTimings.Phase;
 import org.geoserver.wms.MapProducerCapabilities;
 import org.geoserver.wms.RasterCleaner;
 import org.geoserver.wms.WMSMapContent;
@@ -41,8 +48,9 @@ import org.geotools.util.logging.Logging;
 /**
  * Wrapping map producer that performs on the fly meta tiling wrapping another map producer. It will
  * first peek inside a tile cache to see if the requested tile has already been computed, if so,
- * it'll encode and return that one, otherwise it'll build a meta tile, split it, and finally encode
- * just the requested tile, putting the others in the tile cache.
+ * it'll return the cached encoded tile, otherwise it'll build a meta tile, split it, encode all
+ * the tiles with the response that would have encoded the requested one, and put them in the
+ * tile cache.
  * 
  * @author Andrea Aime - TOPP
  * @author Simone Giannecchini - GeoSolutions
@@ -130,49 +138,98 @@ public final class MetatileMapOutputFormat implements GetMapOutputFormat {
         QuickTileCache.MetaTileKey key = tileCache.getMetaTileKey(request);
 
         synchronized (key) {
-            RenderedImage tile = tileCache.getTile(key, request);
-            List<GridCoverage2D> renderedCoverages = null;
+            byte[] encoded = tileCache.getTile(key, request);
 
             if (LOGGER.isLoggable(Level.FINER)) {
                 LOGGER.finer("Looked for meta tile " + key.metaTileCoords.x + ", "
-                        + key.metaTileCoords.y + "in cache: " + ((tile != null) ? "hit!" : "miss"));
+                        + key.metaTileCoords.y + "in cache: " + ((encoded != null) ? "hit!" : "miss"));
             }
 
-            if (tile == null) {
-                // compute the meta-tile
-                if (LOGGER.isLoggable(Level.FINER)) {
-                    LOGGER.finer("Building meta tile " + key.metaTileCoords.x + ", "
-                            + key.metaTileCoords.y+" of size w="+
-                            key.getTileSize() * key.getMetaFactor()+", h="+
-                            key.getTileSize() * key.getMetaFactor()+ " with metatilign factor "+key.getMetaFactor());
-                    
-                }
+            if (encoded != null) {
+                return new RawMap(mapContent, encoded, getMimeType());
+            }
 
-                // alter the map definition so that we build a meta-tile instead
-                // of just the tile
-                mapContent.getViewport().setBounds(key.getMetaTileEnvelope());
-                mapContent.setMapWidth(key.getTileSize() * key.getMetaFactor());
-                mapContent.setMapHeight(key.getTileSize() * key.getMetaFactor());
-                mapContent.setTileSize(key.getTileSize());
+            // compute the meta-tile
+            if (LOGGER.isLoggable(Level.FINER)) {
+                LOGGER.finer("Building meta tile " + key.metaTileCoords.x + ", "
+                        + key.metaTileCoords.y+" of size w="+
+                        key.getTileSize() * key.getMetaFactor()+", h="+
+                        key.getTileSize() * key.getMetaFactor()+ " with metatilign factor "+key.getMetaFactor());
                 
-                // adjust the bbox/width/height env vars that GetMap setup, since we
-                // are changing them under its feet
-                EnvFunction.setLocalValue("wms_bbox", mapContent.getViewport().getBounds());
-                EnvFunction.setLocalValue("wms_width", mapContent.getMapWidth());
-                EnvFunction.setLocalValue("wms_height", mapContent.getMapHeight());
-
-                RenderedImageMap metaTileMap = delegate.produceMap(mapContent);
-
-                RenderedImage metaTile = metaTileMap.getImage();
-                RenderedImage[] tiles = split(key, metaTile, mapContent);
-                tileCache.storeTiles(key, tiles);
-                tile = tileCache.getTile(key, request, tiles);
-                renderedCoverages = metaTileMap.getRenderedCoverages();
             }
-            RenderedImageMap tileMap = new RenderedImageMap(mapContent, tile, getMimeType());
-            tileMap.setRenderedCoverages(renderedCoverages);
-            return tileMap;
+
+            // alter the map definition so that we build a meta-tile instead
+            // of just the tile
+            mapContent.getViewport().setBounds(key.getMetaTileEnvelope());
+            mapContent.setMapWidth(key.getTileSize() * key.getMetaFactor());
+            mapContent.setMapHeight(key.getTileSize() * key.getMetaFactor());
+            mapContent.setTileSize(key.getTileSize());
+            
+            // adjust the bbox/width/height env vars that GetMap setup, since we
+            // are changing them under its feet
+            EnvFunction.setLocalValue("wms_bbox", mapContent.getViewport().getBounds());
+            EnvFunction.setLocalValue("wms_width", mapContent.getMapWidth());
+            EnvFunction.setLocalValue("wms_height", mapContent.getMapHeight());
+
+            RenderedImageMap metaTileMap = delegate.produceMap(mapContent);
+
+            RenderedImage metaTile = metaTileMap.getImage();
+            RenderedImage[] tiles = split(key, metaTile, mapContent);
+            List<GridCoverage2D> renderedCoverages = metaTileMap.getRenderedCoverages();
+
+            RenderedImageMapResponse encoder = tileCache.isEnabled() ? getTileEncoder() : null;
+            if (encoder == null) {
+                // cannot cache, just return the requested tile
+                RenderedImage tile = tileCache.getTile(key, request, tiles);
+                RenderedImageMap tileMap = new RenderedImageMap(mapContent, tile, getMimeType());
+                tileMap.setRenderedCoverages(renderedCoverages);
+                return tileMap;
+            }
+
+            // encode all the tiles, the other requests for this meta tile will just need to
+            // grab the bytes from the cache
+            byte[][] encodedTiles = new byte[tiles.length][];
+            GetMapTimings timings = GetMapTimings.current();
+            long start = System.nanoTime();
+            try {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                for (int i = 0; i < tiles.length; i++) {
+                    bos.reset();
+                    encoder.formatImageOutputStream(tiles[i], bos, mapContent);
+                    encodedTiles[i] = bos.toByteArray();
+                }
+            } finally {
+                if (timings != null) {
+                    timings.record(Phase.ENCODE, start);
+                }
+                for (GridCoverage2D coverage : renderedCoverages) {
+                    RasterCleaner.addCoverage(coverage);
+                }
+            }
+            tileCache.storeTiles(key, encodedTiles);
+            return new RawMap(mapContent, encodedTiles[tileCache.getTileIndex(key, request)],
+                    getMimeType());
+        }
+    }
+
+    /**
+     * Looks up the response that would encode the requested tile, or returns null if the
+     * current request is not going through the OWS dispatcher
+     */
+    private RenderedImageMapResponse getTileEncoder() {
+        Request owsRequest = Dispatcher.REQUEST.get();
+        Operation operation = owsRequest != null ? owsRequest.getOperation() : null;
+        if (operation == null) {
+            return null;
+        }
+        for (Response response : GeoServerExtensions.extensions(Response.class)) {
+            if (response instanceof RenderedImageMapResponse
+                    && response.getBinding().isAssignableFrom(RenderedImageMap.class)
+                    && response.canHandle(operation)) {
+                return (RenderedImageMapResponse) response;
+            }
         }
+        return null;
     }
 
     /**
@@ -0,0 +1,392 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.wms.DefaultWebMapService;
+import org.geoserver.wms.GetMapTimings;
+import org.geoserver.wms.GetMapTimings.Phase;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.map.StyleLayer;
+import org.geotools.renderer.RenderListener;
+import org.geotools.renderer.label.LabelCacheImpl;
+import org.geotools.renderer.label.LabelCacheImpl.LabelRenderingMode;
+import org.geotools.renderer.lite.LabelCache;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.Style;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A {@link StreamingRenderer} that paints the layers of its map content concurrently, each one
+ * on its own transparent surface, and then composites the surfaces in z-order on the target
+ * graphics.
+ * <p>
+ * Labels are not painted on the layer surfaces: the calls each layer makes to its label cache
+ * are recorded and replayed, in layer order, against a single {@link LabelCacheImpl} once all
+ * the layers are composited, so that label conflict resolution and priorities work across
+ * layers exactly as in serial rendering.
+ * </p>
+ * <p>
+ * Only maps whose layers can be rendered in isolation are supported, that is, the styles must
+ * not use blending modes other than plain source-over alpha composition, see
+ * {@link #isParallelizable(List)}. At most {@code parallelism} layer surfaces are alive at any
+ * given time. Use {@link #paintLayers(Graphics2D, Rectangle, ReferencedEnvelope, AffineTransform)}
+ * to get the parallel behavior, the inherited paint methods still render serially.
+ * </p>
+ */
+public class ParallelLayerRenderer extends StreamingRenderer {
+
+    static final Logger LOGGER = Logging.getLogger(ParallelLayerRenderer.class);
+
+    /**
+     * The vendor option used to specify a composite on a feature type style
+     */
+    static final String COMPOSITE = "composite";
+
+    /**
+     * The vendor option used to start a composite group on a feature type style
+     */
+    static final String COMPOSITE_BASE = "composite-base";
+
+    static final String SOURCE_OVER = "source-over";
+
+    final int parallelism;
+
+    final List<RenderListener> listeners = new CopyOnWriteArrayList<RenderListener>();
+
+    final List<StreamingRenderer> renderers = new CopyOnWriteArrayList<StreamingRenderer>();
+
+    volatile boolean stopped;
+
+    /**
+     * @param parallelism The max number of layers rendered at the same time
+     */
+    public ParallelLayerRenderer(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive, was "
+                    + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns true if the layers can be rendered independently of each other and composited
+     * afterwards with the same result as serial rendering, that is, if no style uses a
+     * composite base or a composite mode other than source-over
+     */
+    public static boolean isParallelizable(List<Layer> layers) {
+        for (Layer layer : layers) {
+            if (!(layer instanceof StyleLayer)) {
+                continue;
+            }
+            Style style = ((StyleLayer) layer).getStyle();
+            if (style == null) {
+                continue;
+            }
+            for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+                Map<String, String> options = fts.getOptions();
+                if (options == null || options.isEmpty()) {
+                    continue;
+                }
+                if (Boolean.valueOf(options.get(COMPOSITE_BASE))) {
+                    return false;
+                }
+                String composite = options.get(COMPOSITE);
+                if (composite != null) {
+                    String mode = composite.split(",")[0].trim();
+                    if (!SOURCE_OVER.equalsIgnoreCase(mode)) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void addRenderListener(RenderListener listener) {
+        super.addRenderListener(listener);
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeRenderListener(RenderListener listener) {
+        super.removeRenderListener(listener);
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void stopRendering() {
+        stopped = true;
+        super.stopRendering();
+        for (StreamingRenderer renderer : renderers) {
+            renderer.stopRendering();
+        }
+    }
+
+    /**
+     * Renders the layers in parallel and composites them, along with the labels, on the
+     * provided graphics
+     */
+    public void paintLayers(final Graphics2D graphics, final Rectangle paintArea,
+            final ReferencedEnvelope mapArea, final AffineTransform worldToScreen) {
+        final MapContent content = getMapContent();
+        final List<Layer> layers = new ArrayList<Layer>(content.layers());
+        final int count = layers.size();
+        stopped = false;
+
+        final BufferedImage[] surfaces = new BufferedImage[count];
+        final LabelRecorder[] recorders = new LabelRecorder[count];
+        final CountDownLatch[] rendered = new CountDownLatch[count];
+        for (int i = 0; i < count; i++) {
+            rendered[i] = new CountDownLatch(1);
+        }
+
+        // each worker grabs a permit before picking the next layer, and the permit is
+        // released only once that layer is composited: this caps the number of live surfaces
+        // and guarantees the lowest pending layer is always being worked on
+        final Semaphore permits = new Semaphore(parallelism);
+        final AtomicInteger next = new AtomicInteger();
+        Runnable worker = new Runnable() {
+
+            @Override
+            public void run() {
+                while (true) {
+                    permits.acquireUninterruptibly();
+                    int i = next.getAndIncrement();
+                    if (i >= count) {
+                        permits.release();
+                        return;
+                    }
+                    try {
+                        if (!stopped) {
+                            recorders[i] = new LabelRecorder();
+                            surfaces[i] = paintLayer(layers.get(i), content, recorders[i],
+                                    graphics, paintArea, mapArea, worldToScreen);
+                        }
+                    } catch (Throwable t) {
+                        fireError(t);
+                    } finally {
+                        rendered[i].countDown();
+                    }
+                }
+            }
+        };
+
+        int workers = Math.min(parallelism, count);
+        ExecutorService pool = DefaultWebMapService.getRenderingPool();
+        ExecutorService ownPool = null;
+        if (pool == null) {
+            ownPool = Executors.newFixedThreadPool(workers);
+            pool = ownPool;
+        }
+        try {
+            for (int i = 0; i < workers; i++) {
+                pool.execute(worker);
+            }
+
+            for (int i = 0; i < count; i++) {
+                try {
+                    rendered[i].await();
+                } catch (InterruptedException e) {
+                    // stop and let the workers drain the remaining layers without rendering
+                    stopRendering();
+                    permits.release(count);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                BufferedImage surface = surfaces[i];
+                surfaces[i] = null;
+                if (surface != null) {
+                    graphics.drawImage(surface, 0, 0, null);
+                }
+                permits.release();
+            }
+
+            if (!stopped) {
+                GetMapTimings timings = GetMapTimings.current();
+                long start = System.nanoTime();
+                paintLabels(graphics, paintArea, recorders);
+                if (timings != null) {
+                    timings.record(Phase.LABELS, start);
+                }
+            }
+        } finally {
+            if (ownPool != null) {
+                ownPool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Renders a single layer on a new transparent surface
+     */
+    BufferedImage paintLayer(Layer layer, MapContent content, LabelRecorder recorder,
+            Graphics2D graphics, Rectangle paintArea, ReferencedEnvelope mapArea,
+            AffineTransform worldToScreen) {
+        BufferedImage surface = new BufferedImage(paintArea.width, paintArea.height,
+                BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D layerGraphics = surface.createGraphics();
+        layerGraphics.setRenderingHints(graphics.getRenderingHints());
+
+        MapContent layerContent = new MapContent();
+        layerContent.setViewport(content.getViewport());
+        layerContent.addLayer(layer);
+
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setThreadPool(DefaultWebMapService.getRenderingPool());
+        renderer.setJava2DHints(getJava2DHints());
+        Map<Object, Object> hints = new HashMap<Object, Object>(getRendererHints());
+        hints.put(StreamingRenderer.LABEL_CACHE_KEY, recorder.newProxy());
+        renderer.setRendererHints(hints);
+        renderer.setMapContent(layerContent);
+        for (RenderListener listener : listeners) {
+            renderer.addRenderListener(listener);
+        }
+
+        renderers.add(renderer);
+        try {
+            // the flag could have been raised while we were setting up
+            if (!stopped) {
+                renderer.paint(layerGraphics, paintArea, mapArea, worldToScreen);
+            }
+        } finally {
+            renderers.remove(renderer);
+            layerGraphics.dispose();
+            // remove the layer before the content goes away, we don't own it
+            layerContent.removeLayer(layer);
+        }
+
+        return surface;
+    }
+
+    /**
+     * Replays the labels collected by each layer, in layer order, and paints them
+     */
+    void paintLabels(Graphics2D graphics, Rectangle paintArea, LabelRecorder[] recorders) {
+        LabelCacheImpl labelCache = new LabelCacheImpl();
+        Object textRendering = getRendererHints() != null ? getRendererHints().get(
+                TEXT_RENDERING_KEY) : null;
+        if (textRendering instanceof String) {
+            labelCache.setLabelRenderingMode(LabelRenderingMode.valueOf((String) textRendering));
+        }
+
+        labelCache.start();
+        for (int i = 0; i < recorders.length; i++) {
+            if (recorders[i] != null) {
+                recorders[i].replay(labelCache, String.valueOf(i), graphics);
+            }
+        }
+        labelCache.end(graphics, paintArea);
+    }
+
+    void fireError(Throwable t) {
+        Exception e = t instanceof Exception ? (Exception) t : new RuntimeException(t);
+        LOGGER.log(Level.FINE, "Layer rendering failed", e);
+        for (RenderListener listener : listeners) {
+            listener.errorOccurred(e);
+        }
+    }
+
+    /**
+     * Records the calls a layer renderer makes against its {@link LabelCache}, the label cache
+     * lifecycle (start, end, stop, clear) is ignored as the parallel renderer handles it
+     */
+    static class LabelRecorder implements InvocationHandler {
+
+        final List<Method> methods = new ArrayList<Method>();
+
+        final List<Object[]> arguments = new ArrayList<Object[]>();
+
+        LabelCache newProxy() {
+            return (LabelCache) Proxy.newProxyInstance(LabelCache.class.getClassLoader(),
+                    new Class[] { LabelCache.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(name)) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                } else {
+                    return "LabelRecorder@" + Integer.toHexString(System.identityHashCode(proxy));
+                }
+            }
+            if ("start".equals(name) || "end".equals(name) || "stop".equals(name)
+                    || ("clear".equals(name) && (args == null || args.length == 0))) {
+                return null;
+            }
+            if (method.getReturnType() != Void.TYPE) {
+                // queries on a cache that has not been filled yet
+                Class<?> type = method.getReturnType();
+                if (type == Boolean.TYPE) {
+                    return false;
+                } else if (type.isPrimitive()) {
+                    return 0;
+                }
+                return null;
+            }
+            synchronized (this) {
+                methods.add(method);
+                arguments.add(args);
+            }
+            return null;
+        }
+
+        /**
+         * Replays the recorded calls, replacing the layer id and the graphics
+         */
+        synchronized void replay(LabelCache target, String layerId, Graphics2D graphics) {
+            for (int i = 0; i < methods.size(); i++) {
+                Object[] args = arguments.get(i);
+                if (args != null) {
+                    args = args.clone();
+                    for (int j = 0; j < args.length; j++) {
+                        if (args[j] instanceof String) {
+                            args[j] = layerId;
+                        } else if (args[j] instanceof Graphics2D) {
+                            args[j] = graphics;
+                        }
+                    }
+                }
+                try {
+                    methods.get(i).invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    LOGGER.log(Level.WARNING, "Failed to replay label cache call "
+                            + methods.get(i).getName(), e.getTargetException());
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+}
@@ -8,34 +8,79 @@ package org.geoserver.wms.map;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.image.RenderedImage;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
 
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.config.ConfigurationListenerAdapter;
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.GeoServerInfo;
 import org.geoserver.config.ServiceInfo;
 import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.TransactionEvent;
 import org.geoserver.wfs.TransactionListener;
 import org.geoserver.wfs.WFSException;
 import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.MapLayerInfo;
+import org.geoserver.wms.cache.MemoryBoundedCache;
+import org.geoserver.wms.cache.MemoryBoundedCache.EntryFilter;
+import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.CRS.AxisOrder;
 import org.geotools.util.CanonicalSet;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.type.Name;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Envelope;
 
-public class QuickTileCache implements TransactionListener, GeoServerLifecycleHandler {
+/**
+ * Caches the encoded tiles of the meta tiles built by {@link MetatileMapOutputFormat}.
+ * <p>
+ * The cache holds the encoded bytes of each tile, either on the heap or in direct buffers
+ * (off-heap) when the {@value #OFF_HEAP_KEY} system/context/environment variable is set to
+ * <code>true</code>. The total size of the cached tiles is capped by the {@value #CACHE_SIZE_KEY}
+ * variable, in megabytes ({@value #DEFAULT_CACHE_SIZE} by default, zero disables the cache),
+ * and the least recently used meta tiles are evicted when the cap is exceeded.
+ * </p>
+ * <p>
+ * WFS transactions only invalidate the meta tiles showing the modified feature type that
+ * intersect the bounds of the affected features, configuration changes and reloads wipe out the
+ * whole cache.
+ * </p>
+ */
+public class QuickTileCache implements TransactionListener, GeoServerLifecycleHandler,
+        QuickTileCacheMBean {
+
+    static final Logger LOGGER = Logging.getLogger(QuickTileCache.class);
+
+    /**
+     * Max size of the cached encoded tiles, in megabytes
+     */
+    public static final String CACHE_SIZE_KEY = "GEOSERVER_META_TILE_CACHE_SIZE";
+
+    /**
+     * When true, the encoded tiles are stored in direct buffers outside of the Java heap
+     */
+    public static final String OFF_HEAP_KEY = "GEOSERVER_META_TILE_CACHE_OFFHEAP";
+
+    static final int DEFAULT_CACHE_SIZE = 64;
+
     /**
      * Set of parameters that we can ignore, since they do not define a map, are either unrelated,
      * or define the tiling instead
@@ -59,30 +104,43 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
      */
     private CanonicalSet<MetaTileKey> metaTileKeys = CanonicalSet.newInstance(MetaTileKey.class);
 
-    private WeakHashMap tileCache = new WeakHashMap();
+    /**
+     * The cached meta tiles
+     */
+    private final MemoryBoundedCache<MetaTileKey, CacheElement> tileCache;
+
+    private final boolean offHeap;
 
     public QuickTileCache(GeoServer geoServer) {
+        this(MemoryBoundedCache.getConfiguredMaxMemory(CACHE_SIZE_KEY, DEFAULT_CACHE_SIZE),
+                Boolean.valueOf(GeoServerExtensions.getProperty(OFF_HEAP_KEY)));
         geoServer.addListener(new ConfigurationListenerAdapter() {
             public void handleGlobalChange(GeoServerInfo global, List<String> propertyNames,
                     List<Object> oldValues, List<Object> newValues) {
-                tileCache.clear();
+                clear();
             }
 
             public void handleServiceChange(ServiceInfo service, List<String> propertyNames,
                     List<Object> oldValues, List<Object> newValues) {
-                tileCache.clear();
+                clear();
             }
 
             public void reloaded() {
-                tileCache.clear();
+                clear();
             }
         });
     }
 
+    QuickTileCache(long maxMemory, boolean offHeap) {
+        this.tileCache = new MemoryBoundedCache<MetaTileKey, CacheElement>(maxMemory);
+        this.offHeap = offHeap;
+    }
+
     /**
      * For testing only
      */
     QuickTileCache() {
+        this(DEFAULT_CACHE_SIZE * MemoryBoundedCache.MB, false);
     }
 
     /**
@@ -112,6 +170,7 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         Point metaTileCoords = getMetaTileCoordinates(tileCoords);
         ReferencedEnvelope metaTileEnvelope = getMetaTileEnvelope(bbox, tileCoords, metaTileCoords);
         MetaTileKey key = new MetaTileKey(mapKey, metaTileCoords, metaTileEnvelope);
+        key.featureTypes = getFeatureTypeNames(request);
 
         // since this will be used for thread synchronization, we have to make
         // sure two thread asking for the same meta tile will get the same key
@@ -119,6 +178,25 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         return metaTileKeys.unique(key);
     }
 
+    /**
+     * Collects the names of the feature types painted in the map, used to invalidate the tiles
+     * on WFS transactions
+     */
+    private Set<Name> getFeatureTypeNames(GetMapRequest request) {
+        List<MapLayerInfo> layers = request.getLayers();
+        if (layers == null || layers.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<Name> names = new HashSet<Name>();
+        for (MapLayerInfo layer : layers) {
+            FeatureTypeInfo featureType = layer.getFeature();
+            if (featureType != null) {
+                names.add(featureType.getQualifiedName());
+            }
+        }
+        return names;
+    }
+
     private ReferencedEnvelope getMetaTileEnvelope(ReferencedEnvelope bbox, Point tileCoords, Point metaTileCoords) {
         double minx = bbox.getMinX() + (metaTileCoords.x - tileCoords.x) * bbox.getWidth();
         double miny = bbox.getMinY() + (metaTileCoords.y - tileCoords.y) * bbox.getHeight();
@@ -281,6 +359,11 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
 
         ReferencedEnvelope metaTileEnvelope;
 
+        /**
+         * The feature types painted in the meta tile, not part of the key identity
+         */
+        Set<Name> featureTypes = Collections.emptySet();
+
         public MetaTileKey(MapKey mapKey, Point metaTileCoords, ReferencedEnvelope metaTileEnvelope) {
             super();
             this.mapKey = mapKey;
@@ -323,29 +406,45 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
             return 256;
         }
 
+        /**
+         * Returns true if the meta tile paints the specified feature type. A type name without
+         * namespace matches on the local name alone
+         */
+        boolean paints(QName typeName) {
+            String namespaceURI = typeName.getNamespaceURI();
+            for (Name name : featureTypes) {
+                if (name.getLocalPart().equals(typeName.getLocalPart())
+                        && (namespaceURI == null || namespaceURI.isEmpty() || namespaceURI
+                                .equals(name.getNamespaceURI()))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         public String toString() {
             return mapKey + "\nmtc:" + metaTileCoords.x + "," + metaTileCoords.y;
         }
     }
 
     /**
-     * Gathers a tile from the cache, if available
+     * Gathers the encoded tile from the cache, if available
      * 
      * @param key
      * @param request
-     * @return
+     * @return the encoded tile, or null if the meta tile is not cached
      */
-    public synchronized RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
-        CacheElement ce = (CacheElement) tileCache.get(key);
-
+    public byte[] getTile(MetaTileKey key, GetMapRequest request) {
+        CacheElement ce = tileCache.get(key);
         if (ce == null) {
             return null;
         }
 
-        return getTile(key, request, ce.tiles);
+        return ce.getTile(getTileIndex(key, request));
     }
 
     /**
+     * Returns the tile the request is looking for among the tiles of the meta tile
      * 
      * @param key
      * @param request
@@ -353,6 +452,18 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
      * @return
      */
     public RenderedImage getTile(MetaTileKey key, GetMapRequest request, RenderedImage[] tiles) {
+        return tiles[getTileIndex(key, request)];
+    }
+
+    /**
+     * Returns the position of the requested tile in the meta tile, see
+     * {@link MetatileMapOutputFormat} for the tile layout
+     * 
+     * @param key
+     * @param request
+     * @return
+     */
+    public int getTileIndex(MetaTileKey key, GetMapRequest request) {
         Envelope bbox = request.getBbox();
         if(CRS.getAxisOrder(request.getCrs()) == AxisOrder.NORTH_EAST) {
             bbox = new Envelope(bbox.getMinY(), bbox.getMaxY(), bbox.getMinX(), bbox.getMaxX());
@@ -360,46 +471,181 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         
         Point tileCoord = getTileOffsetsInMeta(bbox, key.getMetaTileEnvelope());
 
-        return tiles[tileCoord.x + (tileCoord.y * key.getMetaFactor())];
+        return tileCoord.x + (tileCoord.y * key.getMetaFactor());
     }
 
     /**
-     * Puts the specified tile array in the cache, and returns the tile the request was looking for
+     * Puts the encoded tiles of a meta tile in the cache, evicting the least recently used meta
+     * tiles if needed
      * 
      * @param key
-     * @param request
      * @param tiles
-     * @return
      */
-    public synchronized void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
-        tileCache.put(key, new CacheElement(tiles));
+    public void storeTiles(MetaTileKey key, byte[][] tiles) {
+        if (!isEnabled()) {
+            return;
+        }
+        CacheElement ce = new CacheElement(tiles, offHeap);
+        tileCache.put(key, ce, ce.memory);
     }
 
-    class CacheElement {
-        RenderedImage[] tiles;
+    /**
+     * Removes the meta tiles painting the specified feature type within the given area. A null
+     * type name removes all meta tiles, a null area all the meta tiles painting the type
+     */
+    void invalidate(final QName typeName, final ReferencedEnvelope area) {
+        if (typeName == null) {
+            clear();
+            return;
+        }
+        tileCache.invalidate(new EntryFilter<MetaTileKey, CacheElement>() {
+            public boolean accept(MetaTileKey key, CacheElement value) {
+                return key.paints(typeName) && (area == null || intersects(key, area));
+            }
+        });
+    }
 
-        public CacheElement(RenderedImage[] tiles) {
-            this.tiles = tiles;
+    /**
+     * Checks if the area intersects the meta tile, or its surroundings. Symbols and labels can
+     * extend past the feature geometry, so the meta tile is grown by one tile on each side
+     */
+    private boolean intersects(MetaTileKey key, ReferencedEnvelope area) {
+        ReferencedEnvelope envelope = key.getMetaTileEnvelope();
+        CoordinateReferenceSystem crs = envelope.getCoordinateReferenceSystem();
+        ReferencedEnvelope target = area;
+        if (crs != null && area.getCoordinateReferenceSystem() != null
+                && !CRS.equalsIgnoreMetadata(crs, area.getCoordinateReferenceSystem())) {
+            try {
+                target = area.transform(crs, true);
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Could not reproject the modified area, "
+                        + "invalidating the meta tile", e);
+                return true;
+            }
+        }
+        Envelope grown = new Envelope(envelope);
+        grown.expandBy(envelope.getWidth() / key.getMetaFactor(), envelope.getHeight()
+                / key.getMetaFactor());
+        return grown.intersects(target);
+    }
+
+    /**
+     * The encoded tiles of a meta tile
+     */
+    static class CacheElement {
+        ByteBuffer[] tiles;
+
+        long memory;
+
+        public CacheElement(byte[][] encoded, boolean offHeap) {
+            tiles = new ByteBuffer[encoded.length];
+            for (byte[] tile : encoded) {
+                memory += tile.length;
+            }
+            if (offHeap) {
+                // a single direct buffer, sliced, so that we don't allocate lots of tiny ones
+                ByteBuffer buffer = ByteBuffer.allocateDirect((int) memory);
+                for (int i = 0; i < encoded.length; i++) {
+                    buffer.limit(buffer.position() + encoded[i].length);
+                    tiles[i] = buffer.slice();
+                    buffer.put(encoded[i]);
+                }
+            } else {
+                for (int i = 0; i < encoded.length; i++) {
+                    tiles[i] = ByteBuffer.wrap(encoded[i]);
+                }
+            }
+        }
+
+        byte[] getTile(int index) {
+            ByteBuffer tile = tiles[index];
+            if (tile.hasArray()) {
+                // never modified after creation, can be shared
+                return tile.array();
+            }
+            byte[] result = new byte[tile.capacity()];
+            // work on a duplicate, the position is not thread safe
+            tile.duplicate().get(result);
+            return result;
         }
     }
 
     public void dataStoreChange(TransactionEvent event) throws WFSException {
-        // if anything changes we just wipe out the cache. the mapkey
-        // contains a string with part of the map request where the layer
-        // name is included, but we would have to parse it and consider
-        // also that the namespace may be missing in the getmap request
+        QName typeName = event.getLayerName();
+        ReferencedEnvelope area = null;
+        SimpleFeatureCollection affected = event.getAffectedFeatures();
+        if (affected != null) {
+            try {
+                area = affected.getBounds();
+                if (area != null && area.isNull()) {
+                    // nothing painted there, nothing to invalidate
+                    return;
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Could not compute the bounds of the affected features", e);
+                area = null;
+            }
+        }
+        invalidate(typeName, area);
+    }
+
+    public boolean isEnabled() {
+        return getMaxMemory() > 0;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public long getMaxMemory() {
+        return tileCache.getMaxMemory();
+    }
+
+    public void setMaxMemory(long maxMemory) {
+        tileCache.setMaxMemory(maxMemory);
+    }
+
+    public long getMemory() {
+        return tileCache.getMemory();
+    }
+
+    public int getSize() {
+        return tileCache.getSize();
+    }
+
+    public long getHitCount() {
+        return tileCache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return tileCache.getMissCount();
+    }
+
+    public double getHitRate() {
+        return tileCache.getHitRate();
+    }
+
+    public long getEvictionCount() {
+        return tileCache.getEvictionCount();
+    }
+
+    public long getInvalidationCount() {
+        return tileCache.getInvalidationCount();
+    }
+
+    public void clear() {
         tileCache.clear();
     }
 
     @Override
     public void onReset() {
         // data might have changed in the meantime
-        tileCache.clear();        
+        clear();
     }
 
     @Override
     public void onDispose() {
-        tileCache.clear();
+        clear();
     }
 
     public void beforeReload() {
@@ -408,6 +654,6 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
 
     @Override
     public void onReload() {
-        tileCache.clear();
+        clear();
     }
 }
@@ -0,0 +1,33 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+/**
+ * JMX view of the {@link QuickTileCache}
+ */
+public interface QuickTileCacheMBean {
+
+    boolean isOffHeap();
+
+    long getMaxMemory();
+
+    void setMaxMemory(long maxMemory);
+
+    long getMemory();
+
+    int getSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getEvictionCount();
+
+    long getInvalidationCount();
+
+    void clear();
+}
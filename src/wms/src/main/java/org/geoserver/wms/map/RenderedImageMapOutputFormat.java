@@ -52,6 +52,8 @@ import org.geoserver.platform.resource.Resource.Type;
 import org.geoserver.wms.DefaultWebMapService;
 import org.geoserver.wms.GetMapOutputFormat;
 import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.GetMapTimings;
+import org.geoserver.wms.GetMapTimings.Phase;
 import org.geoserver.wms.MapProducerCapabilities;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSInfo;
@@ -300,6 +302,7 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
                 potentialPalette = pe.getPalette();
         }
         final IndexColorModel palette = potentialPalette;
+        final int parallelism = getLayerParallelism(mapContent, palette);
 
         // before even preparing the rendering surface, check it's not too big,
         // if so, throw a service exception
@@ -307,6 +310,11 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         // ... base image memory
         long memory = getDrawingSurfaceMemoryUse(paintArea.width, paintArea.height, palette,
                 transparent);
+        // ... the per layer surfaces used by parallel rendering
+        if (parallelism > 1) {
+            memory += parallelism * ImageUtils.getDrawingSurfaceMemoryUse(paintArea.width,
+                    paintArea.height, null, true);
+        }
         // .. use a fake streaming renderer to evaluate the extra back buffers used when rendering
         // multiple featureTypeStyles against the same layer
         StreamingRenderer testRenderer = new StreamingRenderer();
@@ -353,9 +361,16 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         // we use the alpha channel if the image is transparent or if the meta tiler
         // is enabled, since apparently the Crop operation inside the meta-tiler
         // generates striped images in that case (see GEOS-
-        boolean useAlpha = transparent || MetatileMapOutputFormat.isRequestTiled(request, this);
+        boolean metaTiled = MetatileMapOutputFormat.isRequestTiled(request, this);
+        boolean useAlpha = transparent || metaTiled;
         final RenderedImage preparedImage = prepareImage(paintArea.width, paintArea.height,
                 palette, useAlpha);
+        if (tiled) {
+            // tiles get sliced out of the meta tile by the caller, the surface cannot be
+            // recycled. In all other cases (including the on the fly meta tiler, which caches
+            // encoded tiles) it goes back to the pool once encoded, via RasterCleaner
+            DrawingSurfacePool.getInstance().detach(preparedImage);
+        }
         final Map<RenderingHints.Key, Object> hintsMap = new HashMap<RenderingHints.Key, Object>();
 
         final Graphics2D graphic = getGraphics(transparent, bgColor, preparedImage, hintsMap);
@@ -409,7 +424,12 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         graphic.setRenderingHints(hintsMap);
 
         RenderingHints hints = new RenderingHints(hintsMap);
-        StreamingRenderer renderer = new StreamingRenderer();
+        StreamingRenderer renderer;
+        if (parallelism > 1) {
+            renderer = new ParallelLayerRenderer(parallelism);
+        } else {
+            renderer = new StreamingRenderer();
+        }
         renderer .setThreadPool(DefaultWebMapService.getRenderingPool());
         renderer.setMapContent(mapContent);
         renderer.setJava2DHints(hints);
@@ -488,6 +508,11 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
             }
         }
         
+        final GetMapTimings timings = GetMapTimings.current();
+        if (timings != null && !(renderer instanceof ParallelLayerRenderer)) {
+            // labels are painted at the end of the rendering, account them separately
+            rendererParams.put(StreamingRenderer.LABEL_CACHE_KEY, new TimedLabelCache(timings));
+        }
         renderer.setRendererHints(rendererParams);
 
         // if abort already requested bail out
@@ -508,16 +533,7 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         
         onBeforeRender(renderer);
         
-        int localMaxRenderingTime = 0;
-        Object timeoutOption = request.getFormatOptions().get("timeout");
-        if (timeoutOption != null) {
-            try {
-                localMaxRenderingTime = Integer.parseInt(timeoutOption.toString());
-            } catch (NumberFormatException e) {
-                LOGGER.log(Level.WARNING,"Could not parse format_option \"timeout\": "+timeoutOption, e);
-            }
-        }
-        int maxRenderingTime = getMaxRenderingTime(localMaxRenderingTime);
+        int maxRenderingTime = getMaxRenderingTime(getLocalMaxRenderingTime(request));
         
         ServiceException serviceException = null;
         boolean saveMap = (request.getRawKvp() != null && WMSServiceExceptionHandler
@@ -536,8 +552,21 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         timeout.start();
         try {
             // finally render the image;
-            renderer.paint(graphic, paintArea, mapContent.getRenderingArea(),
-                    mapContent.getRenderingTransform());
+            long renderStart = System.nanoTime();
+            try {
+                if (renderer instanceof ParallelLayerRenderer) {
+                    ((ParallelLayerRenderer) renderer).paintLayers(graphic, paintArea,
+                            mapContent.getRenderingArea(), mapContent.getRenderingTransform());
+                } else {
+                    renderer.paint(graphic, paintArea, mapContent.getRenderingArea(),
+                            mapContent.getRenderingTransform());
+                }
+            } finally {
+                // record it also for failed and timed out renderings
+                if (timings != null) {
+                    timings.record(Phase.RENDER, renderStart);
+                }
+            }
 
             // apply watermarking
             if (layout != null) {
@@ -613,6 +642,14 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
      * @return
      */
     public int getMaxRenderingTime(int localMaxRenderingTime) {
+        return getMaxRenderingTime(wms, localMaxRenderingTime);
+    }
+
+    /**
+     * Timeout on the smallest nonzero value of the WMS timeout and the local one, shared with the
+     * other output formats that render through a {@link StreamingRenderer}
+     */
+    public static int getMaxRenderingTime(WMS wms, int localMaxRenderingTime) {
         
         int maxRenderingTime = wms.getMaxRenderingTime() * 1000;
         
@@ -625,6 +662,53 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         return maxRenderingTime;
     }
 
+    /**
+     * Returns the "timeout" format option of the request, or zero if missing or invalid
+     */
+    public static int getLocalMaxRenderingTime(GetMapRequest request) {
+        Object timeoutOption = request.getFormatOptions().get("timeout");
+        if (timeoutOption != null) {
+            try {
+                return Integer.parseInt(timeoutOption.toString());
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.WARNING,"Could not parse format_option \"timeout\": "+timeoutOption, e);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns how many layers of the map will be rendered concurrently, as the minimum between
+     * {@link #getMaxParallelLayers()}, the number of layers and the optional "parallel" format
+     * option. Falls back to 1 (serial rendering) for paletted output, which is painted directly
+     * in the target color model, and for styles using composites other than source-over.
+     */
+    protected int getLayerParallelism(WMSMapContent mapContent, IndexColorModel palette) {
+        List<Layer> layers = mapContent.layers();
+        int parallelism = Math.min(getMaxParallelLayers(), layers.size());
+        Object parallelOption = mapContent.getRequest().getFormatOptions().get("parallel");
+        if (parallelOption != null) {
+            try {
+                parallelism = Math.min(parallelism, Integer.parseInt(parallelOption.toString()));
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.WARNING, "Could not parse format_option \"parallel\": "
+                        + parallelOption, e);
+            }
+        }
+        if (parallelism > 1
+                && (palette != null || !ParallelLayerRenderer.isParallelizable(layers))) {
+            return 1;
+        }
+        return Math.max(1, parallelism);
+    }
+
+    /**
+     * Returns the max number of layers a single request can render concurrently
+     */
+    protected int getMaxParallelLayers() {
+        return DefaultWebMapService.getMaxParallelLayers();
+    }
+
     /**
      * Allows subclasses to customize the renderer before the paint method gets invoked
      * 
@@ -751,8 +835,8 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
      */
     protected RenderedImage prepareImage(int width, int height, IndexColorModel palette,
             boolean transparent) {
-        return ImageUtils.createImage(width, height, isPaletteSupported() ? palette : null,
-                transparent && isTransparencySupported());
+        return DrawingSurfacePool.getInstance().borrow(width, height,
+                isPaletteSupported() ? palette : null, transparent && isTransparencySupported());
     }
 
     /**
@@ -21,6 +21,8 @@ import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.GetMapOutputFormat;
 import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.GetMapTimings;
+import org.geoserver.wms.GetMapTimings.Phase;
 import org.geoserver.wms.MapProducerCapabilities;
 import org.geoserver.wms.RasterCleaner;
 import org.geoserver.wms.WMS;
@@ -119,10 +121,15 @@ public abstract class RenderedImageMapResponse extends AbstractMapResponse {
             final RenderedImage image = imageMap.getImage();
             final List<GridCoverage2D> renderedCoverages = imageMap.getRenderedCoverages();
             final WMSMapContent mapContent = imageMap.getMapContext();
+            GetMapTimings timings = GetMapTimings.current();
+            long start = System.nanoTime();
             try {
                 formatImageOutputStream(image, output, mapContent);
                 output.flush();
             } finally {
+                if (timings != null) {
+                    timings.record(Phase.ENCODE, start);
+                }
                 // let go of the coverages created for rendering
                 for (GridCoverage2D coverage : renderedCoverages) {
                     RasterCleaner.addCoverage(coverage);
@@ -0,0 +1,35 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+import org.geoserver.wms.GetMapTimings;
+import org.geoserver.wms.GetMapTimings.Phase;
+import org.geotools.renderer.label.LabelCacheImpl;
+
+/**
+ * Label cache recording the time spent resolving the label conflicts and painting the labels,
+ * which happens once all layers have been rendered
+ */
+class TimedLabelCache extends LabelCacheImpl {
+
+    final GetMapTimings timings;
+
+    public TimedLabelCache(GetMapTimings timings) {
+        this.timings = timings;
+    }
+
+    @Override
+    public void end(Graphics2D graphics, Rectangle displayArea) {
+        long start = System.nanoTime();
+        try {
+            super.end(graphics, displayArea);
+        } finally {
+            timings.record(Phase.LABELS, start);
+        }
+    }
+}
@@ -0,0 +1,493 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import ar.com.hjg.pngj.FilterType;
+
+/**
+ * A PNG encoder that splits the image in horizontal strips and filters and deflates them
+ * concurrently, in the same spirit as pigz, writing the results out in order as a single zlib
+ * stream.
+ * <p>
+ * Each strip is compressed independently, flushed to a byte boundary with
+ * {@link Deflater#SYNC_FLUSH} (the last one is finished instead), so that the compressed blocks
+ * can be concatenated, while the stream checksum is obtained by combining the Adler32 of each
+ * strip. Not sharing the dictionary between strips costs a bit of compression at the strip
+ * boundaries, which is negligible with strips of a few hundred kilobytes.
+ * </p>
+ * <p>
+ * Supports paletted images up to 8 bits per pixel, and 8 bits gray, gray/alpha, RGB and RGBA
+ * images (non pre-multiplied), see {@link #isSupported(RenderedImage)}. Only the NONE and SUB
+ * scanline filters are supported, which are the ones {@link PNGJWriter} chooses among.
+ * </p>
+ */
+public class BlockPNGEncoder {
+
+    static final byte[] SIGNATURE = new byte[] { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+    static final byte[] IHDR = new byte[] { 'I', 'H', 'D', 'R' };
+
+    static final byte[] PLTE = new byte[] { 'P', 'L', 'T', 'E' };
+
+    static final byte[] TRNS = new byte[] { 't', 'R', 'N', 'S' };
+
+    static final byte[] IDAT = new byte[] { 'I', 'D', 'A', 'T' };
+
+    static final byte[] IEND = new byte[] { 'I', 'E', 'N', 'D' };
+
+    static final int COLOR_GRAY = 0;
+
+    static final int COLOR_RGB = 2;
+
+    static final int COLOR_PALETTE = 3;
+
+    static final int COLOR_GRAY_ALPHA = 4;
+
+    static final int COLOR_RGBA = 6;
+
+    /**
+     * Default uncompressed size of a strip, pigz uses 128KB blocks, PNG rows are usually long
+     * enough to make a bit more a better fit
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    static final ThreadLocal<Deflater> DEFLATERS = new ThreadLocal<Deflater>();
+
+    final ExecutorService executor;
+
+    final int blockSize;
+
+    /**
+     * @param executor The executor compressing the strips
+     * @param blockSize The target uncompressed size of each strip, in bytes
+     */
+    public BlockPNGEncoder(ExecutorService executor, int blockSize) {
+        this.executor = executor;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns true if the encoder can handle the image layout
+     */
+    public static boolean isSupported(RenderedImage image) {
+        return getColorType(image) >= 0;
+    }
+
+    /**
+     * Returns the PNG color type for the image, or -1 if the image is not supported
+     */
+    static int getColorType(RenderedImage image) {
+        ColorModel cm = image.getColorModel();
+        SampleModel sm = image.getSampleModel();
+        if (cm == null || sm == null || cm.isAlphaPremultiplied()) {
+            return -1;
+        }
+        if (cm instanceof IndexColorModel) {
+            if (sm.getNumBands() == 1 && cm.getPixelSize() <= 8
+                    && ((IndexColorModel) cm).getMapSize() <= 256) {
+                return COLOR_PALETTE;
+            }
+            return -1;
+        }
+        if (!(cm instanceof ComponentColorModel || cm instanceof DirectColorModel)) {
+            return -1;
+        }
+        int bands = sm.getNumBands();
+        for (int i = 0; i < bands; i++) {
+            if (cm.getComponentSize(i) != 8) {
+                return -1;
+            }
+        }
+        int space = cm.getColorSpace().getType();
+        if (space == ColorSpace.TYPE_GRAY && bands == 1) {
+            return COLOR_GRAY;
+        } else if (space == ColorSpace.TYPE_GRAY && bands == 2 && cm.hasAlpha()) {
+            return COLOR_GRAY_ALPHA;
+        } else if (space == ColorSpace.TYPE_RGB && bands == 3 && !cm.hasAlpha()) {
+            return COLOR_RGB;
+        } else if (space == ColorSpace.TYPE_RGB && bands == 4 && cm.hasAlpha()) {
+            return COLOR_RGBA;
+        }
+        return -1;
+    }
+
+    /**
+     * Encodes the image as a PNG
+     *
+     * @param image The image, must be {@link #isSupported(RenderedImage) supported}
+     * @param out The destination stream, will not be closed
+     * @param compressionLevel The deflate level, between 0 and 9
+     * @param filterType The scanline filter, either NONE or SUB
+     */
+    public void encode(RenderedImage image, OutputStream out, int compressionLevel,
+            FilterType filterType) throws IOException {
+        final int colorType = getColorType(image);
+        if (colorType < 0) {
+            throw new IllegalArgumentException("Unsupported image layout, color model "
+                    + image.getColorModel() + ", sample model " + image.getSampleModel());
+        }
+        final Layout layout = new Layout(image, colorType, filterType == FilterType.FILTER_SUB);
+        final int level = Math.max(0, Math.min(9, compressionLevel));
+
+        out.write(SIGNATURE);
+        writeHeader(out, layout);
+        if (colorType == COLOR_PALETTE) {
+            writePalette(out, (IndexColorModel) image.getColorModel());
+        }
+
+        // split in strips and compress them in parallel
+        final int height = image.getHeight();
+        int rowsPerStrip = Math.max(1, blockSize / layout.rowBytes);
+        List<Future<Block>> blocks = new ArrayList<Future<Block>>();
+        for (int y = 0; y < height; y += rowsPerStrip) {
+            final int startRow = y;
+            final int rows = Math.min(rowsPerStrip, height - y);
+            final boolean last = y + rows >= height;
+            blocks.add(executor.submit(new Callable<Block>() {
+
+                @Override
+                public Block call() throws Exception {
+                    return compress(layout, startRow, rows, level, last);
+                }
+            }));
+        }
+
+        // and write them out in order as a single zlib stream
+        long adler = 1;
+        boolean first = true;
+        try {
+            for (Future<Block> future : blocks) {
+                Block block = future.get();
+                ByteArrayOutputStream data = block.data;
+                if (first) {
+                    // zlib header, deflate with a 32k window, no preset dictionary
+                    data = new ByteArrayOutputStream(block.data.size() + 2);
+                    data.write(0x78);
+                    data.write(0x9C);
+                    block.data.writeTo(data);
+                    first = false;
+                }
+                adler = combineAdler32(adler, block.adler, block.length);
+                if (block.last) {
+                    data.write((int) (adler >>> 24) & 0xFF);
+                    data.write((int) (adler >>> 16) & 0xFF);
+                    data.write((int) (adler >>> 8) & 0xFF);
+                    data.write((int) adler & 0xFF);
+                }
+                writeChunk(out, IDAT, data);
+            }
+        } catch (InterruptedException e) {
+            cancel(blocks);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding the PNG");
+        } catch (ExecutionException e) {
+            cancel(blocks);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to encode the PNG", cause);
+        }
+
+        writeChunk(out, IEND, new ByteArrayOutputStream(0));
+    }
+
+    void cancel(List<Future<Block>> blocks) {
+        for (Future<Block> block : blocks) {
+            block.cancel(false);
+        }
+    }
+
+    /**
+     * Filters and compresses a strip of rows
+     */
+    Block compress(Layout layout, int startRow, int rows, int level, boolean last) {
+        Raster raster = layout.getRows(startRow, rows);
+        int rowBytes = layout.rowBytes;
+        byte[] raw = new byte[rows * rowBytes];
+        byte[] row = new byte[rowBytes - 1];
+        int[] samples = null;
+        for (int r = 0; r < rows; r++) {
+            samples = layout.readRow(raster, startRow + r, row, samples);
+            int offset = r * rowBytes;
+            if (layout.subFilter) {
+                raw[offset] = 1;
+                int bpp = layout.bytesPerPixel;
+                System.arraycopy(row, 0, raw, offset + 1, Math.min(bpp, row.length));
+                for (int i = bpp; i < row.length; i++) {
+                    raw[offset + 1 + i] = (byte) (row[i] - row[i - bpp]);
+                }
+            } else {
+                raw[offset] = 0;
+                System.arraycopy(row, 0, raw, offset + 1, row.length);
+            }
+        }
+
+        Adler32 adler = new Adler32();
+        adler.update(raw, 0, raw.length);
+
+        Deflater deflater = DEFLATERS.get();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+            DEFLATERS.set(deflater);
+        } else {
+            deflater.reset();
+            deflater.setLevel(level);
+        }
+        ByteArrayOutputStream data = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        byte[] buffer = new byte[64 * 1024];
+        deflater.setInput(raw, 0, raw.length);
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                data.write(buffer, 0, n);
+            }
+        } else {
+            int n;
+            do {
+                n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                data.write(buffer, 0, n);
+            } while (n == buffer.length);
+        }
+
+        return new Block(data, adler.getValue(), raw.length, last);
+    }
+
+    void writeHeader(OutputStream out, Layout layout) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        writeInt(header, layout.width);
+        writeInt(header, layout.height);
+        header.write(layout.bitDepth);
+        header.write(layout.colorType);
+        header.write(0); // deflate
+        header.write(0); // adaptive filtering
+        header.write(0); // no interlace
+        writeChunk(out, IHDR, header);
+    }
+
+    void writePalette(OutputStream out, IndexColorModel icm) throws IOException {
+        int size = icm.getMapSize();
+        ByteArrayOutputStream palette = new ByteArrayOutputStream(size * 3);
+        int lastTranslucent = -1;
+        for (int i = 0; i < size; i++) {
+            palette.write(icm.getRed(i));
+            palette.write(icm.getGreen(i));
+            palette.write(icm.getBlue(i));
+            if (icm.getAlpha(i) != 255) {
+                lastTranslucent = i;
+            }
+        }
+        writeChunk(out, PLTE, palette);
+
+        if (lastTranslucent >= 0) {
+            ByteArrayOutputStream alpha = new ByteArrayOutputStream(lastTranslucent + 1);
+            for (int i = 0; i <= lastTranslucent; i++) {
+                alpha.write(icm.getAlpha(i));
+            }
+            writeChunk(out, TRNS, alpha);
+        }
+    }
+
+    static void writeChunk(OutputStream out, byte[] type, ByteArrayOutputStream data)
+            throws IOException {
+        byte[] bytes = data.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(bytes);
+
+        writeInt(out, bytes.length);
+        out.write(type);
+        out.write(bytes);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    static void writeInt(OutputStream out, int value) throws IOException {
+        out.write((value >>> 24) & 0xFF);
+        out.write((value >>> 16) & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+        out.write(value & 0xFF);
+    }
+
+    /**
+     * Combines the Adler32 of two consecutive byte sequences, as adler32_combine in zlib
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long rem = length2 % base;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xFFFF) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - rem;
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum2 >= (base << 1)) {
+            sum2 -= (base << 1);
+        }
+        if (sum2 >= base) {
+            sum2 -= base;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    /**
+     * A compressed strip
+     */
+    static class Block {
+        final ByteArrayOutputStream data;
+
+        final long adler;
+
+        final int length;
+
+        final boolean last;
+
+        Block(ByteArrayOutputStream data, long adler, int length, boolean last) {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+            this.last = last;
+        }
+    }
+
+    /**
+     * The image structure, and how to turn its rows in PNG scanlines
+     */
+    static class Layout {
+
+        final RenderedImage image;
+
+        final int colorType;
+
+        final boolean subFilter;
+
+        final int width;
+
+        final int height;
+
+        final int bands;
+
+        final int bitDepth;
+
+        final int bytesPerPixel;
+
+        /**
+         * Bytes per scanline, filter type byte included
+         */
+        final int rowBytes;
+
+        /**
+         * Byte rasters with pixel interleaved bands can be copied straight from the data
+         * elements
+         */
+        final boolean interleavedBytes;
+
+        Layout(RenderedImage image, int colorType, boolean subFilter) {
+            this.image = image;
+            this.colorType = colorType;
+            this.subFilter = subFilter;
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            SampleModel sm = image.getSampleModel();
+            this.bands = sm.getNumBands();
+            if (colorType == COLOR_PALETTE) {
+                int pixelSize = image.getColorModel().getPixelSize();
+                bitDepth = pixelSize <= 1 ? 1 : pixelSize <= 2 ? 2 : pixelSize <= 4 ? 4 : 8;
+                bytesPerPixel = 1;
+                rowBytes = 1 + (width * bitDepth + 7) / 8;
+            } else {
+                bitDepth = 8;
+                bytesPerPixel = bands;
+                rowBytes = 1 + width * bands;
+            }
+            this.interleavedBytes = colorType != COLOR_PALETTE
+                    && sm instanceof PixelInterleavedSampleModel
+                    && sm.getDataType() == DataBuffer.TYPE_BYTE;
+        }
+
+        /**
+         * Returns a raster containing the requested rows
+         */
+        Raster getRows(int startRow, int rows) {
+            if (image instanceof BufferedImage) {
+                return ((BufferedImage) image).getRaster();
+            }
+            return image.getData(new Rectangle(image.getMinX(), image.getMinY() + startRow,
+                    width, rows));
+        }
+
+        /**
+         * Reads a row (in image space relative to the first row) into the PNG scanline layout,
+         * without the filter byte
+         */
+        int[] readRow(Raster raster, int row, byte[] target, int[] samples) {
+            int x = image.getMinX();
+            int y = image.getMinY() + row;
+            if (interleavedBytes) {
+                raster.getDataElements(x, y, width, 1, target);
+                return samples;
+            }
+
+            if (colorType == COLOR_PALETTE) {
+                samples = raster.getSamples(x, y, width, 1, 0, samples);
+                if (bitDepth == 8) {
+                    for (int i = 0; i < width; i++) {
+                        target[i] = (byte) samples[i];
+                    }
+                } else {
+                    int pixelsPerByte = 8 / bitDepth;
+                    int mask = (1 << bitDepth) - 1;
+                    for (int i = 0; i < target.length; i++) {
+                        int value = 0;
+                        for (int j = 0; j < pixelsPerByte; j++) {
+                            int p = i * pixelsPerByte + j;
+                            int sample = p < width ? samples[p] & mask : 0;
+                            value = (value << bitDepth) | sample;
+                        }
+                        target[i] = (byte) value;
+                    }
+                }
+            } else {
+                samples = raster.getPixels(x, y, width, 1, samples);
+                for (int i = 0; i < target.length; i++) {
+                    target[i] = (byte) samples[i];
+                }
+            }
+            return samples;
+        }
+    }
+}
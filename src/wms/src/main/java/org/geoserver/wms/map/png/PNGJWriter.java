@@ -9,9 +9,12 @@ import it.geosolutions.imageio.plugins.png.PNGWriter;
 
 import java.awt.image.RenderedImage;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.WMSMapContent;
 import org.geotools.image.ImageWorker;
@@ -20,6 +23,7 @@ import org.geotools.styling.AbstractStyleVisitor;
 import org.geotools.styling.ColorMap;
 import org.geotools.styling.Style;
 import org.geotools.util.logging.Logging;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import ar.com.hjg.pngj.FilterType;
 
@@ -32,10 +36,42 @@ public class PNGJWriter {
 
     private static final Logger LOGGER = Logging.getLogger(PNGJWriter.class);
 
+    /**
+     * Number of threads compressing large images in parallel, 1 or less disables parallel
+     * encoding
+     */
+    public static final String PARALLEL_THREADS_KEY = "GEOSERVER_PNG_ENCODER_THREADS";
+
+    /**
+     * Minimum number of pixels for an image to be encoded in parallel
+     */
+    public static final String PARALLEL_MIN_PIXELS_KEY = "GEOSERVER_PNG_ENCODER_PARALLEL_MIN_PIXELS";
+
+    static final long DEFAULT_PARALLEL_MIN_PIXELS = 1024 * 1024;
+
+    static volatile BlockPNGEncoder PARALLEL_ENCODER;
+
+    static volatile long PARALLEL_MIN_PIXELS = -1;
+
     public RenderedImage writePNG(RenderedImage image, OutputStream outStream, float quality,
             WMSMapContent mapContent) {
         // what kind of scaline filtering are we going to use?
         FilterType filterType = getFilterType(mapContent);
+
+        // large images can be compressed on multiple cores
+        BlockPNGEncoder parallelEncoder = getParallelEncoder();
+        if (parallelEncoder != null
+                && (long) image.getWidth() * image.getHeight() >= PARALLEL_MIN_PIXELS
+                && BlockPNGEncoder.isSupported(image)) {
+            try {
+                parallelEncoder.encode(image, outStream, getCompressionLevel(quality), filterType);
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Failed to encode the PNG", e);
+                throw new ServiceException(e);
+            }
+            return image;
+        }
+
         // Creation of a new PNGWriter object
         PNGWriter writer = new PNGWriter();
         // Check if a Scanline is supported by the writer
@@ -57,6 +93,51 @@ public class PNGJWriter {
         return output;
     }
 
+    /**
+     * Maps the quality to a deflate level the same way the PNGJ based writer does
+     */
+    static int getCompressionLevel(float quality) {
+        return Math.max(0, Math.min(9, Math.round(9 * (1 - quality))));
+    }
+
+    /**
+     * Returns the shared parallel encoder, or null if parallel encoding is disabled
+     */
+    static BlockPNGEncoder getParallelEncoder() {
+        if (PARALLEL_MIN_PIXELS < 0) {
+            synchronized (PNGJWriter.class) {
+                if (PARALLEL_MIN_PIXELS < 0) {
+                    int threads = getProperty(PARALLEL_THREADS_KEY, 1);
+                    if (threads > 1) {
+                        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                                new DaemonThreadFactory());
+                        PARALLEL_ENCODER = new BlockPNGEncoder(executor,
+                                BlockPNGEncoder.DEFAULT_BLOCK_SIZE);
+                    }
+                    PARALLEL_MIN_PIXELS = getProperty(PARALLEL_MIN_PIXELS_KEY,
+                            DEFAULT_PARALLEL_MIN_PIXELS);
+                }
+            }
+        }
+        return PARALLEL_ENCODER;
+    }
+
+    static int getProperty(String key, int defaultValue) {
+        return (int) getProperty(key, (long) defaultValue);
+    }
+
+    static long getProperty(String key, long defaultValue) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + key + ": " + value + ", using default");
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * SUB filtering is useful for raster images with "high" variation, otherwise we go for NONE,
      * empirically it provides better compression at lower effort
@@ -83,6 +164,17 @@ public class PNGJWriter {
         return FilterType.FILTER_NONE;
     }
 
+    /**
+     * Daemon threads for the parallel encoder, they should not keep the JVM alive
+     */
+    static class DaemonThreadFactory extends CustomizableThreadFactory {
+
+        DaemonThreadFactory() {
+            super("PNGEncoder-");
+            setDaemon(true);
+        }
+    }
+
     /**
      * Check if the style contains a "high change" raster symbolizer, that is, one that generates a
      * continuous set of values for which SUB filtering provides better results
@@ -0,0 +1,131 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.utfgrid;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geotools.filter.function.InternalVolatileFunction;
+import org.opengis.feature.Feature;
+import org.opengis.feature.Property;
+import org.opengis.feature.type.GeometryDescriptor;
+
+/**
+ * Paints each feature with a different color, the RGB value being the index of the feature in
+ * the grid entries. Zero is never used, and marks the pixels not covered by any feature.
+ * <p>
+ * The function is stateful, it's meant to be used for a single rendering, and volatile, so that
+ * the renderer does not cache the symbolizers using it.
+ * </p>
+ */
+public class UTFGridColorFunction extends InternalVolatileFunction {
+
+    /**
+     * The maximum number of features that can be encoded in a RGB value
+     */
+    static final int MAX_ENTRIES = 0xFFFFFF;
+
+    final Set<String> attributes;
+
+    final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+    /**
+     * The grid entries, position 0 is the empty one
+     */
+    final List<UTFGridEntry> entries = new ArrayList<UTFGridEntry>();
+
+    /**
+     * Builds a new function
+     *
+     * @param attributes The attributes to be collected in the grid data, or null to collect all
+     *        the non geometric ones
+     */
+    public UTFGridColorFunction(Set<String> attributes) {
+        super("utfGridColor");
+        this.attributes = attributes;
+        entries.add(null);
+    }
+
+    @Override
+    public Object evaluate(Object object) {
+        if (!(object instanceof Feature)) {
+            return Color.BLACK;
+        }
+        Feature feature = (Feature) object;
+        String id = feature.getIdentifier().getID();
+        synchronized (this) {
+            Integer index = indexes.get(id);
+            if (index == null) {
+                index = entries.size();
+                if (index > MAX_ENTRIES) {
+                    // no more colors available, the feature won't be part of the grid
+                    return Color.BLACK;
+                }
+                indexes.put(id, index);
+                entries.add(new UTFGridEntry(id, collectAttributes(feature)));
+            }
+            return new Color(index);
+        }
+    }
+
+    Map<String, Object> collectAttributes(Feature feature) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        for (Property property : feature.getProperties()) {
+            if (property.getDescriptor() instanceof GeometryDescriptor) {
+                continue;
+            }
+            String name = property.getName().getLocalPart();
+            if (attributes == null || attributes.contains(name)) {
+                result.put(name, property.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of entries, including the empty one
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the entry associated to the pixel RGB value, or null if the pixel is empty
+     */
+    public synchronized UTFGridEntry getEntry(int rgb) {
+        int index = rgb & 0xFFFFFF;
+        return index < entries.size() ? entries.get(index) : null;
+    }
+
+    /**
+     * A feature painted in the grid
+     */
+    public static class UTFGridEntry {
+
+        final String key;
+
+        final Map<String, Object> attributes;
+
+        UTFGridEntry(String key, Map<String, Object> attributes) {
+            this.key = key;
+            this.attributes = Collections.unmodifiableMap(attributes);
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+    }
+
+}
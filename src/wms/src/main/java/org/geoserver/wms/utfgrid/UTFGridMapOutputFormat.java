@@ -0,0 +1,351 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.utfgrid;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.json.util.JSONBuilder;
+
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wms.DefaultWebMapService;
+import org.geoserver.wms.GetMapOutputFormat;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.MapProducerCapabilities;
+import org.geoserver.wms.WMS;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.map.MaxErrorEnforcer;
+import org.geoserver.wms.map.RawMap;
+import org.geoserver.wms.map.RenderExceptionStrategy;
+import org.geoserver.wms.map.RenderedImageMapOutputFormat;
+import org.geoserver.wms.map.RenderingTimeoutEnforcer;
+import org.geoserver.wms.utfgrid.UTFGridColorFunction.UTFGridEntry;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.Style;
+import org.geotools.styling.visitor.RescaleStyleVisitor;
+import org.geotools.util.Converters;
+
+/**
+ * Produces a <a href="https://github.com/mapbox/utfgrid-spec">UTFGrid</a> out of the vector
+ * layers in the map. The features are painted with their style, simplified so that each feature
+ * is painted with a solid color identifying it, and the resulting image is turned into a grid of
+ * characters, along with the feature ids and attributes.
+ * <p>
+ * The grid resolution, in pixels, can be set with the <code>utfresolution</code> format option
+ * (defaults to 4), the attributes included in the data can be restricted with the
+ * <code>utfattributes</code> one, a comma separated list of attribute names.
+ * </p>
+ */
+public class UTFGridMapOutputFormat implements GetMapOutputFormat {
+
+    public static final String MIME_TYPE = "application/json;type=utfgrid";
+
+    public static final String RESOLUTION_OPTION = "utfresolution";
+
+    public static final String ATTRIBUTES_OPTION = "utfattributes";
+
+    static final int DEFAULT_RESOLUTION = 4;
+
+    static final int KB = 1024;
+
+    static final Set<String> OUTPUT_FORMATS = new HashSet<String>(Arrays.asList(MIME_TYPE,
+            "utfgrid"));
+
+    /**
+     * Tiled requests are supported, the grid does not support multiple values, palettes or
+     * transparency
+     */
+    static final MapProducerCapabilities CAPABILITIES = new MapProducerCapabilities(true, false,
+            false, false, null);
+
+    final WMS wms;
+
+    public UTFGridMapOutputFormat(WMS wms) {
+        this.wms = wms;
+    }
+
+    public Set<String> getOutputFormatNames() {
+        return OUTPUT_FORMATS;
+    }
+
+    public String getMimeType() {
+        return MIME_TYPE;
+    }
+
+    public MapProducerCapabilities getCapabilities(String format) {
+        return CAPABILITIES;
+    }
+
+    public RawMap produceMap(WMSMapContent mapContent) throws ServiceException, IOException {
+        GetMapRequest request = mapContent.getRequest();
+        int resolution = getResolution(request);
+        UTFGridColorFunction colorFunction = new UTFGridColorFunction(getAttributes(request));
+
+        int width = (int) Math.ceil(mapContent.getMapWidth() / (double) resolution);
+        int height = (int) Math.ceil(mapContent.getMapHeight() / (double) resolution);
+        MapContent gridContent = getGridContent(mapContent, resolution, colorFunction);
+        BufferedImage image;
+        try {
+            checkMemory(gridContent, width, height);
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            render(mapContent, gridContent, image);
+        } finally {
+            gridContent.dispose();
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(bos, "UTF-8");
+        encode(image, colorFunction, writer);
+        writer.flush();
+
+        return new RawMap(mapContent, bos, MIME_TYPE);
+    }
+
+    int getResolution(GetMapRequest request) {
+        Object value = request.getFormatOptions().get(RESOLUTION_OPTION);
+        if (value == null) {
+            return DEFAULT_RESOLUTION;
+        }
+        Integer resolution = Converters.convert(value, Integer.class);
+        if (resolution == null || resolution < 1) {
+            throw new ServiceException("Invalid " + RESOLUTION_OPTION + " format option: " + value
+                    + ", it should be a positive integer", ServiceException.INVALID_PARAMETER_VALUE,
+                    "format_options");
+        }
+        return resolution;
+    }
+
+    Set<String> getAttributes(GetMapRequest request) {
+        Object value = request.getFormatOptions().get(ATTRIBUTES_OPTION);
+        if (value == null) {
+            return null;
+        }
+        Set<String> attributes = new LinkedHashSet<String>();
+        for (String name : value.toString().split(",")) {
+            if (!name.trim().isEmpty()) {
+                attributes.add(name.trim());
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Builds a map content with the vector layers of the map, styled to paint the features with
+     * their identifying colors at the grid resolution
+     */
+    MapContent getGridContent(WMSMapContent mapContent, int resolution,
+            UTFGridColorFunction colorFunction) {
+        MapContent gridContent = new MapContent();
+        gridContent.getViewport().setBounds(mapContent.getRenderingArea());
+        for (Layer layer : mapContent.layers()) {
+            if (!(layer instanceof FeatureLayer) || layer.getStyle() == null) {
+                continue;
+            }
+            FeatureLayer featureLayer = (FeatureLayer) layer;
+            FeatureLayer gridLayer = new FeatureLayer(featureLayer.getFeatureSource(),
+                    getGridStyle(layer.getStyle(), resolution, colorFunction));
+            gridLayer.setQuery(featureLayer.getQuery());
+            gridContent.addLayer(gridLayer);
+        }
+        return gridContent;
+    }
+
+    /**
+     * Checks the grid image and the renderer back buffers fit in the max request memory, same as
+     * the image based output formats
+     */
+    void checkMemory(MapContent gridContent, int width, int height) {
+        long maxMemory = wms.getMaxRequestMemory() * KB;
+        if (maxMemory <= 0) {
+            return;
+        }
+        // the grid is an int RGB image
+        long memory = width * (long) height * 4;
+        StreamingRenderer testRenderer = new StreamingRenderer();
+        testRenderer.setMapContent(gridContent);
+        memory += testRenderer.getMaxBackBufferMemory(width, height);
+        if (memory > maxMemory) {
+            throw new ServiceException("Rendering request would use " + memory / KB
+                    + "KB, whilst the maximum memory allowed is " + maxMemory / KB + "KB");
+        }
+    }
+
+    /**
+     * Paints the grid content in the image, enforcing the WMS rendering time and errors limits
+     */
+    void render(WMSMapContent mapContent, MapContent gridContent, BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        try {
+            // no antialiasing, the colors must not be blended
+            Map<RenderingHints.Key, Object> hintsMap = new HashMap<RenderingHints.Key, Object>();
+            hintsMap.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            hintsMap.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+            graphics.setRenderingHints(hintsMap);
+
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setThreadPool(DefaultWebMapService.getRenderingPool());
+            renderer.setMapContent(gridContent);
+            renderer.setJava2DHints(new RenderingHints(hintsMap));
+            Map<Object, Object> rendererParams = new HashMap<Object, Object>();
+            rendererParams.put("optimizedDataLoadingEnabled", Boolean.TRUE);
+            rendererParams.put("maxFiltersToSendToDatastore",
+                    DefaultWebMapService.getMaxFilterRules());
+            rendererParams.put(StreamingRenderer.SCALE_COMPUTATION_METHOD_KEY,
+                    mapContent.getRendererScaleMethod());
+            if (wms.isAdvancedProjectionHandlingEnabled()) {
+                rendererParams.put(StreamingRenderer.ADVANCED_PROJECTION_HANDLING_KEY, true);
+            }
+            renderer.setRendererHints(rendererParams);
+
+            int maxErrors = wms.getMaxRenderingErrors();
+            MaxErrorEnforcer errorChecker = new MaxErrorEnforcer(renderer, maxErrors);
+            RenderExceptionStrategy nonIgnorableExceptionListener = new RenderExceptionStrategy(
+                    renderer);
+            renderer.addRenderListener(nonIgnorableExceptionListener);
+
+            int maxRenderingTime = RenderedImageMapOutputFormat.getMaxRenderingTime(wms,
+                    RenderedImageMapOutputFormat.getLocalMaxRenderingTime(mapContent.getRequest()));
+            RenderingTimeoutEnforcer timeout = new RenderingTimeoutEnforcer(maxRenderingTime,
+                    renderer, graphics);
+            timeout.start();
+            try {
+                renderer.paint(graphics, new Rectangle(image.getWidth(), image.getHeight()),
+                        mapContent.getRenderingArea());
+            } finally {
+                timeout.stop();
+            }
+
+            if (errorChecker.exceedsMaxErrors()) {
+                throw new ServiceException("More than " + maxErrors
+                        + " rendering errors occurred, bailing out.",
+                        errorChecker.getLastException(), "internalError");
+            }
+            if (timeout.isTimedOut()) {
+                throw new ServiceException(
+                        "This request used more time than allowed and has been forcefully stopped. "
+                                + "Max rendering time is " + (maxRenderingTime / 1000.0) + "s");
+            }
+            if (nonIgnorableExceptionListener.exceptionOccurred()) {
+                throw new ServiceException("Failed to build the UTFGrid",
+                        nonIgnorableExceptionListener.getException(), "internalError");
+            }
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    Style getGridStyle(Style style, int resolution, UTFGridColorFunction colorFunction) {
+        // symbol sizes are expressed in map pixels, the grid is coarser
+        if (resolution > 1) {
+            RescaleStyleVisitor rescaler = new RescaleStyleVisitor(1d / resolution);
+            style.accept(rescaler);
+            style = (Style) rescaler.getCopy();
+        }
+        UTFGridStyleVisitor visitor = new UTFGridStyleVisitor(colorFunction);
+        style.accept(visitor);
+        return (Style) visitor.getCopy();
+    }
+
+    /**
+     * Encodes the image pixels as a UTFGrid
+     */
+    void encode(BufferedImage image, UTFGridColorFunction colorFunction, Writer writer) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        // the keys in order of appearance, the empty one comes first
+        Map<UTFGridEntry, Integer> keyIndexes = new HashMap<UTFGridEntry, Integer>();
+        List<UTFGridEntry> keys = new ArrayList<UTFGridEntry>();
+        keys.add(null);
+
+        JSONBuilder json = new JSONBuilder(writer);
+        json.object().key("grid").array();
+        StringBuilder row = new StringBuilder(width);
+        for (int y = 0; y < height; y++) {
+            row.setLength(0);
+            for (int x = 0; x < width; x++) {
+                UTFGridEntry entry = colorFunction.getEntry(pixels[y * width + x]);
+                int keyIndex = 0;
+                if (entry != null) {
+                    Integer index = keyIndexes.get(entry);
+                    if (index == null) {
+                        index = keys.size();
+                        keyIndexes.put(entry, index);
+                        keys.add(entry);
+                    }
+                    keyIndex = index;
+                }
+                row.appendCodePoint(encodeKey(keyIndex));
+            }
+            json.value(row.toString());
+        }
+        json.endArray();
+
+        json.key("keys").array();
+        for (UTFGridEntry entry : keys) {
+            json.value(entry == null ? "" : entry.getKey());
+        }
+        json.endArray();
+
+        json.key("data").object();
+        for (UTFGridEntry entry : keys) {
+            if (entry != null) {
+                json.key(entry.getKey()).object();
+                for (Map.Entry<String, Object> attribute : entry.getAttributes().entrySet()) {
+                    json.key(attribute.getKey()).value(toJSONValue(attribute.getValue()));
+                }
+                json.endObject();
+            }
+        }
+        json.endObject();
+        json.endObject();
+    }
+
+    Object toJSONValue(Object value) {
+        if (value == null || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+        return value.toString();
+    }
+
+    /**
+     * Encodes a key index as a grid character, skipping the double quote and backslash, as per
+     * the UTFGrid specification
+     */
+    static int encodeKey(int index) {
+        int code = index + 32;
+        if (code >= 34) {
+            code++;
+        }
+        if (code >= 92) {
+            code++;
+        }
+        if (code >= Character.MIN_SURROGATE) {
+            throw new ServiceException("Too many features in the UTFGrid, "
+                    + "try reducing the area or increasing the grid resolution");
+        }
+        return code;
+    }
+
+}
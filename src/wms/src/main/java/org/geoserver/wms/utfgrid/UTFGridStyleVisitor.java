@@ -0,0 +1,96 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.utfgrid;
+
+import org.geoserver.wms.SymbolizerFilteringVisitor;
+import org.geotools.styling.Fill;
+import org.geotools.styling.Graphic;
+import org.geotools.styling.Mark;
+import org.geotools.styling.PointSymbolizer;
+import org.geotools.styling.PolygonSymbolizer;
+import org.geotools.styling.RasterSymbolizer;
+import org.geotools.styling.Stroke;
+import org.geotools.styling.StyleBuilder;
+import org.geotools.styling.TextSymbolizer;
+import org.opengis.filter.expression.Expression;
+
+/**
+ * Turns a style into one painting the features with their {@link UTFGridColorFunction} color:
+ * removes labels and rasters, replaces graphics with solid squares of the same size, makes
+ * fills and strokes solid and opaque
+ */
+public class UTFGridStyleVisitor extends SymbolizerFilteringVisitor {
+
+    static final int DEFAULT_GRAPHIC_SIZE = 16;
+
+    StyleBuilder sb = new StyleBuilder();
+
+    UTFGridColorFunction colorFunction;
+
+    public UTFGridStyleVisitor(UTFGridColorFunction colorFunction) {
+        this.colorFunction = colorFunction;
+    }
+
+    @Override
+    public void visit(TextSymbolizer text) {
+        pages.push(null);
+    }
+
+    @Override
+    public void visit(RasterSymbolizer raster) {
+        pages.push(null);
+    }
+
+    @Override
+    public void visit(Fill fill) {
+        super.visit(fill);
+        Fill copy = (Fill) pages.peek();
+        copy.setGraphicFill(null);
+        copy.setColor(colorFunction);
+        copy.setOpacity(ff.literal(1));
+    }
+
+    @Override
+    public void visit(Stroke stroke) {
+        super.visit(stroke);
+        Stroke copy = (Stroke) pages.peek();
+        copy.setGraphicFill(null);
+        copy.setGraphicStroke(null);
+        // dashes would leave holes in the grid
+        copy.setDashArray((float[]) null);
+        copy.setColor(colorFunction);
+        copy.setOpacity(ff.literal(1));
+    }
+
+    /**
+     * Polygons are always filled, so that they can be hit anywhere
+     */
+    @Override
+    public void visit(PolygonSymbolizer poly) {
+        super.visit(poly);
+        PolygonSymbolizer copy = (PolygonSymbolizer) pages.peek();
+        if (copy.getFill() == null) {
+            copy.setFill(sb.createFill(colorFunction));
+        }
+    }
+
+    @Override
+    public void visit(PointSymbolizer ps) {
+        super.visit(ps);
+        PointSymbolizer copy = (PointSymbolizer) pages.peek();
+        Graphic graphic = copy.getGraphic();
+        if (graphic != null) {
+            Expression size = graphic.getSize();
+            if (size == null || size == Expression.NIL) {
+                graphic.setSize(ff.literal(DEFAULT_GRAPHIC_SIZE));
+            }
+            Mark square = sb.createMark(StyleBuilder.MARK_SQUARE, sb.createFill(colorFunction),
+                    null);
+            graphic.graphicalSymbols().clear();
+            graphic.graphicalSymbols().add(square);
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Request;
+import org.geoserver.wms.GetMapTimings.Phase;
+import org.junit.After;
+import org.junit.Test;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+
+public class GetMapTimingsTest {
+
+    @After
+    public void clearRequest() {
+        Dispatcher.REQUEST.remove();
+    }
+
+    @Test
+    public void testExclusiveTimes() {
+        GetMapTimings timings = new GetMapTimings();
+        long now = System.nanoTime();
+        timings.record(Phase.PARSE, now - TimeUnit.MILLISECONDS.toNanos(30));
+        timings.record(Phase.STYLES, now - TimeUnit.MILLISECONDS.toNanos(10));
+        timings.record(Phase.RENDER, now - TimeUnit.MILLISECONDS.toNanos(100));
+        timings.record(Phase.QUERY, now - TimeUnit.MILLISECONDS.toNanos(40));
+        timings.record(Phase.LABELS, now - TimeUnit.MILLISECONDS.toNanos(20));
+
+        assertTrue(timings.isRecorded(Phase.PARSE));
+        assertFalse(timings.isRecorded(Phase.ENCODE));
+
+        // nested phases are removed from the enclosing ones
+        Map<String, Long> times = timings.getPhaseTimes();
+        assertEquals(Arrays.asList("parse", "styles", "query", "render", "labels"),
+                Arrays.asList(times.keySet().toArray()));
+        assertEquals(20, times.get("parse"), 2);
+        assertEquals(10, times.get("styles"), 2);
+        assertEquals(40, times.get("render"), 2);
+    }
+
+    @Test
+    public void testServerTiming() {
+        GetMapTimings timings = new GetMapTimings();
+        assertNull(timings.getServerTiming());
+
+        long now = System.nanoTime();
+        timings.record(Phase.PARSE, now - TimeUnit.MILLISECONDS.toNanos(5));
+        timings.record(Phase.ENCODE, now - TimeUnit.MILLISECONDS.toNanos(12));
+        String header = timings.getServerTiming();
+        assertTrue(header, header.matches(
+                "parse;dur=\\d+\\.\\d;desc=\"Request parsing\", encode;dur=\\d+\\.\\d;desc=\"Encoding\""));
+    }
+
+    @Test
+    public void testAttachedToRequest() {
+        assertNull(GetMapTimings.start());
+
+        Request request = new Request();
+        request.setHttpRequest(new MockHttpServletRequest());
+        Dispatcher.REQUEST.set(request);
+        assertNull(GetMapTimings.current());
+        // not collected unless someone asked for them
+        assertNull(GetMapTimings.start());
+        request.getHttpRequest().setAttribute(GetMapTimings.ENABLED_ATTRIBUTE, Boolean.TRUE);
+        GetMapTimings timings = GetMapTimings.start();
+        assertSame(timings, GetMapTimings.current());
+        assertSame(timings, request.getHttpRequest().getAttribute(GetMapTimings.ATTRIBUTE));
+    }
+}
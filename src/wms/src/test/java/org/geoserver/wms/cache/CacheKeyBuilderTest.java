@@ -0,0 +1,46 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CacheKeyBuilderTest {
+
+    CacheKeyBuilder builder = new CacheKeyBuilder("SERVICE", "REQUEST");
+
+    @Test
+    public void testKey() {
+        Map<String, String> kvp = new LinkedHashMap<String, String>();
+        kvp.put("request", "GetLegendGraphic");
+        kvp.put("width", "20");
+        kvp.put("Layer", "topp:states");
+        kvp.put("SERVICE", "WMS");
+        assertEquals("LAYER=topp:states&WIDTH=20", builder.getKey(kvp));
+
+        // order and case do not matter
+        Map<String, String> other = new LinkedHashMap<String, String>();
+        other.put("LAYER", "topp:states");
+        other.put("Width", "20");
+        assertEquals(builder.getKey(kvp), builder.getKey(other));
+    }
+
+    @Test
+    public void testParameters() {
+        Map<String, String> kvp = new LinkedHashMap<String, String>();
+        kvp.put("b", "2");
+        kvp.put("a", "1");
+        kvp.put("service", "WMS");
+        Map<String, String> parameters = builder.getParameters(kvp);
+        assertEquals(Arrays.asList("A", "B"), Arrays.asList(parameters.keySet().toArray()));
+        parameters.put("_EXTRA", "x");
+        assertEquals("A=1&B=2&_EXTRA=x", builder.toKey(parameters));
+    }
+}
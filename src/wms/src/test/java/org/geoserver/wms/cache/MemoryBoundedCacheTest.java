@@ -0,0 +1,116 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.geoserver.wms.cache.MemoryBoundedCache.EntryFilter;
+import org.junit.Test;
+
+public class MemoryBoundedCacheTest {
+
+    @Test
+    public void testEviction() {
+        MemoryBoundedCache<String, String> cache = new MemoryBoundedCache<String, String>(100);
+        assertTrue(cache.put("a", "A", 40));
+        assertTrue(cache.put("b", "B", 40));
+        // touch a, b becomes the least recently used one
+        assertEquals("A", cache.get("a"));
+        assertTrue(cache.put("c", "C", 40));
+        assertEquals(new HashSet<String>(Arrays.asList("a", "c")), cache.keys());
+        assertEquals(80, cache.getMemory());
+        assertEquals(1, cache.getEvictionCount());
+
+        // replacing a value does not count twice
+        assertTrue(cache.put("c", "C2", 60));
+        assertEquals(100, cache.getMemory());
+        assertEquals(1, cache.getEvictionCount());
+
+        // too large
+        assertFalse(cache.put("d", "D", 101));
+        assertEquals(2, cache.getSize());
+
+        cache.setMaxMemory(60);
+        assertEquals(new HashSet<String>(Arrays.asList("c")), cache.keys());
+        assertEquals(60, cache.getMemory());
+    }
+
+    @Test
+    public void testStatistics() {
+        MemoryBoundedCache<String, String> cache = new MemoryBoundedCache<String, String>(100);
+        cache.put("a", "A", 10);
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2d / 3, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testDisabled() {
+        MemoryBoundedCache<String, String> cache = new MemoryBoundedCache<String, String>(0);
+        assertFalse(cache.isEnabled());
+        assertFalse(cache.accepts(0));
+        assertFalse(cache.put("a", "A", 0));
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        MemoryBoundedCache<String, String> cache = new MemoryBoundedCache<String, String>(100, 0);
+        cache.put("a", "A", 10);
+        Thread.sleep(5);
+        // expired entries are dropped on put too
+        cache.put("b", "B", 10);
+        assertEquals(10, cache.getMemory());
+        Thread.sleep(5);
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.getMemory());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testInvalidate() {
+        MemoryBoundedCache<String, String> cache = new MemoryBoundedCache<String, String>(100);
+        cache.put("a", "A", 10);
+        cache.put("b", "B", 20);
+        cache.put("c", "B", 30);
+        int count = cache.invalidate(new EntryFilter<String, String>() {
+            public boolean accept(String key, String value) {
+                return "B".equals(value);
+            }
+        });
+        assertEquals(2, count);
+        assertEquals(2, cache.getInvalidationCount());
+        assertEquals(new HashSet<String>(Arrays.asList("a")), cache.keys());
+        assertEquals(10, cache.getMemory());
+    }
+
+    @Test
+    public void testConfiguredMaxMemory() {
+        String key = "TEST_MEMORY_BOUNDED_CACHE_SIZE";
+        assertEquals(16 * MemoryBoundedCache.MB,
+                MemoryBoundedCache.getConfiguredMaxMemory(key, 16));
+        try {
+            System.setProperty(key, "4");
+            assertEquals(4 * MemoryBoundedCache.MB,
+                    MemoryBoundedCache.getConfiguredMaxMemory(key, 16));
+            System.setProperty(key, "-4");
+            assertEquals(0, MemoryBoundedCache.getConfiguredMaxMemory(key, 16));
+            System.setProperty(key, "abc");
+            assertEquals(16 * MemoryBoundedCache.MB,
+                    MemoryBoundedCache.getConfiguredMaxMemory(key, 16));
+        } finally {
+            System.clearProperty(key);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.capabilities;
+
+import static org.junit.Assert.*;
+
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.ows.CapabilitiesCache;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.wms.WMSTestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+public class CapabilitiesCacheTest extends WMSTestSupport {
+
+    static final String CAPABILITIES = "wms?service=WMS&request=GetCapabilities&version=1.1.1";
+
+    CapabilitiesCache cache;
+
+    @Before
+    public void enableCache() {
+        cache = GeoServerExtensions.bean(CapabilitiesCache.class);
+        cache.setEnabled(true);
+    }
+
+    @After
+    public void disableCache() {
+        cache.setEnabled(false);
+    }
+
+    @Test
+    public void testETag() throws Exception {
+        MockHttpServletResponse response = getAsServletResponse(CAPABILITIES);
+        String etag = response.getHeader("ETag");
+        assertNotNull(etag);
+        assertEquals(1, cache.size());
+
+        // same document from the cache
+        MockHttpServletResponse cached = getAsServletResponse(CAPABILITIES);
+        assertEquals(etag, cached.getHeader("ETag"));
+        assertEquals(response.getOutputStreamContent(), cached.getOutputStreamContent());
+        assertEquals(1, cache.size());
+
+        // conditional request
+        MockHttpServletRequest request = createRequest(CAPABILITIES);
+        request.setMethod("GET");
+        request.setBodyContent(new byte[] {});
+        request.addHeader("If-None-Match", etag);
+        MockHttpServletResponse notModified = dispatch(request);
+        assertEquals(304, notModified.getStatusCode());
+        assertEquals("", notModified.getOutputStreamContent());
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        String etag = getAsServletResponse(CAPABILITIES).getHeader("ETag");
+        assertEquals(1, cache.size());
+
+        LayerInfo layer = getCatalog().getLayerByName(getLayerId(MockData.BASIC_POLYGONS));
+        layer.setEnabled(false);
+        getCatalog().save(layer);
+        try {
+            assertEquals(0, cache.size());
+            MockHttpServletResponse response = getAsServletResponse(CAPABILITIES);
+            assertFalse(etag.equals(response.getHeader("ETag")));
+            assertFalse(response.getOutputStreamContent().contains(
+                    getLayerId(MockData.BASIC_POLYGONS)));
+        } finally {
+            layer.setEnabled(true);
+            getCatalog().save(layer);
+        }
+    }
+
+    @Test
+    public void testDifferentUsers() throws Exception {
+        try {
+            // same roles, but the access manager might still filter differently
+            login("alice", "pwd", "ROLE_READER");
+            getAsServletResponse(CAPABILITIES);
+            login("bob", "pwd", "ROLE_READER");
+            getAsServletResponse(CAPABILITIES);
+            assertEquals(2, cache.size());
+            getAsServletResponse(CAPABILITIES);
+            assertEquals(2, cache.size());
+        } finally {
+            logout();
+        }
+    }
+
+    @Test
+    public void testDifferentParameters() throws Exception {
+        getAsServletResponse(CAPABILITIES);
+        getAsServletResponse(CAPABILITIES + "&namespace=cite");
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,128 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.featureinfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.geoserver.wms.cache.MemoryBoundedCache;
+import org.geoserver.wms.featureinfo.HitBufferCache.HitBuffer;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+public class HitBufferCacheTest {
+
+    /**
+     * A 5x5 buffer with feature "a" in the top left corner, "b" in the middle column
+     */
+    HitBuffer buildBuffer(String layer) {
+        int[] pixels = new int[] {
+                1, 0, 2, 0, 0,
+                0, 0, 2, 0, 0,
+                0, 0, 2, 0, 0,
+                0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0 };
+        return new HitBuffer(layer, 5, 5, pixels, new String[] { null, "a", "b" });
+    }
+
+    @Test
+    public void testFeatureIds() {
+        HitBuffer buffer = buildBuffer("test");
+        assertEquals(Collections.singleton("b"), buffer.getFeatureIds(2, 1, 0, 10));
+        assertTrue(buffer.getFeatureIds(4, 4, 1, 10).isEmpty());
+
+        // nearest first
+        Set<String> ids = buffer.getFeatureIds(3, 0, 3, 10);
+        assertEquals(Arrays.asList("b", "a"), Arrays.asList(ids.toArray()));
+        ids = buffer.getFeatureIds(0, 1, 2, 10);
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(ids.toArray()));
+        // out of reach
+        assertEquals(Collections.singleton("b"), buffer.getFeatureIds(3, 0, 2, 10));
+
+        // feature count limit
+        assertEquals(Collections.singleton("b"), buffer.getFeatureIds(3, 0, 3, 1));
+    }
+
+    @Test
+    public void testEviction() {
+        HitBuffer buffer = buildBuffer("test");
+        HitBufferCache cache = new HitBufferCache(buffer.getSize() * 2, 60000);
+        cache.put("a", buffer);
+        cache.put("b", buildBuffer("test"));
+        assertEquals(2, cache.getSize());
+        // touch a, b becomes the least recently used one
+        assertNotNull(cache.get("a"));
+        cache.put("c", buildBuffer("test"));
+        assertEquals(2, cache.getSize());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        HitBufferCache cache = new HitBufferCache(MemoryBoundedCache.MB, 0);
+        cache.put("a", buildBuffer("test"));
+        Thread.sleep(5);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getMemory());
+    }
+
+    @Test
+    public void testInvalidate() {
+        HitBufferCache cache = new HitBufferCache(MemoryBoundedCache.MB, 60000);
+        cache.put("a", buildBuffer("cite:Lakes"));
+        cache.put("b", buildBuffer("cite:Forests"));
+        cache.invalidate("Lakes");
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        cache.invalidate(null);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testSize() {
+        HitBuffer buffer = buildBuffer("test");
+        // full resolution int pixels
+        assertEquals(25 * 4 + 3 * 64, buffer.getSize());
+        assertEquals(256 * 256 * 4, HitBuffer.estimateSize(256, 256));
+    }
+
+    @Test
+    public void testKeyUser() {
+        HitBufferCache cache = new HitBufferCache(MemoryBoundedCache.MB, 60000);
+        Map<String, String> kvp = new HashMap<String, String>();
+        kvp.put("LAYERS", "cite:Lakes");
+        kvp.put("BBOX", "0,0,1,1");
+        kvp.put("X", "10");
+        try {
+            String anonymous = cache.getKey("cite:Lakes", kvp);
+            SecurityContextHolder.getContext().setAuthentication(
+                    new UsernamePasswordAuthenticationToken("admin", "geoserver"));
+            String admin = cache.getKey("cite:Lakes", kvp);
+            SecurityContextHolder.getContext().setAuthentication(
+                    new UsernamePasswordAuthenticationToken("cite", "cite"));
+            String cite = cache.getKey("cite:Lakes", kvp);
+            assertFalse(anonymous.equals(admin));
+            assertFalse(admin.equals(cite));
+
+            // the clicked point does not matter
+            kvp.put("X", "20");
+            assertEquals(cite, cache.getKey("cite:Lakes", kvp));
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
@@ -19,6 +19,7 @@ import org.apache.commons.lang.mutable.MutableDouble;
 import org.geoserver.config.GeoServer;
 import org.geoserver.data.test.MockData;
 import org.geoserver.data.test.SystemTestData;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.FeatureInfoRequestParameters;
 import org.geoserver.wms.GetFeatureInfoRequest;
@@ -32,6 +33,7 @@ import org.geoserver.wms.WMSInfo;
 import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.WMSTestSupport;
 import org.geoserver.wms.WebMap;
+import org.geoserver.wms.cache.MemoryBoundedCache;
 import org.geoserver.wms.map.AbstractMapOutputFormat;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
@@ -461,4 +463,36 @@ public class RenderingBasedFeatureInfoTest extends WMSTestSupport {
         
         assertEquals(1, result.getJSONArray("features").size());
     }
+
+    @Test
+    public void testHitBuffer() throws Exception {
+        HitBufferCache cache = GeoServerExtensions.bean(HitBufferCache.class);
+        cache.setMaxMemory(MemoryBoundedCache.MB);
+        try {
+            String layer = getLayerId(MockData.BASIC_POLYGONS);
+            String base = "wms?version=1.1.1&bbox=-4.5,-2.,4.5,7&styles=&format=jpeg"
+                    + "&info_format=application/json&request=GetFeatureInfo&layers=" + layer
+                    + "&query_layers=" + layer + "&width=300&height=300&feature_count=10";
+            long hits = cache.getHitCount();
+
+            // first click builds the buffer, nothing there
+            JSONObject result = (JSONObject) getAsJSON(base + "&x=85&y=230");
+            assertEquals(0, result.getJSONArray("features").size());
+            assertEquals(1, cache.getSize());
+
+            // same map, different point and buffer, served from the hit buffer
+            result = (JSONObject) getAsJSON(base + "&x=85&y=230&buffer=40");
+            assertEquals(1, result.getJSONArray("features").size());
+            assertEquals("BasicPolygons.1107531493630", result.getJSONArray("features")
+                    .getJSONObject(0).getString("id"));
+            assertEquals(hits + 1, cache.getHitCount());
+            assertEquals(1, cache.getSize());
+
+            // a different map gets its own buffer
+            getAsJSON(base.replace("width=300", "width=200") + "&x=85&y=230");
+            assertEquals(2, cache.getSize());
+        } finally {
+            cache.setMaxMemory(0);
+        }
+    }
 }
@@ -0,0 +1,130 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+
+import org.junit.Test;
+
+public class DrawingSurfacePoolTest {
+
+    static final long MB = 1024 * 1024;
+
+    @Test
+    public void testDisabled() {
+        DrawingSurfacePool pool = new DrawingSurfacePool(0);
+        BufferedImage image = pool.borrow(256, 256, null, true);
+        assertEquals(BufferedImage.TYPE_4BYTE_ABGR, image.getType());
+        pool.release(image);
+        assertEquals(0, pool.getSize());
+        assertNotSame(image.getRaster(), pool.borrow(256, 256, null, true).getRaster());
+    }
+
+    @Test
+    public void testRecycle() {
+        DrawingSurfacePool pool = new DrawingSurfacePool(16 * MB);
+        BufferedImage image = pool.borrow(256, 256, null, true);
+        paint(image);
+        pool.release(image);
+        assertEquals(1, pool.getSize());
+        assertEquals(256 * 256 * 4, pool.getMemory());
+
+        // different size or kind, no match
+        assertNotSame(image.getRaster(), pool.borrow(256, 128, null, true).getRaster());
+        assertNotSame(image.getRaster(), pool.borrow(256, 256, null, false).getRaster());
+
+        // same size and kind, recycled and cleared
+        BufferedImage recycled = pool.borrow(256, 256, null, true);
+        assertSame(image.getRaster(), recycled.getRaster());
+        assertEquals(BufferedImage.TYPE_4BYTE_ABGR, recycled.getType());
+        assertEquals(0, recycled.getRGB(10, 10));
+        assertEquals(0, pool.getSize());
+        assertEquals(0, pool.getMemory());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(3, pool.getMissCount());
+
+        // releasing twice does not duplicate the buffer
+        pool.release(recycled);
+        pool.release(recycled);
+        assertEquals(1, pool.getSize());
+    }
+
+    @Test
+    public void testOpaqueAndPaletted() {
+        DrawingSurfacePool pool = new DrawingSurfacePool(16 * MB);
+        BufferedImage opaque = pool.borrow(100, 100, null, false);
+        pool.release(opaque);
+        BufferedImage recycled = pool.borrow(100, 100, null, false);
+        assertSame(opaque.getRaster(), recycled.getRaster());
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, recycled.getType());
+
+        byte[] gray = new byte[] { 0, (byte) 128, (byte) 255 };
+        IndexColorModel palette = new IndexColorModel(8, 3, gray, gray, gray);
+        BufferedImage paletted = pool.borrow(100, 100, palette, false);
+        pool.release(paletted);
+        byte[] red = new byte[] { 0, (byte) 255 };
+        byte[] zero = new byte[] { 0, 0 };
+        IndexColorModel otherPalette = new IndexColorModel(8, 2, red, zero, zero);
+        recycled = pool.borrow(100, 100, otherPalette, false);
+        assertSame(paletted.getRaster(), recycled.getRaster());
+        assertSame(otherPalette, recycled.getColorModel());
+    }
+
+    @Test
+    public void testMemoryCap() {
+        // room for two 512x512 ABGR surfaces
+        DrawingSurfacePool pool = new DrawingSurfacePool(2 * MB);
+        BufferedImage i1 = pool.borrow(512, 512, null, true);
+        BufferedImage i2 = pool.borrow(512, 512, null, true);
+        BufferedImage i3 = pool.borrow(256, 256, null, true);
+        BufferedImage big = pool.borrow(1024, 1024, null, true);
+        pool.release(i1);
+        pool.release(i2);
+        assertEquals(2, pool.getSize());
+        assertEquals(2 * MB, pool.getMemory());
+
+        // too large for the pool altogether
+        pool.release(big);
+        assertEquals(2, pool.getSize());
+        assertEquals(1, pool.getDiscardedCount());
+
+        // the least recently used bucket goes away to make room
+        pool.release(i3);
+        assertEquals(1, pool.getSize());
+        assertEquals(256 * 256 * 4, pool.getMemory());
+        assertEquals(3, pool.getDiscardedCount());
+
+        pool.setMaxMemory(0);
+        assertEquals(0, pool.getSize());
+        assertEquals(0, pool.getMemory());
+    }
+
+    @Test
+    public void testDetach() {
+        DrawingSurfacePool pool = new DrawingSurfacePool(16 * MB);
+        BufferedImage image = pool.borrow(256, 256, null, true);
+        pool.detach(image);
+        pool.release(image);
+        assertEquals(0, pool.getSize());
+
+        // images not coming from the pool are ignored
+        pool.release(new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR));
+        assertEquals(0, pool.getSize());
+    }
+
+    void paint(BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.dispose();
+    }
+}
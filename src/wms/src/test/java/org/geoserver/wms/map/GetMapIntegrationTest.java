@@ -32,12 +32,15 @@ import org.geoserver.data.test.CiteTestData;
 import org.geoserver.data.test.MockData;
 import org.geoserver.data.test.SystemTestData;
 import org.geoserver.data.test.SystemTestData.LayerProperty;
+import org.geoserver.wms.GetMapTimings;
+import org.geoserver.wms.GetMapTimings.Phase;
 import org.geoserver.wms.WMSTestSupport;
 import org.geotools.image.ImageWorker;
 import org.geotools.image.test.ImageAssert;
 import org.junit.Test;
 import org.w3c.dom.Document;
 
+import com.mockrunner.mock.web.MockHttpServletRequest;
 import com.mockrunner.mock.web.MockHttpServletResponse;
 
 public class GetMapIntegrationTest extends WMSTestSupport {
@@ -205,7 +208,26 @@ public class GetMapIntegrationTest extends WMSTestSupport {
             assertTrue(Arrays.equals(bankData11[i], bankData13[i]));
         }
     }
-    
+
+    @Test
+    public void testMetaTileCache() throws Exception {
+        QuickTileCache cache = (QuickTileCache) applicationContext.getBean("metaTileCache");
+        cache.clear();
+        String base = "wms?LAYERS=cite%3ALakes&STYLES=&FORMAT=image%2Fpng&TILED=true&TILESORIGIN=0.0006%2C-0.0018"
+                + "&SERVICE=WMS&VERSION=1.1.1&REQUEST=GetMap&SRS=EPSG%3A4326&WIDTH=256&HEIGHT=256&BBOX=";
+
+        long hits = cache.getHitCount();
+        BufferedImage first = getAsImage(base + "0.0006,-0.0018,0.0031,0.0007", "image/png");
+        assertEquals(256, first.getWidth());
+        assertEquals(1, cache.getSize());
+
+        // the tile on the right is part of the same meta tile, served from the encoded cache
+        BufferedImage second = getAsImage(base + "0.0031,-0.0018,0.0056,0.0007", "image/png");
+        assertEquals(256, second.getWidth());
+        assertEquals(1, cache.getSize());
+        assertEquals(hits + 1, cache.getHitCount());
+    }
+
     @Test
     public void testOpenLayersProxy() throws Exception {
         NamespaceContext oldContext = XMLUnit.getXpathNamespaceContext();
@@ -287,4 +309,39 @@ public class GetMapIntegrationTest extends WMSTestSupport {
         bi = getAsImage(request + "&scaleMethod=Accurate", "image/png");
         assertBlank("Image should not contain the polygon, scale is just below 1:20", bi);
     }
+
+    @Test
+    public void testServerTiming() throws Exception {
+        String path = "wms?LAYERS=" + getLayerId(MockData.BASIC_POLYGONS)
+                + "&STYLES=&FORMAT=image/png&SERVICE=WMS&VERSION=1.1.1&REQUEST=GetMap"
+                + "&SRS=EPSG:4326&BBOX=-2,-1,2,5&WIDTH=100&HEIGHT=100";
+
+        // disabled by default, nothing is collected
+        MockHttpServletRequest request = createRequest(path);
+        MockHttpServletResponse response = dispatch(request);
+        assertEquals("image/png", response.getContentType());
+        assertNull(response.getHeader(GetMapTimings.SERVER_TIMING_HEADER));
+        assertNull(request.getAttribute(GetMapTimings.ATTRIBUTE));
+
+        System.setProperty(GetMapTimings.SERVER_TIMING_KEY, "true");
+        try {
+            request = createRequest(path);
+            response = dispatch(request);
+            assertEquals("image/png", response.getContentType());
+            String header = response.getHeader(GetMapTimings.SERVER_TIMING_HEADER);
+            assertNotNull(header);
+            assertTrue(header, header.contains("parse;dur="));
+            assertTrue(header, header.contains("query;dur="));
+            assertTrue(header, header.contains("render;dur="));
+
+            GetMapTimings timings = (GetMapTimings) request.getAttribute(GetMapTimings.ATTRIBUTE);
+            assertNotNull(timings);
+            for (Phase phase : new Phase[] { Phase.PARSE, Phase.STYLES, Phase.QUERY,
+                    Phase.RENDER, Phase.ENCODE }) {
+                assertTrue(phase.getName(), timings.isRecorded(phase));
+            }
+        } finally {
+            System.clearProperty(GetMapTimings.SERVER_TIMING_KEY);
+        }
+    }
 }
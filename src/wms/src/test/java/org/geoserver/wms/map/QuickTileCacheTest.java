@@ -5,14 +5,35 @@
  */
 package org.geoserver.wms.map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
-
+import java.util.Collections;
+
+import javax.xml.namespace.QName;
+
+import org.geoserver.wfs.TransactionEvent;
+import org.geoserver.wfs.TransactionEventType;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.cache.MemoryBoundedCache;
+import org.geoserver.wms.map.QuickTileCache.MapKey;
+import org.geoserver.wms.map.QuickTileCache.MetaTileKey;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.feature.NameImpl;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
 
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
 
 public class QuickTileCacheTest {
     QuickTileCache cache = new QuickTileCache();
@@ -67,4 +88,121 @@ public class QuickTileCacheTest {
         assertEquals(new Point(0, 2), cache.getTileOffsetsInMeta(box1, meta));
         assertEquals(new Point(1, 2), cache.getTileOffsetsInMeta(box2, meta));
     }
+
+    @Test
+    public void testStoreAndGet() {
+        MetaTileKey key = metaTileKey(0, 0);
+        GetMapRequest request = tileRequest(10, 0);
+        assertNull(cache.getTile(key, request));
+
+        cache.storeTiles(key, tiles(100));
+        byte[] tile = cache.getTile(key, request);
+        assertNotNull(tile);
+        // second tile of the bottom row
+        assertEquals(1, tile[0]);
+        assertEquals(900, cache.getMemory());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testOffHeap() {
+        QuickTileCache offHeap = new QuickTileCache(MemoryBoundedCache.MB, true);
+        MetaTileKey key = metaTileKey(0, 0);
+        byte[][] tiles = tiles(100);
+        offHeap.storeTiles(key, tiles);
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                byte[] tile = offHeap.getTile(key, tileRequest(i * 10, j * 10));
+                assertArrayEquals(tiles[i + j * 3], tile);
+            }
+        }
+    }
+
+    @Test
+    public void testMemoryCap() {
+        // room for two meta tiles
+        QuickTileCache small = new QuickTileCache(2000, false);
+        MetaTileKey k1 = metaTileKey(0, 0);
+        MetaTileKey k2 = metaTileKey(30, 0);
+        MetaTileKey k3 = metaTileKey(60, 0);
+        small.storeTiles(k1, tiles(100));
+        small.storeTiles(k2, tiles(100));
+        // k1 becomes the most recently used one
+        assertNotNull(small.getTile(k1, tileRequest(0, 0)));
+        small.storeTiles(k3, tiles(100));
+        assertEquals(2, small.getSize());
+        assertEquals(1800, small.getMemory());
+        assertEquals(1, small.getEvictionCount());
+        assertNotNull(small.getTile(k1, tileRequest(0, 0)));
+        assertNull(small.getTile(k2, tileRequest(30, 0)));
+        assertNotNull(small.getTile(k3, tileRequest(60, 0)));
+
+        // too big to be cached at all
+        small.storeTiles(metaTileKey(90, 0), tiles(1000));
+        assertEquals(2, small.getSize());
+
+        small.setMaxMemory(0);
+        assertEquals(0, small.getSize());
+        assertEquals(0, small.getMemory());
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        MetaTileKey k1 = metaTileKey(0, 0);
+        MetaTileKey k2 = metaTileKey(90, 0);
+        cache.storeTiles(k1, tiles(100));
+        cache.storeTiles(k2, tiles(100));
+
+        // another feature type, nothing happens
+        cache.dataStoreChange(transactionEvent(new QName("http://www.openplans.org/spearfish",
+                "roads"), 5, 5));
+        assertEquals(2, cache.getSize());
+
+        // only the meta tile around the modified feature goes away
+        cache.dataStoreChange(transactionEvent(new QName("http://www.openplans.org/topp",
+                "states"), 5, 5));
+        assertEquals(1, cache.getSize());
+        assertNull(cache.getTile(k1, tileRequest(0, 0)));
+        assertNotNull(cache.getTile(k2, tileRequest(90, 0)));
+        assertEquals(1, cache.getInvalidationCount());
+
+        // no namespace, match on the local name
+        cache.dataStoreChange(transactionEvent(new QName("states"), 100, 5));
+        assertEquals(0, cache.getSize());
+    }
+
+    MetaTileKey metaTileKey(double minx, double miny) {
+        MapKey mapKey = new MapKey("LAYERS=topp:states", 10.0 / 256, new Point2D.Double(0, 0));
+        MetaTileKey key = new MetaTileKey(mapKey, new Point((int) minx / 10, (int) miny / 10),
+                new ReferencedEnvelope(minx, minx + 30, miny, miny + 30,
+                        DefaultGeographicCRS.WGS84));
+        key.featureTypes = Collections.singleton(new NameImpl("http://www.openplans.org/topp",
+                "states"));
+        return key;
+    }
+
+    GetMapRequest tileRequest(double minx, double miny) {
+        GetMapRequest request = new GetMapRequest();
+        request.setBbox(new Envelope(minx, minx + 10, miny, miny + 10));
+        request.setCrs(DefaultGeographicCRS.WGS84);
+        return request;
+    }
+
+    byte[][] tiles(int size) {
+        byte[][] tiles = new byte[9][size];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i][0] = (byte) i;
+        }
+        return tiles;
+    }
+
+    TransactionEvent transactionEvent(QName typeName, double x, double y) throws Exception {
+        SimpleFeatureType type = DataUtilities.createType(typeName.getLocalPart(),
+                "the_geom:Point");
+        ListFeatureCollection features = new ListFeatureCollection(type);
+        features.add(SimpleFeatureBuilder.build(type,
+                new Object[] { new GeometryFactory().createPoint(new Coordinate(x, y)) }, null));
+        return new TransactionEvent(TransactionEventType.POST_UPDATE, null, typeName, features);
+    }
 }
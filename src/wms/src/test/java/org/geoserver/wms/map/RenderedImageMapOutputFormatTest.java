@@ -6,6 +6,7 @@
 package org.geoserver.wms.map;
 
 import static org.geoserver.data.test.CiteTestData.STREAMS;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -14,6 +15,7 @@ import static org.junit.Assert.fail;
 import java.awt.Color;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
@@ -58,6 +60,7 @@ import org.geotools.map.FeatureLayer;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.resources.coverage.FeatureUtilities;
 import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
 import org.geotools.util.logging.Logging;
 import org.junit.After;
 import org.junit.Before;
@@ -241,6 +244,86 @@ public class RenderedImageMapOutputFormatTest extends WMSTestSupport {
 
     @Test 
     public void testBlueLake() throws IOException, IllegalFilterException, Exception {
+        BufferedImage image = renderBlueLake(this.rasterMapProducer);
+        assertNotBlank("testBlueLake", image);
+    }
+
+    @Test
+    public void testParallelLayerRendering() throws Exception {
+        RenderedImageMapOutputFormat parallelProducer = new DummyRasterMapProducer(getWMS()) {
+            @Override
+            protected int getMaxParallelLayers() {
+                return 4;
+            }
+        };
+
+        BufferedImage serial = renderBlueLake(this.rasterMapProducer);
+        BufferedImage parallel = renderBlueLake(parallelProducer);
+        assertNotBlank("testParallelLayerRendering", parallel);
+
+        // compositing the layer surfaces can differ from painting in place only in rounding
+        assertEquals(serial.getWidth(), parallel.getWidth());
+        assertEquals(serial.getHeight(), parallel.getHeight());
+        for (int y = 0; y < serial.getHeight(); y++) {
+            for (int x = 0; x < serial.getWidth(); x++) {
+                int expected = serial.getRGB(x, y);
+                int actual = parallel.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int delta = Math.abs(((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF));
+                    assertTrue("Pixel differs at " + x + "," + y, delta <= 2);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLayerParallelism() throws Exception {
+        RenderedImageMapOutputFormat parallelProducer = new DummyRasterMapProducer(getWMS()) {
+            @Override
+            protected int getMaxParallelLayers() {
+                return 4;
+            }
+        };
+
+        GetMapRequest request = new GetMapRequest();
+        WMSMapContent map = new WMSMapContent();
+        map.setRequest(request);
+        addToMap(map, MockData.FORESTS);
+        addToMap(map, MockData.LAKES);
+        addToMap(map, MockData.STREAMS);
+        try {
+            // capped by the number of layers
+            assertEquals(3, parallelProducer.getLayerParallelism(map, null));
+            // disabled by default
+            assertEquals(1, this.rasterMapProducer.getLayerParallelism(map, null));
+            // never used for paletted output
+            IndexColorModel palette = new IndexColorModel(1, 2, new byte[] { 0, -1 },
+                    new byte[] { 0, -1 }, new byte[] { 0, -1 });
+            assertEquals(1, parallelProducer.getLayerParallelism(map, palette));
+            // the request can lower the parallelism
+            request.getFormatOptions().put("parallel", "2");
+            assertEquals(2, parallelProducer.getLayerParallelism(map, null));
+            request.getFormatOptions().remove("parallel");
+
+            // blending modes need the layers below, cannot render in isolation
+            StyleBuilder sb = new StyleBuilder();
+            Style style = sb.createStyle(sb.createPolygonSymbolizer(Color.BLUE));
+            style.featureTypeStyles().get(0).getOptions().put("composite", "multiply");
+            FeatureTypeInfo lakes = getCatalog().getFeatureTypeByName(
+                    MockData.LAKES.getNamespaceURI(), MockData.LAKES.getLocalPart());
+            map.addLayer(new FeatureLayer(lakes.getFeatureSource(null, null), style));
+            assertEquals(1, parallelProducer.getLayerParallelism(map, null));
+
+            // while plain alpha composition is fine
+            style.featureTypeStyles().get(0).getOptions().put("composite", "source-over, 0.5");
+            assertEquals(4, parallelProducer.getLayerParallelism(map, null));
+        } finally {
+            map.dispose();
+        }
+    }
+
+    private BufferedImage renderBlueLake(RenderedImageMapOutputFormat producer)
+            throws Exception {
         final Catalog catalog = getCatalog();
         org.geoserver.catalog.FeatureTypeInfo typeInfo = catalog.getFeatureTypeByName(
                 MockData.LAKES.getNamespaceURI(), MockData.LAKES.getLocalPart());
@@ -274,10 +357,10 @@ public class RenderedImageMapOutputFormatTest extends WMSTestSupport {
         map.getViewport().setBounds(new ReferencedEnvelope(env, DefaultGeographicCRS.WGS84));
 
         request.setFormat(getMapFormat());
-        RenderedImageMap imageMap = this.rasterMapProducer.produceMap(map);
+        RenderedImageMap imageMap = producer.produceMap(map);
         BufferedImage image = (BufferedImage) imageMap.getImage();
         imageMap.dispose();
-        assertNotBlank("testBlueLake", image);
+        return image;
     }
     
     
@@ -0,0 +1,167 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ar.com.hjg.pngj.FilterType;
+
+public class BlockPNGEncoderTest {
+
+    static ExecutorService executor;
+
+    @BeforeClass
+    public static void setupExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testCombineAdler32() {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + i / 7);
+        }
+        Adler32 full = new Adler32();
+        full.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, 40000);
+        Adler32 second = new Adler32();
+        second.update(data, 40000, 60000);
+
+        assertEquals(full.getValue(), BlockPNGEncoder.combineAdler32(first.getValue(),
+                second.getValue(), 60000));
+        assertEquals(full.getValue(), BlockPNGEncoder.combineAdler32(1, full.getValue(),
+                data.length));
+    }
+
+    @Test
+    public void testSupported() {
+        assertTrue(BlockPNGEncoder.isSupported(new BufferedImage(1, 1,
+                BufferedImage.TYPE_4BYTE_ABGR)));
+        assertTrue(BlockPNGEncoder.isSupported(new BufferedImage(1, 1,
+                BufferedImage.TYPE_INT_RGB)));
+        assertTrue(BlockPNGEncoder.isSupported(new BufferedImage(1, 1,
+                BufferedImage.TYPE_BYTE_INDEXED)));
+        assertFalse(BlockPNGEncoder.isSupported(new BufferedImage(1, 1,
+                BufferedImage.TYPE_INT_ARGB_PRE)));
+        assertFalse(BlockPNGEncoder.isSupported(new BufferedImage(1, 1,
+                BufferedImage.TYPE_USHORT_GRAY)));
+    }
+
+    @Test
+    public void testRGBA() throws Exception {
+        BufferedImage image = paint(new BufferedImage(301, 203, BufferedImage.TYPE_4BYTE_ABGR));
+        assertRoundTrip(image, FilterType.FILTER_NONE);
+        assertRoundTrip(image, FilterType.FILTER_SUB);
+    }
+
+    @Test
+    public void testRGB() throws Exception {
+        BufferedImage image = paint(new BufferedImage(301, 203, BufferedImage.TYPE_3BYTE_BGR));
+        assertRoundTrip(image, FilterType.FILTER_NONE);
+        assertRoundTrip(image, FilterType.FILTER_SUB);
+    }
+
+    @Test
+    public void testIntARGB() throws Exception {
+        BufferedImage image = paint(new BufferedImage(301, 203, BufferedImage.TYPE_INT_ARGB));
+        assertRoundTrip(image, FilterType.FILTER_SUB);
+    }
+
+    @Test
+    public void testGray() throws Exception {
+        BufferedImage image = paint(new BufferedImage(301, 203, BufferedImage.TYPE_BYTE_GRAY));
+        assertRoundTrip(image, FilterType.FILTER_SUB);
+    }
+
+    @Test
+    public void testPaletteWithTransparency() throws Exception {
+        byte[] r = new byte[256];
+        byte[] g = new byte[256];
+        byte[] b = new byte[256];
+        byte[] a = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            r[i] = (byte) i;
+            g[i] = (byte) (255 - i);
+            b[i] = (byte) (i * 3);
+            a[i] = (byte) (i < 16 ? i * 16 : 255);
+        }
+        IndexColorModel icm = new IndexColorModel(8, 256, r, g, b, a);
+        BufferedImage image = paint(new BufferedImage(301, 203, BufferedImage.TYPE_BYTE_INDEXED,
+                icm));
+        assertRoundTrip(image, FilterType.FILTER_NONE);
+    }
+
+    @Test
+    public void testPackedPalette() throws Exception {
+        for (int bits : new int[] { 1, 2, 4 }) {
+            int size = 1 << bits;
+            byte[] values = new byte[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = (byte) (i * 255 / (size - 1));
+            }
+            IndexColorModel icm = new IndexColorModel(bits, size, values, values, values);
+            BufferedImage image = paint(new BufferedImage(301, 203,
+                    BufferedImage.TYPE_BYTE_BINARY, icm));
+            assertRoundTrip(image, FilterType.FILTER_NONE);
+            assertRoundTrip(image, FilterType.FILTER_SUB);
+        }
+    }
+
+    BufferedImage paint(BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setPaint(new GradientPaint(0, 0, new Color(255, 0, 0, 40), image.getWidth(),
+                image.getHeight(), new Color(0, 0, 255, 220)));
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.setColor(Color.GREEN);
+        graphics.fillOval(20, 20, image.getWidth() - 40, image.getHeight() - 40);
+        graphics.dispose();
+        return image;
+    }
+
+    void assertRoundTrip(BufferedImage image, FilterType filterType) throws Exception {
+        // small blocks, so that the image gets split in many strips
+        BlockPNGEncoder encoder = new BlockPNGEncoder(executor, 4096);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        encoder.encode(image, bos, 6, filterType);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals(image.getWidth(), decoded.getWidth());
+        assertEquals(image.getHeight(), decoded.getHeight());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals("Pixel differs at " + x + "," + y, image.getRGB(x, y),
+                        decoded.getRGB(x, y));
+            }
+        }
+    }
+}
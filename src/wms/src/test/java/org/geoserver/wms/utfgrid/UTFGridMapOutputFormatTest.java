@@ -0,0 +1,122 @@
+/* (c) 2015 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.utfgrid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import net.sf.json.JSONSerializer;
+
+import org.geoserver.data.test.MockData;
+import org.geoserver.wms.WMSInfo;
+import org.geoserver.wms.WMSTestSupport;
+import org.junit.Test;
+
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+public class UTFGridMapOutputFormatTest extends WMSTestSupport {
+
+    @Test
+    public void testEncodeKey() {
+        assertEquals(' ', UTFGridMapOutputFormat.encodeKey(0));
+        assertEquals('!', UTFGridMapOutputFormat.encodeKey(1));
+        // skips the double quote
+        assertEquals('#', UTFGridMapOutputFormat.encodeKey(2));
+        assertEquals('[', UTFGridMapOutputFormat.encodeKey(58));
+        // skips the backslash
+        assertEquals(']', UTFGridMapOutputFormat.encodeKey(59));
+    }
+
+    @Test
+    public void testPolygons() throws Exception {
+        String layer = getLayerId(MockData.BASIC_POLYGONS);
+        MockHttpServletResponse response = getAsServletResponse("wms?service=WMS&version=1.1.0"
+                + "&request=GetMap&layers=" + layer + "&styles=&bbox=-2,-1,2,6&width=128"
+                + "&height=224&srs=EPSG:4326&format=utfgrid");
+        assertEquals(UTFGridMapOutputFormat.MIME_TYPE, response.getContentType());
+
+        JSONObject json = (JSONObject) JSONSerializer.toJSON(response.getOutputStreamContent());
+        JSONArray grid = json.getJSONArray("grid");
+        // default resolution is 4
+        assertEquals(56, grid.size());
+        Set<Character> codes = new HashSet<Character>();
+        for (int i = 0; i < grid.size(); i++) {
+            String row = grid.getString(i);
+            assertEquals(32, row.length());
+            for (char c : row.toCharArray()) {
+                codes.add(c);
+            }
+        }
+
+        JSONArray keys = json.getJSONArray("keys");
+        assertEquals("", keys.getString(0));
+        // three polygons, plus the empty key
+        assertEquals(4, keys.size());
+        assertEquals(keys.size(), codes.size());
+        JSONObject data = json.getJSONObject("data");
+        for (int i = 1; i < keys.size(); i++) {
+            String key = keys.getString(i);
+            assertTrue(key.startsWith("BasicPolygons."));
+            JSONObject attributes = data.getJSONObject(key);
+            assertTrue(attributes.containsKey("ID"));
+            assertFalse(attributes.containsKey("the_geom"));
+        }
+    }
+
+    @Test
+    public void testResolutionAndAttributes() throws Exception {
+        String layer = getLayerId(MockData.BASIC_POLYGONS);
+        JSONObject json = (JSONObject) getAsJSON("wms?service=WMS&version=1.1.0"
+                + "&request=GetMap&layers=" + layer + "&styles=&bbox=-2,-1,2,6&width=128"
+                + "&height=224&srs=EPSG:4326&format=utfgrid"
+                + "&format_options=utfresolution:8;utfattributes:FOO");
+        JSONArray grid = json.getJSONArray("grid");
+        assertEquals(28, grid.size());
+        assertEquals(16, grid.getString(0).length());
+
+        JSONObject data = json.getJSONObject("data");
+        JSONArray keys = json.getJSONArray("keys");
+        assertTrue(keys.size() > 1);
+        for (int i = 1; i < keys.size(); i++) {
+            JSONObject attributes = data.getJSONObject(keys.getString(i));
+            assertFalse(attributes.containsKey("ID"));
+        }
+    }
+
+    @Test
+    public void testInvalidResolution() throws Exception {
+        String layer = getLayerId(MockData.BASIC_POLYGONS);
+        MockHttpServletResponse response = getAsServletResponse("wms?service=WMS&version=1.1.0"
+                + "&request=GetMap&layers=" + layer + "&styles=&bbox=-2,-1,2,6&width=128"
+                + "&height=224&srs=EPSG:4326&format=utfgrid&format_options=utfresolution:0");
+        assertTrue(response.getOutputStreamContent().contains("utfresolution"));
+    }
+
+    @Test
+    public void testMaxRequestMemory() throws Exception {
+        WMSInfo wms = getGeoServer().getService(WMSInfo.class);
+        int maxMemory = wms.getMaxRequestMemory();
+        // the 128x224 int grid alone takes more than 100KB
+        wms.setMaxRequestMemory(16);
+        getGeoServer().save(wms);
+        try {
+            String layer = getLayerId(MockData.BASIC_POLYGONS);
+            MockHttpServletResponse response = getAsServletResponse("wms?service=WMS"
+                    + "&version=1.1.0&request=GetMap&layers=" + layer + "&styles="
+                    + "&bbox=-2,-1,2,6&width=128&height=224&srs=EPSG:4326&format=utfgrid"
+                    + "&format_options=utfresolution:1");
+            assertTrue(response.getOutputStreamContent().contains("Rendering request would use"));
+        } finally {
+            wms.setMaxRequestMemory(maxMemory);
+            getGeoServer().save(wms);
+        }
+    }
+}
@@ -6,21 +6,30 @@
 package org.geoserver.wms.wms_1_1_1;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.util.Collections;
 
+import javax.imageio.ImageIO;
 import javax.xml.namespace.QName;
 
 import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.StyleInfo;
 import org.geoserver.data.test.MockData;
 import org.geoserver.data.test.SystemTestData;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.wms.WMSTestSupport;
+import org.geoserver.wms.cache.MemoryBoundedCache;
+import org.geoserver.wms.legendgraphic.LegendGraphicCache;
 import org.geotools.util.Converters;
 import org.junit.Test;
 
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
 public class GetLegendGraphicTest extends WMSTestSupport {
    
     
@@ -178,4 +187,100 @@ public class GetLegendGraphicTest extends WMSTestSupport {
         assertPixel(image, 1, 20, Color.WHITE);
     }
     
+    @Test
+    public void testLegendCache() throws Exception {
+        LegendGraphicCache cache = GeoServerExtensions.bean(LegendGraphicCache.class);
+        cache.setMaxMemory(MemoryBoundedCache.MB);
+        try {
+            cache.clear();
+            long hits = cache.getHitCount();
+
+            String base = "wms?service=WMS&version=1.1.1&request=GetLegendGraphic" +
+                    "&layer=" + getLayerId(MockData.LAKES) + "&style=Lakes" +
+                    "&format=image/png&width=20&height=20";
+            BufferedImage image = getAsImage(base, "image/png");
+            assertPixel(image, 10, 10, Converters.convert("#4040C0", Color.class));
+            assertEquals(1, cache.getSize());
+
+            // same legend, parameters in a different order, served from the cache
+            image = getAsImage("wms?request=GetLegendGraphic&version=1.1.1&service=WMS" +
+                    "&height=20&width=20&format=image/png&style=Lakes" +
+                    "&layer=" + getLayerId(MockData.LAKES), "image/png");
+            assertPixel(image, 10, 10, Converters.convert("#4040C0", Color.class));
+            assertEquals(1, cache.getSize());
+            assertEquals(hits + 1, cache.getHitCount());
+
+            // different size, different legend
+            getAsImage(base.replace("width=20", "width=30"), "image/png");
+            assertEquals(2, cache.getSize());
+
+            // a layer change drops its legends
+            Catalog catalog = getCatalog();
+            LayerInfo layer = catalog.getLayerByName(getLayerId(MockData.LAKES));
+            catalog.save(layer);
+            assertEquals(0, cache.getSize());
+
+            // a style change drops everything
+            getAsImage(base, "image/png");
+            assertEquals(1, cache.getSize());
+            StyleInfo style = catalog.getStyleByName("Lakes");
+            catalog.save(style);
+            assertEquals(0, cache.getSize());
+        } finally {
+            cache.setMaxMemory(0);
+        }
+    }
+
+    @Test
+    public void testLegendCacheVirtualServices() throws Exception {
+        LegendGraphicCache cache = GeoServerExtensions.bean(LegendGraphicCache.class);
+        cache.setMaxMemory(MemoryBoundedCache.MB);
+        try {
+            cache.clear();
+
+            String request = "?service=WMS&version=1.1.1&request=GetLegendGraphic"
+                    + "&style=Lakes&format=image/png&width=20&height=20&layer=";
+            String workspace = MockData.LAKES.getPrefix();
+            String layer = MockData.LAKES.getLocalPart();
+            getAsImage(workspace + "/wms" + request + layer, "image/png");
+            assertEquals(1, cache.getSize());
+            // same parameters, different virtual service, cannot share the entry
+            getAsImage(workspace + "/" + layer + "/wms" + request + layer, "image/png");
+            assertEquals(2, cache.getSize());
+            getAsImage("wms" + request + getLayerId(MockData.LAKES), "image/png");
+            assertEquals(3, cache.getSize());
+
+            // the layer change drops the legends of all virtual services
+            Catalog catalog = getCatalog();
+            catalog.save(catalog.getLayerByName(getLayerId(MockData.LAKES)));
+            assertEquals(0, cache.getSize());
+        } finally {
+            cache.setMaxMemory(0);
+        }
+    }
+
+    @Test
+    public void testLegendCacheFormats() throws Exception {
+        LegendGraphicCache cache = GeoServerExtensions.bean(LegendGraphicCache.class);
+        cache.setMaxMemory(MemoryBoundedCache.MB);
+        try {
+            cache.clear();
+            String base = "wms?service=WMS&version=1.1.1&request=GetLegendGraphic"
+                    + "&layer=" + getLayerId(MockData.LAKES) + "&style=Lakes"
+                    + "&width=20&height=20&format=";
+            // the png, gif and jpeg responses share the same binding, each format must be
+            // encoded by its own response, also when served from the cache
+            for (int i = 0; i < 2; i++) {
+                for (String format : new String[] { "image/png", "image/gif", "image/jpeg" }) {
+                    MockHttpServletResponse response = getAsServletResponse(base + format);
+                    assertEquals(format, response.getContentType());
+                    BufferedImage image = ImageIO.read(getBinaryInputStream(response));
+                    assertNotNull(format, image);
+                }
+                assertEquals(3, cache.getSize());
+            }
+        } finally {
+            cache.setMaxMemory(0);
+        }
+    }
 }